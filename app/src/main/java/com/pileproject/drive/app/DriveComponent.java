@@ -18,6 +18,9 @@ package com.pileproject.drive.app;
 import com.pileproject.drive.execution.ExecutionActivity;
 import com.pileproject.drive.module.FlavorModule;
 import com.pileproject.drive.programming.visual.activity.BlockListActivity;
+import com.pileproject.drive.programming.visual.activity.ProgrammingActivity;
+import com.pileproject.drive.setting.app.CommunicationStatisticsFragment;
+import com.pileproject.drive.setting.machine.BluetoothMachineSelectFragment;
 
 import javax.inject.Singleton;
 
@@ -34,4 +37,10 @@ public interface DriveComponent {
     void inject(BlockListActivity blockListActivity);
 
     void inject(ExecutionActivity executionActivity);
+
+    void inject(CommunicationStatisticsFragment communicationStatisticsFragment);
+
+    void inject(BluetoothMachineSelectFragment bluetoothMachineSelectFragment);
+
+    void inject(ProgrammingActivity programmingActivity);
 }
@@ -19,13 +19,10 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
 import android.support.annotation.NonNull;
 
+import com.pileproject.drive.util.bluetooth.BluetoothSocketConnector;
 import com.pileproject.drivecommand.model.com.ICommunicator;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.reflect.Method;
-import java.util.UUID;
 
 import trikita.log.Log;
 
@@ -38,12 +35,9 @@ import trikita.log.Log;
  */
 public class BluetoothCommunicator implements ICommunicator {
 
-    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
-
     private BluetoothDevice mDevice;
     private BluetoothSocket mSocket;
-    private OutputStream mOutputStream;
-    private InputStream mInputStream;
+    private FramedStream mStream;
 
     public BluetoothCommunicator(@NonNull BluetoothDevice device) throws NullPointerException {
         if (device == null) {
@@ -54,37 +48,10 @@ public class BluetoothCommunicator implements ICommunicator {
 
     @Override
     public void open() throws IOException {
-        // NOTE: an orthodox method
-        // it depends on the device if this call fails or not
-        // so, we do a redundancy check with the below reflection method
-        mSocket = mDevice.createRfcommSocketToServiceRecord(SPP_UUID);
-        try {
-            mSocket.connect();
-        } catch (IOException firstIOException) {
-            Log.d("Failed to connect with an orthodox method");
-            try {
-                // a redundancy check
-                Method method = mDevice.getClass().getMethod("createRfcommSocket", int.class);
-                mSocket = (BluetoothSocket) method.invoke(mDevice, 1);
-                mSocket.connect();
-            } catch (IOException secondIOException) {
-                Log.d("Failed to connect with a redundancy method");
-                // unable to connect; close the socket and get out
-                try {
-                    mSocket.close();
-                } catch (IOException closeException) {
-                    closeException.printStackTrace();
-                    Log.d("It seems unable to recover");
-                }
-                throw secondIOException;
-            } catch (Exception exception) {
-                exception.printStackTrace();
-                Log.d("This exception should not be occurred in release version");
-            }
-        }
+        // the orthodox and the reflective methods are tried in the order which worked last for this device
+        mSocket = BluetoothSocketConnector.connect(mDevice);
 
-        mOutputStream = mSocket.getOutputStream();
-        mInputStream = mSocket.getInputStream();
+        mStream = new FramedStream(mSocket.getInputStream(), mSocket.getOutputStream());
     }
 
     @Override
@@ -102,7 +69,7 @@ public class BluetoothCommunicator implements ICommunicator {
     @Override
     public void write(byte[] request) throws RuntimeException {
         try {
-            mOutputStream.write(request);
+            mStream.write(request);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -110,17 +77,10 @@ public class BluetoothCommunicator implements ICommunicator {
 
     @Override
     public byte[] read(int length) throws RuntimeException {
-        byte[] buffer = new byte[length];
-        int numBytes;
         try {
-            numBytes = mInputStream.read(buffer);
+            return mStream.read(length);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-
-        byte[] result = new byte[numBytes];
-        System.arraycopy(buffer, 0, result, 0, numBytes);
-
-        return result;
     }
-}
\ No newline at end of file
+}
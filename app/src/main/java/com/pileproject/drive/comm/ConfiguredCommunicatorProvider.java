@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+/**
+ * An implementation of {@link CommunicatorProvider} that chooses the communication means for each connection:
+ * Wi-Fi if the address of a bridge is configured, Bluetooth otherwise.
+ * The choice is made when a communicator is requested, thus a change of the settings takes effect
+ * at the next connection.
+ */
+public class ConfiguredCommunicatorProvider implements CommunicatorProvider {
+
+    private final CommunicatorProvider mWifiProvider = new WifiCommunicatorProvider();
+
+    @Override
+    public ICommunicator getCommunicator() {
+        if (WifiCommunicatorProvider.isConfigured()) {
+            return mWifiProvider.getCommunicator();
+        }
+
+        return BluetoothCommunicatorProvider.getInstance().getCommunicator();
+    }
+}
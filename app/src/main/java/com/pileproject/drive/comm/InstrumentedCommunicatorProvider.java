@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.SystemExecutionClock;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+/**
+ * A decorator of {@link CommunicatorProvider} which wraps the provided communicators with
+ * {@link InstrumentedCommunicator}s, so that the statistics of communications are collected.
+ */
+public class InstrumentedCommunicatorProvider implements CommunicatorProvider {
+
+    private final CommunicatorProvider mProvider;
+    private final CommunicationStatistics mStatistics;
+
+    public InstrumentedCommunicatorProvider(CommunicatorProvider provider, CommunicationStatistics statistics) {
+        mProvider = provider;
+        mStatistics = statistics;
+    }
+
+    @Override
+    public ICommunicator getCommunicator() {
+        return new InstrumentedCommunicator(mProvider.getCommunicator(), mStatistics, new SystemExecutionClock());
+    }
+}
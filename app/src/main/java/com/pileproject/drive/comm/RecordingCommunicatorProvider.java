@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.app.DriveApplication;
+import com.pileproject.drive.execution.SystemExecutionClock;
+import com.pileproject.drive.preferences.CommonPreferences;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import trikita.log.Log;
+
+/**
+ * A decorator of {@link CommunicatorProvider} which wraps the provided communicators with
+ * {@link RecordingCommunicator}s while the session recording is enabled in {@link CommonPreferences}.
+ * Each communicator records into a new file in the "sessions" directory of the app-specific external storage,
+ * so that users can pick up the files (e.g., via USB) and replay them with {@link ReplayCommunicator}.
+ */
+public class RecordingCommunicatorProvider implements CommunicatorProvider {
+
+    private static final String DIRECTORY_NAME = "sessions";
+
+    private final CommunicatorProvider mProvider;
+
+    public RecordingCommunicatorProvider(CommunicatorProvider provider) {
+        mProvider = provider;
+    }
+
+    @Override
+    public ICommunicator getCommunicator() {
+        ICommunicator communicator = mProvider.getCommunicator();
+
+        if (!CommonPreferences.get(DriveApplication.getContext()).getSessionRecording()) {
+            return communicator;
+        }
+
+        File directory = DriveApplication.getContext().getExternalFilesDir(DIRECTORY_NAME);
+        if (directory == null) {
+            Log.w("Unable to record a session because the external storage is not available");
+            return communicator;
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "session_" + timestamp + ".drs");
+
+        final OutputStream output;
+        try {
+            output = new FileOutputStream(file);
+        } catch (FileNotFoundException e) {
+            Log.w("Unable to record a session", e);
+            return communicator;
+        }
+
+        return new RecordingCommunicator(communicator, output, new SystemExecutionClock()) {
+            @Override
+            public synchronized void close() {
+                super.close();
+
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.w("Unable to close a session file", e);
+                }
+            }
+        };
+    }
+}
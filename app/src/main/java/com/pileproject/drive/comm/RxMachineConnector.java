@@ -15,6 +15,8 @@
  */
 package com.pileproject.drive.comm;
 
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.machine.MachineSession;
 import com.pileproject.drivecommand.machine.MachineBase;
 
 import java.io.IOException;
@@ -61,4 +63,41 @@ public class RxMachineConnector {
             }
         }).subscribeOn(Schedulers.newThread());
     }
+
+    /**
+     * Creates {@link Observable} which will produce a stream
+     * for borrowing the connection of the given {@link MachineSession}.
+     * When the connection is lent, {@link Subscriber#onNext} will be called with a controller
+     * of the machine, and then {@link Subscriber#onCompleted()} will be called immediately.
+     * The controller should be closed to return the connection to the session.
+     * If {@link MachineSession#acquire()} causes exceptions, {@link Subscriber#onError(Throwable)} is
+     * called with the caught exception.
+     *
+     * @param session a session which owns the connection
+     * @return an {@link Observable} with the stream
+     */
+    public static Observable<CarControllerBase> acquire(final MachineSession session) {
+        return Observable.create(new Observable.OnSubscribe<CarControllerBase>() {
+
+            @Override
+            public void call(Subscriber<? super CarControllerBase> subscriber) {
+                CarControllerBase controller;
+                try {
+                    controller = session.acquire();
+                } catch (IOException e) {
+                    subscriber.onError(e);
+                    return;
+                }
+
+                // nobody will use the connection
+                if (subscriber.isUnsubscribed()) {
+                    controller.close();
+                    return;
+                }
+
+                subscriber.onNext(controller);
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.newThread());
+    }
 }
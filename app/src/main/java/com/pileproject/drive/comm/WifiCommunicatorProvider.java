@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.app.DriveApplication;
+import com.pileproject.drive.preferences.MachinePreferences;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.net.InetSocketAddress;
+
+/**
+ * An implementation of {@link CommunicatorProvider} that provides {@link WifiCommunicator}s, which talk to
+ * machines through a TCP bridge whose address is configured in {@link MachinePreferences}
+ * (see: {@link WifiCommunicator#parseAddress(String, int)} for the format).
+ */
+public class WifiCommunicatorProvider implements CommunicatorProvider {
+
+    // used if the address has no port
+    private static final int DEFAULT_PORT = 9000;
+
+    /**
+     * Checks if a valid address of a bridge is configured, that is, machines are connected via Wi-Fi.
+     * A malformed address is regarded as not configured.
+     *
+     * @return configured (<code>true</code>) or not (<code>false</code>)
+     */
+    public static boolean isConfigured() {
+        return getAddress() != null;
+    }
+
+    /**
+     * Checks if an address can be configured as the address of a bridge.
+     *
+     * @param address the address to be checked
+     * @return valid (<code>true</code>) or not (<code>false</code>)
+     */
+    public static boolean isValidAddress(String address) {
+        return WifiCommunicator.parseAddress(address, DEFAULT_PORT) != null;
+    }
+
+    private static InetSocketAddress getAddress() {
+        String address = MachinePreferences.get(DriveApplication.getContext()).getWifiAddress();
+        return WifiCommunicator.parseAddress(address, DEFAULT_PORT);
+    }
+
+    @Override
+    public ICommunicator getCommunicator() {
+        InetSocketAddress address = getAddress();
+        if (address == null) {
+            throw new IllegalStateException("The address of a bridge is not configured");
+        }
+
+        // the address is not resolved, thus this is the host name as configured
+        return new WifiCommunicator(address.getHostName(), address.getPort());
+    }
+}
@@ -23,11 +23,13 @@ import com.yahoo.squidb.data.ISQLiteOpenHelper;
 import com.yahoo.squidb.data.SquidDatabase;
 import com.yahoo.squidb.sql.Table;
 
+import trikita.log.Log;
+
 /**
  * The implementation of {@link SquidDatabase} for this app.
  */
 public class DriveDatabase extends SquidDatabase {
-    private static final int VERSION = 1;
+    private static final int VERSION = DriveSchema.VERSION;
     private static final String NAME = "drive.db";
     private final Context mContext;
 
@@ -54,9 +56,42 @@ public class DriveDatabase extends SquidDatabase {
         };
     }
 
+    @Override
+    protected void onConfigure(ISQLiteDatabase db) {
+        // to delete the blocks of a program with it (ON DELETE CASCADE of ProgramDataSpec)
+        // NOTE: setForeignKeyConstraintsEnabled is not available before API 16
+        db.execSQL("PRAGMA foreign_keys = ON");
+        // to read programs while a program is being written (see RxProgramDataManager)
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    protected void onTablesCreated(ISQLiteDatabase db) {
+        for (String sql : DriveSchema.getCreateStatements()) {
+            db.execSQL(sql);
+        }
+    }
+
     @Override
     protected boolean onUpgrade(ISQLiteDatabase db, int oldVersion, int newVersion) {
-        return false;
+        // NOTE: this method runs in a transaction, thus a failed migration leaves the database as it was.
+        // any failure (an unknown version or a failed statement) fails the whole upgrade
+        // so that the database is never opened with a half-migrated schema (see onMigrationFailed)
+        try {
+            for (String sql : DriveSchema.getUpgradeStatements(oldVersion, newVersion)) {
+                db.execSQL(sql);
+            }
+        } catch (RuntimeException e) {
+            Log.e("Failed to upgrade the database from " + oldVersion + " to " + newVersion, e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onMigrationFailed(MigrationFailedException failure) {
+        // the migration is rolled back; opening the database must not go on with the old schema
+        throw failure;
     }
 
     @Override
@@ -18,19 +18,30 @@ package com.pileproject.drive.database;
 import android.view.View;
 
 import com.pileproject.drive.app.DriveApplication;
-import com.pileproject.drive.programming.visual.activity.BlockPositionComparator;
+import com.pileproject.drive.programming.model.BlockPositionComparator;
 import com.pileproject.drive.programming.visual.block.BlockBase;
 import com.pileproject.drive.programming.visual.block.BlockFactory;
 import com.pileproject.drive.programming.visual.block.NumberTextHolder;
 import com.pileproject.drive.programming.visual.layout.BlockSpaceLayout;
+import com.yahoo.squidb.data.ISQLitePreparedStatement;
 import com.yahoo.squidb.data.SquidCursor;
 import com.yahoo.squidb.sql.Query;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A manger of program data which is based on {@link ProgramSpec} and {@link ProgramDataSpec}.
+ * <p>
+ * The methods of this class access the database in the calling thread. Use {@link RxProgramDataManager} to access
+ * it in background from the UI thread.
  */
 public class ProgramDataManager {
     private static ProgramDataManager mInstance = new ProgramDataManager();
@@ -57,6 +68,22 @@ public class ProgramDataManager {
                     .orderBy(Program.UPDATED_AT.asc())
                     .freeze();
 
+    private static final String USER_PROGRAM_NAME_FORMAT = "%d";
+
+    private static final long NO_PROGRAM = -1;
+
+    // the default value of ProgramData.NUMBER, which is used by blocks without numbers
+    private static final String DEFAULT_NUMBER = "0";
+
+    private static final String INSERT_PROGRAM_DATA =
+            "INSERT INTO " + ProgramData.TABLE.getName() + " ("
+                    + ProgramData.PROGRAM_ID.getName() + ", "
+                    + ProgramData.TYPE.getName() + ", "
+                    + ProgramData.LEFT.getName() + ", "
+                    + ProgramData.TOP.getName() + ", "
+                    + ProgramData.NUMBER.getName() + ", "
+                    + ProgramData.ORDINAL.getName() + ") VALUES (?, ?, ?, ?, ?, ?)";
+
     private ProgramDataManager() {
         if (mDriveDatabase == null) {
             mDriveDatabase = new DriveDatabase(DriveApplication.getContext());
@@ -74,7 +101,31 @@ public class ProgramDataManager {
      * @return succeed (<code>true</code>) or not (<code>false</code>)
      */
     public boolean saveExecutionProgram(BlockSpaceLayout layout) {
-        return saveProgram(Program.EXECUTION, Program.EXECUTION, layout);
+        return saveProgram(Program.EXECUTION, Program.EXECUTION, captureBlocks(layout), null);
+    }
+
+    /**
+     * Saves a program temporarily to execute it, writing only the blocks which have been changed since
+     * the program was loaded or saved with <code>snapshot</code>. If nothing has been changed, nothing is written.
+     * The whole program is written if <code>snapshot</code> does not know the stored program.
+     *
+     * @param layout the programming space that has blocks
+     * @param snapshot the snapshot of the stored execution program, which is updated when the save succeeds
+     * @return succeed (<code>true</code>) or not (<code>false</code>)
+     */
+    public boolean saveExecutionProgram(BlockSpaceLayout layout, ProgramSnapshot snapshot) {
+        return saveExecutionProgram(captureBlocks(layout), snapshot);
+    }
+
+    boolean saveExecutionProgram(Map<BlockBase, ProgramData> blocks, ProgramSnapshot snapshot) {
+        synchronized (snapshot) {
+            if (!snapshot.isBound() || !isExecutionProgram(snapshot.getProgramId())) {
+                // the stored program is unknown or has been replaced
+                return saveProgram(Program.EXECUTION, Program.EXECUTION, blocks, snapshot);
+            }
+
+            return saveChangedBlocks(blocks, snapshot);
+        }
     }
 
     /**
@@ -85,7 +136,7 @@ public class ProgramDataManager {
      * @return succeed (<code>true</code>) or not (<code>false</code>)
      */
     public boolean saveSampleProgram(String programName, BlockSpaceLayout layout) {
-        return saveProgram(programName, Program.SAMPLE, layout);
+        return saveProgram(programName, Program.SAMPLE, captureBlocks(layout), null);
     }
 
     /**
@@ -96,10 +147,67 @@ public class ProgramDataManager {
      * @return succeed (<code>true</code>) or not (<code>false</code>)
      */
     public boolean saveUserProgram(String programName, BlockSpaceLayout layout) {
-        return saveProgram(programName, Program.USER, layout);
+        return saveProgram(programName, Program.USER, captureBlocks(layout), null);
+    }
+
+    /**
+     * Saves a user program with a new name.
+     * NOTE: this assumes the last program should have the largest number (e.g., "2" after "1").
+     *
+     * @param layout the programming space that has blocks
+     * @return the name of the saved program, or <code>null</code> if failed to save
+     */
+    public String saveNewUserProgram(BlockSpaceLayout layout) {
+        return saveNewUserProgram(captureBlocks(layout));
+    }
+
+    String saveNewUserProgram(Map<BlockBase, ProgramData> blocks) {
+        String newProgramName;
+
+        // load user program names
+        ArrayList<String> programs = loadUserProgramNames();
+        if (programs.isEmpty()) {
+            newProgramName = String.format(USER_PROGRAM_NAME_FORMAT, 1); // this is the first data
+        }
+        else {
+            // generate a new program name
+            String lastName = programs.get(programs.size() - 1);
+            int programNumber = Integer.parseInt(lastName); // e.g. 2
+            newProgramName = String.format(USER_PROGRAM_NAME_FORMAT, programNumber + 1);
+        }
+
+        // save a new program with the name
+        return saveProgram(newProgramName, Program.USER, blocks, null) ? newProgramName : null;
+    }
+
+    boolean saveProgram(String programName, String programType, Map<BlockBase, ProgramData> blocks,
+                        ProgramSnapshot snapshot) {
+        Program program;
+
+        // all the changes are committed at once (one journal commit) or rolled back entirely
+        mDriveDatabase.beginTransaction();
+        try {
+            program = saveProgramInTransaction(programName, programType, blocks);
+            if (program == null) {
+                return false;   // failed to save; the old program is kept
+            }
+
+            mDriveDatabase.setTransactionSuccessful();
+        } finally {
+            mDriveDatabase.endTransaction();
+        }
+
+        if (snapshot != null) {
+            snapshot.bind(program.getId());
+            if (program.getBlocks() == null) {
+                snapshot.getRows().putAll(blocks); // the rows have got their ids
+            }
+        }
+        return true;
     }
 
-    private boolean saveProgram(String programName, String programType, BlockSpaceLayout layout) {
+    private Program saveProgramInTransaction(String programName, String programType,
+                                             Map<BlockBase, ProgramData> blocks) {
         // delete the old program with 'programName' and 'programType'
         deleteProgram(programName, programType);
 
@@ -108,45 +216,212 @@ public class ProgramDataManager {
                 .setName(programName)
                 .setType(programType)
                 .setUpdatedAt(System.currentTimeMillis());
+        // NOTE: the execution program is stored in rows to save only the changed blocks (see saveChangedBlocks)
+        // and the others are stored with their blocks in one row
+        boolean isStoredAsBlob = !Program.EXECUTION.equals(programType);
+        if (isStoredAsBlob) {
+            program.setBlocks(toBlob(blocks.values()));
+        }
         // save the program (persist will set the _id for the target item)
         if (!mDriveDatabase.persist(program)) {
-            return false;   // failed to save
+            return null;   // failed to save
+        }
+        if (isStoredAsBlob) {
+            return program;
         }
 
-        // insert all views attached to the layout
-        for (int i = 0; i < layout.getChildCount(); ++i) {
-            View view = layout.getChildAt(i);
-            // check this view is a child of BlockBase or not
-            if (!(view instanceof BlockBase)) {
+        // insert all blocks attached to the layout
+        if (!insertRows(program.getId(), blocks)) {
+            return null;
+        }
+        return program;
+    }
+
+    private boolean isExecutionProgram(long programId) {
+        Program program = mDriveDatabase.fetch(Program.class, programId, Program.TYPE);
+        return program != null && Program.EXECUTION.equals(program.getType());
+    }
+
+    private boolean saveChangedBlocks(Map<BlockBase, ProgramData> blocks, ProgramSnapshot snapshot) {
+        Map<BlockBase, ProgramData> rows = snapshot.getRows();
+
+        Map<BlockBase, ProgramData> addedRows = new IdentityHashMap<>();
+        Map<BlockBase, ProgramData> changedRows = new IdentityHashMap<>();
+        Set<BlockBase> placedBlocks = Collections.newSetFromMap(new IdentityHashMap<BlockBase, Boolean>());
+
+        for (Map.Entry<BlockBase, ProgramData> block : blocks.entrySet()) {
+            BlockBase b = block.getKey();
+            placedBlocks.add(b);
+
+            // NOTE: a moved block may change the ordinals of the other blocks
+            ProgramData current = block.getValue();
+
+            ProgramData row = rows.get(b);
+            if (row == null) {
+                addedRows.put(b, current);
                 continue;
             }
 
-            BlockBase b = (BlockBase) view;
-            ProgramData data = new ProgramData()
-                    .setProgramId(program.getId())
-                    .setType(b.getClass().getName())
-                    .setLeft(b.getLeft())
-                    .setTop(b.getTop());
-            // get the number of TextView if the block has one
-            if (b instanceof NumberTextHolder) {
-                data.setNumber(((NumberTextHolder) b).getValueAsString());
+            if (!isSameBlock(row, current)) {
+                changedRows.put(b, current.setId(row.getId()));
+            }
+        }
+
+        List<BlockBase> removedBlocks = new ArrayList<>();
+        for (BlockBase b : rows.keySet()) {
+            if (!placedBlocks.contains(b)) {
+                removedBlocks.add(b);
             }
+        }
+
+        if (addedRows.isEmpty() && changedRows.isEmpty() && removedBlocks.isEmpty()) {
+            return true;    // the stored program is up to date
+        }
+
+        mDriveDatabase.beginTransaction();
+        try {
+            for (BlockBase b : removedBlocks) {
+                if (!mDriveDatabase.delete(ProgramData.class, rows.get(b).getId())) {
+                    return false;   // failed to save; the snapshot is kept to retry
+                }
+            }
+
+            // only the changed columns are updated because the rows have their ids
+            for (ProgramData row : changedRows.values()) {
+                if (!mDriveDatabase.persist(row)) {
+                    return false;
+                }
+            }
+
+            if (!insertRows(snapshot.getProgramId(), addedRows)) {
+                return false;
+            }
+
+            mDriveDatabase.setTransactionSuccessful();
+        } finally {
+            mDriveDatabase.endTransaction();
+        }
+
+        // reflect the committed changes
+        for (BlockBase b : removedBlocks) {
+            rows.remove(b);
+        }
+        rows.putAll(changedRows);
+        rows.putAll(addedRows);
+        return true;
+    }
 
-            // save the data
-            if (!mDriveDatabase.persist(data)) {
-                return false; // failed to save
+    // inserts the rows and sets their ids
+    private boolean insertRows(long programId, Map<BlockBase, ProgramData> rows) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        // the statement is compiled once and reused for all blocks
+        ISQLitePreparedStatement insert = mDriveDatabase.prepareStatement(INSERT_PROGRAM_DATA);
+        try {
+            for (ProgramData row : rows.values()) {
+                insert.bindLong(1, programId);
+                insert.bindString(2, row.getType());
+                insert.bindLong(3, row.getLeft());
+                insert.bindLong(4, row.getTop());
+                insert.bindString(5, row.getNumber());
+                insert.bindLong(6, row.getOrdinal());
+
+                // save the data
+                long id = insert.executeInsert();
+                if (id < 0) {
+                    return false; // failed to save
+                }
+                row.setId(id);
             }
+        } finally {
+            insert.close();
         }
         return true;
     }
 
+    /**
+     * Takes the values of the blocks on a layout to be saved. This should be called in the UI thread,
+     * and the returned values can be saved in another thread.
+     *
+     * @param layout the programming space that has blocks
+     * @return the blocks and their values in the order of their ordinals
+     */
+    static Map<BlockBase, ProgramData> captureBlocks(BlockSpaceLayout layout) {
+        List<BlockBase> blocks = getBlocks(layout);
+
+        // NOTE: blocks are Views, whose equals() is their identities
+        Map<BlockBase, ProgramData> capturedBlocks = new LinkedHashMap<>();
+        for (int ordinal = 0; ordinal < blocks.size(); ++ordinal) {
+            capturedBlocks.put(blocks.get(ordinal), toProgramData(blocks.get(ordinal), ordinal));
+        }
+        return capturedBlocks;
+    }
+
+    // gets the blocks on the layout in the order of their ordinals
+    private static List<BlockBase> getBlocks(BlockSpaceLayout layout) {
+        List<BlockBase> blocks = new ArrayList<>(layout.getChildCount());
+        for (int i = 0; i < layout.getChildCount(); ++i) {
+            View view = layout.getChildAt(i);
+            // check this view is a child of BlockBase or not
+            if (view instanceof BlockBase) {
+                blocks.add((BlockBase) view);
+            }
+        }
+        // sort blocks with their positions
+        Collections.sort(blocks, new BlockPositionComparator());
+        return blocks;
+    }
+
+    private static byte[] toBlob(Collection<ProgramData> rows) {
+        List<ProgramBlob.Block> blobBlocks = new ArrayList<>(rows.size());
+        for (ProgramData row : rows) {
+            blobBlocks.add(new ProgramBlob.Block(row.getType(), row.getLeft(), row.getTop(), row.getNumber()));
+        }
+        return ProgramBlob.encode(blobBlocks);
+    }
+
+    private static ProgramData toProgramData(BlockBase b, int ordinal) {
+        return new ProgramData()
+                .setOrdinal(ordinal)
+                .setType(b.getClass().getName())
+                .setLeft(b.getLeft())
+                .setTop(b.getTop())
+                // get the number of TextView if the block has one
+                .setNumber((b instanceof NumberTextHolder)
+                                   ? ((NumberTextHolder) b).getValueAsString() : DEFAULT_NUMBER);
+    }
+
+    private static boolean isSameBlock(ProgramData saved, ProgramData current) {
+        return saved.getType().equals(current.getType())
+                && saved.getLeft().equals(current.getLeft())
+                && saved.getTop().equals(current.getTop())
+                && saved.getNumber().equals(current.getNumber())
+                && saved.getOrdinal().equals(current.getOrdinal());
+    }
+
     /**
      * Loads an execution program's block data (sorted with {@link BlockPositionComparator} in ascending order).
      *
      * @return a loaded data as {@link ArrayList}
+     * @throws IOException if the stored program is corrupted
      */
-    public ArrayList<BlockBase> loadExecutionProgram() {
-        return loadProgram(Program.EXECUTION, Program.EXECUTION);
+    public ArrayList<BlockBase> loadExecutionProgram() throws IOException {
+        return loadProgram(Program.EXECUTION, Program.EXECUTION, null);
+    }
+
+    /**
+     * Loads an execution program's block data (sorted with {@link BlockPositionComparator} in ascending order),
+     * and records the loaded blocks into <code>snapshot</code> to save only their changes later.
+     *
+     * @param snapshot the snapshot to be filled with the loaded program
+     * @return a loaded data as {@link ArrayList}
+     * @throws IOException if the stored program is corrupted
+     * @see #saveExecutionProgram(BlockSpaceLayout, ProgramSnapshot)
+     */
+    public ArrayList<BlockBase> loadExecutionProgram(ProgramSnapshot snapshot) throws IOException {
+        return loadProgram(Program.EXECUTION, Program.EXECUTION, snapshot);
     }
 
     /**
@@ -154,9 +429,10 @@ public class ProgramDataManager {
      *
      * @param programName the name of a sample program
      * @return a loaded data as {@link ArrayList}
+     * @throws IOException if the stored program is corrupted
      */
-    public ArrayList<BlockBase> loadSampleProgram(String programName) {
-        return loadProgram(programName, Program.SAMPLE);
+    public ArrayList<BlockBase> loadSampleProgram(String programName) throws IOException {
+        return loadProgram(programName, Program.SAMPLE, null);
     }
 
     /**
@@ -164,58 +440,141 @@ public class ProgramDataManager {
      *
      * @param programName the name of a user program
      * @return a loaded data as {@link ArrayList}
+     * @throws IOException if the stored program is corrupted
+     */
+    public ArrayList<BlockBase> loadUserProgram(String programName) throws IOException {
+        return loadProgram(programName, Program.USER, null);
+    }
+
+    private ArrayList<BlockBase> loadProgram(String programName, String programType, ProgramSnapshot snapshot)
+            throws IOException {
+        return createBlocks(readProgram(programName, programType), snapshot);
+    }
+
+    /**
+     * The rows of a program which have been read from the database, before the blocks are created.
      */
-    public ArrayList<BlockBase> loadUserProgram(String programName) {
-        return loadProgram(programName, Program.USER);
+    static final class StoredProgram {
+        private final long mProgramId;
+        private final boolean mIsBlob;
+        private final List<ProgramData> mRows;
+
+        StoredProgram(long programId, boolean isBlob, List<ProgramData> rows) {
+            mProgramId = programId;
+            mIsBlob = isBlob;
+            mRows = rows;
+        }
     }
 
-    private ArrayList<BlockBase> loadProgram(String programName, String programType) {
+    StoredProgram readProgram(String programName, String programType) throws IOException {
         // search a program with 'programName' and 'programType'
         Query q = Query
-                .select(Program.ID)
+                .select(Program.ID, Program.BLOCKS)
                 .from(Program.TABLE)
                 .where(Program.NAME.eq(programName)
                                .and(Program.TYPE.eq(programType)));
         Program program = mDriveDatabase.fetchByQuery(Program.class, q);
         if (program == null) { // such a program is not found
-            return new ArrayList<>();
+            return new StoredProgram(NO_PROGRAM, false, Collections.<ProgramData>emptyList());
+        }
+
+        if (program.getBlocks() != null) {
+            return new StoredProgram(program.getId(), true, readRows(program.getBlocks()));
         }
 
-        // search program data with the program id
+        // search program data with the program id (the format before version 3, which is still used for
+        // the execution program)
         q = Query.select(ProgramData.PROPERTIES)
                 .from(ProgramData.TABLE)
-                .where(ProgramData.PROGRAM_ID.eq(program.getId()));
+                .where(ProgramData.PROGRAM_ID.eq(program.getId()))
+                .orderBy(ProgramData.ORDINAL.asc());
         SquidCursor<ProgramData> programData = mDriveDatabase.query(ProgramData.class, q);
-        return loadBlocks(programData);
+        return new StoredProgram(program.getId(), false, readRows(programData));
     }
 
-    private ArrayList<BlockBase> loadBlocks(SquidCursor<ProgramData> c) {
-        ArrayList<BlockBase> blocks = new ArrayList<>();
+    private static List<ProgramData> readRows(byte[] blob) throws IOException {
+        List<ProgramData> rows = new ArrayList<>();
+
+        // NOTE: a corrupted program must not be loaded as an empty one, which would be saved over it
+        List<ProgramBlob.Block> blobBlocks = ProgramBlob.decode(blob);
+
+        // the blocks have been encoded in the order of their positions
+        for (ProgramBlob.Block blobBlock : blobBlocks) {
+            rows.add(new ProgramData()
+                             .setOrdinal(rows.size())
+                             .setType(blobBlock.getType())
+                             .setLeft(blobBlock.getLeft())
+                             .setTop(blobBlock.getTop())
+                             .setNumber(blobBlock.getNumber()));
+        }
+        return rows;
+    }
+
+    private static List<ProgramData> readRows(SquidCursor<ProgramData> c) {
+        List<ProgramData> rows = new ArrayList<>();
 
-        ProgramData data = new ProgramData();
         try {
             while (c.moveToNext()) {
+                ProgramData data = new ProgramData();
                 data.readPropertiesFromCursor(c);
-                // create a BlockBase with a type (= name)
-                BlockBase b = BlockFactory.createBlock(data.getType());
-                // set data's properties
-                b.setLeft(data.getLeft());
-                b.setTop(data.getTop());
-                if (b instanceof NumberTextHolder) {
-                    ((NumberTextHolder) b).setValueAsString(data.getNumber());
-                }
-                // add the block to a list
-                blocks.add(b);
+                rows.add(data);
             }
         }
         finally {
             c.close(); // close the cursor
         }
-        // sort blocks with their positions
-        Collections.sort(blocks, new BlockPositionComparator());
+        // NOTE: the rows have been read in the order of their positions (see ProgramDataSpec.ordinal)
+        return rows;
+    }
+
+    /**
+     * Creates the blocks of a program which has been read. This should be called in the UI thread
+     * because blocks are Views.
+     *
+     * @param program the program which has been read with {@link #readProgram(String, String)}
+     * @param snapshot the snapshot to be filled with the program (can be <code>null</code>)
+     * @return the blocks in the order of their positions
+     */
+    static ArrayList<BlockBase> createBlocks(StoredProgram program, ProgramSnapshot snapshot) {
+        ArrayList<BlockBase> blocks = new ArrayList<>(program.mRows.size());
+        for (ProgramData row : program.mRows) {
+            blocks.add(createBlock(row.getType(), row.getLeft(), row.getTop(), row.getNumber()));
+        }
+
+        if (snapshot == null) {
+            return blocks;
+        }
+
+        synchronized (snapshot) {
+            if (program.mProgramId == NO_PROGRAM || program.mIsBlob) {
+                // a program in a blob will be stored in rows when it is saved next time
+                snapshot.clear();
+                return blocks;
+            }
+
+            snapshot.bind(program.mProgramId);
+            for (int i = 0; i < blocks.size(); ++i) {
+                BlockBase b = blocks.get(i);
+                ProgramData row = program.mRows.get(i);
+                // record the values as the block holds them (e.g., formatted numbers)
+                snapshot.getRows().put(b, toProgramData(b, row.getOrdinal()).setId(row.getId()));
+            }
+        }
         return blocks;
     }
 
+    private static BlockBase createBlock(String type, int left, int top, String number) {
+        // create a BlockBase with a type (= name)
+        BlockBase b = BlockFactory.createBlock(type);
+        // set data's properties
+        b.setLeft(left);
+        b.setTop(top);
+        if (b instanceof NumberTextHolder) {
+            ((NumberTextHolder) b).setValueAsString(number);
+        }
+        return b;
+    }
+
     /**
      * Loads all sample program names.
      *
@@ -262,6 +621,13 @@ public class ProgramDataManager {
         deleteProgram(Program.EXECUTION, Program.EXECUTION);
     }
 
+    void deleteExecutionProgram(ProgramSnapshot snapshot) {
+        synchronized (snapshot) {
+            deleteExecutionProgram();
+            snapshot.clear();
+        }
+    }
+
     /**
      * Deletes a sample program with <code>programName</code>.
      *
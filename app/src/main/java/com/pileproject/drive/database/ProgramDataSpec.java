@@ -49,4 +49,8 @@ public class ProgramDataSpec {
     // the number which a number holder block has
     @ColumnSpec(defaultValue = "0")
     String number;
+
+    // the index of a block in a program, which is sorted with BlockPositionComparator (since version 2)
+    @ColumnSpec(constraints = "NOT NULL", defaultValue = "0")
+    int ordinal;
 }
\ No newline at end of file
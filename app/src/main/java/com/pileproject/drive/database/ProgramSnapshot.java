@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import com.pileproject.drive.programming.visual.block.BlockBase;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of a stored program, which maps each block on a layout to the row saved for it.
+ * <p>
+ * {@link ProgramDataManager} compares the blocks on a layout with this snapshot to find the blocks which have been
+ * added, moved, removed or whose values have been changed since the last save, and only those rows are written.
+ * A snapshot is filled when a program is loaded or saved with it, and it should be cleared
+ * when the stored program is deleted.
+ * <p>
+ * {@link ProgramDataManager} accesses a snapshot holding its lock because it can be saved in background.
+ */
+public class ProgramSnapshot {
+    private static final long NO_PROGRAM = -1;
+
+    private long mProgramId = NO_PROGRAM;
+
+    // blocks are Views, so they are distinguished by their identities
+    private final Map<BlockBase, ProgramData> mRows = new IdentityHashMap<>();
+
+    /**
+     * Forgets the stored program. The next save with this snapshot will rewrite the whole program.
+     */
+    public synchronized void clear() {
+        mProgramId = NO_PROGRAM;
+        mRows.clear();
+    }
+
+    boolean isBound() {
+        return mProgramId != NO_PROGRAM;
+    }
+
+    long getProgramId() {
+        return mProgramId;
+    }
+
+    void bind(long programId) {
+        mProgramId = programId;
+        mRows.clear();
+    }
+
+    Map<BlockBase, ProgramData> getRows() {
+        return mRows;
+    }
+}
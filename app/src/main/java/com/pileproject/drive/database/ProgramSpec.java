@@ -43,6 +43,9 @@ public class ProgramSpec {
     @ColumnSpec(constraints = "NOT NULL")
     long updatedAt;
 
+    // the blocks encoded with ProgramBlob (since version 3); null if the blocks are stored in "program_data" table
+    byte[] blocks;
+
     @Constants
     public static class TypeConst {
         public static final String EXECUTION = "execution";
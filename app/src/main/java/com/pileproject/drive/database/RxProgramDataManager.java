@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import android.database.SQLException;
+
+import com.pileproject.drive.programming.visual.block.BlockBase;
+import com.pileproject.drive.programming.visual.layout.BlockSpaceLayout;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * A class which produces {@link Observable}s and {@link Completable}s of RxJava for accessing programs
+ * through {@link ProgramDataManager} in background.
+ * <p>
+ * All the writes run in one thread in the order of the requests, and the reads run in other threads
+ * concurrently with them (the database is in WAL mode). A read requested before a write has completed may
+ * not see the write, so wait for the completion if the result is needed (e.g., before executing a program).
+ * <p>
+ * The values of blocks are taken when a save is requested, loaded blocks are created in the UI thread,
+ * and all the results are delivered in the UI thread. Thus the methods should be called in the UI thread.
+ */
+public class RxProgramDataManager {
+
+    // the only thread which writes the database
+    private static final Scheduler WRITE_SCHEDULER = Schedulers.from(Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DatabaseWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }));
+
+    private static final Scheduler READ_SCHEDULER = Schedulers.io();
+
+    private RxProgramDataManager() {
+        throw new AssertionError("This class cannot be instantiated");
+    }
+
+    /**
+     * Creates {@link Completable} which saves a program temporarily to execute it.
+     *
+     * @param layout the programming space that has blocks
+     * @param snapshot the snapshot of the stored execution program
+     * @return a {@link Completable} which completes when the program has been saved
+     * @see ProgramDataManager#saveExecutionProgram(BlockSpaceLayout, ProgramSnapshot)
+     */
+    public static Completable saveExecutionProgram(BlockSpaceLayout layout, final ProgramSnapshot snapshot) {
+        final Map<BlockBase, ProgramData> blocks = ProgramDataManager.captureBlocks(layout);
+
+        return write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return ProgramDataManager.getInstance().saveExecutionProgram(blocks, snapshot);
+            }
+        });
+    }
+
+    /**
+     * Creates {@link Completable} which saves a sample program.
+     * NOTE: if a name which is already saved is selected, it will be overwritten.
+     *
+     * @param programName the name of a new program
+     * @param layout the programming space that has blocks
+     * @return a {@link Completable} which completes when the program has been saved
+     */
+    public static Completable saveSampleProgram(final String programName, BlockSpaceLayout layout) {
+        final Map<BlockBase, ProgramData> blocks = ProgramDataManager.captureBlocks(layout);
+
+        return write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return ProgramDataManager.getInstance().saveProgram(programName, Program.SAMPLE, blocks, null);
+            }
+        });
+    }
+
+    /**
+     * Creates {@link Observable} which saves a user program with a new name.
+     *
+     * @param layout the programming space that has blocks
+     * @return an {@link Observable} which emits the name of the saved program
+     * @see ProgramDataManager#saveNewUserProgram(BlockSpaceLayout)
+     */
+    public static Observable<String> saveUserProgram(BlockSpaceLayout layout) {
+        final Map<BlockBase, ProgramData> blocks = ProgramDataManager.captureBlocks(layout);
+
+        return Observable.fromCallable(new Callable<String>() {
+            @Override
+            public String call() {
+                // the name is decided in the writer so that concurrent saves do not take the same name
+                String programName = ProgramDataManager.getInstance().saveNewUserProgram(blocks);
+                if (programName == null) {
+                    throw new SQLException("Failed to save a program");
+                }
+                return programName;
+            }
+        }).subscribeOn(WRITE_SCHEDULER).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Creates {@link Observable} which loads an execution program.
+     *
+     * @param snapshot the snapshot to be filled with the loaded program
+     * @return an {@link Observable} which emits the blocks (sorted with their positions)
+     */
+    public static Observable<List<BlockBase>> loadExecutionProgram(ProgramSnapshot snapshot) {
+        return load(Program.EXECUTION, Program.EXECUTION, snapshot);
+    }
+
+    /**
+     * Creates {@link Observable} which loads a sample program.
+     *
+     * @param programName the name of a sample program
+     * @return an {@link Observable} which emits the blocks (sorted with their positions)
+     *         or an error if the stored program is corrupted
+     */
+    public static Observable<List<BlockBase>> loadSampleProgram(String programName) {
+        return load(programName, Program.SAMPLE, null);
+    }
+
+    /**
+     * Creates {@link Observable} which loads a user program.
+     *
+     * @param programName the name of a user program
+     * @return an {@link Observable} which emits the blocks (sorted with their positions)
+     *         or an error if the stored program is corrupted
+     */
+    public static Observable<List<BlockBase>> loadUserProgram(String programName) {
+        return load(programName, Program.USER, null);
+    }
+
+    /**
+     * Creates {@link Observable} which loads all sample program names.
+     *
+     * @return an {@link Observable} which emits the names
+     */
+    public static Observable<List<String>> loadSampleProgramNames() {
+        return read(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return ProgramDataManager.getInstance().loadSampleProgramNames();
+            }
+        });
+    }
+
+    /**
+     * Creates {@link Observable} which loads all user program names.
+     *
+     * @return an {@link Observable} which emits the names
+     */
+    public static Observable<List<String>> loadUserProgramNames() {
+        return read(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return ProgramDataManager.getInstance().loadUserProgramNames();
+            }
+        });
+    }
+
+    /**
+     * Creates {@link Completable} which deletes an execution program.
+     *
+     * @param snapshot the snapshot of the execution program, which is cleared
+     * @return a {@link Completable} which completes when the program has been deleted
+     */
+    public static Completable deleteExecutionProgram(final ProgramSnapshot snapshot) {
+        return delete(new Action0() {
+            @Override
+            public void call() {
+                ProgramDataManager.getInstance().deleteExecutionProgram(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Creates {@link Completable} which deletes a sample program.
+     *
+     * @param programName the name of a sample program
+     * @return a {@link Completable} which completes when the program has been deleted
+     */
+    public static Completable deleteSampleProgram(final String programName) {
+        return delete(new Action0() {
+            @Override
+            public void call() {
+                ProgramDataManager.getInstance().deleteSampleProgram(programName);
+            }
+        });
+    }
+
+    /**
+     * Creates {@link Completable} which deletes a user program.
+     *
+     * @param programName the name of a user program
+     * @return a {@link Completable} which completes when the program has been deleted
+     */
+    public static Completable deleteUserProgram(final String programName) {
+        return delete(new Action0() {
+            @Override
+            public void call() {
+                ProgramDataManager.getInstance().deleteUserProgram(programName);
+            }
+        });
+    }
+
+    private static Completable write(final Callable<Boolean> save) {
+        return Completable.fromCallable(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (!save.call()) {
+                    throw new SQLException("Failed to save a program");
+                }
+                return null;
+            }
+        }).subscribeOn(WRITE_SCHEDULER).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    private static Completable delete(Action0 delete) {
+        return Completable.fromAction(delete).subscribeOn(WRITE_SCHEDULER).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    private static <T> Observable<T> read(Callable<T> read) {
+        return Observable.fromCallable(read).subscribeOn(READ_SCHEDULER).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    private static Observable<List<BlockBase>> load(final String programName, final String programType,
+                                                    final ProgramSnapshot snapshot) {
+        return read(new Callable<ProgramDataManager.StoredProgram>() {
+            @Override
+            public ProgramDataManager.StoredProgram call() throws IOException {
+                // a corrupted program fails the loading (see onError of the subscriber)
+                return ProgramDataManager.getInstance().readProgram(programName, programType);
+            }
+        }).map(new Func1<ProgramDataManager.StoredProgram, List<BlockBase>>() {
+            @Override
+            public List<BlockBase> call(ProgramDataManager.StoredProgram program) {
+                // blocks are Views, which are created in the UI thread
+                return ProgramDataManager.createBlocks(program, snapshot);
+            }
+        });
+    }
+}
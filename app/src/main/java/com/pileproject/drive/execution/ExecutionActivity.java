@@ -15,14 +15,18 @@
  */
 package com.pileproject.drive.execution;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -31,26 +35,34 @@ import android.widget.Toast;
 
 import com.pileproject.drive.R;
 import com.pileproject.drive.app.DriveApplication;
-import com.pileproject.drive.comm.BluetoothCommunicatorProvider;
-import com.pileproject.drive.comm.CommunicatorProvider;
 import com.pileproject.drive.comm.RxMachineConnector;
-import com.pileproject.drive.database.ProgramDataManager;
-import com.pileproject.drive.machine.MachineProvider;
+import com.pileproject.drive.comm.WifiCommunicatorProvider;
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.machine.MachineSession;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.visual.block.BlockBase;
 import com.pileproject.drive.util.bluetooth.BluetoothUtil;
 import com.pileproject.drive.util.development.DeployUtil;
 import com.pileproject.drive.util.fragment.AlertDialogFragment;
 import com.pileproject.drive.util.fragment.ProgressDialogFragment;
 import com.pileproject.drive.programming.visual.layout.BlockSpaceLayout;
 import com.pileproject.drive.programming.visual.layout.ExecutionSpaceManager;
-import com.pileproject.drivecommand.machine.MachineBase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 
 import rx.Observable;
 import rx.Observer;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
+import trikita.log.Log;
 
 /**
  * An Activity class that deals with executions of programs.
@@ -64,18 +76,46 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
 
     private static final int REQUEST_ENABLE_BT = 1;
 
+    // the interval of updating the emphasized block without Choreographer (about 60 fps)
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
     private ExecutionSpaceManager mSpaceManager;
 
     private Button mStopAndRestartButton;
 
     private CompositeSubscription mSubscriptions = new CompositeSubscription();
 
+    // loaded once in background, and executed after it has been loaded
+    private Observable<List<BlockModel>> mProgram;
+
+    // created when the connection is lent by the session
     private RxObservableProgram mObservableProgram;
 
-    private MachineBase mMachine;
+    private int mEmphasizedBlockIndex = ExecutionEventRing.NO_BLOCK;
+
+    private boolean mIsTicking;
+
+    // emphasizes the latest executed block once per frame
+    private final Runnable mFrameTicker = new Runnable() {
+        @Override
+        public void run() {
+            if (!mIsTicking) {
+                return;
+            }
+
+            updateEmphasizedBlock();
+            postFrame();
+        }
+    };
+
+    // Choreographer is available from API 16; the handler is used below it
+    private final VsyncFrameTicker mVsyncFrameTicker =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new VsyncFrameTicker(mFrameTicker) : null;
+
+    private final Handler mFrameHandler = new Handler();
 
     @Inject
-    public MachineProvider mMachineProvider;
+    public MachineSession mMachineSession;
 
     /**
      * Returns an {@link Intent} for invoking {@link ExecutionActivity}.
@@ -100,15 +140,27 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
         toolbar.setLogo(R.drawable.icon_launcher);
         setSupportActionBar(toolbar);
 
-        CommunicatorProvider communicatorProvider = BluetoothCommunicatorProvider.getInstance();
-
-        mMachine = mMachineProvider.getMachine(communicatorProvider.getCommunicator());
-
-        mObservableProgram = new RxObservableProgram(
-                ProgramDataManager.getInstance().loadExecutionProgram(),
-                mMachineProvider.getMachineController(mMachine));
+        mProgram = mSpaceManager.loadAndPlaceExecutionProgram()
+                .map(new Func1<List<BlockBase>, List<BlockModel>>() {
+                    @Override
+                    public List<BlockModel> call(List<BlockBase> blocks) {
+                        return toModels(blocks);
+                    }
+                })
+                .cache();
 
-        mSpaceManager.loadExecutionProgram();
+        // shows the program even while waiting for Bluetooth to be enabled
+        mSubscriptions.add(mProgram.subscribe(new Action1<List<BlockModel>>() {
+            @Override
+            public void call(List<BlockModel> program) {
+                // placed already
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Log.e("Failed to load the execution program", throwable);
+            }
+        }));
 
         mStopAndRestartButton.setOnClickListener(pauser);
 
@@ -125,8 +177,10 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
     public void onStart() {
         super.onStart();
 
-        // TODO: remove bluetooth-dependent code for WiFiCommunicator
-        if (!DeployUtil.isOnEmulator() && !BluetoothUtil.hasBluetoothFunction()) {
+        // machines on emulators (simulated) or via Wi-Fi do not need Bluetooth
+        boolean needsBluetooth = !DeployUtil.isOnEmulator() && !WifiCommunicatorProvider.isConfigured();
+
+        if (needsBluetooth && !BluetoothUtil.hasBluetoothFunction()) {
             new AlertDialogFragment.Builder(this)
                     .setRequestCode(DIALOG_REQUEST_CODE_BLUETOOTH)
                     .setTitle(R.string.error)
@@ -138,7 +192,7 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
             return;
         }
 
-        if (!DeployUtil.isOnEmulator() && !BluetoothUtil.isBluetoothEnabled()) {
+        if (needsBluetooth && !BluetoothUtil.isBluetoothEnabled()) {
             startActivityForResult(new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE), REQUEST_ENABLE_BT);
             return;
         }
@@ -166,6 +220,17 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
 
         terminateExecution();
         mSubscriptions.unsubscribe();
+        stopFrames();
+    }
+
+    private static List<BlockModel> toModels(List<BlockBase> blocks) {
+        List<BlockModel> models = new ArrayList<>(blocks.size());
+
+        for (BlockBase block : blocks) {
+            models.add(block.toModel());
+        }
+
+        return models;
     }
 
     private void inject() {
@@ -177,14 +242,65 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
         mStopAndRestartButton = (Button) findViewById(R.id.execute_stopAndRestartButton);
     }
 
+    private void updateEmphasizedBlock() {
+        int index = mObservableProgram.getEventRing().getLatestBlockIndex();
+
+        if (index == mEmphasizedBlockIndex) {
+            return;
+        }
+
+        mSpaceManager.emphasizeBlock(index);
+        mEmphasizedBlockIndex = index;
+    }
+
+    private void startFrames() {
+        mIsTicking = true;
+        postFrame();
+    }
+
+    private void stopFrames() {
+        mIsTicking = false;
+
+        if (mVsyncFrameTicker != null) {
+            mVsyncFrameTicker.cancel();
+        } else {
+            mFrameHandler.removeCallbacks(mFrameTicker);
+        }
+    }
+
+    private void postFrame() {
+        if (mVsyncFrameTicker != null) {
+            mVsyncFrameTicker.post();
+        } else {
+            mFrameHandler.postDelayed(mFrameTicker, FRAME_INTERVAL_MILLIS);
+        }
+    }
+
+    private void showPauseButton() {
+        mStopAndRestartButton.setText(R.string.execute_stop);
+        mStopAndRestartButton.setOnClickListener(pauser);
+        mStopAndRestartButton.setEnabled(true);
+    }
+
+    private void showRestartButton() {
+        mStopAndRestartButton.setText(R.string.execute_restart);
+        mStopAndRestartButton.setOnClickListener(restarter);
+        mStopAndRestartButton.setEnabled(true);
+    }
+
     private void startExecution() {
+        startFrames();
+
         mSubscriptions.add(
             Observable.create(mObservableProgram)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribeOn(Schedulers.newThread())
-                .subscribe(new Observer<Bundle>() {
+                .subscribe(new Observer<Integer>() {
                     @Override
                     public void onCompleted() {
+                        stopFrames();
+                        updateEmphasizedBlock();
+
                         new AlertDialogFragment.Builder(ExecutionActivity.this)
                             .setRequestCode(DIALOG_REQUEST_CODE_THREAD_ENDED)
                             .setMessage(R.string.execute_showNoteOfPort)
@@ -197,6 +313,8 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
 
                     @Override
                     public void onError(Throwable e) {
+                        stopFrames();
+
                         new AlertDialogFragment.Builder(ExecutionActivity.this)
                             .setRequestCode(DIALOG_REQUEST_CODE_CONNECTION_ERROR)
                             .setTitle(R.string.error)
@@ -208,19 +326,33 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
                     }
 
                     @Override
-                    public void onNext(Bundle bundle) {
-
-                        int message = bundle.getInt(RxObservableProgram.KEY_MESSAGE_TYPE);
+                    public void onNext(Integer message) {
 
                         switch (message) {
                             case RxObservableProgram.MESSAGE_STARTED: {
                                 Toast.makeText(getBaseContext(), R.string.execute_startExecution, Toast.LENGTH_SHORT).show();
+                                showPauseButton();
+                                break;
+                            }
+
+                            // the button follows the state of the execution, which may change later than requested
+                            case RxObservableProgram.MESSAGE_PAUSED: {
+                                showRestartButton();
                                 break;
                             }
 
-                            case RxObservableProgram.MESSAGE_BLOCK_EXECUTED: {
-                                int index = bundle.getInt(RxObservableProgram.KEY_MESSAGE_ARG);
-                                mSpaceManager.emphasizeBlock(index);
+                            case RxObservableProgram.MESSAGE_RESTARTED: {
+                                showPauseButton();
+                                break;
+                            }
+
+                            case RxObservableProgram.MESSAGE_LINK_LOST: {
+                                Toast.makeText(getBaseContext(), R.string.execute_linkLost, Toast.LENGTH_LONG).show();
+                                break;
+                            }
+
+                            case RxObservableProgram.MESSAGE_LINK_RESTORED: {
+                                Toast.makeText(getBaseContext(), R.string.execute_linkRestored, Toast.LENGTH_SHORT).show();
                                 break;
                             }
                         }
@@ -235,10 +367,23 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
                 getString(R.string.execute_connecting),
                 getString(R.string.execute_pleaseWaitForAWhile), "");
 
+        // the connection is reused if the session keeps it (e.g., re-runs of a program)
+        // and it is acquired after the program has been loaded
         mSubscriptions.add(
-            RxMachineConnector.connect(mMachine)
+            mProgram.flatMap(new Func1<List<BlockModel>, Observable<RxObservableProgram>>() {
+                    @Override
+                    public Observable<RxObservableProgram> call(final List<BlockModel> program) {
+                        return RxMachineConnector.acquire(mMachineSession)
+                                .map(new Func1<CarControllerBase, RxObservableProgram>() {
+                                    @Override
+                                    public RxObservableProgram call(CarControllerBase controller) {
+                                        return createObservableProgram(program, controller);
+                                    }
+                                });
+                    }
+                })
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new Observer<MachineBase>() {
+                .subscribe(new Observer<RxObservableProgram>() {
 
                     @Override
                     public void onCompleted() {
@@ -259,14 +404,32 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
                     }
 
                     @Override
-                    public void onNext(MachineBase machineBase) {
-                        // no-op
+                    public void onNext(RxObservableProgram program) {
+                        mObservableProgram = program;
                     }
                 })
         );
     }
 
+    private RxObservableProgram createObservableProgram(List<BlockModel> program, CarControllerBase controller) {
+        RxObservableProgram observableProgram = new RxObservableProgram(program, controller);
+
+        // a dropped link is reconnected through the session and the execution resumes
+        observableProgram.setReconnector(new RxObservableProgram.Reconnector() {
+            @Override
+            public MachineController reconnect() throws IOException {
+                return mMachineSession.acquire();
+            }
+        });
+
+        return observableProgram;
+    }
+
     private void terminateExecution() {
+        if (mObservableProgram == null) {
+            return;
+        }
+
         mObservableProgram.requestTerminate();
     }
 
@@ -310,20 +473,55 @@ public class ExecutionActivity extends AppCompatActivity implements AlertDialogF
     private final OnClickListener pauser = new OnClickListener() {
         @Override
         public void onClick(View view) {
+            // the execution has not started yet
+            if (mObservableProgram == null) {
+                return;
+            }
+
             mObservableProgram.requestPause();
 
-            mStopAndRestartButton.setText(R.string.execute_restart);
-            mStopAndRestartButton.setOnClickListener(restarter);
+            // until the execution is paused (see MESSAGE_PAUSED)
+            mStopAndRestartButton.setEnabled(false);
         }
     };
 
     private final OnClickListener restarter = new OnClickListener() {
         @Override
         public void onClick(View view) {
+            // the execution has not started yet
+            if (mObservableProgram == null) {
+                return;
+            }
+
             mObservableProgram.requestRestart();
 
-            mStopAndRestartButton.setText(R.string.execute_stop);
-            mStopAndRestartButton.setOnClickListener(pauser);
+            // until the execution is restarted (see MESSAGE_RESTARTED)
+            mStopAndRestartButton.setEnabled(false);
         }
     };
+
+    /**
+     * Runs a task on every frame of the display with {@link Choreographer} (API 16 or later).
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class VsyncFrameTicker implements Choreographer.FrameCallback {
+        private final Runnable mTask;
+
+        VsyncFrameTicker(Runnable task) {
+            mTask = task;
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void cancel() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mTask.run();
+        }
+    }
 }
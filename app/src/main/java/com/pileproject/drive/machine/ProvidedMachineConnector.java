@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.comm.CommunicatorProvider;
+import com.pileproject.drivecommand.machine.MachineBase;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.IOException;
+
+/**
+ * An implementation of {@link MachineSession.Connector} which connects to the machine
+ * given by a {@link MachineProvider} through the communicator given by a {@link CommunicatorProvider}.
+ */
+public class ProvidedMachineConnector implements MachineSession.Connector {
+
+    private final MachineProvider mMachineProvider;
+    private final CommunicatorProvider mCommunicatorProvider;
+
+    public ProvidedMachineConnector(MachineProvider machineProvider, CommunicatorProvider communicatorProvider) {
+        mMachineProvider = machineProvider;
+        mCommunicatorProvider = communicatorProvider;
+    }
+
+    @Override
+    public CarControllerBase connect() throws IOException {
+        ICommunicator communicator = mCommunicatorProvider.getCommunicator();
+        CarControllerBase controller = null;
+
+        try {
+            MachineBase machine = mMachineProvider.getMachine(communicator);
+            machine.connect();
+
+            controller = (CarControllerBase) mMachineProvider.getMachineController(machine);
+            return controller;
+        } finally {
+            if (controller == null) {
+                // releases what the communicator holds (e.g., a socket or a session file)
+                closeQuietly(communicator);
+            }
+        }
+    }
+
+    private static void closeQuietly(ICommunicator communicator) {
+        try {
+            communicator.close();
+        } catch (RuntimeException e) {
+            // the original error is more important
+        }
+    }
+}
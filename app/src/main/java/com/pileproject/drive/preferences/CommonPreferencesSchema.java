@@ -27,4 +27,8 @@ import com.rejasupotaro.android.kvs.annotations.Table;
 public class CommonPreferencesSchema {
     @Key(name = "supervisor_mode")
     final boolean supervisorMode = false;
+
+    // records communications into session files to be replayed offline
+    @Key(name = "session_recording")
+    final boolean sessionRecording = false;
 }
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.preferences;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.pileproject.drive.comm.RacingConnector;
+
+/**
+ * A storage of the strategies to connect to machines which succeeded last, keyed by their MAC addresses.
+ * This is a plain <code>SharedPreferences</code> table because the keys are not fixed.
+ */
+public class ConnectStrategyPreferences implements RacingConnector.Memory {
+
+    private static final String TABLE_NAME = "connect_strategy_preferences";
+
+    private final SharedPreferences mPreferences;
+
+    public ConnectStrategyPreferences(Context context) {
+        mPreferences = context.getSharedPreferences(TABLE_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String getStrategy(String target) {
+        return mPreferences.getString(target, null);
+    }
+
+    @Override
+    public void putStrategy(String target, String strategy) {
+        if (strategy.equals(getStrategy(target))) return;
+
+        mPreferences.edit().putString(target, strategy).apply();
+    }
+}
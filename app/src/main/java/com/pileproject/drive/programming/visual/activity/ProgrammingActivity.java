@@ -28,9 +28,13 @@ import android.support.v7.widget.Toolbar;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.EditText;
+import android.widget.Toast;
 
 import com.pileproject.drive.R;
+import com.pileproject.drive.app.DriveApplication;
+import com.pileproject.drive.comm.WifiCommunicatorProvider;
 import com.pileproject.drive.execution.ExecutionActivity;
+import com.pileproject.drive.machine.MachineSession;
 import com.pileproject.drive.preferences.CommonPreferences;
 import com.pileproject.drive.preferences.MachinePreferences;
 import com.pileproject.drive.programming.visual.block.BlockBase;
@@ -39,12 +43,22 @@ import com.pileproject.drive.programming.visual.block.BlockFactory;
 import com.pileproject.drive.programming.visual.layout.BlockSpaceLayout;
 import com.pileproject.drive.programming.visual.layout.ProgrammingSpaceManager;
 import com.pileproject.drive.setting.SettingActivity;
+import com.pileproject.drive.util.battery.BatteryUtil;
+import com.pileproject.drive.util.bluetooth.BluetoothUtil;
 import com.pileproject.drive.util.development.DeployUtil;
 import com.pileproject.drive.util.fragment.AlertDialogFragment;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.inject.Inject;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action1;
+import rx.subscriptions.CompositeSubscription;
+import trikita.log.Log;
+
 /**
  * An activity where Users create programs.
  */
@@ -62,6 +76,12 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
 
     private ProgrammingSpaceManager mSpaceManager;
 
+    // the loadings of programs, which are not needed after this activity is destroyed
+    private CompositeSubscription mSubscriptions = new CompositeSubscription();
+
+    @Inject
+    public MachineSession mMachineSession;
+
     /**
      * Returns an {@link Intent} for invoking {@link ProgrammingActivity}.
      *
@@ -77,13 +97,15 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_programming);
 
+        inject();
+
         setUpToolbar();
 
         setUpBlockButtons();
 
         mSpaceManager = new ProgrammingSpaceManager(this, (BlockSpaceLayout) findViewById(R.id.programming_placingBlockSpaceLayout));
 
-        mSpaceManager.loadExecutionProgram();
+        mSubscriptions.add(mSpaceManager.loadExecutionProgram());
 
         findViewById(R.id.programming_execButton).setOnClickListener(new View.OnClickListener() {
             @Override
@@ -93,13 +115,68 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
         });
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        preconnectToMachine();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // NOTE: saves are not cancelled so that they are completed after this activity is finished
+        mSubscriptions.unsubscribe();
+    }
+
+    private void inject() {
+        ((DriveApplication) getApplication()).getAppComponent().inject(this);
+    }
+
+    /**
+     * Starts connecting to the machine in background while the user edits a program, so that
+     * {@link ExecutionActivity} can start the execution without waiting for the connection.
+     * The connection is disconnected by the session if it is not used for a while.
+     */
+    private void preconnectToMachine() {
+        if (DeployUtil.isOnEmulator()) {
+            return;
+        }
+
+        if (!WifiCommunicatorProvider.isConfigured()) {
+            if (!BluetoothUtil.isBluetoothEnabled()
+                    || MachinePreferences.get(getApplicationContext()).getMacAddress() == null) {
+                return;
+            }
+        }
+
+        // keeping a connection costs the battery of both the device and the machine
+        if (BatteryUtil.isBatteryLow(getApplicationContext())) {
+            return;
+        }
+
+        mMachineSession.preconnect();
+    }
+
     private void moveToExecutionActivity() {
-        mSpaceManager.saveExecutionProgram();
+        // ExecutionActivity reads the program after it is saved
+        mSpaceManager.saveExecutionProgram().subscribe(new SaveSubscriber<Void>() {
+            @Override
+            public void onCompleted() {
+                startExecutionActivity();
+            }
+        });
+    }
+
+    private void startExecutionActivity() {
+        if (isFinishing()) {
+            return;
+        }
 
-        // TODO: remove bluetooth-dependent code for WiFiCommunicator
         String address = MachinePreferences.get(getApplicationContext()).getMacAddress();
 
-        if (address != null || DeployUtil.isOnEmulator()) {
+        if (address != null || WifiCommunicatorProvider.isConfigured() || DeployUtil.isOnEmulator()) {
             Intent intent = ExecutionActivity.createIntent(getApplicationContext());
             startActivityForResult(intent, ACTIVITY_RESULT_EXECUTE_PROGRAM);
             return ;
@@ -114,10 +191,29 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
     }
 
     protected void moveToTitleActivity() {
-        mSpaceManager.saveExecutionProgram();
+        mSpaceManager.saveExecutionProgram().subscribe(new SaveSubscriber<Void>());
         finish();
     }
 
+    /**
+     * A {@link Subscriber} of saving a program, which notifies users of failures.
+     */
+    private class SaveSubscriber<T> extends Subscriber<T> {
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            Log.e("Failed to save a program", e);
+            Toast.makeText(getApplicationContext(), R.string.programming_failedToSave, Toast.LENGTH_LONG).show();
+        }
+
+        @Override
+        public void onNext(T t) {
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
 
@@ -166,7 +262,7 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
                     }
 
                     case R.id.programming_menu_loadSampleProgram: {
-                        showLoadProgramDialog(mSpaceManager.loadSampleProgramNames(), true);
+                        showProgramNames(mSpaceManager.loadSampleProgramNames(), true);
                         break;
                     }
 
@@ -176,7 +272,7 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
                     }
 
                     case R.id.programming_menu_loadProgram: {
-                        showLoadProgramDialog(mSpaceManager.loadUserProgramNames(), false);
+                        showProgramNames(mSpaceManager.loadUserProgramNames(), false);
                         break;
                     }
 
@@ -227,16 +323,29 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
         } else {
             // not supervisor
             // save this program as a new one
-            String programName = mSpaceManager.saveUserProgram();
-
-            new AlertDialogFragment.Builder(this)
-                        .setTitle(R.string.programming_saveProgram)
-                        .setMessage(getString(R.string.programming_savedAs, programName))
-                        .setPositiveButtonLabel(android.R.string.ok)
-                        .show();
+            mSpaceManager.saveUserProgram().subscribe(new SaveSubscriber<String>() {
+                @Override
+                public void onNext(String programName) {
+                    showSavedDialog(programName);
+                }
+            });
         }
     }
 
+    private void showProgramNames(Observable<List<String>> programNames, final boolean isSample) {
+        mSubscriptions.add(programNames.subscribe(new Action1<List<String>>() {
+            @Override
+            public void call(List<String> programs) {
+                showLoadProgramDialog(new ArrayList<>(programs), isSample);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Log.e("Failed to load program names", throwable);
+            }
+        }));
+    }
+
     private void showLoadProgramDialog(ArrayList<String> programs, boolean isSample) {
         Bundle args = new Bundle();
         args.putBoolean(KEY_IS_SAMPLE, isSample);
@@ -288,12 +397,11 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
                 ArrayList<String> programs = params.getStringArrayList(KEY_SAMPLE_PROGRAMS);
                 String programName = programs.get(which);
 
-                mSpaceManager.deleteAllBlocks(); // delete existing blocks
-
+                // NOTE: the existing blocks are replaced when the program has been loaded
                 if (isSample) {
-                    mSpaceManager.loadSampleProgram(programName);
+                    mSubscriptions.add(mSpaceManager.loadSampleProgram(programName));
                 } else {
-                    mSpaceManager.loadUserProgram(programName);
+                    mSubscriptions.add(mSpaceManager.loadUserProgram(programName));
                 }
 
                 break;
@@ -306,8 +414,19 @@ public class ProgrammingActivity extends AppCompatActivity implements AlertDialo
 
     }
 
-    private void saveSampleProgram(String programName) {
-        mSpaceManager.saveSampleProgram(programName);
+    private void saveSampleProgram(final String programName) {
+        mSpaceManager.saveSampleProgram(programName).subscribe(new SaveSubscriber<Void>() {
+            @Override
+            public void onCompleted() {
+                showSavedDialog(programName);
+            }
+        });
+    }
+
+    private void showSavedDialog(String programName) {
+        if (isFinishing()) {
+            return;
+        }
 
         new AlertDialogFragment.Builder(this)
                 .setTitle(R.string.programming_saveProgram)
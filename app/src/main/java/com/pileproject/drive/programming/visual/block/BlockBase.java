@@ -20,14 +20,14 @@ import android.support.annotation.LayoutRes;
 import android.view.LayoutInflater;
 import android.widget.RelativeLayout;
 
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.PositionHolder;
 
 /**
  * A base class of all blocks. This class is a custom view extended from {@link RelativeLayout}.
  *
  */
-public abstract class BlockBase extends RelativeLayout {
+public abstract class BlockBase extends RelativeLayout implements PositionHolder {
 
     public BlockBase(Context context, @LayoutRes int layoutRes) {
         super(context);
@@ -36,23 +36,19 @@ public abstract class BlockBase extends RelativeLayout {
     }
 
     /**
-     * Returns the kind of this block.
+     * Creates the model of this block, which has the semantics of this block for executions.
      *
-     * @return {@link BlockKind}
+     * @return a {@link BlockModel}
      */
-    public abstract BlockKind getKind();
+    protected abstract BlockModel createModel();
 
     /**
-     * Does an action that this block does while the execution of program and
-     * returns delay that occurs after this action in millisecond.
+     * Converts this view into a {@link BlockModel} with the current position of this view,
+     * so that the program can be executed without views.
      *
-     * @param controller Controller of Device
-     * @param condition  Condition of the executing program
-     * @return the delay after the action of this block in millisecond
+     * @return a {@link BlockModel}
      */
-    public abstract int action(MachineController controller, ExecutionCondition condition);
-
-    public enum BlockKind {
-        SEQUENCE, SELECTION_BEGIN, SELECTION_END, REPETITION_BEGIN, REPETITION_END, REPETITION_BREAK
+    public final BlockModel toModel() {
+        return createModel().setPosition(getLeft(), getTop(), getRight());
     }
 }
@@ -29,8 +29,8 @@ import static com.pileproject.drive.programming.visual.block.BlockCategory.SEQUE
  *     <li><code>SELECTION</code>: Selection block</li>
  * </ul>
  * <p>
- * Do not confuse with {@link BlockBase.BlockKind}: this annotation is for wider concept
- * than that of {@link BlockBase.BlockKind} represents.
+ * Do not confuse with {@link com.pileproject.drive.programming.model.BlockModel.BlockKind}: this annotation is for wider concept
+ * than that of {@link com.pileproject.drive.programming.model.BlockModel.BlockKind} represents.
  */
 @IntDef({SEQUENCE, REPETITION, SELECTION})
 public @interface BlockCategory {
@@ -50,7 +50,7 @@ public class NumberTextViewDelegate {
     }
 
     public int getActionValue() {
-        return getValue().movePointRight(precision).intValue();
+        return NumberUtil.toActionValue(getValue(), precision);
     }
 
     public BigDecimal getValue() {
@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.repetition;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.LoopModel;
 
 /**
  * A block that represents a forever loop operation. To be more precise, this block represents the beginning of a loop
@@ -32,8 +32,7 @@ public class LoopBlock extends RepetitionBlock {
     }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        condition.enterInfiniteLoop();
-        return 1;
+    protected BlockModel createModel() {
+        return new LoopModel();
     }
 }
@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.repetition;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.NTimesModel;
 import com.pileproject.drive.util.development.Unit;
 import com.pileproject.drive.util.math.Range;
 
@@ -41,11 +41,8 @@ public class NTimesBlock extends RepetitionBlockHasNumberText {
     }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        int n = getValue().intValue();
-        condition.enterNTimesLoop(n);
-
-        return 0;
+    protected BlockModel createModel() {
+        return new NTimesModel(getValue().intValue());
     }
 
     @Override
@@ -31,8 +31,4 @@ public abstract class RepetitionBlock extends BlockBase {
         super(context, layoutRes);
     }
 
-    @Override
-    public final BlockKind getKind() {
-        return BlockKind.REPETITION_BEGIN;
-    }
 }
\ No newline at end of file
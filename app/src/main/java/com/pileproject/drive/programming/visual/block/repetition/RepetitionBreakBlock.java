@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.repetition;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.RepetitionBreakModel;
 import com.pileproject.drive.programming.visual.block.BlockBase;
 
 /**
@@ -30,14 +30,9 @@ public class RepetitionBreakBlock extends BlockBase {
         super(context, R.layout.block_repetition_break);
     }
 
-    @Override
-    public final BlockKind getKind() {
-        return BlockKind.REPETITION_BREAK;
-    }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        condition.breakLoop();
-        return 0;
+    protected BlockModel createModel() {
+        return new RepetitionBreakModel();
     }
 }
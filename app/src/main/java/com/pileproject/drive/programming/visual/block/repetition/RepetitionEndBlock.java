@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.repetition;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.RepetitionEndModel;
 import com.pileproject.drive.programming.visual.block.BlockBase;
 
 /**
@@ -31,14 +31,9 @@ public class RepetitionEndBlock extends BlockBase {
         super(context, R.layout.block_repetition_end);
     }
 
-    @Override
-    public final BlockKind getKind() {
-        return BlockKind.REPETITION_END;
-    }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        condition.reachEndOfLoop();
-        return 0;
+    protected BlockModel createModel() {
+        return new RepetitionEndModel();
     }
 }
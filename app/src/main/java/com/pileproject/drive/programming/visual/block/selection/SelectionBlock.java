@@ -18,8 +18,6 @@ package com.pileproject.drive.programming.visual.block.selection;
 import android.content.Context;
 import android.support.annotation.LayoutRes;
 
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
 import com.pileproject.drive.programming.visual.block.BlockBase;
 
 /**
@@ -30,18 +28,4 @@ public abstract class SelectionBlock extends BlockBase {
     public SelectionBlock(Context context, @LayoutRes int layoutRes) {
         super(context, layoutRes);
     }
-
-    protected abstract boolean evaluateCondition(MachineController controller);
-
-    @Override
-    public final BlockKind getKind() {
-        return BlockKind.SELECTION_BEGIN;
-    }
-
-    @Override
-    public final int action(MachineController controller, ExecutionCondition condition) {
-        condition.pushSelectionResult(evaluateCondition(controller));
-        return 0;
-    }
-
 }
\ No newline at end of file
@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.selection;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.selection.SelectionEndModel;
 import com.pileproject.drive.programming.visual.block.BlockBase;
 
 /**
@@ -32,15 +32,9 @@ public class SelectionEndBlock extends BlockBase {
         super(context, R.layout.block_selection_end);
     }
 
-    @Override
-    public BlockKind getKind() {
-        return BlockKind.SELECTION_END;
-    }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        // just pop one
-        condition.popSelectionResult();
-        return 0;
+    protected BlockModel createModel() {
+        return new SelectionEndModel();
     }
 }
\ No newline at end of file
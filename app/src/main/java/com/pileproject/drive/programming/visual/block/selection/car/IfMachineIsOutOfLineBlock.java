@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.selection.car;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.machine.CarControllerBase;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.selection.car.IfMachineIsOutOfLineModel;
 import com.pileproject.drive.preferences.BlockPreferences;
 import com.pileproject.drive.programming.visual.block.selection.SelectionBlock;
 
@@ -38,7 +38,7 @@ public class IfMachineIsOutOfLineBlock extends SelectionBlock {
     }
 
     @Override
-    protected boolean evaluateCondition(MachineController controller) {
-        return ((CarControllerBase) controller).getLightSensorValue() > mThreshold;
+    protected BlockModel createModel() {
+        return new IfMachineIsOutOfLineModel(mThreshold);
     }
 }
@@ -28,9 +28,4 @@ public abstract class SequenceBlock extends BlockBase {
     public SequenceBlock(Context context, @LayoutRes int layoutRes) {
         super(context, layoutRes);
     }
-
-    @Override
-    public final BlockKind getKind() {
-        return BlockKind.SEQUENCE;
-    }
 }
\ No newline at end of file
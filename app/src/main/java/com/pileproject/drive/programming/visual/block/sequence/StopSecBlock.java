@@ -18,8 +18,8 @@ package com.pileproject.drive.programming.visual.block.sequence;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.sequence.StopSecModel;
 import com.pileproject.drive.util.development.Unit;
 import com.pileproject.drive.util.math.Range;
 
@@ -51,9 +51,8 @@ public class StopSecBlock extends SequenceBlockHasNumberText {
     }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        controller.halt();
-        return getActionValue();
+    protected BlockModel createModel() {
+        return new StopSecModel(getActionValue());
     }
 
     @Override
@@ -18,17 +18,14 @@ package com.pileproject.drive.programming.visual.block.sequence.car;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.machine.CarControllerBase;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.sequence.car.SetRightMotorSpeedModel;
 import com.pileproject.drive.programming.visual.block.sequence.SequenceBlockHasNumberText;
 import com.pileproject.drive.util.development.Unit;
 import com.pileproject.drive.util.math.Range;
 
 import java.math.BigDecimal;
 
-import static com.pileproject.drive.machine.CarControllerBase.MotorKind.RightMotor;
-
 /**
  * A block that will be used to set the power of right motor.
  */
@@ -55,9 +52,8 @@ public class SetRightMotorSpeedBlock extends SequenceBlockHasNumberText {
     }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        ((CarControllerBase) controller).setMotorPower(RightMotor, getValue().intValue());
-        return 0;
+    protected BlockModel createModel() {
+        return new SetRightMotorSpeedModel(getValue().intValue());
     }
 
     @Override
@@ -18,9 +18,8 @@ package com.pileproject.drive.programming.visual.block.sequence.car;
 import android.content.Context;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.machine.CarControllerBase;
-import com.pileproject.drive.execution.ExecutionCondition;
-import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.sequence.car.TurnLeftSecModel;
 import com.pileproject.drive.programming.visual.block.sequence.SequenceBlockHasNumberText;
 import com.pileproject.drive.util.development.Unit;
 import com.pileproject.drive.util.math.Range;
@@ -53,9 +52,8 @@ public class TurnLeftSecBlock extends SequenceBlockHasNumberText {
     }
 
     @Override
-    public int action(MachineController controller, ExecutionCondition condition) {
-        ((CarControllerBase) controller).turnLeft();
-        return getActionValue();
+    protected BlockModel createModel() {
+        return new TurnLeftSecModel(getActionValue());
     }
 
     @Override
@@ -17,13 +17,22 @@ package com.pileproject.drive.programming.visual.layout;
 
 import android.content.Context;
 import android.view.View;
+import android.widget.Toast;
 
-import com.pileproject.drive.database.ProgramDataManager;
+import com.pileproject.drive.R;
+import com.pileproject.drive.database.ProgramSnapshot;
+import com.pileproject.drive.database.RxProgramDataManager;
 import com.pileproject.drive.programming.visual.block.BlockBase;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import rx.Completable;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action1;
+import trikita.log.Log;
+
 /**
  * A base manager class of {@link BlockSpaceLayout}. This class is responsible for some features of the layout such
  * as program loading.
@@ -31,100 +40,102 @@ import java.util.List;
 public abstract class BlockSpaceManagerBase {
     protected BlockSpaceLayout mLayout;
     protected Context mContext;
-    private ProgramDataManager mManager;
-    private static final String USER_PROGRAM_NAME_FORMAT = "%d";
+    // the execution program as stored last time, to save only the changes of the layout
+    private final ProgramSnapshot mExecutionProgram = new ProgramSnapshot();
 
     public BlockSpaceManagerBase(Context context, BlockSpaceLayout layout) {
         mContext = context;
         mLayout = layout;
-        mManager = ProgramDataManager.getInstance();
     }
 
     /**
-     * Saves the current program for execution.
+     * Saves the current program for execution in background.
+     * Only the blocks which have been added, moved, removed or changed since the last save are written.
+     *
+     * @return a {@link Completable} which completes (in the UI thread) when the program has been saved
      */
-    public void saveExecutionProgram() {
-        mManager.saveExecutionProgram(mLayout);
+    public Completable saveExecutionProgram() {
+        return RxProgramDataManager.saveExecutionProgram(mLayout, mExecutionProgram);
     }
 
     /**
-     * Saves the current program as a sample program.
+     * Saves the current program as a sample program in background.
      * NOTE: if a name which is already saved is selected, it will be overwritten.
      *
      * @param programName a name of a sample program
+     * @return a {@link Completable} which completes (in the UI thread) when the program has been saved
      */
-    public void saveSampleProgram(String programName) {
-        mManager.saveSampleProgram(programName, mLayout);
+    public Completable saveSampleProgram(String programName) {
+        return RxProgramDataManager.saveSampleProgram(programName, mLayout);
     }
 
     /**
-     * Saves the current program as a user program.
+     * Saves the current program as a user program in background.
      * NOTE: the name of new program will be automatically generated.
      *
-     * @return a name of a user program
+     * @return an {@link Observable} which emits (in the UI thread) the name of the saved program
      */
-    public String saveUserProgram() {
-        String newProgramName;
-
-        // load user program names
-        ArrayList<String> programs = mManager.loadUserProgramNames();
-        if (programs.isEmpty()) {
-            newProgramName = String.format(USER_PROGRAM_NAME_FORMAT, 1); // this is the first data
-        }
-        else {
-            // generate a new program name
-            // NOTE: this assumes the last program should have the largest number
-            String lastName = programs.get(programs.size() - 1);
-            int programNumber = Integer.parseInt(lastName); // e.g. 2
-            newProgramName = String.format(USER_PROGRAM_NAME_FORMAT, programNumber + 1);
-        }
+    public Observable<String> saveUserProgram() {
+        return RxProgramDataManager.saveUserProgram(mLayout);
+    }
 
-        // save a new program with the name
-        mManager.saveUserProgram(newProgramName, mLayout);
-        return newProgramName;
+    /**
+     * Loads a program for execution in background. The blocks are placed when they have been loaded.
+     *
+     * @return the {@link Subscription} of the loading
+     */
+    public Subscription loadExecutionProgram() {
+        return placeBlocks(RxProgramDataManager.loadExecutionProgram(mExecutionProgram));
     }
 
     /**
-     * Loads a program for execution.
+     * Loads a program for execution in background. The blocks are placed when they have been loaded,
+     * and then emitted to the subscriber (e.g., to be executed).
+     *
+     * @return an {@link Observable} which emits (in the UI thread) the placed blocks
      */
-    public void loadExecutionProgram() {
-        placeBlocks(mManager.loadExecutionProgram());
+    public Observable<List<BlockBase>> loadAndPlaceExecutionProgram() {
+        return RxProgramDataManager.loadExecutionProgram(mExecutionProgram).doOnNext(mBlockPlacer);
     }
 
     /**
-     * Loads a sample program.
+     * Loads a sample program in background. The existing blocks are replaced with the loaded blocks
+     * when they have been loaded, and are kept if the program cannot be loaded.
      *
      * @param programName the name of the sample program to be loaded
+     * @return the {@link Subscription} of the loading
      */
-    public void loadSampleProgram(String programName) {
-        placeBlocks(mManager.loadSampleProgram(programName));
+    public Subscription loadSampleProgram(String programName) {
+        return replaceBlocks(RxProgramDataManager.loadSampleProgram(programName));
     }
 
     /**
-     * Loads a user program.
+     * Loads a user program in background. The existing blocks are replaced with the loaded blocks
+     * when they have been loaded, and are kept if the program cannot be loaded.
      *
      * @param programName the name of the user program to be loaded
+     * @return the {@link Subscription} of the loading
      */
-    public void loadUserProgram(String programName) {
-        placeBlocks(mManager.loadUserProgram(programName));
+    public Subscription loadUserProgram(String programName) {
+        return replaceBlocks(RxProgramDataManager.loadUserProgram(programName));
     }
 
     /**
-     * Loads names of sample programs.
+     * Loads names of sample programs in background.
      *
-     * @return a list of names
+     * @return an {@link Observable} which emits (in the UI thread) a list of names
      */
-    public ArrayList<String> loadSampleProgramNames() {
-        return mManager.loadSampleProgramNames();
+    public Observable<List<String>> loadSampleProgramNames() {
+        return RxProgramDataManager.loadSampleProgramNames();
     }
 
     /**
-     * Load names of user programs.
+     * Load names of user programs in background.
      *
-     * @return a list of names
+     * @return an {@link Observable} which emits (in the UI thread) a list of names
      */
-    public ArrayList<String> loadUserProgramNames() {
-        return mManager.loadUserProgramNames();
+    public Observable<List<String>> loadUserProgramNames() {
+        return RxProgramDataManager.loadUserProgramNames();
     }
 
     /**
@@ -135,6 +146,32 @@ public abstract class BlockSpaceManagerBase {
      */
     public abstract void addBlocks(List<BlockBase> blocks);
 
+    private final Action1<List<BlockBase>> mBlockPlacer = new Action1<List<BlockBase>>() {
+        @Override
+        public void call(List<BlockBase> data) {
+            placeBlocks(data);
+        }
+    };
+
+    private Subscription replaceBlocks(Observable<List<BlockBase>> blocks) {
+        return placeBlocks(blocks.doOnNext(new Action1<List<BlockBase>>() {
+            @Override
+            public void call(List<BlockBase> data) {
+                deleteAllBlocks();
+            }
+        }));
+    }
+
+    private Subscription placeBlocks(Observable<List<BlockBase>> blocks) {
+        return blocks.subscribe(mBlockPlacer, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                Log.e("Failed to load a program", throwable);
+                Toast.makeText(mContext, R.string.programming_failedToLoad, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
     private void placeBlocks(List<BlockBase> data) {
         if (data.isEmpty()) {
             return;
@@ -159,7 +196,20 @@ public abstract class BlockSpaceManagerBase {
     public void deleteAllBlocks() {
         mLayout.removeAllViews();
 
-        // remove the saved execution program
-        mManager.deleteExecutionProgram();
+        // remove the saved execution program in background
+        RxProgramDataManager.deleteExecutionProgram(mExecutionProgram).subscribe(new Subscriber<Void>() {
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                Log.e("Failed to delete the execution program", e);
+            }
+
+            @Override
+            public void onNext(Void v) {
+            }
+        });
     }
 }
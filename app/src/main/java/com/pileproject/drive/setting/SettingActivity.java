@@ -21,6 +21,7 @@ import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.CheckBoxPreference;
 import android.support.v7.preference.DialogPreference;
+import android.support.v7.preference.EditTextPreference;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.widget.Toolbar;
@@ -28,9 +29,12 @@ import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import com.pileproject.drive.R;
+import com.pileproject.drive.comm.WifiCommunicatorProvider;
 import com.pileproject.drive.preferences.CommonPreferences;
+import com.pileproject.drive.preferences.MachinePreferences;
 
 /**
  * An activity for settings. This activity contains some fragments for preferences.
@@ -79,6 +83,8 @@ public class SettingActivity extends AppCompatActivity {
     public static class SettingFragment extends PreferenceFragmentCompat {
 
         private CheckBoxPreference mSupervisorPreference;
+        private CheckBoxPreference mSessionRecordingPreference;
+        private EditTextPreference mWifiAddressPreference;
 
         @Override
         public void onCreatePreferences(Bundle bundle, String s) {
@@ -109,6 +115,45 @@ public class SettingActivity extends AppCompatActivity {
                 }
             });
 
+            mSessionRecordingPreference =
+                    (CheckBoxPreference) getPreferenceManager().findPreference("session_recording_preference");
+            mSessionRecordingPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+
+                @Override
+                public boolean onPreferenceChange(Preference preference, Object newValue) {
+                    // takes effect at the next connection
+                    CommonPreferences.get(getActivity()).setSessionRecording((boolean) newValue);
+                    return true;
+                }
+            });
+
+            mWifiAddressPreference =
+                    (EditTextPreference) getPreferenceManager().findPreference("wifi_address_preference");
+            mWifiAddressPreference.setText(MachinePreferences.get(getActivity()).getWifiAddress());
+            mWifiAddressPreference.setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+
+                @Override
+                public boolean onPreferenceChange(Preference preference, Object newValue) {
+                    String address = ((String) newValue).trim();
+
+                    // an empty address means that machines are connected via Bluetooth
+                    if (address.isEmpty()) {
+                        MachinePreferences.get(getActivity()).removeWifiAddress();
+                        return true;
+                    }
+
+                    if (!WifiCommunicatorProvider.isValidAddress(address)) {
+                        Toast.makeText(getActivity(), getString(R.string.setting_wifiAddress_invalid, address),
+                                       Toast.LENGTH_LONG).show();
+                        return false;
+                    }
+
+                    // takes effect at the next connection
+                    MachinePreferences.get(getActivity()).setWifiAddress(address);
+                    return true;
+                }
+            });
+
             return super.onCreateView(inflater, container, savedInstanceState);
         }
     }
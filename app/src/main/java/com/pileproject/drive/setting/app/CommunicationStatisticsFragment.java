@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.setting.app;
+
+import android.app.Dialog;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.util.DisplayMetrics;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.pileproject.drive.R;
+import com.pileproject.drive.app.DriveApplication;
+import com.pileproject.drive.comm.CommunicationStatistics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.inject.Inject;
+
+import trikita.log.Log;
+
+/**
+ * A fragment for showing the statistics of communications (e.g., latencies of commands) for debugging.
+ * The statistics can be saved to a file so that they can be compared between devices and machines.
+ * This fragment will be used by {@link CommunicationStatisticsPreference}.
+ */
+public class CommunicationStatisticsFragment extends DialogFragment {
+
+    private TextView mTableView;
+
+    @Inject
+    public CommunicationStatistics mStatistics;
+
+    @Override
+    @NonNull
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        Dialog dialog = new Dialog(getActivity());
+        dialog.setTitle(R.string.setting_communicationStatistics);
+        return dialog;
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        super.onCreateView(inflater, container, savedInstanceState);
+
+        ((DriveApplication) getActivity().getApplication()).getAppComponent().inject(this);
+
+        View v = inflater.inflate(R.layout.fragment_communication_statistics, container, false);
+        mTableView = (TextView) v.findViewById(R.id.communicationStatistics_table);
+
+        v.findViewById(R.id.communicationStatistics_dumpButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                dumpToFile();
+            }
+        });
+
+        v.findViewById(R.id.communicationStatistics_resetButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                mStatistics.reset();
+                showTable();
+            }
+        });
+
+        showTable();
+
+        return v;
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        resizeDialog();
+    }
+
+    private void showTable() {
+        StringWriter writer = new StringWriter();
+        try {
+            mStatistics.dump(writer);
+        } catch (IOException e) {
+            // StringWriter never throws
+            throw new AssertionError(e);
+        }
+
+        mTableView.setText(writer.toString());
+    }
+
+    private void dumpToFile() {
+        // users can pick up files in the external storage (e.g., via USB) without any tools
+        File directory = getActivity().getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(getActivity(), R.string.setting_communicationStatistics_toast_cannotDump,
+                           Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "communication_statistics_" + timestamp + ".txt");
+
+        Writer writer = null;
+        try {
+            writer = new FileWriter(file);
+            mStatistics.dump(writer);
+
+            Toast.makeText(getActivity(),
+                           getString(R.string.setting_communicationStatistics_toast_dumped, file.getAbsolutePath()),
+                           Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e("Failed to dump the statistics", e);
+            Toast.makeText(getActivity(), R.string.setting_communicationStatistics_toast_cannotDump,
+                           Toast.LENGTH_SHORT).show();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e("Failed to close the file", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * This function should be called in {@link DialogFragment#onActivityCreated(Bundle)}.
+     * Otherwise, the dialog size will never be changed.
+     */
+    private void resizeDialog() {
+        Dialog dialog = getDialog();
+
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+
+        // resize window large enough to display the table
+        int dialogWidth = (int) (metrics.widthPixels * 0.9);
+        int dialogHeight = (int) (metrics.heightPixels * 0.9);
+
+        WindowManager.LayoutParams lp = dialog.getWindow().getAttributes();
+        lp.width = dialogWidth;
+        lp.height = dialogHeight;
+        dialog.getWindow().setAttributes(lp);
+    }
+}
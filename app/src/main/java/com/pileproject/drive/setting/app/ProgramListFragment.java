@@ -33,19 +33,26 @@ import android.widget.CheckBox;
 import android.widget.ListView;
 
 import com.pileproject.drive.R;
-import com.pileproject.drive.database.ProgramDataManager;
+import com.pileproject.drive.database.RxProgramDataManager;
 import com.pileproject.drive.util.fragment.AlertDialogFragment;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import rx.Completable;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action1;
+import rx.subscriptions.CompositeSubscription;
+import trikita.log.Log;
+
 /**
  * A fragment for showing the list of programs. This fragment will be used by {@link ProgramListPreference}.
  */
 public class ProgramListFragment extends DialogFragment implements AlertDialogFragment.EventListener {
-    private ProgramDataManager mManager;
     private Button mDeleteButton;
 
     // 0 : sample programs, 1 : user programs
@@ -58,6 +65,9 @@ public class ProgramListFragment extends DialogFragment implements AlertDialogFr
     private ProgramDataAdapter[] mProgramDataAdapter = new ProgramDataAdapter[2];
     private ArrayList<Map<String, Boolean>> mCheckedPrograms = new ArrayList<>();
 
+    // the loadings of program names
+    private CompositeSubscription mSubscriptions = new CompositeSubscription();
+
     public ProgramListFragment() {
         // required empty constructor
     }
@@ -76,14 +86,13 @@ public class ProgramListFragment extends DialogFragment implements AlertDialogFr
         super.onCreateView(inflater, container, savedInstanceState);
         View v = inflater.inflate(R.layout.fragment_program_list, container, false);
 
-        // create ProgramDataManager to list programs
-        mManager = ProgramDataManager.getInstance();
-
         mCheckedPrograms.add(new LinkedHashMap<String, Boolean>());
         mCheckedPrograms.add(new LinkedHashMap<String, Boolean>());
 
-        // prepare data for Data adapter
-        initializeProgramDataAdapter();
+        // prepare empty adapters until the programs are loaded
+        for (int dataId = 0; dataId < NUM_PROGRAM_KINDS; dataId++) {
+            initializeProgramDataAdapter(dataId, Collections.<String>emptyList());
+        }
 
         // create ListView to show all programs
         // an item in ListView consists of (checkbox, program name) [CustomView]
@@ -141,6 +150,15 @@ public class ProgramListFragment extends DialogFragment implements AlertDialogFr
                 }
             });
         }
+
+        loadPrograms();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        mSubscriptions.unsubscribe();
     }
 
     /**
@@ -162,28 +180,47 @@ public class ProgramListFragment extends DialogFragment implements AlertDialogFr
         dialog.getWindow().setAttributes(lp);
     }
 
-    private void initializeProgramDataAdapter() {
+    private void loadPrograms() {
         for (int dataId = 0; dataId < NUM_PROGRAM_KINDS; dataId++) {
-            mCheckedPrograms.get(dataId).clear();
+            final int kind = dataId;
 
             // items are categorized into 2 parts; samples and user programs.
-            ArrayList<String> programNames =
-                    (dataId == SAMPLE_PROGRAM) ? mManager.loadSampleProgramNames() : mManager.loadUserProgramNames();
-            // create an adapter for ListView
-            List<ProgramData> data = new ArrayList<>();
-            for (String programName : programNames) {
-                ProgramData one = new ProgramData();
-                one.setProgramName(programName);
-                data.add(one);
-
-                // initialize checked program list
-                // put (program name, false)
-                mCheckedPrograms.get(dataId).put(programName, false);
-            }
-            mProgramDataAdapter[dataId] = new ProgramDataAdapter(getActivity(), 0, data);
+            Observable<List<String>> programNames = (dataId == SAMPLE_PROGRAM)
+                    ? RxProgramDataManager.loadSampleProgramNames() : RxProgramDataManager.loadUserProgramNames();
+
+            mSubscriptions.add(programNames.subscribe(new Action1<List<String>>() {
+                @Override
+                public void call(List<String> names) {
+                    initializeProgramDataAdapter(kind, names);
+                    mProgramListView[kind].setAdapter(mProgramDataAdapter[kind]);
+                    mProgramDataAdapter[kind].notifyDataSetChanged();
+                }
+            }, new Action1<Throwable>() {
+                @Override
+                public void call(Throwable throwable) {
+                    Log.e("Failed to load program names", throwable);
+                }
+            }));
         }
     }
 
+    private void initializeProgramDataAdapter(int dataId, List<String> programNames) {
+        mCheckedPrograms.get(dataId).clear();
+
+        // create an adapter for ListView
+        List<ProgramData> data = new ArrayList<>();
+        for (String programName : programNames) {
+            ProgramData one = new ProgramData();
+            one.setProgramName(programName);
+            data.add(one);
+
+            // initialize checked program list
+            // put (program name, false)
+            mCheckedPrograms.get(dataId).put(programName, false);
+        }
+        mProgramDataAdapter[dataId] = new ProgramDataAdapter(getActivity(), 0, data);
+    }
+
     private void checkAllItems(int dataId) {
         ListView lv = mProgramListView[dataId];
         Map<String, Boolean> m = mCheckedPrograms.get(dataId);
@@ -219,24 +256,45 @@ public class ProgramListFragment extends DialogFragment implements AlertDialogFr
     }
 
     private void deletePrograms() {
+        List<Completable> deletions = new ArrayList<>();
         for (int dataId = 0; dataId < NUM_PROGRAM_KINDS; ++dataId) {
             for (Map.Entry<String, Boolean> e : mCheckedPrograms.get(dataId).entrySet()) {
                 if (e.getValue()) {
                     if (dataId == SAMPLE_PROGRAM) { // sample programs
-                        mManager.deleteSampleProgram(e.getKey());
+                        deletions.add(RxProgramDataManager.deleteSampleProgram(e.getKey()));
                     }
                     else /* if (dataId == USER_PROGRAM) */ { // user programs
-                        mManager.deleteUserProgram(e.getKey());
+                        deletions.add(RxProgramDataManager.deleteUserProgram(e.getKey()));
                     }
                 }
             }
         }
 
-        initializeProgramDataAdapter(); // reinitialize data
-        for (int dataId = 0; dataId < NUM_PROGRAM_KINDS; dataId++) {
-            mProgramListView[dataId].setAdapter(mProgramDataAdapter[dataId]);
-            mProgramDataAdapter[dataId].notifyDataSetChanged();
+        // NOTE: the deletions are not cancelled even if this fragment is closed
+        Completable.concat(deletions).subscribe(new Subscriber<Void>() {
+            @Override
+            public void onCompleted() {
+                reloadPrograms();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                Log.e("Failed to delete programs", e);
+                reloadPrograms();
+            }
+
+            @Override
+            public void onNext(Void v) {
+            }
+        });
+    }
+
+    private void reloadPrograms() {
+        if (!isAdded()) {
+            return;
         }
+
+        loadPrograms(); // reinitialize data
     }
 
     @Override
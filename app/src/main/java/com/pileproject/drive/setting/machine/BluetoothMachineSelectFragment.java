@@ -36,6 +36,8 @@ import android.widget.ListView;
 import android.widget.Toast;
 
 import com.pileproject.drive.R;
+import com.pileproject.drive.app.DriveApplication;
+import com.pileproject.drive.machine.MachineSession;
 import com.pileproject.drive.preferences.MachinePreferences;
 import com.pileproject.drive.util.bluetooth.BluetoothUtil;
 import com.pileproject.drive.util.bluetooth.RxBluetoothConnector;
@@ -45,6 +47,8 @@ import com.pileproject.drive.util.fragment.ProgressDialogFragment;
 
 import java.util.LinkedList;
 
+import javax.inject.Inject;
+
 import rx.Observer;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
@@ -70,6 +74,9 @@ public class BluetoothMachineSelectFragment extends DialogFragment implements Al
     // a field for a bonded device list
     private ListView mPairedDevicesListView;
 
+    @Inject
+    public MachineSession mMachineSession;
+
     @Override
     @NonNull
     public Dialog onCreateDialog(Bundle savedInstanceState) {
@@ -81,6 +88,8 @@ public class BluetoothMachineSelectFragment extends DialogFragment implements Al
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        ((DriveApplication) getActivity().getApplication()).getAppComponent().inject(this);
+
         View v = inflater.inflate(R.layout.fragment_bluetooth_machine_select, container, false);
 
         mPairedDevicesListView = (ListView) v.findViewById(R.id.machineSelect_listPaired);
@@ -109,6 +118,8 @@ public class BluetoothMachineSelectFragment extends DialogFragment implements Al
                 BluetoothDevice bluetoothDevice = (BluetoothDevice) listView.getItemAtPosition(position);
 
                 MachinePreferences.get(getActivity()).setMacAddress(bluetoothDevice.getAddress());
+                // the kept connection is for the previous machine
+                mMachineSession.close();
 
                 Toast.makeText(getActivity(),
                                getString(R.string.setting_bluetoothMachineSelect_toast_setDefault) + "\n"
@@ -165,6 +176,8 @@ public class BluetoothMachineSelectFragment extends DialogFragment implements Al
                                     @Override
                                     public void onNext(BluetoothDevice bluetoothDevice) {
                                         MachinePreferences.get(getActivity()).setMacAddress(bluetoothDevice.getAddress());
+                                        // the kept connection is for the previous machine
+                                        mMachineSession.close();
 
                                         Toast.makeText(getActivity(),
                                                 getString(R.string.setting_bluetoothMachineSelect_toast_setDefault,
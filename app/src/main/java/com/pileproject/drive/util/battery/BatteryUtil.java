@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.util.battery;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+
+/**
+ * A utility class that handles the battery of the device.
+ */
+public class BatteryUtil {
+
+    // the level in percent under which the battery is regarded as low
+    private static final int LOW_LEVEL_PERCENT = 20;
+
+    private BatteryUtil() {
+        throw new AssertionError("This class cannot be instantiated");
+    }
+
+    /**
+     * Checks if the battery is low and not charging, that is, work which is not necessary should be avoided.
+     *
+     * @param context a context
+     * @return the battery is low (<code>true</code>) or not (<code>false</code>)
+     */
+    public static boolean isBatteryLow(Context context) {
+        // the status of the battery is a sticky broadcast, thus it can be read without a receiver
+        Intent status = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+        if (status == null) {
+            return false;
+        }
+
+        if (status.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return false;
+        }
+
+        int level = status.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = status.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+
+        if (level < 0 || scale <= 0) {
+            return false;
+        }
+
+        return level * 100 / scale < LOW_LEVEL_PERCENT;
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.util.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import com.pileproject.drive.app.DriveApplication;
+import com.pileproject.drive.comm.RacingConnector;
+import com.pileproject.drive.preferences.ConnectStrategyPreferences;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+import trikita.log.Log;
+
+/**
+ * A class which opens RFCOMM sockets to Bluetooth devices.
+ * <p>
+ * There are two ways to open a socket: the orthodox <code>createRfcommSocketToServiceRecord</code> and
+ * the reflective <code>createRfcommSocket(1)</code>. It depends on the device which works, and a failure of
+ * the orthodox one takes the whole SDP timeout. Thus the way which succeeded last is remembered per
+ * MAC address and tried first, and the other one starts in parallel if the first does not finish soon.
+ */
+public class BluetoothSocketConnector {
+
+    private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    private static final long TIMEOUT_MILLIS = 10 * 1000;
+
+    // most successful connections finish within this time
+    private static final long RACE_DELAY_MILLIS = 3 * 1000;
+
+    private BluetoothSocketConnector() {
+        throw new AssertionError("This class cannot be instantiated");
+    }
+
+    /**
+     * Opens an RFCOMM socket to a device. This method blocks until connected, thus do not call it in
+     * the main thread.
+     *
+     * @param device the device to be connected
+     * @return the connected socket
+     * @throws IOException if no ways can connect to the device
+     */
+    public static BluetoothSocket connect(BluetoothDevice device) throws IOException {
+        RacingConnector<BluetoothSocket> connector = new RacingConnector.Builder<BluetoothSocket>()
+                .addStrategy(new ServiceRecordStrategy(device))
+                .addStrategy(new ReflectiveStrategy(device))
+                .setMemory(new ConnectStrategyPreferences(DriveApplication.getContext()))
+                .setTimeoutMillis(TIMEOUT_MILLIS)
+                .setRaceDelayMillis(RACE_DELAY_MILLIS)
+                .build();
+
+        return connector.connect(device.getAddress());
+    }
+
+    private static class ServiceRecordStrategy implements RacingConnector.Strategy<BluetoothSocket> {
+        private final BluetoothDevice mDevice;
+
+        ServiceRecordStrategy(BluetoothDevice device) {
+            mDevice = device;
+        }
+
+        @Override
+        public String getName() {
+            return "service_record";
+        }
+
+        @Override
+        public RacingConnector.Attempt<BluetoothSocket> newAttempt() {
+            return new SocketAttempt() {
+                @Override
+                protected BluetoothSocket createSocket() throws IOException {
+                    return mDevice.createRfcommSocketToServiceRecord(SPP_UUID);
+                }
+            };
+        }
+    }
+
+    private static class ReflectiveStrategy implements RacingConnector.Strategy<BluetoothSocket> {
+        private final BluetoothDevice mDevice;
+
+        ReflectiveStrategy(BluetoothDevice device) {
+            mDevice = device;
+        }
+
+        @Override
+        public String getName() {
+            return "rfcomm_channel_1";
+        }
+
+        @Override
+        public RacingConnector.Attempt<BluetoothSocket> newAttempt() {
+            return new SocketAttempt() {
+                @Override
+                protected BluetoothSocket createSocket() throws IOException {
+                    try {
+                        Method method = BluetoothDevice.class.getMethod("createRfcommSocket", int.class);
+                        return (BluetoothSocket) method.invoke(mDevice, 1);
+
+                    } catch (NoSuchMethodException e) {
+                        // because Android API 15 does not support collapsed catch clauses for these 3 exceptions,
+                        // this redundant code is needed (it's since API level 19).
+                        throw new IOException("Unable to invoke BluetoothDevice#createRfcommSocket", e);
+                    } catch (IllegalAccessException e) {
+                        throw new IOException("Unable to invoke BluetoothDevice#createRfcommSocket", e);
+                    } catch (InvocationTargetException e) {
+                        throw new IOException("Unable to invoke BluetoothDevice#createRfcommSocket", e);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * An attempt which connects a socket. Cancelling closes the socket, which also aborts a blocking connect.
+     */
+    private abstract static class SocketAttempt implements RacingConnector.Attempt<BluetoothSocket> {
+        private BluetoothSocket mSocket;
+        private boolean mIsCancelled;
+
+        protected abstract BluetoothSocket createSocket() throws IOException;
+
+        @Override
+        public BluetoothSocket connect() throws IOException {
+            BluetoothSocket socket = createSocket();
+
+            synchronized (this) {
+                if (mIsCancelled) {
+                    throw new IOException("The attempt was cancelled");
+                }
+                mSocket = socket;
+            }
+
+            socket.connect();
+            return socket;
+        }
+
+        @Override
+        public void cancel() {
+            BluetoothSocket socket;
+
+            synchronized (this) {
+                mIsCancelled = true;
+                socket = mSocket;
+            }
+
+            if (socket == null) return;
+
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.d("Failed to close a cancelled socket", e);
+            }
+        }
+    }
+}
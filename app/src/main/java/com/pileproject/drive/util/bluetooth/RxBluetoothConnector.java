@@ -19,8 +19,6 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.UUID;
 
 import rx.Observable;
@@ -79,56 +77,14 @@ public class RxBluetoothConnector {
             @Override
             public void call(Subscriber<? super BluetoothSocket> subscriber) {
                 try {
-                    BluetoothSocket socket = bluetoothDevice.createRfcommSocketToServiceRecord(SPP_UUID);
-                    socket.connect();
+                    BluetoothSocket socket = BluetoothSocketConnector.connect(bluetoothDevice);
 
                     subscriber.onNext(socket);
                     subscriber.onCompleted();
-                } catch (IOException firstCause) {
-
-                    try {
-                        BluetoothSocket socket = connectByRfcommSocket(bluetoothDevice);
-                        subscriber.onNext(socket);
-                        subscriber.onCompleted();
-                    } catch (RfcommSocketInvocationException e) {
-                        Throwable throwable = new IOException("Failed to connect by \"createRfcommSocketToServiceRecord\" " +
-                                "and invoke \"createRfcommSocket\" method", firstCause);
-
-                        subscriber.onError(throwable);
-                    } catch (IOException e) {
-                        Throwable throwable = new IOException("Failed to connect by \"createRfcommSocket\"", e);
-
-                        subscriber.onError(throwable);
-                    }
+                } catch (IOException e) {
+                    subscriber.onError(e);
                 }
             }
         }).subscribeOn(Schedulers.newThread());
     }
-
-    private static BluetoothSocket connectByRfcommSocket(BluetoothDevice bluetoothDevice) throws IOException {
-
-        try {
-            Method method = BluetoothDevice.class.getMethod("createRfcommSocket", int.class);
-            BluetoothSocket socket = (BluetoothSocket) method.invoke(bluetoothDevice, 1);
-
-            socket.connect();
-
-            return socket;
-
-        } catch (NoSuchMethodException e) {
-            // because Android API 15 does not support collapsed catch clauses for these 3 exceptions,
-            // this redundant code is needed (it's since API level 19).
-            throw new RfcommSocketInvocationException("Unable to invoke BluetoothSocket#RfcommSocket:", e);
-        } catch (IllegalAccessException e) {
-            throw new RfcommSocketInvocationException("Unable to invoke BluetoothSocket#RfcommSocket:", e);
-        } catch (InvocationTargetException e) {
-            throw new RfcommSocketInvocationException("Unable to invoke BluetoothSocket#RfcommSocket:", e);
-        }
-    }
-
-    private static class RfcommSocketInvocationException extends RuntimeException {
-        RfcommSocketInvocationException(String message, Throwable e) {
-            super(message, e);
-        }
-    }
 }
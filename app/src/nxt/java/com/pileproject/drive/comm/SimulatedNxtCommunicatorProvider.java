@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+/**
+ * An implementation of {@link CommunicatorProvider} that provides {@link SimulatedNxtCommunicator}s,
+ * which talk to simulated NXTs instead of real machines (e.g., on emulators which have no Bluetooth).
+ */
+public class SimulatedNxtCommunicatorProvider implements CommunicatorProvider {
+
+    @Override
+    public ICommunicator getCommunicator() {
+        return new SimulatedNxtCommunicator.Builder().build();
+    }
+}
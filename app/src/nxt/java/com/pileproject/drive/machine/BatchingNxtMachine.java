@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.comm.BatchingCommunicator;
+import com.pileproject.drivecommand.model.nxt.NxtMachine;
+
+/**
+ * A {@link NxtMachine} which talks through a {@link BatchingCommunicator},
+ * so that its controller can gather the commands of a move into one transmission.
+ */
+class BatchingNxtMachine extends NxtMachine {
+
+    private final BatchingCommunicator mCommunicator;
+
+    BatchingNxtMachine(BatchingCommunicator communicator) {
+        super(communicator);
+        mCommunicator = communicator;
+    }
+
+    BatchingCommunicator getBatchingCommunicator() {
+        return mCommunicator;
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.pileproject.drive.machine;
 
+import com.pileproject.drive.comm.BatchingCommunicator;
+import com.pileproject.drive.execution.SystemExecutionClock;
 import com.pileproject.drivecommand.machine.MachineBase;
 import com.pileproject.drivecommand.model.com.ICommunicator;
 import com.pileproject.drivecommand.model.nxt.NxtMachine;
@@ -24,15 +26,29 @@ import com.pileproject.drivecommand.model.nxt.NxtMachine;
  */
 public class NxtMachineProvider implements MachineProvider {
 
+    // the sensors which are being read are sampled in background so that selection blocks
+    // do not wait for round trips (a sensor is sampled at most once in the period)
+    private static final long SENSOR_SAMPLING_PERIOD_MILLIS = 50;
+    private static final long MAX_SENSOR_STALENESS_MILLIS = 100;
+
     @Override
     public MachineBase getMachine(ICommunicator communicator) {
-        return new NxtMachine(communicator);
+        return new BatchingNxtMachine(new BatchingCommunicator(communicator));
     }
 
     @Override
     public MachineController getMachineController(MachineBase machineBase) {
         if (machineBase instanceof NxtMachine) {
-            return new NxtCarController((NxtMachine) machineBase);
+            NxtCarController controller = new NxtCarController((NxtMachine) machineBase);
+
+            if (machineBase instanceof BatchingNxtMachine) {
+                controller.setBatchingCommunicator(((BatchingNxtMachine) machineBase).getBatchingCommunicator());
+            }
+
+            return new SampledCarController(controller,
+                                            new SystemExecutionClock(),
+                                            SENSOR_SAMPLING_PERIOD_MILLIS,
+                                            MAX_SENSOR_STALENESS_MILLIS);
         }
 
         throw new IllegalArgumentException("Given MachineBase is not an instance of NxtMachine: that was " +
@@ -15,10 +15,19 @@
  */
 package com.pileproject.drive.module;
 
+import com.pileproject.drive.comm.CommunicationStatistics;
+import com.pileproject.drive.comm.CommunicatorProvider;
+import com.pileproject.drive.comm.ConfiguredCommunicatorProvider;
+import com.pileproject.drive.comm.InstrumentedCommunicatorProvider;
+import com.pileproject.drive.comm.RecordingCommunicatorProvider;
+import com.pileproject.drive.comm.SimulatedNxtCommunicatorProvider;
 import com.pileproject.drive.machine.MachineProvider;
+import com.pileproject.drive.machine.MachineSession;
 import com.pileproject.drive.machine.NxtMachineProvider;
+import com.pileproject.drive.machine.ProvidedMachineConnector;
 import com.pileproject.drive.programming.visual.block.BlockProvider;
 import com.pileproject.drive.programming.visual.block.NxtBlockProvider;
+import com.pileproject.drive.util.development.DeployUtil;
 
 import javax.inject.Singleton;
 
@@ -33,6 +42,12 @@ import dagger.Provides;
 @Module
 public class FlavorModule {
 
+    // keeps the connection between runs of programs during a lesson
+    private static final long MACHINE_SESSION_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    // much shorter than the sleep timer of NXT (10 minutes by default)
+    private static final long MACHINE_SESSION_KEEP_ALIVE_PERIOD_MILLIS = 60 * 1000;
+
     @Provides @Singleton
     public BlockProvider provideBlockProvider() {
         return new NxtBlockProvider();
@@ -42,4 +57,27 @@ public class FlavorModule {
     public MachineProvider provideMachineProvider() {
         return new NxtMachineProvider();
     }
+
+    @Provides @Singleton
+    public CommunicationStatistics provideCommunicationStatistics() {
+        return new CommunicationStatistics();
+    }
+
+    @Provides @Singleton
+    public CommunicatorProvider provideCommunicatorProvider(CommunicationStatistics statistics) {
+        // emulators have no Bluetooth, thus programs are executed on simulated machines
+        if (DeployUtil.isOnEmulator()) {
+            return new InstrumentedCommunicatorProvider(new SimulatedNxtCommunicatorProvider(), statistics);
+        }
+
+        return new InstrumentedCommunicatorProvider(
+                new RecordingCommunicatorProvider(new ConfiguredCommunicatorProvider()), statistics);
+    }
+
+    @Provides @Singleton
+    public MachineSession provideMachineSession(MachineProvider machineProvider,
+                                                CommunicatorProvider communicatorProvider) {
+        return new MachineSession(new ProvidedMachineConnector(machineProvider, communicatorProvider),
+                                  MACHINE_SESSION_IDLE_TIMEOUT_MILLIS, MACHINE_SESSION_KEEP_ALIVE_PERIOD_MILLIS);
+    }
 }
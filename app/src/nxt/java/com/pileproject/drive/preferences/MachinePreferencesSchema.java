@@ -34,6 +34,10 @@ public class MachinePreferencesSchema {
     @Key(name = "bluetooth_address")
     String macAddress;
 
+    // "host:port" of the bridge which relays telegrams to the machine via TCP (e.g., Wi-Fi)
+    @Key(name = "wifi_address")
+    String wifiAddress;
+
     @Key(name = "firmware")
     final String firmware = Firmware.STANDARD;
 
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.pileproject.drive.comm.Telegrams.frame;
+
+/**
+ * A benchmark which compares the latency and the throughput of communicators.
+ * <ul>
+ *     <li><code>bluetooth</code>: {@link SimulatedNxtCommunicator} with the latency of Bluetooth SPP
+ *         (the default of the simulator), as a model of the current connections</li>
+ *     <li><code>wifi</code>: {@link WifiCommunicator} which talks to a {@link SimulatedNxtServer} through
+ *         the real TCP stack on the loopback interface</li>
+ * </ul>
+ * Both communicators talk to a {@link SimulatedNxt}, thus the difference is in the transport.
+ */
+@State(Scope.Thread)
+public class CommunicatorBenchmark {
+
+    // the number of motor commands which are sent in a burst before a reply is awaited
+    private static final int BURST_SIZE = 100;
+
+    private static final byte[] GET_INPUT_VALUES = frame(
+            SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, 0);
+
+    private static final byte[] SET_OUTPUT_STATE = frame(
+            SimulatedNxt.NO_REPLY, SimulatedNxt.SET_OUTPUT_STATE, 1, 75,
+            SimulatedNxt.MODE_MOTOR_ON | SimulatedNxt.MODE_BRAKE, 0, 0, SimulatedNxt.RUN_STATE_RUNNING, 0, 0, 0, 0);
+
+    private static final byte[] KEEP_ALIVE = frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.KEEP_ALIVE);
+
+    @Param({"bluetooth", "wifi"})
+    public String transport;
+
+    private SimulatedNxtServer mServer;
+    private ICommunicator mCommunicator;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("wifi".equals(transport)) {
+            mServer = new SimulatedNxtServer(null);
+            mCommunicator = new WifiCommunicator("127.0.0.1", mServer.getPort());
+        } else {
+            mCommunicator = new SimulatedNxtCommunicator.Builder().setSeed(0).build();
+        }
+
+        mCommunicator.open();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mCommunicator.close();
+
+        if (mServer != null) {
+            mServer.close();
+        }
+    }
+
+    /**
+     * A sensor read, which is a round trip of a telegram.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] roundTrip() {
+        return exchange(GET_INPUT_VALUES);
+    }
+
+    /**
+     * A burst of motor commands which require no replies, followed by a keep-alive to wait for all of them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte[] burst() {
+        for (int i = 0; i < BURST_SIZE; ++i) {
+            mCommunicator.write(SET_OUTPUT_STATE);
+        }
+
+        return exchange(KEEP_ALIVE);
+    }
+
+    private byte[] exchange(byte[] request) {
+        mCommunicator.write(request);
+
+        byte[] header = mCommunicator.read(2);
+        return mCommunicator.read(Telegrams.getLength(header, 0));
+    }
+
+}
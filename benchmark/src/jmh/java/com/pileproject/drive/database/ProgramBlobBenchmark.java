@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of loading a program stored in "program_data" table (one row per block) and stored as
+ * a {@link ProgramBlob} in one row, against an in-memory SQLite with the schema of {@link DriveSchema#VERSION}.
+ * <p>
+ * The sizes of the stored programs are printed at the setup. Creating views from the loaded blocks is not included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ProgramBlobBenchmark {
+
+    private static final String PROGRAM_NAME = "benchmark";
+    private static final String PROGRAM_TYPE = "user";
+
+    private static final String[] BLOCK_TYPES = {
+            "com.pileproject.drive.programming.visual.block.sequence.car.ForwardSecBlock",
+            "com.pileproject.drive.programming.visual.block.repetition.LoopBlock",
+            "com.pileproject.drive.programming.visual.block.selection.car.IfMachineIsTouchedBlock",
+    };
+
+    @Param({"10", "100", "1000"})
+    public int blockCount;
+
+    @Param({"rows", "blob"})
+    public String format;
+
+    private Connection mConnection;
+
+    private PreparedStatement mSelectProgram;
+    private PreparedStatement mSelectProgramData;
+
+    @Setup
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        execute("CREATE TABLE programs("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "name TEXT NOT NULL, "
+                        + "type TEXT NOT NULL, "
+                        + "updatedAt INTEGER NOT NULL, "
+                        + "blocks BLOB)");
+        execute("CREATE TABLE program_data("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "programId INTEGER NOT NULL, "
+                        + "type TEXT NOT NULL, "
+                        + "left INTEGER NOT NULL, "
+                        + "top INTEGER NOT NULL, "
+                        + "number TEXT DEFAULT 0, "
+                        + "ordinal INTEGER NOT NULL DEFAULT 0, "
+                        + "FOREIGN KEY(programId) references programs(_id) ON DELETE CASCADE)");
+        for (String sql : DriveSchema.getCreateStatements()) {
+            execute(sql);
+        }
+
+        long pagesBefore = queryLong("PRAGMA page_count");
+        store(createBlocks());
+        long pagesAfter = queryLong("PRAGMA page_count");
+
+        System.out.println("stored " + blockCount + " blocks as " + format + ": "
+                                   + queryLong("SELECT COALESCE(SUM(LENGTH(blocks)), 0) FROM programs")
+                                   + " bytes of blobs, "
+                                   + (pagesAfter - pagesBefore) * queryLong("PRAGMA page_size")
+                                   + " bytes of pages");
+
+        mSelectProgram = mConnection.prepareStatement(
+                "SELECT _id, blocks FROM programs WHERE type = ? AND name = ?");
+        mSelectProgramData = mConnection.prepareStatement(
+                "SELECT _id, programId, type, left, top, number FROM program_data WHERE programId = ?"
+                        + " ORDER BY ordinal");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConnection.close();
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(sql);
+            try {
+                result.next();
+                return result.getLong(1);
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private List<ProgramBlob.Block> createBlocks() {
+        List<ProgramBlob.Block> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; ++i) {
+            blocks.add(new ProgramBlob.Block(BLOCK_TYPES[i % BLOCK_TYPES.length], (i % 4 == 0) ? 100 : 0, i * 50,
+                                             "1.500"));
+        }
+        return blocks;
+    }
+
+    private void store(List<ProgramBlob.Block> blocks) throws SQLException {
+        boolean isBlob = "blob".equals(format);
+
+        PreparedStatement insertProgram = mConnection.prepareStatement(
+                "INSERT INTO programs (name, type, updatedAt, blocks) VALUES (?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+        long programId;
+        try {
+            insertProgram.setString(1, PROGRAM_NAME);
+            insertProgram.setString(2, PROGRAM_TYPE);
+            insertProgram.setLong(3, System.currentTimeMillis());
+            insertProgram.setBytes(4, isBlob ? ProgramBlob.encode(blocks) : null);
+            insertProgram.executeUpdate();
+
+            ResultSet keys = insertProgram.getGeneratedKeys();
+            try {
+                keys.next();
+                programId = keys.getLong(1);
+            } finally {
+                keys.close();
+            }
+        } finally {
+            insertProgram.close();
+        }
+
+        if (isBlob) {
+            return;
+        }
+
+        PreparedStatement insertProgramData = mConnection.prepareStatement(
+                "INSERT INTO program_data (programId, type, left, top, number, ordinal) VALUES (?, ?, ?, ?, ?, ?)");
+        try {
+            for (int i = 0; i < blocks.size(); ++i) {
+                ProgramBlob.Block b = blocks.get(i);
+                insertProgramData.setLong(1, programId);
+                insertProgramData.setString(2, b.getType());
+                insertProgramData.setInt(3, b.getLeft());
+                insertProgramData.setInt(4, b.getTop());
+                insertProgramData.setString(5, b.getNumber());
+                insertProgramData.setInt(6, i);
+                insertProgramData.executeUpdate();
+            }
+        } finally {
+            insertProgramData.close();
+        }
+    }
+
+    @Benchmark
+    public List<ProgramBlob.Block> load() throws SQLException, IOException {
+        mSelectProgram.setString(1, PROGRAM_TYPE);
+        mSelectProgram.setString(2, PROGRAM_NAME);
+
+        long programId;
+        byte[] blob;
+        ResultSet program = mSelectProgram.executeQuery();
+        try {
+            if (!program.next()) {
+                return new ArrayList<>();
+            }
+            programId = program.getLong(1);
+            blob = program.getBytes(2);
+        } finally {
+            program.close();
+        }
+
+        // the same as ProgramDataManager.loadProgram
+        if (blob != null) {
+            return ProgramBlob.decode(blob);
+        }
+
+        List<ProgramBlob.Block> blocks = new ArrayList<>();
+
+        mSelectProgramData.setLong(1, programId);
+        ResultSet programData = mSelectProgramData.executeQuery();
+        try {
+            while (programData.next()) {
+                blocks.add(new ProgramBlob.Block(programData.getString(3), programData.getInt(4),
+                                                 programData.getInt(5), programData.getString(6)));
+            }
+        } finally {
+            programData.close();
+        }
+        return blocks;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import com.pileproject.drive.programming.model.BlockPositionComparator;
+import com.pileproject.drive.programming.model.PositionHolder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of saving and loading programs against an in-memory SQLite.
+ * <p>
+ * <code>ProgramDataManager</code> depends on Android (SquiDB's <code>AndroidOpenHelper</code> and views of blocks),
+ * thus this class replays the same statements with JDBC on the same schema as
+ * <code>ProgramSpec</code> and <code>ProgramDataSpec</code>:
+ * <ul>
+ *     <li>save: deletes the old program, inserts the program and then inserts each block with a prepared statement,
+ *         in one transaction (or each statement in its own transaction as before for comparison)</li>
+ *     <li>saveMovedBlock: updates the row of one moved block, which is all that an incremental save of
+ *         the execution program writes after a block is moved</li>
+ *     <li>load: finds the program and reads all blocks in the order of their ordinals (see {@link DriveSchema}),
+ *         or sorts them with {@link BlockPositionComparator} as before the ordinals were stored</li>
+ * </ul>
+ * Creating views from the loaded rows is not included. The database can be a file so that the cost of journal
+ * commits (which an in-memory database does not have) is included.
+ * This class should be kept in sync with <code>ProgramDataManager</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ProgramDataBenchmark {
+
+    private static final String PROGRAM_NAME = "benchmark";
+    private static final String PROGRAM_TYPE = "user";
+
+    private static final String[] BLOCK_TYPES = {
+            "com.pileproject.drive.programming.visual.block.sequence.car.ForwardSecBlock",
+            "com.pileproject.drive.programming.visual.block.repetition.LoopBlock",
+            "com.pileproject.drive.programming.visual.block.selection.car.IfMachineIsTouchedBlock",
+    };
+
+    @Param({"10", "100", "1000"})
+    public int blockCount;
+
+    // saves a program in one transaction (true) or each statement in its own transaction (false)
+    @Param({"true", "false"})
+    public boolean singleTransaction;
+
+    @Param({"memory", "file"})
+    public String storage;
+
+    // loads blocks in the stored order (true) or sorts them after loading (false)
+    @Param({"true", "false"})
+    public boolean storedOrder;
+
+    private File mFile;
+
+    // the row of the block which is moved by saveMovedBlock
+    private long mMovedRowId;
+    private int mMoves;
+
+    private Connection mConnection;
+
+    private PreparedStatement mDeleteProgram;
+    private PreparedStatement mInsertProgram;
+    private PreparedStatement mInsertProgramData;
+    private PreparedStatement mUpdateProgramData;
+    private PreparedStatement mSelectProgram;
+    private PreparedStatement mSelectProgramData;
+
+    @Setup
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        if ("file".equals(storage)) {
+            mFile = File.createTempFile("drive", ".db");
+            mConnection = DriverManager.getConnection("jdbc:sqlite:" + mFile.getAbsolutePath());
+        } else {
+            mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        }
+
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute("CREATE TABLE IF NOT EXISTS programs("
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "name TEXT NOT NULL, "
+                    + "type TEXT NOT NULL, "
+                    + "updatedAt INTEGER NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS program_data("
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "programId INTEGER NOT NULL, "
+                    + "type TEXT NOT NULL, "
+                    + "left INTEGER NOT NULL, "
+                    + "top INTEGER NOT NULL, "
+                    + "number TEXT DEFAULT 0, "
+                    + "ordinal INTEGER NOT NULL DEFAULT 0, "
+                    + "FOREIGN KEY(programId) references programs(_id) ON DELETE CASCADE)");
+            for (String sql : DriveSchema.getCreateStatements()) {
+                statement.execute(sql);
+            }
+            // NOTE: the old blocks are deleted with the program so that the table does not grow between iterations
+            statement.execute("PRAGMA foreign_keys = ON");
+        } finally {
+            statement.close();
+        }
+
+        mDeleteProgram = mConnection.prepareStatement("DELETE FROM programs WHERE name = ? AND type = ?");
+        mInsertProgram = mConnection.prepareStatement(
+                "INSERT INTO programs (name, type, updatedAt) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+        mInsertProgramData = mConnection.prepareStatement(
+                "INSERT INTO program_data (programId, type, left, top, number, ordinal) VALUES (?, ?, ?, ?, ?, ?)");
+        mUpdateProgramData = mConnection.prepareStatement("UPDATE program_data SET left = ?, top = ? WHERE _id = ?");
+        mSelectProgram = mConnection.prepareStatement("SELECT _id FROM programs WHERE name = ? AND type = ?");
+        mSelectProgramData = mConnection.prepareStatement(
+                "SELECT _id, programId, type, left, top, number FROM program_data WHERE programId = ?"
+                        + (storedOrder ? " ORDER BY ordinal" : ""));
+
+        // for the benchmarks of loading and updating
+        save();
+        mMovedRowId = selectFirstRowId();
+    }
+
+    private long selectFirstRowId() throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery("SELECT MIN(_id) FROM program_data");
+            try {
+                rows.next();
+                return rows.getLong(1);
+            } finally {
+                rows.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        mConnection.close();
+
+        if (mFile != null) {
+            mFile.delete();
+        }
+    }
+
+    @Benchmark
+    public long save() throws SQLException {
+        if (!singleTransaction) {
+            return saveStatements();
+        }
+
+        mConnection.setAutoCommit(false);
+        try {
+            long programId = saveStatements();
+            mConnection.commit();
+            return programId;
+        } catch (SQLException e) {
+            mConnection.rollback();
+            throw e;
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    private long saveStatements() throws SQLException {
+        mDeleteProgram.setString(1, PROGRAM_NAME);
+        mDeleteProgram.setString(2, PROGRAM_TYPE);
+        mDeleteProgram.executeUpdate();
+
+        mInsertProgram.setString(1, PROGRAM_NAME);
+        mInsertProgram.setString(2, PROGRAM_TYPE);
+        mInsertProgram.setLong(3, System.currentTimeMillis());
+        mInsertProgram.executeUpdate();
+
+        long programId;
+        ResultSet keys = mInsertProgram.getGeneratedKeys();
+        try {
+            keys.next();
+            programId = keys.getLong(1);
+        } finally {
+            keys.close();
+        }
+
+        for (int i = 0; i < blockCount; ++i) {
+            mInsertProgramData.setLong(1, programId);
+            mInsertProgramData.setString(2, BLOCK_TYPES[i % BLOCK_TYPES.length]);
+            mInsertProgramData.setInt(3, (i % 4 == 0) ? 100 : 0);
+            mInsertProgramData.setInt(4, i * 50);
+            mInsertProgramData.setString(5, "1.500");
+            // the positions are in ascending order
+            mInsertProgramData.setInt(6, i);
+            mInsertProgramData.executeUpdate();
+        }
+
+        return programId;
+    }
+
+    @Benchmark
+    public int saveMovedBlock() throws SQLException {
+        // alternate the positions so that the row is actually changed every time
+        ++mMoves;
+        mUpdateProgramData.setInt(1, mMoves % 2 == 0 ? 100 : 0);
+        mUpdateProgramData.setInt(2, 0);
+        mUpdateProgramData.setLong(3, mMovedRowId);
+        return mUpdateProgramData.executeUpdate();
+    }
+
+    @Benchmark
+    public List<Row> load() throws SQLException {
+        mSelectProgram.setString(1, PROGRAM_NAME);
+        mSelectProgram.setString(2, PROGRAM_TYPE);
+
+        long programId;
+        ResultSet program = mSelectProgram.executeQuery();
+        try {
+            if (!program.next()) {
+                return new ArrayList<>();
+            }
+            programId = program.getLong(1);
+        } finally {
+            program.close();
+        }
+
+        List<Row> rows = new ArrayList<>();
+
+        mSelectProgramData.setLong(1, programId);
+        ResultSet programData = mSelectProgramData.executeQuery();
+        try {
+            while (programData.next()) {
+                rows.add(new Row(programData.getString(3), programData.getInt(4), programData.getInt(5),
+                                 programData.getString(6)));
+            }
+        } finally {
+            programData.close();
+        }
+
+        if (!storedOrder) {
+            Collections.sort(rows, new BlockPositionComparator());
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public List<Row> saveAndLoad() throws SQLException {
+        save();
+        return load();
+    }
+
+    /**
+     * A row of "program_data" table, which is a substitute for a view of a block.
+     */
+    public static class Row implements PositionHolder {
+        private final String mType;
+        private final int mLeft;
+        private final int mTop;
+        private final String mNumber;
+
+        Row(String type, int left, int top, String number) {
+            mType = type;
+            mLeft = left;
+            mTop = top;
+            mNumber = number;
+        }
+
+        public String getType() {
+            return mType;
+        }
+
+        @Override
+        public int getLeft() {
+            return mLeft;
+        }
+
+        @Override
+        public int getTop() {
+            return mTop;
+        }
+
+        public String getNumber() {
+            return mNumber;
+        }
+    }
+}
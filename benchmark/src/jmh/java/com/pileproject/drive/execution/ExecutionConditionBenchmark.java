@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.NTimesModel;
+import com.pileproject.drive.programming.model.repetition.RepetitionBreakModel;
+import com.pileproject.drive.programming.model.repetition.RepetitionEndModel;
+import com.pileproject.drive.programming.model.selection.SelectionEndModel;
+import com.pileproject.drive.programming.model.selection.SelectionModel;
+import com.pileproject.drive.programming.model.sequence.SequenceModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link CompiledProgram} and {@link ExecutionCondition} on deeply nested synthetic programs.
+ * <p>
+ * Each level of nesting is a selection whose true arm has an N-times loop which contains the next level,
+ * and whose false arm has a sequence block. The innermost loop is left with a break.
+ * The whole program is repeated by an outer loop.
+ * The blocks do nothing but changing the condition, so that only the cost of the control flow is measured
+ * (the same steps as the main loop of {@link RxObservableProgram} without waiting).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ExecutionConditionBenchmark {
+
+    private static final int OUTER_ITERATIONS = 16;
+
+    // the width of the arms of a selection in the synthetic programs
+    private static final int ARM_WIDTH = 100;
+
+    private static final MachineController NO_OP_CONTROLLER = new MachineController() {
+        @Override
+        public void halt() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    private List<BlockModel> mBlocks;
+
+    private CompiledProgram mProgram;
+
+    @Setup
+    public void setUp() {
+        mBlocks = makeNestedProgram(depth);
+        mProgram = CompiledProgram.compile(mBlocks);
+    }
+
+    @Benchmark
+    public CompiledProgram compile() {
+        return CompiledProgram.compile(mBlocks);
+    }
+
+    @Benchmark
+    public int execute() {
+        ExecutionCondition condition = new ExecutionCondition(mProgram);
+        int delay = 0;
+
+        while (!condition.hasProgramFinished()) {
+            delay += condition.getCurrentBlock().action(NO_OP_CONTROLLER, condition);
+            condition.incrementProgramCount();
+        }
+
+        return delay;
+    }
+
+    private static List<BlockModel> makeNestedProgram(int depth) {
+        List<BlockModel> blocks = new ArrayList<>();
+
+        blocks.add(new NTimesModel(OUTER_ITERATIONS));
+
+        for (int level = 0; level < depth; ++level) {
+            // the midpoint of a selection is further right than those of the nested selections,
+            // so that the nested blocks are in the true arm of all the enclosing selections
+            blocks.add(new TrueSelectionModel().setPosition(0, 0, 2 * ARM_WIDTH * (depth - level)));
+            blocks.add(new NTimesModel(1));
+        }
+
+        blocks.add(new NoOpModel());
+        blocks.add(new RepetitionBreakModel());
+        blocks.add(new NoOpModel());
+
+        for (int level = depth - 1; level >= 0; --level) {
+            // the midpoint is between those of this selection and the enclosing one
+            int falseArm = ARM_WIDTH * (depth - level) + ARM_WIDTH / 2;
+
+            blocks.add(new RepetitionEndModel());
+            blocks.add(new NoOpModel().setPosition(falseArm, 0, falseArm));
+            blocks.add(new SelectionEndModel());
+        }
+
+        blocks.add(new RepetitionEndModel());
+
+        return blocks;
+    }
+
+    private static class TrueSelectionModel extends SelectionModel {
+        @Override
+        protected boolean evaluateCondition(MachineController controller) {
+            return true;
+        }
+    }
+
+    private static class NoOpModel extends SequenceModel {
+        @Override
+        public int action(MachineController controller, ExecutionCondition condition) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.comm.RecordedSession;
+import com.pileproject.drive.comm.RecordingCommunicator;
+import com.pileproject.drive.comm.ReplayCommunicator;
+import com.pileproject.drive.comm.SimulatedNxtCommunicator;
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.selection.SelectionEndModel;
+import com.pileproject.drive.programming.model.selection.car.IfMachineIsTouchedModel;
+import com.pileproject.drive.programming.model.sequence.StopSecModel;
+import com.pileproject.drive.programming.model.sequence.car.ForwardSecModel;
+import com.pileproject.drive.programming.model.sequence.car.TurnLeftSecModel;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+import com.pileproject.drivecommand.model.nxt.NxtMachine;
+import com.pileproject.drivecommand.model.nxt.port.NxtInputPort;
+import com.pileproject.drivecommand.model.nxt.port.NxtOutputPort;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Subscriber;
+
+/**
+ * A benchmark which executes a program against a recorded session served by {@link ReplayCommunicator} as fast
+ * as possible, that is, it measures the time spent by the engine and drivecommand, not by the machine.
+ * <p>
+ * The session is recorded from a simulated NXT in the setup. Replaying a session recorded with a real
+ * machine requires the same program, thus this benchmark is also a template for such a comparison
+ * between engine builds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ReplayedExecutionBenchmark {
+
+    private static final int NUMBER_OF_SECTIONS = 25;
+
+    private List<BlockModel> mBlocks;
+    private RecordedSession mSession;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBlocks = new ArrayList<>();
+
+        for (int i = 0; i < NUMBER_OF_SECTIONS; ++i) {
+            mBlocks.add(new ForwardSecModel(0));
+            mBlocks.add(new IfMachineIsTouchedModel());
+            mBlocks.add(new TurnLeftSecModel(0));
+            mBlocks.add(new SelectionEndModel());
+            mBlocks.add(new StopSecModel(0));
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SimulatedNxtCommunicator machine = new SimulatedNxtCommunicator.Builder()
+                .setLatencyMillis(0)
+                .setJitterMillis(0)
+                .setSeed(0)
+                .build();
+
+        execute(new RecordingCommunicator(machine, output, new SystemExecutionClock()));
+        mSession = RecordedSession.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        ReplayCommunicator communicator = new ReplayCommunicator(
+                mSession, ReplayCommunicator.Pacing.FAST, new SystemExecutionClock());
+
+        int count = execute(communicator);
+
+        if (communicator.getMismatchCount() != 0) {
+            throw new IllegalStateException("The execution differs from the recorded one");
+        }
+        return count;
+    }
+
+    private int execute(ICommunicator communicator) throws IOException {
+        NxtMachine machine = new NxtMachine(communicator);
+        machine.connect();
+
+        RxObservableProgram program = new RxObservableProgram(mBlocks, new SimulatedCarController(machine));
+
+        CountingSubscriber subscriber = new CountingSubscriber();
+        program.call(subscriber); // executes the program in this thread
+
+        if (subscriber.error != null) {
+            throw new IllegalStateException(subscriber.error);
+        }
+        return subscriber.count;
+    }
+
+    private static class SimulatedCarController extends CarControllerBase {
+
+        SimulatedCarController(NxtMachine machine) {
+            mMachine = machine;
+
+            connectOutputPort(OutputDevice.LEFT_MOTOR, NxtOutputPort.PORT_B);
+            connectOutputPort(OutputDevice.RIGHT_MOTOR, NxtOutputPort.PORT_C);
+            connectInputPort(InputDevice.TOUCH, NxtInputPort.PORT_1);
+        }
+
+        @Override
+        public List<String> getAllInputDevices() {
+            return Arrays.asList(InputDevice.TOUCH);
+        }
+
+        @Override
+        public List<String> getAllOutputDevices() {
+            return MotorProperty.ALL_MOTORS;
+        }
+
+        @Override
+        public boolean isTouchSensorTouched() {
+            return mTouchSensor.isTouched();
+        }
+    }
+
+    private static class CountingSubscriber extends Subscriber<Integer> {
+        int count;
+        Throwable error;
+
+        @Override
+        public void onNext(Integer message) {
+            count++;
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.comm.BatchingCommunicator;
+import com.pileproject.drive.comm.SimulatedNxtCommunicator;
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.selection.SelectionEndModel;
+import com.pileproject.drive.programming.model.selection.car.IfMachineIsTouchedModel;
+import com.pileproject.drive.programming.model.sequence.StopSecModel;
+import com.pileproject.drive.programming.model.sequence.car.ForwardSecModel;
+import com.pileproject.drive.programming.model.sequence.car.TurnLeftSecModel;
+import com.pileproject.drivecommand.model.nxt.NxtMachine;
+import com.pileproject.drivecommand.model.nxt.port.NxtInputPort;
+import com.pileproject.drivecommand.model.nxt.port.NxtOutputPort;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Subscriber;
+
+/**
+ * An end-to-end benchmark which executes a program on a simulated NXT through the same stack as the app
+ * ({@link RxObservableProgram}, a {@link CarControllerBase}, drivecommand's {@link NxtMachine} and
+ * an <code>ICommunicator</code>). The blocks have no delays, thus the time is spent in the communication.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class SimulatedExecutionBenchmark {
+
+    private static final int NUMBER_OF_SECTIONS = 25;
+
+    // the round trip time of a telegram
+    @Param({"0", "5"})
+    public int latencyMillis;
+
+    // gathers the commands of a move into one transmission
+    @Param({"false", "true"})
+    public boolean batching;
+
+    private List<BlockModel> mBlocks;
+
+    @Setup
+    public void setUp() {
+        mBlocks = new ArrayList<>();
+
+        for (int i = 0; i < NUMBER_OF_SECTIONS; ++i) {
+            mBlocks.add(new ForwardSecModel(0));
+            mBlocks.add(new IfMachineIsTouchedModel());
+            mBlocks.add(new TurnLeftSecModel(0));
+            mBlocks.add(new SelectionEndModel());
+            mBlocks.add(new StopSecModel(0));
+        }
+    }
+
+    @Benchmark
+    public int execute() throws IOException {
+        SimulatedNxtCommunicator communicator = new SimulatedNxtCommunicator.Builder()
+                .setLatencyMillis(latencyMillis)
+                .setJitterMillis(0)
+                .setSeed(0)
+                .build();
+
+        BatchingCommunicator batchingCommunicator = new BatchingCommunicator(communicator);
+
+        NxtMachine machine = new NxtMachine(batching ? batchingCommunicator : communicator);
+        machine.connect();
+
+        SimulatedCarController controller = new SimulatedCarController(machine);
+        if (batching) {
+            controller.setBatchingCommunicator(batchingCommunicator);
+        }
+
+        RxObservableProgram program = new RxObservableProgram(mBlocks, controller);
+
+        CountingSubscriber subscriber = new CountingSubscriber();
+        program.call(subscriber); // executes the program in this thread
+
+        if (subscriber.error != null) {
+            throw new IllegalStateException(subscriber.error);
+        }
+        return subscriber.count;
+    }
+
+    private static class SimulatedCarController extends CarControllerBase {
+
+        SimulatedCarController(NxtMachine machine) {
+            mMachine = machine;
+
+            connectOutputPort(OutputDevice.LEFT_MOTOR, NxtOutputPort.PORT_B);
+            connectOutputPort(OutputDevice.RIGHT_MOTOR, NxtOutputPort.PORT_C);
+            connectInputPort(InputDevice.TOUCH, NxtInputPort.PORT_1);
+        }
+
+        @Override
+        public List<String> getAllInputDevices() {
+            return Arrays.asList(InputDevice.TOUCH);
+        }
+
+        @Override
+        public List<String> getAllOutputDevices() {
+            return MotorProperty.ALL_MOTORS;
+        }
+
+        @Override
+        public boolean isTouchSensorTouched() {
+            return mTouchSensor.isTouched();
+        }
+    }
+
+    private static class CountingSubscriber extends Subscriber<Integer> {
+        int count;
+        Throwable error;
+
+        @Override
+        public void onNext(Integer message) {
+            count++;
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of sorting blocks with {@link BlockPositionComparator}.
+ * Each benchmark sorts a copy of the blocks, thus the time includes the copy of the list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class BlockPositionComparatorBenchmark {
+
+    // the blocks are put in a column like the programming space
+    private static final int BLOCK_WIDTH = 100;
+    private static final int BLOCK_HEIGHT = 50;
+
+    private static final BlockPositionComparator COMPARATOR = new BlockPositionComparator();
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private List<PositionHolder> mShuffled;
+
+    private List<PositionHolder> mSorted;
+
+    @Setup
+    public void setUp() {
+        mSorted = new ArrayList<>(size);
+
+        for (int i = 0; i < size; ++i) {
+            // a few blocks are shifted to the right (e.g., the false arms of selections)
+            mSorted.add(new Position((i % 4 == 0) ? BLOCK_WIDTH : 0, i * BLOCK_HEIGHT));
+        }
+
+        mShuffled = new ArrayList<>(mSorted);
+        Collections.shuffle(mShuffled, new Random(size));
+    }
+
+    @Benchmark
+    public List<PositionHolder> sortShuffled() {
+        return sort(mShuffled);
+    }
+
+    /**
+     * Blocks are loaded in the order they were saved, which is almost the same as the sorted order.
+     */
+    @Benchmark
+    public List<PositionHolder> sortSorted() {
+        return sort(mSorted);
+    }
+
+    private static List<PositionHolder> sort(List<PositionHolder> blocks) {
+        List<PositionHolder> copy = new ArrayList<>(blocks);
+        Collections.sort(copy, COMPARATOR);
+        return copy;
+    }
+
+    private static class Position implements PositionHolder {
+        private final int mLeft;
+        private final int mTop;
+
+        Position(int left, int top) {
+            mLeft = left;
+            mTop = top;
+        }
+
+        @Override
+        public int getLeft() {
+            return mLeft;
+        }
+
+        @Override
+        public int getTop() {
+            return mTop;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.util.string;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of parsing the numbers in blocks with {@link ParseUtil} and converting them into action values
+ * (the same steps as <code>NumberTextViewDelegate#getActionValue</code> without the cache).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ParseUtilBenchmark {
+
+    private static final int PRECISION = 3;
+
+    @Param({"en-US", "fr-FR"})
+    public String languageTag;
+
+    private Locale mLocale;
+
+    private String mValue;
+
+    @Setup
+    public void setUp() {
+        mLocale = Locale.forLanguageTag(languageTag);
+        mValue = NumberUtil.toString(mLocale, new BigDecimal("1234.567"), PRECISION);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalValueOf() {
+        return ParseUtil.bigDecimalValueOf(mValue, mLocale);
+    }
+
+    @Benchmark
+    public double doubleValueOf() {
+        return ParseUtil.doubleValueOf(mValue, mLocale);
+    }
+
+    @Benchmark
+    public int actionValue() {
+        return NumberUtil.toActionValue(ParseUtil.bigDecimalValueOf(mValue, mLocale), PRECISION);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import static com.pileproject.drive.comm.Telegrams.HEADER_LENGTH;
+
+/**
+ * An implementation of {@link ICommunicator} which gathers the output commands of NXT between
+ * {@link #beginBatch()} and {@link #endBatch()}, and sends them to another communicator in one transmission.
+ * <p>
+ * In a batch, <code>SETOUTPUTSTATE</code> direct commands are sent in the no-reply form and a successful reply
+ * is returned to the caller immediately, thus a batch costs no round trips. Since a <code>SETOUTPUTSTATE</code>
+ * overwrites all the states of its port, only the last command for each port is sent.
+ * Other telegrams are passed through after the gathered commands are sent, so that the order is preserved.
+ * Out of batches, all the telegrams are passed through as they are.
+ * <p>
+ * Note that errors of the gathered commands are not reported because the machine does not reply to them.
+ */
+public class BatchingCommunicator implements ICommunicator {
+
+    static final int DIRECT_COMMAND_REPLY = 0x00;
+    static final int DIRECT_COMMAND_NO_REPLY = 0x80;
+    static final int REPLY = 0x02;
+    static final int SET_OUTPUT_STATE = 0x04;
+    static final int SUCCESS = 0x00;
+
+    private static final int TYPE_OFFSET = 0;
+    private static final int OPCODE_OFFSET = 1;
+    private static final int PORT_OFFSET = 2;
+
+    private final ICommunicator mCommunicator;
+
+    private boolean mIsBatching;
+
+    // the bytes which were written in a batch but have not formed a telegram yet
+    private byte[] mRequest = new byte[64];
+    private int mRequestLength;
+
+    // the gathered telegrams (in the no-reply form) keyed by their ports
+    private final Map<Integer, byte[]> mBatch = new LinkedHashMap<>();
+
+    // the replies made in place of the machine
+    private final Queue<byte[]> mReplies = new ArrayDeque<>();
+    private int mReplyOffset;
+
+    private long mTransmissionCount;
+    private long mGatheredCount;
+
+    /**
+     * @param communicator the communicator which sends telegrams actually
+     */
+    public BatchingCommunicator(ICommunicator communicator) {
+        mCommunicator = communicator;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        mIsBatching = false;
+        mRequestLength = 0;
+        mBatch.clear();
+        mReplies.clear();
+        mReplyOffset = 0;
+
+        mCommunicator.open();
+    }
+
+    @Override
+    public synchronized void close() {
+        mCommunicator.close();
+    }
+
+    /**
+     * Starts gathering output commands. Batches cannot be nested.
+     *
+     * @exception IllegalStateException if a batch has already been started
+     */
+    public synchronized void beginBatch() {
+        if (mIsBatching) {
+            throw new IllegalStateException("A batch has already been started");
+        }
+        mIsBatching = true;
+    }
+
+    /**
+     * Sends the gathered commands in one transmission and stops gathering.
+     */
+    public synchronized void endBatch() throws RuntimeException {
+        mIsBatching = false;
+        flush();
+
+        // passes through a partial telegram (if any), which will be completed by the following writes
+        if (mRequestLength > 0) {
+            transmit(Arrays.copyOf(mRequest, mRequestLength));
+            mRequestLength = 0;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] request) throws RuntimeException {
+        if (!mIsBatching) {
+            transmit(request);
+            return;
+        }
+
+        if (mRequestLength + request.length > mRequest.length) {
+            mRequest = Arrays.copyOf(mRequest, Math.max(mRequest.length * 2, mRequestLength + request.length));
+        }
+        System.arraycopy(request, 0, mRequest, mRequestLength, request.length);
+        mRequestLength += request.length;
+
+        int consumed = 0;
+        while (mRequestLength - consumed >= HEADER_LENGTH) {
+            int length = Telegrams.getLength(mRequest, consumed);
+            if (mRequestLength - consumed - HEADER_LENGTH < length) break;
+
+            int offset = consumed + HEADER_LENGTH;
+            consumed = offset + length;
+
+            if (isSetOutputState(mRequest, offset, length)) {
+                gather(Arrays.copyOfRange(mRequest, offset, offset + length));
+            } else {
+                flush();
+                transmit(Arrays.copyOfRange(mRequest, offset - HEADER_LENGTH, offset + length));
+            }
+        }
+
+        System.arraycopy(mRequest, consumed, mRequest, 0, mRequestLength - consumed);
+        mRequestLength -= consumed;
+    }
+
+    @Override
+    public synchronized byte[] read(int length) throws RuntimeException {
+        byte[] reply = mReplies.peek();
+        if (reply == null) {
+            return mCommunicator.read(length);
+        }
+
+        int numBytes = Math.min(length, reply.length - mReplyOffset);
+        byte[] result = Arrays.copyOfRange(reply, mReplyOffset, mReplyOffset + numBytes);
+
+        mReplyOffset += numBytes;
+        if (mReplyOffset == reply.length) {
+            mReplies.poll();
+            mReplyOffset = 0;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the number of writes to the underlying communicator
+     */
+    public synchronized long getTransmissionCount() {
+        return mTransmissionCount;
+    }
+
+    /**
+     * @return the number of commands which were gathered into batches
+     */
+    public synchronized long getGatheredCount() {
+        return mGatheredCount;
+    }
+
+    private static boolean isSetOutputState(byte[] bytes, int offset, int length) {
+        if (length <= PORT_OFFSET) return false;
+
+        int type = bytes[offset + TYPE_OFFSET] & 0xFF;
+        return (type == DIRECT_COMMAND_REPLY || type == DIRECT_COMMAND_NO_REPLY)
+                && (bytes[offset + OPCODE_OFFSET] & 0xFF) == SET_OUTPUT_STATE;
+    }
+
+    private void gather(byte[] telegram) {
+        if ((telegram[TYPE_OFFSET] & 0xFF) == DIRECT_COMMAND_REPLY) {
+            mReplies.add(Telegrams.frame(new byte[] { REPLY, SET_OUTPUT_STATE, SUCCESS }));
+            telegram[TYPE_OFFSET] = (byte) DIRECT_COMMAND_NO_REPLY;
+        }
+
+        Integer port = telegram[PORT_OFFSET] & 0xFF;
+
+        // keeps the order of ports as the order of their latest commands
+        mBatch.remove(port);
+        mBatch.put(port, telegram);
+        mGatheredCount++;
+    }
+
+    private void flush() throws RuntimeException {
+        if (mBatch.isEmpty()) return;
+
+        ByteArrayOutputStream transmission = new ByteArrayOutputStream();
+        for (byte[] telegram : mBatch.values()) {
+            byte[] frame = Telegrams.frame(telegram);
+            transmission.write(frame, 0, frame.length);
+        }
+        mBatch.clear();
+
+        transmit(transmission.toByteArray());
+    }
+
+    private void transmit(byte[] bytes) throws RuntimeException {
+        mTransmissionCount++;
+        mCommunicator.write(bytes);
+    }
+}
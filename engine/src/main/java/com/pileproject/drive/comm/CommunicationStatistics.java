@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Statistics of communications per command type, which are collected by {@link InstrumentedCommunicator}s.
+ * A command type is identified by the type (direct/system) and the opcode of a telegram.
+ * All the statistics are updated without locks, thus they can be read while a program is running.
+ */
+public class CommunicationStatistics {
+
+    private static final int SYSTEM_COMMAND_BIT = 0x01;
+    private static final int NUMBER_OF_COMMAND_TYPES = 2 * 256;
+
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final AtomicReferenceArray<CommandStatistics> mCommands =
+            new AtomicReferenceArray<>(NUMBER_OF_COMMAND_TYPES);
+
+    private final CommandStatistics mConnection = new CommandStatistics("connect");
+
+    /**
+     * Statistics of a command type.
+     */
+    public static final class CommandStatistics {
+        private final String mName;
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mErrorCount = new AtomicLong();
+        private final AtomicLong mBytesOut = new AtomicLong();
+        private final AtomicLong mBytesIn = new AtomicLong();
+
+        CommandStatistics(String name) {
+            mName = name;
+        }
+
+        void recordRequest(int numBytes) {
+            mCount.incrementAndGet();
+            mBytesOut.addAndGet(numBytes);
+        }
+
+        void recordReply(int numBytes, long latencyNanos) {
+            mBytesIn.addAndGet(numBytes);
+            mLatency.record(latencyNanos);
+        }
+
+        void recordError() {
+            mErrorCount.incrementAndGet();
+        }
+
+        /**
+         * @return the name of the command type (e.g., <code>direct 0x04</code>, <code>connect</code>)
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return the round trip latencies from requests to their replies
+         */
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        /**
+         * @return the number of sent requests
+         */
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * @return the number of failed writes or reads
+         */
+        public long getErrorCount() {
+            return mErrorCount.get();
+        }
+
+        /**
+         * @return the number of sent bytes including the headers
+         */
+        public long getBytesOut() {
+            return mBytesOut.get();
+        }
+
+        /**
+         * @return the number of received bytes including the headers
+         */
+        public long getBytesIn() {
+            return mBytesIn.get();
+        }
+
+        void reset() {
+            mLatency.reset();
+            mCount.set(0);
+            mErrorCount.set(0);
+            mBytesOut.set(0);
+            mBytesIn.set(0);
+        }
+    }
+
+    /**
+     * Gets the statistics of a command type, creating them if they do not exist.
+     *
+     * @param type the type of a telegram
+     * @param opcode the opcode of a telegram
+     * @return the statistics
+     */
+    CommandStatistics get(int type, int opcode) {
+        boolean isSystemCommand = (type & SYSTEM_COMMAND_BIT) != 0;
+        int index = (isSystemCommand ? 256 : 0) + (opcode & 0xFF);
+
+        CommandStatistics statistics = mCommands.get(index);
+        if (statistics != null) {
+            return statistics;
+        }
+
+        String name = String.format(Locale.US, "%s 0x%02X", isSystemCommand ? "system" : "direct", opcode & 0xFF);
+        mCommands.compareAndSet(index, null, new CommandStatistics(name));
+        return mCommands.get(index);
+    }
+
+    /**
+     * Gets the statistics of connections. The count is the number of attempts to connect, and the latency is
+     * the time to connect.
+     *
+     * @return the statistics
+     */
+    public CommandStatistics getConnection() {
+        return mConnection;
+    }
+
+    /**
+     * @return the statistics of connections and all the command types which have been used
+     */
+    public List<CommandStatistics> getAll() {
+        List<CommandStatistics> all = new ArrayList<>();
+        all.add(mConnection);
+
+        for (int i = 0; i < NUMBER_OF_COMMAND_TYPES; ++i) {
+            CommandStatistics statistics = mCommands.get(i);
+            if (statistics != null) {
+                all.add(statistics);
+            }
+        }
+
+        return all;
+    }
+
+    /**
+     * Forgets all the statistics.
+     */
+    public void reset() {
+        for (CommandStatistics statistics : getAll()) {
+            statistics.reset();
+        }
+    }
+
+    /**
+     * Writes the statistics as a table of plain text. Latencies are in milliseconds.
+     *
+     * @param writer the writer to be written to
+     * @throws IOException if the writer fails
+     */
+    public void dump(Writer writer) throws IOException {
+        writer.write(String.format(Locale.US, "%-12s %8s %6s %10s %10s %8s %8s %8s %8s%n",
+                                   "command", "count", "errors", "bytes_out", "bytes_in",
+                                   "p50", "p90", "p99", "max"));
+
+        for (CommandStatistics statistics : getAll()) {
+            LatencyHistogram latency = statistics.getLatency();
+
+            writer.write(String.format(Locale.US, "%-12s %8d %6d %10d %10d",
+                                       statistics.getName(), statistics.getCount(), statistics.getErrorCount(),
+                                       statistics.getBytesOut(), statistics.getBytesIn()));
+
+            for (double percentile : PERCENTILES) {
+                writer.write(String.format(Locale.US, " %8.1f", toMillis(latency.getPercentileNanos(percentile))));
+            }
+            writer.write(String.format(Locale.US, " %8.1f%n", toMillis(latency.getMaxNanos())));
+        }
+
+        writer.flush();
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A pair of streams which exchanges telegrams framed with the 2-byte length header (e.g., those of NXT).
+ * <p>
+ * Writes are buffered until the buffer ends at the boundary of a frame, thus a frame which is written
+ * in pieces or a batch of frames goes out in one write of the stream. Reads are served from a reusable buffer
+ * and block until the requested length is filled, thus a frame split into several packets is never misparsed.
+ * The buffer is also flushed before each read so that a request always reaches the machine before waiting
+ * for its reply.
+ */
+public class FramedStream {
+
+    // large enough for telegrams of NXT (at most 64 bytes) and their batches
+    private static final int BUFFER_SIZE = 256;
+
+    private final InputStream mInputStream;
+    private final OutputStream mOutputStream;
+
+    private final byte[] mReceiveBuffer = new byte[BUFFER_SIZE];
+    private int mReceivePosition;
+    private int mReceiveLimit;
+
+    private byte[] mSendBuffer = new byte[BUFFER_SIZE];
+    private int mSendLength;
+
+    // the offset of the first frame in the send buffer which has not been completed yet
+    private int mIncompleteFrameOffset;
+
+    /**
+     * @param inputStream the stream which replies come from
+     * @param outputStream the stream which requests go to
+     */
+    public FramedStream(InputStream inputStream, OutputStream outputStream) {
+        mInputStream = inputStream;
+        mOutputStream = outputStream;
+    }
+
+    /**
+     * Writes bytes of frames. The bytes are sent when they complete all the frames in the buffer.
+     *
+     * @param bytes the bytes to be written
+     * @throws IOException if the stream fails
+     */
+    public synchronized void write(byte[] bytes) throws IOException {
+        if (mSendLength + bytes.length > mSendBuffer.length) {
+            mSendBuffer = Arrays.copyOf(mSendBuffer, Math.max(mSendBuffer.length * 2, mSendLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, mSendBuffer, mSendLength, bytes.length);
+        mSendLength += bytes.length;
+
+        mIncompleteFrameOffset = Telegrams.skipCompleteFrames(mSendBuffer, mIncompleteFrameOffset, mSendLength);
+
+        if (mIncompleteFrameOffset == mSendLength) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends all the buffered bytes even if they end in the middle of a frame.
+     *
+     * @throws IOException if the stream fails
+     */
+    public synchronized void flush() throws IOException {
+        if (mSendLength == 0) return;
+
+        // resets the buffer first not to send the same bytes again after a failure
+        int length = mSendLength;
+        mSendLength = 0;
+        mIncompleteFrameOffset = 0;
+
+        mOutputStream.write(mSendBuffer, 0, length);
+        mOutputStream.flush();
+    }
+
+    /**
+     * Reads exactly the given length of bytes, blocking until they arrive.
+     *
+     * @param length the number of bytes to be read
+     * @return the bytes which were read
+     * @throws IOException if the stream fails or ends before the length is filled
+     */
+    public synchronized byte[] read(int length) throws IOException {
+        flush();
+
+        byte[] result = new byte[length];
+        int filled = 0;
+
+        while (filled < length) {
+            if (mReceivePosition == mReceiveLimit) {
+                // a large read does not need to be buffered
+                if (length - filled >= mReceiveBuffer.length) {
+                    filled += readOnce(result, filled, length - filled);
+                    continue;
+                }
+
+                mReceivePosition = 0;
+                mReceiveLimit = readOnce(mReceiveBuffer, 0, mReceiveBuffer.length);
+            }
+
+            int numBytes = Math.min(length - filled, mReceiveLimit - mReceivePosition);
+            System.arraycopy(mReceiveBuffer, mReceivePosition, result, filled, numBytes);
+            mReceivePosition += numBytes;
+            filled += numBytes;
+        }
+
+        return result;
+    }
+
+    private int readOnce(byte[] buffer, int offset, int length) throws IOException {
+        int numBytes = mInputStream.read(buffer, offset, length);
+
+        if (numBytes < 0) {
+            throw new EOFException("The stream ended in the middle of a frame");
+        }
+        return numBytes;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.comm.CommunicationStatistics.CommandStatistics;
+import com.pileproject.drive.execution.ExecutionClock;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static com.pileproject.drive.comm.Telegrams.HEADER_LENGTH;
+
+/**
+ * A decorator of {@link ICommunicator} which records the round trip latencies, the numbers of bytes and errors
+ * per command type into {@link CommunicationStatistics}. The time to open the connection is also recorded.
+ * <p>
+ * Telegrams are supposed to be framed with the 2-byte length header and each write is supposed to start at
+ * the boundary of a frame (as those of drivecommand and {@link BatchingCommunicator}). A latency is measured
+ * from the write of a request which requires a reply to the read which completes the reply.
+ */
+public class InstrumentedCommunicator implements ICommunicator {
+
+    private static final int NO_REPLY_BIT = 0x80;
+
+    private final ICommunicator mCommunicator;
+    private final CommunicationStatistics mStatistics;
+    private final ExecutionClock mClock;
+
+    // the requests which are waiting for their replies in order
+    private final Queue<PendingRequest> mPendingRequests = new ArrayDeque<>();
+
+    // the state of parsing the reply which is being read
+    private int mHeaderBytesRead;
+    private int mReplyLength;
+    private int mReplyBytesRemaining;
+
+    private static class PendingRequest {
+        final CommandStatistics statistics;
+        final long writtenAt;
+
+        PendingRequest(CommandStatistics statistics, long writtenAt) {
+            this.statistics = statistics;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    /**
+     * @param communicator the communicator to be instrumented
+     * @param statistics the statistics to be recorded into
+     * @param clock the clock to measure latencies
+     */
+    public InstrumentedCommunicator(ICommunicator communicator, CommunicationStatistics statistics,
+                                    ExecutionClock clock) {
+        mCommunicator = communicator;
+        mStatistics = statistics;
+        mClock = clock;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        mPendingRequests.clear();
+        resetReply();
+
+        CommandStatistics connection = mStatistics.getConnection();
+        connection.recordRequest(0);
+
+        long start = mClock.nanoTime();
+        try {
+            mCommunicator.open();
+        } catch (IOException e) {
+            connection.recordError();
+            throw e;
+        } catch (RuntimeException e) {
+            connection.recordError();
+            throw e;
+        }
+
+        connection.recordReply(0, mClock.nanoTime() - start);
+    }
+
+    @Override
+    public synchronized void close() {
+        mCommunicator.close();
+    }
+
+    @Override
+    public synchronized void write(byte[] request) throws RuntimeException {
+        try {
+            mCommunicator.write(request);
+        } catch (RuntimeException e) {
+            if (request.length > HEADER_LENGTH + 1) {
+                mStatistics.get(request[HEADER_LENGTH], request[HEADER_LENGTH + 1]).recordError();
+            }
+            throw e;
+        }
+
+        long now = mClock.nanoTime();
+
+        int offset = 0;
+        while (request.length - offset > HEADER_LENGTH + 1) {
+            int length = Telegrams.getLength(request, offset);
+            int type = request[offset + HEADER_LENGTH] & 0xFF;
+
+            CommandStatistics statistics = mStatistics.get(type, request[offset + HEADER_LENGTH + 1]);
+            statistics.recordRequest(Math.min(HEADER_LENGTH + length, request.length - offset));
+
+            if ((type & NO_REPLY_BIT) == 0) {
+                mPendingRequests.add(new PendingRequest(statistics, now));
+            }
+
+            offset += HEADER_LENGTH + length;
+        }
+    }
+
+    @Override
+    public synchronized byte[] read(int length) throws RuntimeException {
+        byte[] reply;
+        try {
+            reply = mCommunicator.read(length);
+        } catch (RuntimeException e) {
+            // the reply will never be completed
+            PendingRequest request = mPendingRequests.poll();
+            if (request != null) {
+                request.statistics.recordError();
+            }
+            resetReply();
+            throw e;
+        }
+
+        for (byte b : reply) {
+            if (mHeaderBytesRead < HEADER_LENGTH) {
+                mReplyLength |= (b & 0xFF) << (8 * mHeaderBytesRead);
+                mHeaderBytesRead++;
+                mReplyBytesRemaining = mReplyLength;
+            } else {
+                mReplyBytesRemaining--;
+            }
+
+            if (mHeaderBytesRead == HEADER_LENGTH && mReplyBytesRemaining == 0) {
+                completeReply();
+            }
+        }
+
+        return reply;
+    }
+
+    private void completeReply() {
+        PendingRequest request = mPendingRequests.poll();
+        if (request != null) {
+            request.statistics.recordReply(HEADER_LENGTH + mReplyLength, mClock.nanoTime() - request.writtenAt);
+        }
+        resetReply();
+    }
+
+    private void resetReply() {
+        mHeaderBytesRead = 0;
+        mReplyLength = 0;
+        mReplyBytesRemaining = 0;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies. Latencies are counted in buckets of microseconds whose widths grow
+ * exponentially (16 buckets per power of 2), thus percentiles are accurate within about 6% at any scale.
+ * The maximum is kept exactly.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // enough for latencies up to about 2^40 us (12 days)
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+
+        mBuckets.incrementAndGet(indexOf(nanos / 1000));
+        mCount.incrementAndGet();
+
+        long max;
+        while (nanos > (max = mMaxNanos.get())) {
+            if (mMaxNanos.compareAndSet(max, nanos)) break;
+        }
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the maximum latency in nanoseconds (0 if nothing is recorded)
+     */
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    /**
+     * Gets a percentile of the recorded latencies. The value is the upper bound of the bucket which contains
+     * the percentile (but never exceeds the maximum).
+     *
+     * @param percentile the percentile in a range <code>(0, 100]</code>
+     * @return the latency in nanoseconds (0 if nothing is recorded)
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile should be in (0, 100]: " + percentile);
+        }
+
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            total += mBuckets.get(i);
+        }
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundMicrosOf(i) * 1000, getMaxNanos());
+            }
+        }
+
+        return getMaxNanos();
+    }
+
+    /**
+     * Forgets all the recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mMaxNanos.set(0);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        if (exponent == MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long upperBoundMicrosOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A connector which tries several strategies to establish a connection (e.g., the ways to open
+ * a Bluetooth socket, some of which always fail on some devices).
+ * <p>
+ * The strategy which succeeded last for a target is remembered in {@link Memory} and tried first. Each attempt
+ * is cancelled after the timeout. If the race delay is set, the next strategy starts in parallel when
+ * an attempt does not finish within the delay, and the first success wins; otherwise strategies are tried
+ * one by one. Use {@link Builder} to configure them.
+ *
+ * @param <T> the type of connections
+ */
+public class RacingConnector<T> {
+
+    /**
+     * A way to establish a connection.
+     *
+     * @param <T> the type of connections
+     */
+    public interface Strategy<T> {
+
+        /**
+         * @return the name which identifies this strategy in {@link Memory}
+         */
+        String getName();
+
+        /**
+         * @return a new attempt of this strategy
+         */
+        Attempt<T> newAttempt();
+    }
+
+    /**
+     * An attempt to establish a connection. Attempts are run in their own threads.
+     *
+     * @param <T> the type of connections
+     */
+    public interface Attempt<T> {
+
+        /**
+         * Establishes a connection. This method blocks until it succeeds, fails or is cancelled.
+         *
+         * @return the connection
+         * @throws IOException if the connection cannot be established
+         */
+        T connect() throws IOException;
+
+        /**
+         * Cancels this attempt. This is called from another thread while or after {@link #connect()} runs,
+         * and must close the connection even if it has been established (e.g., the attempt lost the race).
+         */
+        void cancel();
+    }
+
+    /**
+     * A storage of the strategies which succeeded last.
+     */
+    public interface Memory {
+
+        /**
+         * @param target the identifier of a target (e.g., a MAC address)
+         * @return the name of the strategy, or <code>null</code> if nothing is remembered
+         */
+        String getStrategy(String target);
+
+        /**
+         * @param target the identifier of a target (e.g., a MAC address)
+         * @param strategy the name of the strategy which succeeded
+         */
+        void putStrategy(String target, String strategy);
+    }
+
+    public static final long NO_RACE = -1;
+
+    private final List<Strategy<T>> mStrategies;
+    private final Memory mMemory;
+    private final long mTimeoutNanos;
+    private final long mRaceDelayNanos;
+
+    private RacingConnector(Builder<T> builder) {
+        mStrategies = Collections.unmodifiableList(new ArrayList<>(builder.mStrategies));
+        mMemory = builder.mMemory;
+        mTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.mTimeoutMillis);
+        mRaceDelayNanos = builder.mRaceDelayMillis == NO_RACE
+                ? NO_RACE : TimeUnit.MILLISECONDS.toNanos(builder.mRaceDelayMillis);
+    }
+
+    private static class Result<T> {
+        final Running<T> running;
+        final T connection;
+        final IOException error;
+
+        Result(Running<T> running, T connection, IOException error) {
+            this.running = running;
+            this.connection = connection;
+            this.error = error;
+        }
+    }
+
+    private static class Running<T> {
+        final Strategy<T> strategy;
+        final Attempt<T> attempt;
+        final long deadline;
+
+        Running(Strategy<T> strategy, Attempt<T> attempt, long deadline) {
+            this.strategy = strategy;
+            this.attempt = attempt;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Establishes a connection to a target.
+     *
+     * @param target the identifier of the target to remember the strategy (e.g., a MAC address)
+     * @return the connection established by the first successful strategy
+     * @throws IOException if all the strategies fail (the failure of the first strategy is thrown)
+     */
+    public T connect(String target) throws IOException {
+        List<Strategy<T>> strategies = order(target);
+        BlockingQueue<Result<T>> results = new LinkedBlockingQueue<>();
+        List<Running<T>> running = new ArrayList<>();
+
+        IOException failure = null;
+        int next = 0;
+        long nextStart = System.nanoTime();
+
+        try {
+            while (true) {
+                long now = System.nanoTime();
+
+                boolean canRace = mRaceDelayNanos != NO_RACE && now >= nextStart;
+                if (next < strategies.size() && (running.isEmpty() || canRace)) {
+                    running.add(start(strategies.get(next++), results, now));
+                    nextStart = now + mRaceDelayNanos;
+                    continue;
+                }
+
+                if (running.isEmpty()) {
+                    throw failure;
+                }
+
+                long wakeUp = Long.MAX_VALUE;
+                for (Running<T> r : running) {
+                    wakeUp = Math.min(wakeUp, r.deadline);
+                }
+                if (next < strategies.size() && mRaceDelayNanos != NO_RACE) {
+                    wakeUp = Math.min(wakeUp, nextStart);
+                }
+
+                Result<T> result = results.poll(Math.max(0, wakeUp - now), TimeUnit.NANOSECONDS);
+
+                if (result == null) {
+                    failure = cancelExpired(running, failure);
+                    continue;
+                }
+
+                // ignores the results of attempts which have been cancelled
+                if (!running.remove(result.running)) continue;
+
+                if (result.error != null) {
+                    if (failure == null) failure = result.error;
+                    continue;
+                }
+
+                if (mMemory != null) {
+                    mMemory.putStrategy(target, result.running.strategy.getName());
+                }
+                return result.connection;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        } finally {
+            // the losers of the race
+            for (Running<T> r : running) {
+                r.attempt.cancel();
+            }
+        }
+    }
+
+    private List<Strategy<T>> order(String target) {
+        List<Strategy<T>> strategies = new ArrayList<>(mStrategies);
+        String remembered = mMemory != null ? mMemory.getStrategy(target) : null;
+
+        for (int i = 0; i < strategies.size(); ++i) {
+            if (strategies.get(i).getName().equals(remembered)) {
+                strategies.add(0, strategies.remove(i));
+                break;
+            }
+        }
+
+        return strategies;
+    }
+
+    private Running<T> start(Strategy<T> strategy, final BlockingQueue<Result<T>> results, long now) {
+        final Running<T> running = new Running<>(strategy, strategy.newAttempt(), now + mTimeoutNanos);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results.add(new Result<>(running, running.attempt.connect(), null));
+                } catch (IOException e) {
+                    results.add(new Result<T>(running, null, e));
+                } catch (RuntimeException e) {
+                    results.add(new Result<T>(running, null, new IOException(e)));
+                }
+            }
+        }, "Connect-" + strategy.getName());
+        thread.setDaemon(true);
+        thread.start();
+
+        return running;
+    }
+
+    private IOException cancelExpired(List<Running<T>> running, IOException failure) {
+        long now = System.nanoTime();
+
+        for (int i = running.size() - 1; i >= 0; --i) {
+            Running<T> r = running.get(i);
+            if (now < r.deadline) continue;
+
+            running.remove(i);
+            r.attempt.cancel();
+
+            if (failure == null) {
+                failure = new IOException("Timed out to connect by " + r.strategy.getName());
+            }
+        }
+
+        return failure;
+    }
+
+    /**
+     * A builder class of {@link RacingConnector}.
+     * By default, strategies are tried one by one with a 10 seconds timeout and nothing is remembered.
+     *
+     * @param <T> the type of connections
+     */
+    public static class Builder<T> {
+        private final List<Strategy<T>> mStrategies = new ArrayList<>();
+        private Memory mMemory;
+        private long mTimeoutMillis = 10 * 1000;
+        private long mRaceDelayMillis = NO_RACE;
+
+        /**
+         * @param strategy a strategy to be tried (in the order of additions unless one is remembered)
+         * @return this builder
+         */
+        public Builder<T> addStrategy(Strategy<T> strategy) {
+            mStrategies.add(strategy);
+            return this;
+        }
+
+        /**
+         * @param memory the storage of the strategies which succeeded last
+         * @return this builder
+         */
+        public Builder<T> setMemory(Memory memory) {
+            mMemory = memory;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis the time after which an attempt is cancelled
+         * @return this builder
+         */
+        public Builder<T> setTimeoutMillis(long timeoutMillis) {
+            mTimeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param raceDelayMillis the time after which the next strategy starts in parallel,
+         *                        or {@link #NO_RACE} to try strategies one by one
+         * @return this builder
+         */
+        public Builder<T> setRaceDelayMillis(long raceDelayMillis) {
+            mRaceDelayMillis = raceDelayMillis;
+            return this;
+        }
+
+        public RacingConnector<T> build() {
+            if (mStrategies.isEmpty()) {
+                throw new IllegalStateException("No strategies are added");
+            }
+            return new RacingConnector<>(this);
+        }
+    }
+}
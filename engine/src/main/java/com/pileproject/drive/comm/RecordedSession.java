@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.util.io.VarIntUtil;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A session of communications which was recorded by {@link RecordingCommunicator}, to be replayed by
+ * {@link ReplayCommunicator}.
+ * <p>
+ * A session file starts with the magic "DRVS" and the version, followed by events. Each event is
+ * the type (1 byte), the time since the previous event in nanoseconds (unsigned LEB128, see: {@link VarIntUtil}),
+ * and the payload: the length (unsigned LEB128) and the bytes for {@link #EVENT_WRITE} and {@link #EVENT_READ},
+ * the type of the failed operation (1 byte) and the message (modified UTF-8) for {@link #EVENT_ERROR}, and nothing
+ * for the others. A telegram of a few bytes thus takes only a few bytes more.
+ */
+public class RecordedSession {
+
+    static final byte[] MAGIC = {'D', 'R', 'V', 'S'};
+    static final int VERSION = 1;
+
+    /** {@link com.pileproject.drivecommand.model.com.ICommunicator#open()} was called */
+    public static final int EVENT_OPEN = 1;
+
+    /** the connection was established */
+    public static final int EVENT_OPENED = 2;
+
+    /** bytes were written */
+    public static final int EVENT_WRITE = 3;
+
+    /** bytes were read */
+    public static final int EVENT_READ = 4;
+
+    /** an operation failed (see: {@link Event#getFailedOperation()}) */
+    public static final int EVENT_ERROR = 5;
+
+    /** the connection was closed */
+    public static final int EVENT_CLOSE = 6;
+
+    // far longer than any telegram, to reject a corrupted length before allocating it
+    static final int MAX_PAYLOAD_LENGTH = 64 * 1024;
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final List<Event> mEvents;
+
+    /**
+     * An event of a session.
+     */
+    public static final class Event {
+        private final int mType;
+        private final long mTimeNanos;
+        private final byte[] mBytes;
+        private final int mFailedOperation;
+        private final String mMessage;
+
+        Event(int type, long timeNanos, byte[] bytes, int failedOperation, String message) {
+            mType = type;
+            mTimeNanos = timeNanos;
+            mBytes = bytes;
+            mFailedOperation = failedOperation;
+            mMessage = message;
+        }
+
+        /**
+         * @return one of <code>EVENT_*</code> constants
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * @return the time since the recording started in nanoseconds
+         */
+        public long getTimeNanos() {
+            return mTimeNanos;
+        }
+
+        /**
+         * @return the bytes which were written or read (empty for other events)
+         */
+        public byte[] getBytes() {
+            return mBytes;
+        }
+
+        /**
+         * @return {@link #EVENT_OPEN}, {@link #EVENT_WRITE} or {@link #EVENT_READ} which failed
+         *      (0 for other events)
+         */
+        public int getFailedOperation() {
+            return mFailedOperation;
+        }
+
+        /**
+         * @return the message of an error (<code>null</code> for other events)
+         */
+        public String getMessage() {
+            return mMessage;
+        }
+    }
+
+    private RecordedSession(List<Event> events) {
+        mEvents = Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Reads a session. A session which ends in the middle of an event (e.g., the app was killed while
+     * recording) is read up to the last complete event.
+     *
+     * @param inputStream the stream of a session file
+     * @return the session
+     * @throws IOException if the stream fails or is not a (valid) session file
+     */
+    public static RecordedSession read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a session file");
+        }
+
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version of a session file: " + version);
+        }
+
+        List<Event> events = new ArrayList<>();
+        long time = 0;
+
+        try {
+            int type;
+            while ((type = input.read()) >= 0) {
+                time += VarIntUtil.readUnsigned(input);
+
+                byte[] bytes = NO_BYTES;
+                int failedOperation = 0;
+                String message = null;
+
+                switch (type) {
+                    case EVENT_WRITE:
+                    case EVENT_READ:
+                        bytes = new byte[VarIntUtil.readLength(input, MAX_PAYLOAD_LENGTH)];
+                        input.readFully(bytes);
+                        break;
+                    case EVENT_ERROR:
+                        failedOperation = input.readUnsignedByte();
+                        message = input.readUTF();
+                        break;
+                    case EVENT_OPEN:
+                    case EVENT_OPENED:
+                    case EVENT_CLOSE:
+                        break;
+                    default:
+                        throw new IOException("Unknown event: " + type);
+                }
+
+                events.add(new Event(type, time, bytes, failedOperation, message));
+            }
+        } catch (EOFException e) {
+            // truncated
+        }
+
+        return new RecordedSession(events);
+    }
+
+    /**
+     * @return all the events in the order of occurrence
+     */
+    public List<Event> getEvents() {
+        return mEvents;
+    }
+}
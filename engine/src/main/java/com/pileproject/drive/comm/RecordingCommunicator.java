@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.ExecutionClock;
+import com.pileproject.drive.util.io.VarIntUtil;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A decorator of {@link ICommunicator} which records every operation with its timestamp into a session file
+ * (see: {@link RecordedSession} for the format), so that the communications with a real machine can be replayed
+ * later by {@link ReplayCommunicator}.
+ * <p>
+ * The session is flushed whenever the connection is closed, and a session can contain several connections.
+ * A failure of the recording never affects the communication; the recording just stops
+ * (see: {@link #isRecordingFailed()}).
+ */
+public class RecordingCommunicator implements ICommunicator {
+
+    private final ICommunicator mCommunicator;
+    private final ExecutionClock mClock;
+
+    private final DataOutputStream mOutput;
+    private long mPreviousTime;
+    private boolean mIsRecordingFailed;
+
+    /**
+     * @param communicator the communicator to be recorded
+     * @param outputStream the stream to which the session is written (it is not closed by this class)
+     * @param clock the clock to timestamp the events
+     */
+    public RecordingCommunicator(ICommunicator communicator, OutputStream outputStream, ExecutionClock clock) {
+        mCommunicator = communicator;
+        mClock = clock;
+        mOutput = new DataOutputStream(new BufferedOutputStream(outputStream));
+        mPreviousTime = clock.nanoTime();
+
+        try {
+            mOutput.write(RecordedSession.MAGIC);
+            mOutput.writeByte(RecordedSession.VERSION);
+        } catch (IOException e) {
+            mIsRecordingFailed = true;
+        }
+    }
+
+    /**
+     * @return the recording has stopped because of a failure of the stream (<code>true</code>) or not
+     */
+    public synchronized boolean isRecordingFailed() {
+        return mIsRecordingFailed;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        record(RecordedSession.EVENT_OPEN, null, 0);
+
+        try {
+            mCommunicator.open();
+        } catch (IOException e) {
+            recordError(RecordedSession.EVENT_OPEN, e);
+            throw e;
+        } catch (RuntimeException e) {
+            recordError(RecordedSession.EVENT_OPEN, e);
+            throw e;
+        }
+
+        record(RecordedSession.EVENT_OPENED, null, 0);
+    }
+
+    @Override
+    public synchronized void close() {
+        mCommunicator.close();
+
+        record(RecordedSession.EVENT_CLOSE, null, 0);
+        flush();
+    }
+
+    @Override
+    public synchronized void write(byte[] request) throws RuntimeException {
+        // recorded before the request is sent, thus a failure follows the request which failed
+        record(RecordedSession.EVENT_WRITE, request, request.length);
+
+        try {
+            mCommunicator.write(request);
+        } catch (RuntimeException e) {
+            recordError(RecordedSession.EVENT_WRITE, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized byte[] read(int length) throws RuntimeException {
+        byte[] reply;
+
+        try {
+            reply = mCommunicator.read(length);
+        } catch (RuntimeException e) {
+            recordError(RecordedSession.EVENT_READ, e);
+            throw e;
+        }
+
+        record(RecordedSession.EVENT_READ, reply, reply.length);
+        return reply;
+    }
+
+    private void recordError(int operation, Exception e) {
+        if (mIsRecordingFailed) return;
+
+        try {
+            writeHeader(RecordedSession.EVENT_ERROR);
+            mOutput.writeByte(operation);
+            mOutput.writeUTF(String.valueOf(e.getMessage()));
+        } catch (IOException ioException) {
+            mIsRecordingFailed = true;
+        }
+    }
+
+    private void record(int type, byte[] bytes, int length) {
+        if (mIsRecordingFailed) return;
+
+        try {
+            writeHeader(type);
+
+            if (bytes != null) {
+                VarIntUtil.writeUnsigned(mOutput, length);
+                mOutput.write(bytes, 0, length);
+            }
+        } catch (IOException e) {
+            mIsRecordingFailed = true;
+        }
+    }
+
+    private void writeHeader(int type) throws IOException {
+        // timestamps never go backward so that the deltas are unsigned
+        long time = Math.max(mClock.nanoTime(), mPreviousTime);
+
+        mOutput.writeByte(type);
+        VarIntUtil.writeUnsigned(mOutput, time - mPreviousTime);
+        mPreviousTime = time;
+    }
+
+    private void flush() {
+        if (mIsRecordingFailed) return;
+
+        try {
+            mOutput.flush();
+        } catch (IOException e) {
+            mIsRecordingFailed = true;
+        }
+    }
+}
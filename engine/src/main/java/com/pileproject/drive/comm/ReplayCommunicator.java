@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.comm.RecordedSession.Event;
+import com.pileproject.drive.execution.ExecutionClock;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An implementation of {@link ICommunicator} which serves the replies of a {@link RecordedSession} instead of
+ * a real machine, so that a recorded session can be executed again deterministically (e.g., to compare
+ * the throughput of engine builds or to reproduce a timing issue).
+ * <p>
+ * Recorded reads are served as a stream in order, thus they can be read in pieces of any lengths. A recorded
+ * failure is thrown again at the same point. Writes are compared with the recorded ones, and differences are
+ * counted (see: {@link #getMismatchCount()}) instead of failing, because a new build may send different
+ * commands (e.g., fewer redundant commands).
+ * <p>
+ * With {@link Pacing#ORIGINAL}, each reply (and each connection) takes the same time after the previous
+ * operation as recorded, that is, the latencies of the machine are reproduced while the time spent by the app
+ * is not. With {@link Pacing#FAST}, replies are served without waiting.
+ */
+public class ReplayCommunicator implements ICommunicator {
+
+    /**
+     * The timing of replays.
+     */
+    public enum Pacing {
+        ORIGINAL,
+        FAST
+    }
+
+    private final List<Event> mEvents;
+    private final Pacing mPacing;
+    private final ExecutionClock mClock;
+
+    // the index of the next event to be replayed
+    private int mIndex;
+
+    // the number of bytes of the next event which have already been read
+    private int mOffset;
+
+    // the recorded time and the replayed time of the latest operation
+    private long mRecordedTime;
+    private long mReplayedTime;
+
+    private boolean mIsOpen;
+    private int mMismatchCount;
+
+    /**
+     * @param session the session to be replayed
+     * @param pacing the timing of replies
+     * @param clock the clock to pace replies
+     */
+    public ReplayCommunicator(RecordedSession session, Pacing pacing, ExecutionClock clock) {
+        mEvents = session.getEvents();
+        mPacing = pacing;
+        mClock = clock;
+    }
+
+    /**
+     * @return the number of writes (and reads which were left unread) which differ from the recorded ones
+     */
+    public synchronized int getMismatchCount() {
+        return mMismatchCount;
+    }
+
+    /**
+     * @return all the events have been replayed (<code>true</code>) or not (<code>false</code>)
+     */
+    public synchronized boolean isFinished() {
+        return mIndex >= mEvents.size();
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        Event open = skipTo(RecordedSession.EVENT_OPEN);
+        if (open == null) {
+            throw new IOException("No more connections were recorded");
+        }
+        sync(open);
+
+        Event result = next();
+        if (result == null) {
+            throw new IOException("The recorded connection was not established");
+        }
+        await(result);
+
+        if (result.getType() == RecordedSession.EVENT_ERROR) {
+            throw new IOException(result.getMessage());
+        }
+
+        mIsOpen = true;
+    }
+
+    @Override
+    public synchronized void close() {
+        mIsOpen = false;
+
+        Event next = peek();
+        if (next != null && next.getType() == RecordedSession.EVENT_CLOSE) {
+            next();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] request) throws RuntimeException {
+        checkOpen();
+
+        Event write = skipTo(RecordedSession.EVENT_WRITE);
+        if (write == null) {
+            mMismatchCount++;
+            return;
+        }
+        sync(write);
+
+        if (!Arrays.equals(write.getBytes(), request)) {
+            mMismatchCount++;
+        }
+
+        Event next = peek();
+        if (next != null && next.getType() == RecordedSession.EVENT_ERROR
+                && next.getFailedOperation() == RecordedSession.EVENT_WRITE) {
+            next();
+            throw new RuntimeException(new IOException(next.getMessage()));
+        }
+    }
+
+    @Override
+    public synchronized byte[] read(int length) throws RuntimeException {
+        checkOpen();
+
+        byte[] result = new byte[length];
+        int filled = 0;
+
+        while (filled < length) {
+            Event event = peek();
+
+            boolean isReply = event != null && (event.getType() == RecordedSession.EVENT_READ
+                    || event.getType() == RecordedSession.EVENT_ERROR
+                    && event.getFailedOperation() == RecordedSession.EVENT_READ);
+
+            if (!isReply) {
+                throw new RuntimeException(new IOException("No more replies were recorded"));
+            }
+
+            if (mOffset == 0) {
+                // the reply arrives as recorded
+                await(event);
+            }
+
+            if (event.getType() == RecordedSession.EVENT_ERROR) {
+                next();
+                throw new RuntimeException(new IOException(event.getMessage()));
+            }
+
+            byte[] bytes = event.getBytes();
+            int numBytes = Math.min(length - filled, bytes.length - mOffset);
+            System.arraycopy(bytes, mOffset, result, filled, numBytes);
+            filled += numBytes;
+            mOffset += numBytes;
+
+            if (mOffset == bytes.length) {
+                next();
+            }
+        }
+
+        return result;
+    }
+
+    private void checkOpen() throws RuntimeException {
+        if (!mIsOpen) {
+            throw new RuntimeException(new IOException("The connection is not opened"));
+        }
+    }
+
+    private Event peek() {
+        return mIndex < mEvents.size() ? mEvents.get(mIndex) : null;
+    }
+
+    private Event next() {
+        Event event = peek();
+        if (event != null) {
+            mIndex++;
+            mOffset = 0;
+        }
+        return event;
+    }
+
+    // skips the events before the next event of the type (a reply which was not read is a mismatch)
+    private Event skipTo(int type) {
+        boolean isReplySkipped = false;
+        Event event;
+
+        while ((event = next()) != null && event.getType() != type) {
+            isReplySkipped |= event.getType() == RecordedSession.EVENT_READ;
+        }
+
+        if (isReplySkipped) {
+            mMismatchCount++;
+        }
+
+        return event;
+    }
+
+    // an operation of the app, which is not paced
+    private void sync(Event event) {
+        mRecordedTime = event.getTimeNanos();
+        mReplayedTime = mClock.nanoTime();
+    }
+
+    // an operation of the machine, which takes the recorded time after the previous operation
+    private void await(Event event) throws RuntimeException {
+        if (mPacing == Pacing.ORIGINAL) {
+            long time = mReplayedTime + (event.getTimeNanos() - mRecordedTime);
+            long remaining;
+
+            while ((remaining = time - mClock.nanoTime()) > 0) {
+                try {
+                    mClock.sleepNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        sync(event);
+    }
+}
@@ -0,0 +1,489 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.ExecutionClock;
+
+/**
+ * A simulated LEGO MINDSTORMS NXT brick which answers direct command telegrams
+ * (see: LEGO MINDSTORMS NXT Bluetooth Developer Kit, Appendix 2).
+ * <p>
+ * The brick has 3 motors (port A, B and C) and 4 sensors (port 1, 2, 3 and 4) with a simple physics model:
+ * <ul>
+ *     <li>the speed of a motor follows its power with a first order lag,
+ *     and the tacho counts are the integral of the speed</li>
+ *     <li>the machine moves by the mean rotation of the motors which have been powered, and touch sensors are pressed
+ *     while the machine is on or over a wall (see: {@link #setWallDistance(int)})</li>
+ *     <li>light and sound sensors read the levels which are set from outside</li>
+ * </ul>
+ * All sensors are active-low as the real ones (e.g., a pressed touch sensor has a small raw value).
+ * <p>
+ * This class is thread-safe so that tests can change the world while a program is executed.
+ */
+public class SimulatedNxt {
+
+    // the types of telegrams
+    static final int DIRECT_COMMAND_REPLY = 0x00;
+    static final int SYSTEM_COMMAND_REPLY = 0x01;
+    static final int REPLY = 0x02;
+    static final int NO_REPLY = 0x80;
+
+    // the opcodes of direct commands
+    static final int PLAY_TONE = 0x03;
+    static final int SET_OUTPUT_STATE = 0x04;
+    static final int SET_INPUT_MODE = 0x05;
+    static final int GET_OUTPUT_STATE = 0x06;
+    static final int GET_INPUT_VALUES = 0x07;
+    static final int RESET_INPUT_SCALED_VALUE = 0x08;
+    static final int RESET_MOTOR_POSITION = 0x0A;
+    static final int GET_BATTERY_LEVEL = 0x0B;
+    static final int STOP_SOUND_PLAYBACK = 0x0C;
+    static final int KEEP_ALIVE = 0x0D;
+
+    // the statuses of replies
+    static final int SUCCESS = 0x00;
+    static final int UNKNOWN_OPCODE = 0xBE;
+    static final int INSANE_PACKET = 0xBF;
+    static final int OUT_OF_RANGE = 0xC0;
+
+    // the modes and the run states of motors
+    static final int MODE_MOTOR_ON = 0x01;
+    static final int MODE_BRAKE = 0x02;
+    static final int RUN_STATE_IDLE = 0x00;
+    static final int RUN_STATE_RUNNING = 0x20;
+    static final int ALL_MOTORS = 0xFF;
+
+    // the types and the modes of sensors
+    static final int SENSOR_NONE = 0x00;
+    static final int SENSOR_SWITCH = 0x01;
+    static final int SENSOR_LIGHT_ACTIVE = 0x05;
+    static final int SENSOR_LIGHT_INACTIVE = 0x06;
+    static final int SENSOR_SOUND_DB = 0x07;
+    static final int SENSOR_SOUND_DBA = 0x08;
+    static final int SENSOR_MODE_RAW = 0x00;
+    static final int SENSOR_MODE_BOOLEAN = 0x20;
+    static final int SENSOR_MODE_PERCENT = 0x80;
+    static final int SENSOR_MODE_MASK = 0xE0;
+
+    private static final int NUMBER_OF_MOTORS = 3;
+    private static final int NUMBER_OF_SENSORS = 4;
+
+    // about 170 rpm with full power
+    private static final double MAX_DEGREES_PER_SEC = 1020.0;
+
+    // the time constants of the speed of motors
+    private static final double DRIVEN_TIME_CONSTANT_SEC = 0.1;
+    private static final double COASTING_TIME_CONSTANT_SEC = 0.5;
+
+    private static final double MAX_STEP_SEC = 0.005;
+    private static final double RESTING_DEGREES_PER_SEC = 0.01;
+
+    private static final int MAX_RAW_VALUE = 1023;
+    private static final int TOUCHED_RAW_VALUE = 183;
+    private static final int BOOLEAN_THRESHOLD = 460;
+
+    // the sleep time limit which is answered to keep alive commands (10 min)
+    private static final long SLEEP_TIME_LIMIT_MILLIS = 600000;
+
+    private static final int NO_WALL = Integer.MAX_VALUE;
+
+    private final ExecutionClock mClock;
+
+    private final Motor[] mMotors = new Motor[NUMBER_OF_MOTORS];
+    private final int[] mSensorTypes = new int[NUMBER_OF_SENSORS];
+    private final int[] mSensorModes = new int[NUMBER_OF_SENSORS];
+
+    private long mLastUpdate;
+
+    private int mWallDistance = NO_WALL;
+    private boolean mIsTouched;
+    private int mLightPercent;
+    private int mSoundPercent;
+    private int mBatteryMillivolts = 8000;
+
+    public SimulatedNxt(ExecutionClock clock) {
+        mClock = clock;
+        mLastUpdate = clock.nanoTime();
+
+        for (int i = 0; i < NUMBER_OF_MOTORS; ++i) {
+            mMotors[i] = new Motor();
+        }
+    }
+
+    /**
+     * Sets the distance to a wall in degrees of the rotation of motors. Touch sensors are pressed while
+     * the machine is on or over the wall.
+     *
+     * @param degrees the distance from the start position
+     */
+    public synchronized void setWallDistance(int degrees) {
+        mWallDistance = degrees;
+    }
+
+    /**
+     * Presses or releases touch sensors regardless of the wall.
+     *
+     * @param touched pressed (<code>true</code>) or released (<code>false</code>)
+     */
+    public synchronized void setTouched(boolean touched) {
+        mIsTouched = touched;
+    }
+
+    /**
+     * @param percent the amount of light which light sensors receive (0-100)
+     */
+    public synchronized void setLightPercent(int percent) {
+        mLightPercent = percent;
+    }
+
+    /**
+     * @param percent the loudness which sound sensors hear (0-100)
+     */
+    public synchronized void setSoundPercent(int percent) {
+        mSoundPercent = percent;
+    }
+
+    /**
+     * @param millivolts the voltage of the battery
+     */
+    public synchronized void setBatteryMillivolts(int millivolts) {
+        mBatteryMillivolts = millivolts;
+    }
+
+    /**
+     * Gets the rotation count (the position which is not reset by commands except for absolute resets)
+     * of a motor.
+     *
+     * @param port the port of the motor (0: A, 1: B, 2: C)
+     * @return the rotation count in degrees
+     */
+    public synchronized int getRotationCount(int port) {
+        update();
+        return (int) mMotors[port].rotationCount;
+    }
+
+    /**
+     * Gets the power of a motor which was set last.
+     *
+     * @param port the port of the motor (0: A, 1: B, 2: C)
+     * @return the power (-100-100)
+     */
+    public synchronized int getPower(int port) {
+        return mMotors[port].power;
+    }
+
+    /**
+     * Handles a telegram and returns the reply.
+     *
+     * @param telegram a telegram without the length header
+     * @return the reply telegram without the length header, or <code>null</code> if no reply is required
+     */
+    public synchronized byte[] handle(byte[] telegram) {
+        update();
+
+        if (telegram.length < 2) {
+            return null;
+        }
+
+        int type = telegram[0] & 0xFF;
+        int opcode = telegram[1] & 0xFF;
+
+        byte[] reply;
+        if ((type & ~NO_REPLY) == DIRECT_COMMAND_REPLY) {
+            reply = handleDirectCommand(opcode, telegram);
+        } else {
+            // system commands (e.g., file operations) are not supported
+            reply = status(opcode, UNKNOWN_OPCODE);
+        }
+
+        return (type & NO_REPLY) == 0 ? reply : null;
+    }
+
+    private byte[] handleDirectCommand(int opcode, byte[] telegram) {
+        switch (opcode) {
+            case SET_OUTPUT_STATE:
+                return setOutputState(telegram);
+            case SET_INPUT_MODE:
+                return setInputMode(telegram);
+            case GET_OUTPUT_STATE:
+                return getOutputState(telegram);
+            case GET_INPUT_VALUES:
+                return getInputValues(telegram);
+            case RESET_MOTOR_POSITION:
+                return resetMotorPosition(telegram);
+            case GET_BATTERY_LEVEL:
+                return putShort(status(opcode, SUCCESS, 2), 3, mBatteryMillivolts);
+            case KEEP_ALIVE:
+                return putInt(status(opcode, SUCCESS, 4), 3, (int) SLEEP_TIME_LIMIT_MILLIS);
+            case PLAY_TONE:
+            case STOP_SOUND_PLAYBACK:
+            case RESET_INPUT_SCALED_VALUE:
+                return status(opcode, SUCCESS);
+            default:
+                return status(opcode, UNKNOWN_OPCODE);
+        }
+    }
+
+    private byte[] setOutputState(byte[] telegram) {
+        if (telegram.length < 12) return status(SET_OUTPUT_STATE, INSANE_PACKET);
+
+        int port = telegram[2] & 0xFF;
+        if (port != ALL_MOTORS && port >= NUMBER_OF_MOTORS) return status(SET_OUTPUT_STATE, OUT_OF_RANGE);
+
+        for (int i = 0; i < NUMBER_OF_MOTORS; ++i) {
+            if (port != ALL_MOTORS && port != i) continue;
+
+            Motor motor = mMotors[i];
+            motor.power = telegram[3];
+            motor.mode = telegram[4] & 0xFF;
+            motor.regulationMode = telegram[5] & 0xFF;
+            motor.turnRatio = telegram[6];
+            motor.runState = telegram[7] & 0xFF;
+            motor.tachoLimit = getInt(telegram, 8) & 0xFFFFFFFFL;
+            motor.hasBeenPowered |= motor.isDriven() && motor.power != 0;
+
+            // a new limit is counted from here
+            if (motor.tachoLimit > 0) {
+                motor.tachoCount = 0;
+            }
+        }
+
+        return status(SET_OUTPUT_STATE, SUCCESS);
+    }
+
+    private byte[] setInputMode(byte[] telegram) {
+        if (telegram.length < 5) return status(SET_INPUT_MODE, INSANE_PACKET);
+
+        int port = telegram[2] & 0xFF;
+        if (port >= NUMBER_OF_SENSORS) return status(SET_INPUT_MODE, OUT_OF_RANGE);
+
+        mSensorTypes[port] = telegram[3] & 0xFF;
+        mSensorModes[port] = telegram[4] & 0xFF;
+
+        return status(SET_INPUT_MODE, SUCCESS);
+    }
+
+    private byte[] getOutputState(byte[] telegram) {
+        if (telegram.length < 3) return status(GET_OUTPUT_STATE, INSANE_PACKET);
+
+        int port = telegram[2] & 0xFF;
+        if (port >= NUMBER_OF_MOTORS) return status(GET_OUTPUT_STATE, OUT_OF_RANGE, 22);
+
+        Motor motor = mMotors[port];
+
+        byte[] reply = status(GET_OUTPUT_STATE, SUCCESS, 22);
+        reply[3] = (byte) port;
+        reply[4] = (byte) motor.power;
+        reply[5] = (byte) motor.mode;
+        reply[6] = (byte) motor.regulationMode;
+        reply[7] = (byte) motor.turnRatio;
+        reply[8] = (byte) motor.runState;
+        putInt(reply, 9, (int) motor.tachoLimit);
+        putInt(reply, 13, (int) motor.tachoCount);
+        putInt(reply, 17, (int) motor.blockTachoCount);
+        putInt(reply, 21, (int) motor.rotationCount);
+
+        return reply;
+    }
+
+    private byte[] getInputValues(byte[] telegram) {
+        if (telegram.length < 3) return status(GET_INPUT_VALUES, INSANE_PACKET);
+
+        int port = telegram[2] & 0xFF;
+        if (port >= NUMBER_OF_SENSORS) return status(GET_INPUT_VALUES, OUT_OF_RANGE, 13);
+
+        int type = mSensorTypes[port];
+        int mode = mSensorModes[port];
+        int raw = readRawValue(type);
+
+        byte[] reply = status(GET_INPUT_VALUES, SUCCESS, 13);
+        reply[3] = (byte) port;
+        reply[4] = (byte) (type == SENSOR_NONE ? 0 : 1); // valid
+        reply[5] = 0; // not calibrated
+        reply[6] = (byte) type;
+        reply[7] = (byte) mode;
+        putShort(reply, 8, raw);
+        putShort(reply, 10, raw); // normalized
+        putShort(reply, 12, scale(raw, mode));
+        putShort(reply, 14, 0);
+
+        return reply;
+    }
+
+    private byte[] resetMotorPosition(byte[] telegram) {
+        if (telegram.length < 4) return status(RESET_MOTOR_POSITION, INSANE_PACKET);
+
+        int port = telegram[2] & 0xFF;
+        if (port >= NUMBER_OF_MOTORS) return status(RESET_MOTOR_POSITION, OUT_OF_RANGE);
+
+        if (telegram[3] != 0) {
+            mMotors[port].blockTachoCount = 0; // relative to the last movement
+        } else {
+            mMotors[port].rotationCount = 0; // absolute
+        }
+
+        return status(RESET_MOTOR_POSITION, SUCCESS);
+    }
+
+    private int readRawValue(int type) {
+        switch (type) {
+            case SENSOR_SWITCH:
+                return isTouched() ? TOUCHED_RAW_VALUE : MAX_RAW_VALUE;
+            case SENSOR_LIGHT_ACTIVE:
+            case SENSOR_LIGHT_INACTIVE:
+                return toRawValue(mLightPercent);
+            case SENSOR_SOUND_DB:
+            case SENSOR_SOUND_DBA:
+                return toRawValue(mSoundPercent);
+            default:
+                return MAX_RAW_VALUE;
+        }
+    }
+
+    private boolean isTouched() {
+        return mIsTouched || getTravel() >= mWallDistance;
+    }
+
+    private static int toRawValue(int percent) {
+        int clamped = Math.max(0, Math.min(100, percent));
+        return MAX_RAW_VALUE - clamped * MAX_RAW_VALUE / 100;
+    }
+
+    private static int scale(int raw, int mode) {
+        switch (mode & SENSOR_MODE_MASK) {
+            case SENSOR_MODE_BOOLEAN:
+                return raw < BOOLEAN_THRESHOLD ? 1 : 0;
+            case SENSOR_MODE_PERCENT:
+                return (MAX_RAW_VALUE - raw) * 100 / MAX_RAW_VALUE;
+            default:
+                // other modes (e.g., counting transitions) are not simulated
+                return raw;
+        }
+    }
+
+    private double getTravel() {
+        double sum = 0;
+        int count = 0;
+
+        for (Motor motor : mMotors) {
+            if (!motor.hasBeenPowered) continue;
+
+            sum += motor.rotationCount;
+            count++;
+        }
+
+        return count == 0 ? 0 : sum / count;
+    }
+
+    private void update() {
+        long now = mClock.nanoTime();
+        double seconds = (now - mLastUpdate) / 1e9;
+        mLastUpdate = now;
+
+        // small steps so that motors stop at their limits
+        while (seconds > 0 && !isResting()) {
+            double step = Math.min(seconds, MAX_STEP_SEC);
+            seconds -= step;
+
+            for (Motor motor : mMotors) {
+                motor.update(step);
+            }
+        }
+    }
+
+    private boolean isResting() {
+        for (Motor motor : mMotors) {
+            if (motor.isDriven() || Math.abs(motor.speed) > RESTING_DEGREES_PER_SEC) return false;
+        }
+        return true;
+    }
+
+    private static byte[] status(int opcode, int status) {
+        return status(opcode, status, 0);
+    }
+
+    private static byte[] status(int opcode, int status, int payloadLength) {
+        byte[] reply = new byte[3 + payloadLength];
+        reply[0] = REPLY;
+        reply[1] = (byte) opcode;
+        reply[2] = (byte) status;
+        return reply;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private static byte[] putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        return bytes;
+    }
+
+    private static byte[] putInt(byte[] bytes, int offset, int value) {
+        putShort(bytes, offset, value);
+        putShort(bytes, offset + 2, value >> 16);
+        return bytes;
+    }
+
+    /**
+     * The state of a motor. The counts are kept in double so that slow rotations are accumulated.
+     */
+    private static class Motor {
+        int power;
+        int mode;
+        int regulationMode;
+        int turnRatio;
+        int runState = RUN_STATE_IDLE;
+        long tachoLimit;
+
+        double speed; // degrees per second
+        double tachoCount;
+        double blockTachoCount;
+        double rotationCount;
+
+        boolean hasBeenPowered;
+
+        boolean isDriven() {
+            return (mode & MODE_MOTOR_ON) != 0 && runState != RUN_STATE_IDLE;
+        }
+
+        void update(double seconds) {
+            boolean isDriven = isDriven();
+            double target = isDriven ? power * MAX_DEGREES_PER_SEC / 100 : 0;
+            double timeConstant = (isDriven || (mode & MODE_BRAKE) != 0)
+                    ? DRIVEN_TIME_CONSTANT_SEC : COASTING_TIME_CONSTANT_SEC;
+
+            // the exact solution of the first order lag
+            double decay = Math.exp(-seconds / timeConstant);
+            double degrees = target * seconds + (speed - target) * timeConstant * (1 - decay);
+            speed = target + (speed - target) * decay;
+
+            tachoCount += degrees;
+            blockTachoCount += degrees;
+            rotationCount += degrees;
+
+            // stop when the motor reaches the limit
+            if (tachoLimit > 0 && Math.abs(tachoCount) >= tachoLimit) {
+                runState = RUN_STATE_IDLE;
+                tachoLimit = 0;
+            }
+        }
+    }
+}
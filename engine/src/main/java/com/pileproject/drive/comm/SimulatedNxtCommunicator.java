@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.ExecutionClock;
+import com.pileproject.drive.execution.SystemExecutionClock;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.pileproject.drive.comm.Telegrams.HEADER_LENGTH;
+
+/**
+ * An implementation of {@link ICommunicator} which talks to a {@link SimulatedNxt} in the same process
+ * instead of a real machine. This enables executions of programs without any machines or Bluetooth stacks
+ * (e.g., on emulators, in benchmarks and tests).
+ * <p>
+ * Telegrams are framed with the 2-byte length header as those over Bluetooth. Each reply arrives after
+ * the latency with a uniform jitter, and telegrams can be lost at the loss rate. When a reply is lost,
+ * {@link #read(int)} fails after the read timeout like a broken connection.
+ * Use {@link Builder} to configure them.
+ */
+public class SimulatedNxtCommunicator implements ICommunicator {
+
+    private final SimulatedNxt mNxt;
+    private final ExecutionClock mClock;
+    private final long mLatencyNanos;
+    private final long mJitterNanos;
+    private final double mLossRate;
+    private final long mReadTimeoutNanos;
+    private final Random mRandom;
+
+    private boolean mIsOpen;
+
+    // the bytes which were written but have not formed a telegram yet
+    private byte[] mRequest = new byte[64];
+    private int mRequestLength;
+
+    private final Queue<Reply> mReplies = new ArrayDeque<>();
+    private long mLastArrival;
+
+    private SimulatedNxtCommunicator(Builder builder) {
+        mClock = builder.mClock;
+        mNxt = builder.mNxt != null ? builder.mNxt : new SimulatedNxt(mClock);
+        mLatencyNanos = TimeUnit.MILLISECONDS.toNanos(builder.mLatencyMillis);
+        mJitterNanos = TimeUnit.MILLISECONDS.toNanos(builder.mJitterMillis);
+        mLossRate = builder.mLossRate;
+        mReadTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.mReadTimeoutMillis);
+        mRandom = new Random(builder.mSeed);
+    }
+
+    /**
+     * @return the simulated machine which this communicator talks to
+     */
+    public SimulatedNxt getNxt() {
+        return mNxt;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        mIsOpen = true;
+        mRequestLength = 0;
+        mReplies.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        mIsOpen = false;
+    }
+
+    @Override
+    public synchronized void write(byte[] request) throws RuntimeException {
+        checkOpen();
+
+        if (mRequestLength + request.length > mRequest.length) {
+            mRequest = Arrays.copyOf(mRequest, Math.max(mRequest.length * 2, mRequestLength + request.length));
+        }
+        System.arraycopy(request, 0, mRequest, mRequestLength, request.length);
+        mRequestLength += request.length;
+
+        int consumed = 0;
+        while (mRequestLength - consumed >= HEADER_LENGTH) {
+            int length = Telegrams.getLength(mRequest, consumed);
+            if (mRequestLength - consumed - HEADER_LENGTH < length) break;
+
+            int offset = consumed + HEADER_LENGTH;
+            consumed = offset + length;
+
+            // the telegram is lost before it reaches the machine
+            if (mRandom.nextDouble() < mLossRate) continue;
+
+            byte[] reply = mNxt.handle(Arrays.copyOfRange(mRequest, offset, offset + length));
+            if (reply != null) {
+                mReplies.add(new Reply(Telegrams.frame(reply), arrivalTime()));
+            }
+        }
+
+        System.arraycopy(mRequest, consumed, mRequest, 0, mRequestLength - consumed);
+        mRequestLength -= consumed;
+    }
+
+    @Override
+    public synchronized byte[] read(int length) throws RuntimeException {
+        checkOpen();
+
+        Reply reply = mReplies.peek();
+        if (reply == null) {
+            // no reply will come (e.g., it was lost)
+            sleepUntil(mClock.nanoTime() + mReadTimeoutNanos);
+            throw new RuntimeException(new IOException("Timed out while waiting for a reply"));
+        }
+
+        sleepUntil(reply.arrival);
+
+        int numBytes = Math.min(length, reply.frame.length - reply.offset);
+        byte[] result = Arrays.copyOfRange(reply.frame, reply.offset, reply.offset + numBytes);
+
+        reply.offset += numBytes;
+        if (reply.offset == reply.frame.length) {
+            mReplies.poll();
+        }
+
+        return result;
+    }
+
+    private void checkOpen() throws RuntimeException {
+        if (!mIsOpen) {
+            throw new RuntimeException(new IOException("The connection is not opened"));
+        }
+    }
+
+    private long arrivalTime() {
+        long jitter = mJitterNanos == 0 ? 0 : (long) ((mRandom.nextDouble() * 2 - 1) * mJitterNanos);
+        long arrival = mClock.nanoTime() + Math.max(0, mLatencyNanos + jitter);
+
+        // replies never overtake each other as those over a stream
+        mLastArrival = Math.max(arrival, mLastArrival);
+        return mLastArrival;
+    }
+
+    private void sleepUntil(long time) throws RuntimeException {
+        long remaining;
+        while ((remaining = time - mClock.nanoTime()) > 0) {
+            try {
+                mClock.sleepNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class Reply {
+        final byte[] frame;
+        final long arrival;
+        int offset;
+
+        Reply(byte[] frame, long arrival) {
+            this.frame = frame;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * A builder class of {@link SimulatedNxtCommunicator}.
+     * The default is a lossless connection with the latency of Bluetooth (30 ms with 5 ms jitter).
+     */
+    public static class Builder {
+        private SimulatedNxt mNxt;
+        private ExecutionClock mClock = new SystemExecutionClock();
+        private long mLatencyMillis = 30;
+        private long mJitterMillis = 5;
+        private double mLossRate = 0;
+        private long mReadTimeoutMillis = 1000;
+        private long mSeed = System.nanoTime();
+
+        /**
+         * @param nxt the machine to be talked to (a new machine is created by default)
+         * @return this builder
+         */
+        public Builder setNxt(SimulatedNxt nxt) {
+            mNxt = nxt;
+            return this;
+        }
+
+        /**
+         * @param clock the clock which measures the latency and the physics of the machine
+         * @return this builder
+         */
+        public Builder setClock(ExecutionClock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        /**
+         * @param latencyMillis the time from a request to its reply
+         * @return this builder
+         */
+        public Builder setLatencyMillis(long latencyMillis) {
+            mLatencyMillis = latencyMillis;
+            return this;
+        }
+
+        /**
+         * @param jitterMillis the maximum difference from the latency
+         * @return this builder
+         */
+        public Builder setJitterMillis(long jitterMillis) {
+            mJitterMillis = jitterMillis;
+            return this;
+        }
+
+        /**
+         * @param lossRate the probability that a telegram is lost (0-1)
+         * @return this builder
+         */
+        public Builder setLossRate(double lossRate) {
+            mLossRate = lossRate;
+            return this;
+        }
+
+        /**
+         * @param readTimeoutMillis the time to wait for a reply which will never come
+         * @return this builder
+         */
+        public Builder setReadTimeoutMillis(long readTimeoutMillis) {
+            mReadTimeoutMillis = readTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param seed the seed of the jitter and the loss, which makes a simulation reproducible
+         * @return this builder
+         */
+        public Builder setSeed(long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        public SimulatedNxtCommunicator build() {
+            return new SimulatedNxtCommunicator(this);
+        }
+    }
+}
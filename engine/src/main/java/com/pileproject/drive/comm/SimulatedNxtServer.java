@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.SystemExecutionClock;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.pileproject.drive.comm.Telegrams.HEADER_LENGTH;
+
+/**
+ * A TCP server which serves a {@link SimulatedNxt}, that is, a stand-in for a bridge between TCP and a real
+ * machine. This enables {@link WifiCommunicator} to be tested and measured without any machines.
+ * <p>
+ * Telegrams are framed with the 2-byte length header in both directions. Each client is served by its own
+ * thread, and all the clients talk to the same machine.
+ */
+public class SimulatedNxtServer {
+
+    private final SimulatedNxt mNxt;
+    private final ServerSocket mServerSocket;
+    private final List<Socket> mClients = new ArrayList<>();
+
+    /**
+     * Starts a server on an ephemeral port of the loopback address.
+     *
+     * @param nxt the machine to be served (a new one if <code>null</code>)
+     * @throws IOException if the server cannot be started
+     */
+    public SimulatedNxtServer(SimulatedNxt nxt) throws IOException {
+        mNxt = nxt != null ? nxt : new SimulatedNxt(new SystemExecutionClock());
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "SimulatedNxtServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return the simulated machine which this server serves
+     */
+    public SimulatedNxt getNxt() {
+        return mNxt;
+    }
+
+    /**
+     * @return the port which this server listens to
+     */
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Stops the server and disconnects all the clients.
+     */
+    public void close() {
+        closeQuietly(mServerSocket);
+
+        synchronized (mClients) {
+            for (Socket client : mClients) {
+                closeQuietly(client);
+            }
+            mClients.clear();
+        }
+    }
+
+    private void accept() {
+        while (!mServerSocket.isClosed()) {
+            final Socket client;
+            try {
+                client = mServerSocket.accept();
+                client.setTcpNoDelay(true);
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+
+            synchronized (mClients) {
+                mClients.add(client);
+            }
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(client);
+                }
+            }, "SimulatedNxtServer-" + client.getPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            DataInputStream input = new DataInputStream(client.getInputStream());
+            OutputStream output = client.getOutputStream();
+            byte[] header = new byte[HEADER_LENGTH];
+
+            while (true) {
+                input.readFully(header);
+                byte[] telegram = new byte[Telegrams.getLength(header, 0)];
+                input.readFully(telegram);
+
+                byte[] reply = mNxt.handle(telegram);
+                if (reply == null) continue;
+
+                output.write(Telegrams.frame(reply));
+                output.flush();
+            }
+        } catch (IOException e) {
+            // disconnected by the client or the server was closed
+        } finally {
+            closeQuietly(client);
+
+            synchronized (mClients) {
+                mClients.remove(client);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // no-op
+        }
+    }
+}
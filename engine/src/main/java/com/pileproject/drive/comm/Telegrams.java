@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+/**
+ * Helpers for the frames of telegrams which are sent to and received from machines via Bluetooth or Wi-Fi.
+ * A frame is a telegram preceded by a header, which is the length of the telegram in 2 bytes (little endian).
+ */
+final class Telegrams {
+
+    /** the length of the header of a frame */
+    static final int HEADER_LENGTH = 2;
+
+    private Telegrams() {
+        throw new AssertionError("This class cannot be instantiated");
+    }
+
+    /**
+     * @param telegram a telegram
+     * @return the frame of the telegram
+     */
+    static byte[] frame(byte[] telegram) {
+        byte[] frame = new byte[HEADER_LENGTH + telegram.length];
+        frame[0] = (byte) telegram.length;
+        frame[1] = (byte) (telegram.length >> 8);
+        System.arraycopy(telegram, 0, frame, HEADER_LENGTH, telegram.length);
+        return frame;
+    }
+
+    /**
+     * @param telegram a telegram whose bytes are given as <code>int</code>s (e.g., <code>0x80</code>)
+     * @return the frame of the telegram
+     */
+    static byte[] frame(int... telegram) {
+        byte[] bytes = new byte[telegram.length];
+        for (int i = 0; i < telegram.length; ++i) {
+            bytes[i] = (byte) telegram[i];
+        }
+        return frame(bytes);
+    }
+
+    /**
+     * @param bytes bytes which contain a header
+     * @param offset the offset of the header
+     * @return the length of the telegram which follows the header
+     */
+    static int getLength(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * Skips the frames which are complete in the given range of bytes.
+     *
+     * @param bytes bytes which contain frames
+     * @param offset the offset of the first frame
+     * @param limit the end of the range
+     * @return the offset of the first incomplete frame, or <code>limit</code> if all the frames are complete
+     */
+    static int skipCompleteFrames(byte[] bytes, int offset, int limit) {
+        while (limit - offset >= HEADER_LENGTH) {
+            int end = offset + HEADER_LENGTH + getLength(bytes, offset);
+            if (end > limit) break;
+
+            offset = end;
+        }
+
+        return offset;
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * An implementation of {@link ICommunicator} which talks to a machine via TCP (e.g., Wi-Fi), through a bridge
+ * which relays telegrams to the machine or a {@link SimulatedNxtServer}.
+ * <p>
+ * Telegrams are framed with the 2-byte length header as those over Bluetooth. The channel is non-blocking and
+ * each wait for the channel is done by a {@link Selector} with a timeout, thus a silent peer makes
+ * {@link #read(int)} fail after the read timeout instead of blocking forever. Writes are buffered until
+ * the buffer ends at the boundary of a frame (see: {@link FramedStream}), and Nagle's algorithm is disabled
+ * so that each frame goes out immediately.
+ */
+public class WifiCommunicator implements ICommunicator {
+
+    // large enough for telegrams of NXT (at most 64 bytes) and their batches
+    private static final int BUFFER_SIZE = 256;
+
+    private static final int MAX_PORT = 65535;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s");
+
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5 * 1000;
+    private static final long DEFAULT_READ_TIMEOUT_MILLIS = 1000;
+
+    private final String mHost;
+    private final int mPort;
+    private final long mConnectTimeoutNanos;
+    private final long mReadTimeoutNanos;
+
+    private SocketChannel mChannel;
+    private Selector mSelector;
+
+    private final ByteBuffer mReceiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private byte[] mSendBuffer = new byte[BUFFER_SIZE];
+    private int mSendLength;
+
+    // the offset of the first frame in the send buffer which has not been completed yet
+    private int mIncompleteFrameOffset;
+
+    /**
+     * @param host the host name or the address of the bridge
+     * @param port the port of the bridge
+     */
+    public WifiCommunicator(String host, int port) {
+        this(host, port, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param host the host name or the address of the bridge
+     * @param port the port of the bridge
+     * @param connectTimeoutMillis the time to wait for the connection to be established
+     * @param readTimeoutMillis the time to wait for each reply
+     */
+    public WifiCommunicator(String host, int port, long connectTimeoutMillis, long readTimeoutMillis) {
+        mHost = host;
+        mPort = port;
+        mConnectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+        mReadTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+    }
+
+    /**
+     * Parses the address of a bridge, which is "host", "host:port", "[IPv6 address]" or "[IPv6 address]:port".
+     * An IPv6 address without brackets (e.g., "fe80::1") is regarded as a host without a port.
+     *
+     * @param address the address to be parsed
+     * @param defaultPort the port which is used if the address has no port
+     * @return the address (unresolved), or <code>null</code> if the address is malformed
+     */
+    public static InetSocketAddress parseAddress(String address, int defaultPort) {
+        if (address == null) return null;
+
+        String host;
+        String port = null;
+
+        if (address.startsWith("[")) {
+            int end = address.indexOf(']');
+            if (end < 0) return null;
+
+            host = address.substring(1, end);
+            if (host.indexOf(':') < 0) return null;
+
+            if (end + 1 < address.length()) {
+                if (address.charAt(end + 1) != ':') return null;
+                port = address.substring(end + 2);
+            }
+        } else {
+            int separator = address.indexOf(':');
+
+            if (separator >= 0 && separator == address.lastIndexOf(':')) {
+                host = address.substring(0, separator);
+                port = address.substring(separator + 1);
+            } else {
+                host = address;
+            }
+        }
+
+        if (host.isEmpty() || WHITESPACE.matcher(host).find()) return null;
+
+        int portNumber = defaultPort;
+        if (port != null) {
+            try {
+                portNumber = Integer.parseInt(port);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (portNumber < 1 || portNumber > MAX_PORT) return null;
+        }
+
+        return InetSocketAddress.createUnresolved(host, portNumber);
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        mSelector = Selector.open();
+        mChannel = SocketChannel.open();
+
+        try {
+            mChannel.configureBlocking(false);
+            mChannel.socket().setTcpNoDelay(true);
+
+            if (!mChannel.connect(new InetSocketAddress(mHost, mPort))) {
+                await(SelectionKey.OP_CONNECT, System.nanoTime() + mConnectTimeoutNanos);
+                mChannel.finishConnect();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        mReceiveBuffer.clear().flip();
+        mSendLength = 0;
+        mIncompleteFrameOffset = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (mChannel != null) {
+                mChannel.close();
+            }
+            if (mSelector != null) {
+                mSelector.close();
+            }
+        } catch (IOException e) {
+            // the connection has already been broken
+        }
+
+        mChannel = null;
+        mSelector = null;
+    }
+
+    @Override
+    public synchronized void write(byte[] request) throws RuntimeException {
+        checkOpen();
+
+        if (mSendLength + request.length > mSendBuffer.length) {
+            mSendBuffer = Arrays.copyOf(mSendBuffer, Math.max(mSendBuffer.length * 2, mSendLength + request.length));
+        }
+        System.arraycopy(request, 0, mSendBuffer, mSendLength, request.length);
+        mSendLength += request.length;
+
+        mIncompleteFrameOffset = Telegrams.skipCompleteFrames(mSendBuffer, mIncompleteFrameOffset, mSendLength);
+
+        if (mIncompleteFrameOffset == mSendLength) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized byte[] read(int length) throws RuntimeException {
+        checkOpen();
+        flush();
+
+        byte[] result = new byte[length];
+        int filled = 0;
+        long deadline = System.nanoTime() + mReadTimeoutNanos;
+
+        try {
+            while (filled < length) {
+                if (!mReceiveBuffer.hasRemaining()) {
+                    fill(deadline);
+                }
+
+                int numBytes = Math.min(length - filled, mReceiveBuffer.remaining());
+                mReceiveBuffer.get(result, filled, numBytes);
+                filled += numBytes;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return result;
+    }
+
+    private void checkOpen() throws RuntimeException {
+        if (mChannel == null) {
+            throw new RuntimeException(new IOException("The connection is not opened"));
+        }
+    }
+
+    // sends all the buffered bytes even if they end in the middle of a frame
+    private void flush() throws RuntimeException {
+        if (mSendLength == 0) return;
+
+        // resets the buffer first not to send the same bytes again after a failure
+        ByteBuffer buffer = ByteBuffer.wrap(mSendBuffer, 0, mSendLength);
+        mSendLength = 0;
+        mIncompleteFrameOffset = 0;
+
+        try {
+            while (buffer.hasRemaining()) {
+                if (mChannel.write(buffer) == 0) {
+                    // the send buffer of the socket is full
+                    await(SelectionKey.OP_WRITE, System.nanoTime() + mReadTimeoutNanos);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // receives at least one byte into the empty receive buffer
+    private void fill(long deadline) throws IOException {
+        mReceiveBuffer.clear();
+
+        try {
+            int numBytes;
+            while ((numBytes = mChannel.read(mReceiveBuffer)) == 0) {
+                await(SelectionKey.OP_READ, deadline);
+            }
+
+            if (numBytes < 0) {
+                throw new EOFException("The connection was closed by the peer");
+            }
+        } finally {
+            mReceiveBuffer.flip();
+        }
+    }
+
+    private void await(int operation, long deadline) throws IOException {
+        SelectionKey key = mChannel.register(mSelector, operation);
+
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Timed out while waiting for the connection");
+                }
+
+                // select(0) blocks forever, thus the timeout is at least 1 ms
+                mSelector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+
+                if (mSelector.selectedKeys().remove(key)) return;
+
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while waiting for the connection");
+                }
+            }
+        } finally {
+            key.interestOps(0);
+        }
+    }
+}
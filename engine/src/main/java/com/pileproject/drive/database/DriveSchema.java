@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The versions of the schema of the database of programs and the migrations between them.
+ * <p>
+ * The tables themselves are created from the table specifications of the app (e.g., <code>ProgramSpec</code> and
+ * <code>ProgramDataSpec</code>) with the latest version. This class has the rest, which is plain SQL so that
+ * it can be tested on the JVM:
+ * <ul>
+ *     <li>the indexes, which are created with the tables</li>
+ *     <li>the statements which upgrade a database of an old version, one version at a time</li>
+ * </ul>
+ * To evolve the schema, change the table specifications, increment {@link #VERSION} and append the statements
+ * which upgrade the previous version to {@link #MIGRATIONS}.
+ */
+public final class DriveSchema {
+
+    /**
+     * The latest version of the schema.
+     */
+    public static final int VERSION = 3;
+
+    // the reduced position of a block in BlockPositionComparator
+    private static final String POSITION = "(%1$s.top * 10000 + %1$s.left)";
+
+    // the statements that create the indexes of the latest version
+    private static final String[] CREATE_INDEXES = {
+            // to find a program by its type and name
+            "CREATE INDEX IF NOT EXISTS programs_type_name ON programs (type, name)",
+            // to read the blocks of a program in order
+            "CREATE INDEX IF NOT EXISTS program_data_program_id_ordinal ON program_data (programId, ordinal)",
+    };
+
+    // MIGRATIONS[i] upgrades the version (i + 1) to (i + 2)
+    private static final String[][] MIGRATIONS = {
+            // 1 -> 2: the order of blocks is stored and the tables are indexed
+            {
+                    // the blocks of deleted programs were left because foreign keys were not enforced
+                    "DELETE FROM program_data WHERE programId NOT IN (SELECT _id FROM programs)",
+                    "ALTER TABLE program_data ADD COLUMN ordinal INTEGER NOT NULL DEFAULT 0",
+                    // the same order as BlockPositionComparator (the ties are in the order of insertion)
+                    "UPDATE program_data SET ordinal = ("
+                            + "SELECT COUNT(*) FROM program_data AS other"
+                            + " WHERE other.programId = program_data.programId"
+                            + " AND (" + position("other") + " < " + position("program_data")
+                            + " OR (" + position("other") + " = " + position("program_data")
+                            + " AND other._id < program_data._id)))",
+                    CREATE_INDEXES[0],
+                    CREATE_INDEXES[1],
+            },
+            // 2 -> 3: a program can be stored as a blob (see ProgramBlob); the existing rows are kept as they are
+            {
+                    "ALTER TABLE programs ADD COLUMN blocks BLOB",
+            },
+    };
+
+    private DriveSchema() {
+    }
+
+    private static String position(String table) {
+        return String.format(POSITION, table);
+    }
+
+    /**
+     * Gets the statements which should be executed after the tables of the latest version are created.
+     *
+     * @return the statements to be executed in order
+     */
+    public static List<String> getCreateStatements() {
+        return Collections.unmodifiableList(Arrays.asList(CREATE_INDEXES));
+    }
+
+    /**
+     * Gets the statements which upgrade a database from <code>oldVersion</code> to <code>newVersion</code>.
+     *
+     * @param oldVersion the version of the existing database
+     * @param newVersion the version to be upgraded to
+     * @return the statements to be executed in order (in a transaction)
+     * @throws IllegalArgumentException if the versions are out of the known range or not in ascending order
+     */
+    public static List<String> getUpgradeStatements(int oldVersion, int newVersion) {
+        if (oldVersion < 1 || newVersion > VERSION || oldVersion > newVersion) {
+            throw new IllegalArgumentException(
+                    "cannot upgrade the database from version " + oldVersion + " to " + newVersion);
+        }
+
+        List<String> statements = new ArrayList<>();
+        for (int version = oldVersion; version < newVersion; ++version) {
+            statements.addAll(Arrays.asList(MIGRATIONS[version - 1]));
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import com.pileproject.drive.programming.model.PositionHolder;
+import com.pileproject.drive.util.io.VarIntUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format of a whole program, which is stored in one row instead of one row per block.
+ * <p>
+ * A blob starts with the magic "DRVP" and the version, followed by the table of the types of blocks
+ * (the count and the names in modified UTF-8) and the blocks in order. Each block is the index of its type in
+ * the table, the left and the top (zigzag-encoded LEB128), and the number. A number which is a plain decimal is
+ * stored as a fixed-point value, i.e., the scale (unsigned LEB128) and the unscaled value (zigzag-encoded LEB128),
+ * and any other text is stored as it is (see: {@link VarIntUtil} for the encodings). A block thus takes a few bytes instead of the name of its class.
+ */
+public final class ProgramBlob {
+
+    static final byte[] MAGIC = {'D', 'R', 'V', 'P'};
+    static final int VERSION = 1;
+
+    // the kinds of numbers
+    private static final int NUMBER_DECIMAL = 0;
+    private static final int NUMBER_TEXT = 1;
+
+    /**
+     * A block of a program.
+     */
+    public static final class Block implements PositionHolder {
+        private final String mType;
+        private final int mLeft;
+        private final int mTop;
+        private final String mNumber;
+
+        /**
+         * @param type the type (name) of the block
+         * @param left the x position of the left of the block
+         * @param top the y position of the top of the block
+         * @param number the number which the block has
+         */
+        public Block(String type, int left, int top, String number) {
+            mType = type;
+            mLeft = left;
+            mTop = top;
+            mNumber = number;
+        }
+
+        public String getType() {
+            return mType;
+        }
+
+        @Override
+        public int getLeft() {
+            return mLeft;
+        }
+
+        @Override
+        public int getTop() {
+            return mTop;
+        }
+
+        public String getNumber() {
+            return mNumber;
+        }
+    }
+
+    private ProgramBlob() {
+    }
+
+    /**
+     * Encodes blocks into a blob.
+     *
+     * @param blocks the blocks in the order to be loaded
+     * @return the blob
+     */
+    public static byte[] encode(List<Block> blocks) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        try {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+
+            // the indexes of the types in the order of their first appearances
+            Map<String, Integer> types = new HashMap<>();
+            List<String> typeTable = new ArrayList<>();
+            for (Block b : blocks) {
+                if (!types.containsKey(b.getType())) {
+                    types.put(b.getType(), typeTable.size());
+                    typeTable.add(b.getType());
+                }
+            }
+
+            VarIntUtil.writeUnsigned(output, typeTable.size());
+            for (String type : typeTable) {
+                output.writeUTF(type);
+            }
+
+            VarIntUtil.writeUnsigned(output, blocks.size());
+            for (Block b : blocks) {
+                VarIntUtil.writeUnsigned(output, types.get(b.getType()));
+                VarIntUtil.writeSigned(output, b.getLeft());
+                VarIntUtil.writeSigned(output, b.getTop());
+                writeNumber(output, b.getNumber());
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a blob.
+     *
+     * @param blob the blob which was encoded with {@link #encode(List)}
+     * @return the blocks in the order of encoding
+     * @throws IOException if the blob is broken or not a program
+     */
+    public static List<Block> decode(byte[] blob) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(blob));
+
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a program");
+        }
+
+        int version = input.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version of a program: " + version);
+        }
+
+        String[] typeTable = new String[readCount(input)];
+        for (int i = 0; i < typeTable.length; ++i) {
+            typeTable[i] = input.readUTF();
+        }
+
+        int count = readCount(input);
+        List<Block> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            long type = VarIntUtil.readUnsigned(input);
+            if (type < 0 || type >= typeTable.length) {
+                throw new IOException("Unknown type of a block: " + type);
+            }
+
+            int left = (int) VarIntUtil.readSigned(input);
+            int top = (int) VarIntUtil.readSigned(input);
+            blocks.add(new Block(typeTable[(int) type], left, top, readNumber(input)));
+        }
+
+        return blocks;
+    }
+
+    private static void writeNumber(DataOutputStream output, String number) throws IOException {
+        BigDecimal decimal = toDecimal(number);
+
+        if (decimal == null) {
+            output.writeByte(NUMBER_TEXT);
+            output.writeUTF(number);
+            return;
+        }
+
+        output.writeByte(NUMBER_DECIMAL);
+        VarIntUtil.writeUnsigned(output, decimal.scale());
+        VarIntUtil.writeSigned(output, decimal.unscaledValue().longValue());
+    }
+
+    // returns null if the number cannot be restored exactly from a fixed-point value
+    private static BigDecimal toDecimal(String number) {
+        BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(number);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (decimal.scale() < 0 || decimal.unscaledValue().bitLength() >= Long.SIZE
+                || !decimal.toPlainString().equals(number)) {
+            return null;
+        }
+        return decimal;
+    }
+
+    private static String readNumber(DataInputStream input) throws IOException {
+        int kind = input.readUnsignedByte();
+
+        switch (kind) {
+            case NUMBER_DECIMAL:
+                int scale = (int) VarIntUtil.readUnsigned(input);
+                long unscaled = VarIntUtil.readSigned(input);
+                return new BigDecimal(BigInteger.valueOf(unscaled), scale).toPlainString();
+            case NUMBER_TEXT:
+                return input.readUTF();
+            default:
+                throw new IOException("Unknown kind of a number: " + kind);
+        }
+    }
+
+    private static int readCount(DataInputStream input) throws IOException {
+        // each entry takes at least a byte
+        return VarIntUtil.readLength(input, input.available());
+    }
+}
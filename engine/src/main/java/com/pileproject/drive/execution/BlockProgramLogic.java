@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.programming.model.BlockModel;
+
+/**
+ * A class that provides helper methods for the logic of block programs.
+ */
+public class BlockProgramLogic {
+    /**
+     * Checks if a block is in the true arm of a selection block section or not. At present, the check is based on
+     * the position of blocks. A <p><b>selection block section</b></p> is the area between selection blocks (the
+     * beginning and end). If a block is in the left side of the section, the block will be executed when the
+     * condition of the if-statement is <code>true</code> (the true arm), otherwise the block will be executed when
+     * the condition is <code>false</code> (the false arm).
+     * <p>
+     * This method reads the positions of views, so that it should be called once when a program is compiled
+     * (see: {@link CompiledProgram}), not every time when a block is executed.
+     *
+     * @param selection the selection block which begins the section
+     * @param block a block in the section
+     * @return the block is in the true arm (<code>true</code>) or in the false arm (<code>false</code>)
+     */
+    static boolean isInTrueArm(BlockModel selection, BlockModel block) {
+        int middleIf = (selection.getRight() + selection.getLeft()) / 2;
+        int middle = (block.getRight() + block.getLeft()) / 2;
+
+        return middle <= middleIf;
+    }
+
+}
\ No newline at end of file
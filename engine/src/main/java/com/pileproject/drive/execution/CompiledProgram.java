@@ -0,0 +1,453 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.programming.model.BlockModel;
+
+import java.util.List;
+
+/**
+ * A block program which is compiled into flat arrays. The compilation is done once when the program is loaded, and
+ * resolves the control flow of the program in advance so that {@link ExecutionCondition} can jump in constant time:
+ * <ul>
+ *     <li>the beginning of a loop knows the index of its end (and vice versa)</li>
+ *     <li>a break of a loop knows the index of the end of the enclosing loop</li>
+ *     <li>the beginning of a selection knows the index where its false arm starts</li>
+ * </ul>
+ * <p>
+ * Blocks in a selection block section are labeled with the arm they belong to (see
+ * {@link BlockProgramLogic#isInTrueArm(BlockModel, BlockModel)}) at compile time, and each arm is placed contiguously
+ * (the true arm first, then the false arm). Therefore, the order of instructions is not always the same as the order
+ * of the given blocks; use {@link #getBlockIndex(int)} to get the original index of a block.
+ * The arm which is not selected at runtime is jumped over entirely.
+ * <p>
+ * If a control block has no counterpart, its jump target is {@link #NO_TARGET}.
+ */
+public final class CompiledProgram {
+
+    /**
+     * A jump target which means that the block does not have any counterpart.
+     */
+    public static final int NO_TARGET = -1;
+
+    public static final int OP_SEQUENCE = 0;
+    public static final int OP_SELECTION_BEGIN = 1;
+    public static final int OP_SELECTION_END = 2;
+    public static final int OP_REPETITION_BEGIN = 3;
+    public static final int OP_REPETITION_END = 4;
+    public static final int OP_REPETITION_BREAK = 5;
+
+    public static final int BRANCH_NONE = 0;
+    public static final int BRANCH_TRUE = 1;
+    public static final int BRANCH_FALSE = 2;
+
+    private final BlockModel[] mBlocks;
+    private final int[] mBlockIndices;
+    private final int[] mOpcodes;
+    private final int[] mJumpTargets;
+    private final int[] mNextIndices;
+    private final int[] mBranches;
+    private final int[] mEnclosingSelections;
+    private final int mMaxLoopDepth;
+    private final int mMaxSelectionDepth;
+
+    private CompiledProgram(Compiler compiler) {
+        mBlocks = compiler.mBlocks;
+        mBlockIndices = compiler.mBlockIndices;
+        mOpcodes = compiler.mOpcodes;
+        mJumpTargets = compiler.mJumpTargets;
+        mNextIndices = compiler.mNextIndices;
+        mBranches = compiler.mBranches;
+        mEnclosingSelections = compiler.mEnclosingSelections;
+        mMaxLoopDepth = compiler.mMaxLoopDepth;
+        mMaxSelectionDepth = compiler.mMaxSelectionDepth;
+    }
+
+    /**
+     * Compiles a list of blocks. The list should be sorted by the positions of blocks in ascending order
+     * (from top to bottom, and from left to right in a row).
+     * This method reads the positions of blocks, so that the execution does not have to.
+     *
+     * @param blocks the blocks to be compiled
+     * @return a {@link CompiledProgram}
+     */
+    public static CompiledProgram compile(List<? extends BlockModel> blocks) {
+        Compiler compiler = new Compiler(blocks);
+        compiler.compile();
+
+        return new CompiledProgram(compiler);
+    }
+
+    private static int toOpcode(BlockModel.BlockKind kind) {
+        switch (kind) {
+            case SEQUENCE:
+                return OP_SEQUENCE;
+            case SELECTION_BEGIN:
+                return OP_SELECTION_BEGIN;
+            case SELECTION_END:
+                return OP_SELECTION_END;
+            case REPETITION_BEGIN:
+                return OP_REPETITION_BEGIN;
+            case REPETITION_END:
+                return OP_REPETITION_END;
+            case REPETITION_BREAK:
+                return OP_REPETITION_BREAK;
+        }
+
+        throw new IllegalArgumentException("Unknown kind of block: " + kind);
+    }
+
+    /**
+     * Returns the number of instructions (= blocks) in this program.
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return mBlocks.length;
+    }
+
+    /**
+     * Returns the block of the instruction at the specified index.
+     *
+     * @param index the index of an instruction
+     * @return a {@link BlockModel}
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public BlockModel getBlock(int index) throws IndexOutOfBoundsException {
+        return mBlocks[index];
+    }
+
+    /**
+     * Returns the index of the block of the instruction at the specified index in the list
+     * which was passed to {@link #compile(List)}.
+     *
+     * @param index the index of an instruction
+     * @return the index of the block
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getBlockIndex(int index) throws IndexOutOfBoundsException {
+        return mBlockIndices[index];
+    }
+
+    /**
+     * Returns the opcode (one of <code>OP_*</code> constants) of the instruction at the specified index.
+     *
+     * @param index the index of an instruction
+     * @return the opcode
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getOpcode(int index) throws IndexOutOfBoundsException {
+        return mOpcodes[index];
+    }
+
+    /**
+     * Returns the jump target of the instruction at the specified index. The meaning depends on the opcode:
+     * <ul>
+     *     <li>{@link #OP_REPETITION_BEGIN}: the index of the end of the loop</li>
+     *     <li>{@link #OP_REPETITION_END}: the index of the beginning of the loop</li>
+     *     <li>{@link #OP_REPETITION_BREAK}: the index of the end of the enclosing loop</li>
+     *     <li>{@link #OP_SELECTION_BEGIN}: the index which should be executed when the condition is
+     *     <code>false</code></li>
+     *     <li>{@link #OP_SELECTION_END}: the index of the beginning of the selection</li>
+     * </ul>
+     *
+     * @param index the index of an instruction
+     * @return the jump target or {@link #NO_TARGET}
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getJumpTarget(int index) throws IndexOutOfBoundsException {
+        return mJumpTargets[index];
+    }
+
+    /**
+     * Returns the index of the instruction which follows the instruction at the specified index
+     * (e.g., the end of a selection follows the last instruction of the true arm).
+     * The returned value can be {@link #size()}, which means the end of the program.
+     *
+     * @param index the index of an instruction
+     * @return the index of the next instruction
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getNextIndex(int index) throws IndexOutOfBoundsException {
+        return mNextIndices[index];
+    }
+
+    /**
+     * Returns the arm of the innermost selection which the instruction at the specified index belongs to.
+     *
+     * @param index the index of an instruction
+     * @return {@link #BRANCH_TRUE}, {@link #BRANCH_FALSE} or {@link #BRANCH_NONE} (out of any selections)
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getBranch(int index) throws IndexOutOfBoundsException {
+        return mBranches[index];
+    }
+
+    /**
+     * Returns the index of the innermost selection which the instruction at the specified index belongs to.
+     * Follow this method repeatedly to get the nesting path of the instruction.
+     *
+     * @param index the index of an instruction
+     * @return the index of the selection or {@link #NO_TARGET}
+     * @throws IndexOutOfBoundsException if the index is out of bounds
+     */
+    public int getEnclosingSelection(int index) throws IndexOutOfBoundsException {
+        return mEnclosingSelections[index];
+    }
+
+    /**
+     * Returns the maximum depth of nested loops in this program.
+     *
+     * @return the depth
+     */
+    public int getMaxLoopDepth() {
+        return mMaxLoopDepth;
+    }
+
+    /**
+     * Returns the maximum depth of nested selections in this program.
+     *
+     * @return the depth
+     */
+    public int getMaxSelectionDepth() {
+        return mMaxSelectionDepth;
+    }
+
+    private static class Compiler {
+        private final List<? extends BlockModel> mSource;
+        private final int[] mSourceOpcodes;
+
+        final BlockModel[] mBlocks;
+        final int[] mBlockIndices;
+        final int[] mOpcodes;
+        final int[] mJumpTargets;
+        final int[] mNextIndices;
+        final int[] mBranches;
+        final int[] mEnclosingSelections;
+        int mMaxLoopDepth;
+        int mMaxSelectionDepth;
+
+        private int mEmitted;
+
+        Compiler(List<? extends BlockModel> source) {
+            int size = source.size();
+
+            mSource = source;
+            mSourceOpcodes = new int[size];
+
+            mBlocks = new BlockModel[size];
+            mBlockIndices = new int[size];
+            mOpcodes = new int[size];
+            mJumpTargets = new int[size];
+            mNextIndices = new int[size];
+            mBranches = new int[size];
+            mEnclosingSelections = new int[size];
+        }
+
+        void compile() {
+            int size = mSource.size();
+            int[] sequence = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                mSourceOpcodes[i] = toOpcode(mSource.get(i).getKind());
+                sequence[i] = i;
+            }
+
+            emitSequence(sequence, size, NO_TARGET, BRANCH_NONE, 0);
+            linkLoops();
+        }
+
+        private void emit(int sourceIndex, int enclosingSelection, int branch) {
+            int index = mEmitted++;
+
+            mBlocks[index] = mSource.get(sourceIndex);
+            mBlockIndices[index] = sourceIndex;
+            mOpcodes[index] = mSourceOpcodes[sourceIndex];
+            mJumpTargets[index] = NO_TARGET;
+            mNextIndices[index] = index + 1;
+            mBranches[index] = branch;
+            mEnclosingSelections[index] = enclosingSelection;
+        }
+
+        /**
+         * Emits the blocks in <code>sequence[0:length]</code> (the indices of source blocks) in order,
+         * and emits selection block sections arm by arm.
+         */
+        private void emitSequence(int[] sequence, int length, int enclosingSelection, int branch, int depth) {
+            int i = 0;
+
+            while (i < length) {
+                int sourceIndex = sequence[i];
+
+                if (mSourceOpcodes[sourceIndex] != OP_SELECTION_BEGIN) {
+                    emit(sourceIndex, enclosingSelection, branch);
+                    i++;
+                    continue;
+                }
+
+                // label the blocks which follow this selection block with their arms until the end is found
+                BlockModel selection = mSource.get(sourceIndex);
+                int endPosition = findEndOfSelection(selection, sequence, i + 1, length);
+
+                int trueLength = 0;
+                for (int j = i + 1; j < endPosition; j++) {
+                    if (BlockProgramLogic.isInTrueArm(selection, mSource.get(sequence[j]))) trueLength++;
+                }
+
+                int[] trueArm = new int[trueLength];
+                int[] falseArm = new int[endPosition - i - 1 - trueLength];
+                for (int j = i + 1, t = 0, f = 0; j < endPosition; j++) {
+                    int b = sequence[j];
+                    if (BlockProgramLogic.isInTrueArm(selection, mSource.get(b))) trueArm[t++] = b;
+                    else falseArm[f++] = b;
+                }
+
+                mMaxSelectionDepth = Math.max(mMaxSelectionDepth, depth + 1);
+
+                int beginning = mEmitted;
+                emit(sourceIndex, enclosingSelection, branch);
+
+                emitSequence(trueArm, trueArm.length, beginning, BRANCH_TRUE, depth + 1);
+                int lastOfTrueArm = mEmitted - 1;
+
+                int beginningOfFalseArm = mEmitted;
+                emitSequence(falseArm, falseArm.length, beginning, BRANCH_FALSE, depth + 1);
+
+                // both arms join here
+                int join = mEmitted;
+                if (endPosition < length) {
+                    emit(sequence[endPosition], enclosingSelection, branch);
+                    mJumpTargets[join] = beginning;
+                }
+
+                // skip the false arm after the true arm
+                if (lastOfTrueArm != beginning) {
+                    mNextIndices[lastOfTrueArm] = join;
+                } else {
+                    mNextIndices[beginning] = join; // the true arm is empty
+                }
+
+                // the false arm starts at the join if it is empty
+                mJumpTargets[beginning] = beginningOfFalseArm;
+
+                i = endPosition + 1;
+            }
+        }
+
+        /**
+         * Finds the end of the selection in <code>sequence[from:length]</code>. Nested selections are counted for
+         * each arm because the blocks of a nested selection are also in the same arm.
+         *
+         * @return the position of the end in <code>sequence</code> or <code>length</code> if not found
+         */
+        private int findEndOfSelection(BlockModel selection, int[] sequence, int from, int length) {
+            int trueDepth = 0;
+            int falseDepth = 0;
+
+            for (int j = from; j < length; j++) {
+                int b = sequence[j];
+                int opcode = mSourceOpcodes[b];
+
+                if (opcode != OP_SELECTION_BEGIN && opcode != OP_SELECTION_END) {
+                    continue;
+                }
+
+                boolean isInTrueArm = BlockProgramLogic.isInTrueArm(selection, mSource.get(b));
+
+                if (opcode == OP_SELECTION_BEGIN) {
+                    if (isInTrueArm) trueDepth++;
+                    else falseDepth++;
+                    continue;
+                }
+
+                if ((isInTrueArm ? trueDepth : falseDepth) == 0) {
+                    return j;
+                }
+
+                if (isInTrueArm) trueDepth--;
+                else falseDepth--;
+            }
+
+            return length;
+        }
+
+        /**
+         * Pairs the beginnings and the ends of loops (and breaks) in the order of instructions.
+         */
+        private void linkLoops() {
+            int size = mEmitted;
+
+            // the indices of loop beginnings which have not been closed yet
+            int[] loopStack = new int[size];
+            int loopDepth = 0;
+
+            // breaks which wait for the end of their loop are chained through their own jump targets.
+            // pendingBreaks[depth] is the head of the chain of the loop at the depth
+            int[] pendingBreaks = new int[size + 1];
+            pendingBreaks[0] = NO_TARGET;
+
+            for (int i = 0; i < size; i++) {
+                switch (mOpcodes[i]) {
+                    case OP_REPETITION_BEGIN: {
+                        loopStack[loopDepth++] = i;
+                        pendingBreaks[loopDepth] = NO_TARGET;
+                        mMaxLoopDepth = Math.max(mMaxLoopDepth, loopDepth);
+                        break;
+                    }
+
+                    case OP_REPETITION_END: {
+                        if (loopDepth == 0) {
+                            break; // no loop to be closed
+                        }
+
+                        int beginning = loopStack[loopDepth - 1];
+                        mJumpTargets[beginning] = i;
+                        mJumpTargets[i] = beginning;
+
+                        // resolve the breaks of this loop
+                        for (int b = pendingBreaks[loopDepth]; b != NO_TARGET; ) {
+                            int next = mJumpTargets[b];
+                            mJumpTargets[b] = i;
+                            b = next;
+                        }
+
+                        loopDepth--;
+                        break;
+                    }
+
+                    case OP_REPETITION_BREAK: {
+                        if (loopDepth == 0) {
+                            break; // a break out of loops does nothing
+                        }
+
+                        mJumpTargets[i] = pendingBreaks[loopDepth];
+                        pendingBreaks[loopDepth] = i;
+                        break;
+                    }
+                }
+            }
+
+            // breaks in loops which are never closed have nowhere to jump
+            for (int depth = 1; depth <= loopDepth; depth++) {
+                for (int b = pendingBreaks[depth]; b != NO_TARGET; ) {
+                    int next = mJumpTargets[b];
+                    mJumpTargets[b] = NO_TARGET;
+                    b = next;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import java.util.concurrent.locks.Condition;
+
+/**
+ * A monotonic clock which is used to schedule the blocks of an execution.
+ * The origin of the time is arbitrary, thus only differences between two values are meaningful.
+ * <p>
+ * All waits of an execution are done through the clock, so that a clock can decide how the time passes
+ * (e.g., {@link SystemExecutionClock} waits in real time, while {@link VirtualExecutionClock} just advances itself).
+ */
+public interface ExecutionClock {
+
+    /**
+     * Returns the current time of this clock in nanoseconds.
+     *
+     * @return the current time
+     */
+    long nanoTime();
+
+    /**
+     * Waits until the condition is signalled or the specified time of this clock has elapsed.
+     * The lock of the condition must be held as {@link Condition#awaitNanos(long)}.
+     *
+     * @param condition the condition to wait on
+     * @param nanos the maximum time to wait
+     * @return an estimate of the remaining time (a value less than or equal to 0 means the time has elapsed)
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    long awaitNanos(Condition condition, long nanos) throws InterruptedException;
+
+    /**
+     * Waits until the specified time of this clock has elapsed.
+     *
+     * @param nanos the time to wait
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    void sleepNanos(long nanos) throws InterruptedException;
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.programming.model.BlockModel;
+
+import java.util.Arrays;
+
+/**
+ * A container class that has the condition of program execution.
+ * <p>
+ * The condition works on a {@link CompiledProgram}, thus all jumps (e.g., going back to the beginning of a loop,
+ * breaking out of a loop, skipping the arm of a selection which is not selected) are done in constant time.
+ * The states of loops and selections are kept in primitive values so that no object is allocated while a program
+ * is executed.
+ */
+public class ExecutionCondition {
+    private static final int INFINITE = -1;
+
+    private final CompiledProgram mProgram;
+    private int mProgramCount;
+    private int mNextProgramCount;
+    private int mPreviousProgramCount;
+
+    // the stack of the loops which are being executed
+    // (the remaining number of iterations, the depth of the selection stack when the loop was entered)
+    private int[] mLoopRemainings;
+    private int[] mLoopSelectionDepths;
+    private int mLoopDepth;
+
+    // the number of the selections which are being executed
+    // (which arm is being executed is already encoded in the program count)
+    private int mSelectionDepth;
+
+    public ExecutionCondition(CompiledProgram program) {
+        mProgram = program;
+
+        // the maximum depth is enough for well-formed programs and the stack grows otherwise
+        int loopCapacity = Math.max(1, program.getMaxLoopDepth());
+        mLoopRemainings = new int[loopCapacity];
+        mLoopSelectionDepths = new int[loopCapacity];
+
+        moveTo(0);
+        mPreviousProgramCount = 0;
+    }
+
+    private void moveTo(int programCount) {
+        mProgramCount = programCount;
+        mNextProgramCount = hasProgramFinished() ? programCount : mProgram.getNextIndex(programCount);
+    }
+
+    /**
+     * Checks if the program count is over than the program size or not.
+     *
+     * @return finished (<code>true</code>) or not (<code>false</code>)
+     */
+    public boolean hasProgramFinished() {
+        return mProgramCount >= mProgram.size();
+    }
+
+    /**
+     * Gets the current block.
+     *
+     * @return the current {@link BlockModel}
+     * @throws IndexOutOfBoundsException
+     *      if the program already has been over (thus, the program count is out of bounds).
+     */
+    public BlockModel getCurrentBlock() throws IndexOutOfBoundsException {
+        return mProgram.getBlock(mProgramCount);
+    }
+
+    /**
+     * Gets the index of the current block in the list of blocks which was compiled.
+     * Note that this is not always the same as the program count (see: {@link CompiledProgram}).
+     *
+     * @return the index of the current block
+     * @throws IndexOutOfBoundsException
+     *      if the program already has been over (thus, the program count is out of bounds).
+     */
+    public int getCurrentBlockIndex() throws IndexOutOfBoundsException {
+        return mProgram.getBlockIndex(mProgramCount);
+    }
+
+    /**
+     * Gets the opcode of the current block (one of <code>OP_*</code> constants in {@link CompiledProgram}).
+     *
+     * @return the opcode of the current block
+     * @throws IndexOutOfBoundsException
+     *      if the program already has been over (thus, the program count is out of bounds).
+     */
+    public int getCurrentOpcode() throws IndexOutOfBoundsException {
+        return mProgram.getOpcode(mProgramCount);
+    }
+
+    /**
+     * Increments the program count, that is, moves to the next block to be executed.
+     */
+    public void incrementProgramCount() {
+        mPreviousProgramCount = mProgramCount;
+        moveTo(mNextProgramCount);
+    }
+
+    /**
+     * Decrements the program count, that is, moves back to the block which was executed just before.
+     */
+    public void decrementProgramCount() {
+        moveTo(mPreviousProgramCount);
+    }
+
+    /**
+     * Gets the current program count.
+     *
+     * @return the current program count
+     */
+    public int getProgramCount() {
+        return mProgramCount;
+    }
+
+    /**
+     * Pushes the result of the current selection block (<code>true</code> or <code>false</code>).
+     * The program count will move to the arm which corresponds to the result at the next increment,
+     * and the other arm will be skipped entirely.
+     *
+     * @param result the result of a selection command (<code>true</code> or <code>false</code>)
+     */
+    public void pushSelectionResult(boolean result) {
+        mSelectionDepth++;
+
+        if (!result) {
+            mNextProgramCount = mProgram.getJumpTarget(mProgramCount);
+        }
+    }
+
+    /**
+     * Pops and throws away the latest selection result.
+     */
+    public void popSelectionResult() {
+        if (mSelectionDepth == 0) return;
+
+        mSelectionDepth--;
+    }
+
+    /**
+     * Gets the size of selection results.
+     *
+     * @return the size
+     */
+    public int sizeOfSelectionResult() {
+        return mSelectionDepth;
+    }
+
+    private void pushLoop(int remaining) {
+        if (mLoopDepth == mLoopRemainings.length) {
+            mLoopRemainings = Arrays.copyOf(mLoopRemainings, mLoopDepth * 2);
+            mLoopSelectionDepths = Arrays.copyOf(mLoopSelectionDepths, mLoopDepth * 2);
+        }
+
+        mLoopRemainings[mLoopDepth] = remaining;
+        mLoopSelectionDepths[mLoopDepth] = mSelectionDepth;
+        mLoopDepth++;
+    }
+
+    /**
+     * Enters an infinite loop.
+     */
+    public void enterInfiniteLoop() {
+        pushLoop(INFINITE);
+    }
+
+    /**
+     * Enters an N-times loop.
+     *
+     * @param count the number of times this loop should be repeated
+     */
+    public void enterNTimesLoop(int count) {
+        pushLoop(count);
+    }
+
+    /**
+     * Reaches the end of loop. This method deals with the finalizing process of loops.
+     */
+    public void reachEndOfLoop() {
+        if (mLoopDepth == 0) return;
+
+        int beginning = mProgram.getJumpTarget(mProgramCount);
+        if (beginning == CompiledProgram.NO_TARGET) return;
+
+        int top = mLoopDepth - 1;
+
+        // the loop has not finished yet
+        if (mLoopRemainings[top] == INFINITE || --mLoopRemainings[top] > 0) {
+            // go back to the beginning of the current loop
+            // (the beginning block itself will be skipped)
+            mNextProgramCount = mProgram.getNextIndex(beginning);
+            return;
+        }
+
+        // the loop has already finished
+        mLoopDepth--;
+    }
+
+    /**
+     * Breaks out the current loop.
+     */
+    public void breakLoop() {
+        if (mLoopDepth == 0) return;
+
+        int end = mProgram.getJumpTarget(mProgramCount);
+        if (end == CompiledProgram.NO_TARGET) return;
+
+        mLoopDepth--;
+
+        // remove selection commands that this loop contains
+        mSelectionDepth = mLoopSelectionDepths[mLoopDepth];
+
+        // move to the end of the current loop
+        // (the end block itself will be skipped)
+        mNextProgramCount = mProgram.getNextIndex(end);
+    }
+}
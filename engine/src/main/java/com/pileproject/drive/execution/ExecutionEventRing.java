@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A preallocated ring buffer of execution events, which is written by one producer (the execution thread)
+ * and read by any number of consumers. Each event is a primitive record of
+ * (type, argument, timestamp), where the type is one of <code>MESSAGE_*</code> constants in
+ * {@link RxObservableProgram}. Neither publishing nor reading an event allocates any objects.
+ * <p>
+ * There are two ways to read events:
+ * <ul>
+ *     <li>{@link #getLatestBlockIndex()}: the index of the block which was executed most recently.
+ *     Consumers which only need the current state (e.g., UI which is updated once per frame)
+ *     should poll this, so that bursts of events are coalesced.</li>
+ *     <li>{@link Cursor}: iterates over every event in order. If a consumer is too slow and the producer
+ *     overwrites events which have not been read yet, the cursor skips them and counts them as lost.</li>
+ * </ul>
+ */
+public final class ExecutionEventRing {
+
+    /**
+     * A value of {@link #getLatestBlockIndex()} which means that no block has been executed yet.
+     */
+    public static final int NO_BLOCK = -1;
+
+    private final int mMask;
+
+    private final AtomicIntegerArray mTypes;
+    private final AtomicIntegerArray mArgs;
+    private final AtomicLongArray mTimestamps;
+
+    // the number of published events, only the producer writes this
+    private volatile long mPublished;
+
+    private volatile int mLatestBlockIndex = NO_BLOCK;
+
+    /**
+     * @param capacity the number of events which can be kept (rounded up to a power of two)
+     */
+    public ExecutionEventRing(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity should be 2 or more: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mMask = size - 1;
+
+        mTypes = new AtomicIntegerArray(size);
+        mArgs = new AtomicIntegerArray(size);
+        mTimestamps = new AtomicLongArray(size);
+    }
+
+    /**
+     * Publishes an event. This method should be called only from one thread.
+     *
+     * @param type the type of the event
+     * @param arg the argument of the event (e.g., the index of the executed block)
+     * @param timestamp the time when the event happened
+     */
+    public void publish(int type, int arg, long timestamp) {
+        long sequence = mPublished;
+        int slot = (int) sequence & mMask;
+
+        mTypes.lazySet(slot, type);
+        mArgs.lazySet(slot, arg);
+        mTimestamps.lazySet(slot, timestamp);
+
+        if (type == RxObservableProgram.MESSAGE_BLOCK_EXECUTED) {
+            mLatestBlockIndex = arg;
+        }
+
+        mPublished = sequence + 1;
+    }
+
+    /**
+     * Returns the index of the block which was executed most recently.
+     *
+     * @return the index of the block or {@link #NO_BLOCK}
+     */
+    public int getLatestBlockIndex() {
+        return mLatestBlockIndex;
+    }
+
+    /**
+     * Creates a new cursor which starts at the oldest event in this ring.
+     *
+     * @return a {@link Cursor}
+     */
+    public Cursor newCursor() {
+        return new Cursor(this);
+    }
+
+    /**
+     * A reader of {@link ExecutionEventRing}. A cursor should be used by one thread.
+     */
+    public static final class Cursor {
+        private final ExecutionEventRing mRing;
+
+        private long mSequence;
+        private long mLost;
+
+        private int mType;
+        private int mArg;
+        private long mTimestamp;
+
+        private Cursor(ExecutionEventRing ring) {
+            mRing = ring;
+        }
+
+        /**
+         * Moves to the next event.
+         *
+         * @return moved (<code>true</code>) or there are no more events at present (<code>false</code>)
+         */
+        public boolean next() {
+            // the slot which is next to be written is not readable, so that one slot is kept as a margin
+            long readable = mRing.mMask;
+
+            while (true) {
+                long published = mRing.mPublished;
+
+                if (mSequence >= published) {
+                    return false;
+                }
+
+                if (published - mSequence > readable) {
+                    mLost += published - readable - mSequence;
+                    mSequence = published - readable;
+                }
+
+                int slot = (int) mSequence & mRing.mMask;
+                int type = mRing.mTypes.get(slot);
+                int arg = mRing.mArgs.get(slot);
+                long timestamp = mRing.mTimestamps.get(slot);
+
+                // the slot could be overwritten while reading it
+                if (mRing.mPublished - mSequence > readable) {
+                    continue;
+                }
+
+                mType = type;
+                mArg = arg;
+                mTimestamp = timestamp;
+                mSequence++;
+
+                return true;
+            }
+        }
+
+        /**
+         * @return the type of the current event
+         */
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * @return the argument of the current event
+         */
+        public int getArg() {
+            return mArg;
+        }
+
+        /**
+         * @return the timestamp of the current event
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * Returns the number of events which were overwritten before this cursor read them.
+         *
+         * @return the number of lost events
+         */
+        public long getLostCount() {
+            return mLost;
+        }
+    }
+}
@@ -0,0 +1,562 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * A concrete class of {@link rx.Observable.OnSubscribe}, which generates
+ * a stream of blocks that is executed during a program execution.
+ *
+ * This class is one-off.
+ * Create this instance whenever you want to execute and DO NOT REUSE the instance.
+ * <p>
+ * The stream emits message types ({@link Integer} objects) for the subscriber.
+ * The message types are:
+ * <ul>
+ *     <li>{@link RxObservableProgram#MESSAGE_STARTED}: emitted at the beginning of the execution</li>
+ *     <li>{@link RxObservableProgram#MESSAGE_TERMINATED}: emitted when {@link RxObservableProgram#requestTerminate()} ()} is called</li>
+ *     <li>{@link RxObservableProgram#MESSAGE_PAUSED}: emitted when {@link RxObservableProgram#requestPause()} is called</li>
+ *     <li>{@link RxObservableProgram#MESSAGE_RESTARTED}: emitted when {@link RxObservableProgram#requestRestart()} is called</li>
+ *     <li>{@link RxObservableProgram#MESSAGE_BLOCK_EXECUTED}: published only to the {@link ExecutionEventRing}
+ *         when a block is executed. The argument of this message is the index of the block</li>
+ *     <li>{@link RxObservableProgram#MESSAGE_LINK_LOST}: emitted when the connection to the machine is lost and
+ *         the execution starts to reconnect (only if a {@link Reconnector} is set)</li>
+ *     <li>{@link RxObservableProgram#MESSAGE_LINK_RESTORED}: emitted when the machine is reconnected and
+ *         the execution resumes</li>
+ * </ul>
+ * All messages are also published to the {@link ExecutionEventRing} (see: {@link #getEventRing()}) with
+ * timestamps. Because blocks can be executed much more frequently than the screen is refreshed, consumers of
+ * executed blocks (e.g., UI) should read the ring instead of receiving each of them through the stream.
+ * When the execution of the program that this class holds is ended, {@link rx.Subscriber#onCompleted} is called,
+ * no matter the type of ending (terminated by a user/ended normally).
+ * <p>
+ * Requests (pause/restart/terminate) change the {@link ExecutionState} of the execution, and wake up the execution
+ * thread if it is waiting for the delay of a block. While the execution is paused, the thread is parked and does not
+ * consume any CPU time.
+ * <p>
+ * Each block is scheduled against a deadline on an {@link ExecutionClock}, that is, the delay which is returned by
+ * {@link BlockModel#action} includes the time spent in the action itself (e.g., sending commands to the machine).
+ * When a paused execution is restarted, the interrupted block is executed again and only waits for the rest of its
+ * delay.
+ * <p>
+ * If a {@link Reconnector} is set (see: {@link #setReconnector(Reconnector)}), a lost connection (that is,
+ * a {@link RuntimeException} caused by an {@link IOException}, thrown by a block or the controller) does not end
+ * the execution. The execution reconnects to the machine with exponential backoff, halts the reconnected machine,
+ * and then executes the interrupted block again with the {@link ExecutionCondition} kept as it was (the program
+ * count and the states of loops and selections). Blocks throw before changing the condition because they access
+ * the machine first, thus executing the interrupted block again is safe. If all attempts fail, or the same block
+ * keeps losing the connection after reconnections, {@link rx.Subscriber#onError} is called with the original error
+ * as without a reconnector. Other errors (e.g., a bug of a block) always end the execution immediately.
+ * <p>
+ * Typically you can use this class with code like below.
+ * Note that the process of this class is heavy, including I/O connection.
+ * Do not run this on your UI thread.
+ *
+ * <pre><code>
+ * RxObservableProgram program = new RxObservableProgram(...);
+ * Observable.create(program)
+ *     .subscribeOn(Schedulers.newThread())
+ *     .subscribe( ... ); // your code goes here
+ * </code></pre>
+ */
+public class RxObservableProgram implements Observable.OnSubscribe<Integer> {
+
+    public static final int MESSAGE_STARTED = 1;
+    public static final int MESSAGE_TERMINATED = 2;
+    public static final int MESSAGE_PAUSED = 3;
+    public static final int MESSAGE_RESTARTED = 4;
+    public static final int MESSAGE_BLOCK_EXECUTED = 5;
+    public static final int MESSAGE_LINK_LOST = 6;
+    public static final int MESSAGE_LINK_RESTORED = 7;
+
+    /**
+     * An interface to connect to the machine again after the connection is lost.
+     */
+    public interface Reconnector {
+
+        /**
+         * Connects to the machine again. This method is called in the execution thread and may block for a while.
+         *
+         * @return {@link MachineController} for the reconnected machine
+         * @throws IOException if the connection cannot be established
+         */
+        MachineController reconnect() throws IOException;
+    }
+
+    /**
+     * The states of an execution.
+     * <ul>
+     *     <li>{@link #RUNNING}: blocks are being executed</li>
+     *     <li>{@link #PAUSING}: a pause was requested and the execution thread has not acknowledged it yet</li>
+     *     <li>{@link #PAUSED}: the execution thread is parked until a restart or termination is requested</li>
+     *     <li>{@link #TERMINATING}: a termination was requested and the execution will end soon</li>
+     * </ul>
+     */
+    public enum ExecutionState {
+        RUNNING,
+        PAUSING,
+        PAUSED,
+        TERMINATING
+    }
+
+    // the maximum lateness of a block which is compensated by the next block
+    private static final long MAX_COMPENSATED_LATENESS_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final int EVENT_RING_CAPACITY = 1024;
+
+    // the waits before reconnections (doubled from the initial one up to the maximum)
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 8 * 1000;
+    private static final int MAX_RECONNECT_ATTEMPTS = 8;
+
+    // the maximum number of times that a block is executed again after reconnections in a row
+    private static final int MAX_BLOCK_RETRIES = 3;
+
+    // replaced only by the execution thread when the machine is reconnected
+    private MachineController mMachineController;
+
+    private volatile Reconnector mReconnector;
+
+    private final ExecutionClock mClock;
+
+    private final ExecutionEventRing mEventRing = new ExecutionEventRing(EVENT_RING_CAPACITY);
+
+    private final ExecutionCondition mExecutionCondition;
+
+    private final ReentrantLock mStateLock = new ReentrantLock();
+
+    private final Condition mStateChanged = mStateLock.newCondition();
+
+    // guarded by mStateLock
+    private ExecutionState mState = ExecutionState.RUNNING;
+
+    /**
+     * The program is compiled into a {@link CompiledProgram} here, that is, once before the execution.
+     *
+     * @param program a list of blocks to be executed
+     * @param machineController {@link MachineController} for the machine to be manipulated
+     */
+    public RxObservableProgram(List<? extends BlockModel> program, MachineController machineController) {
+        this(program, machineController, new SystemExecutionClock());
+    }
+
+    /**
+     * The program is compiled into a {@link CompiledProgram} here, that is, once before the execution.
+     *
+     * @param program a list of blocks to be executed
+     * @param machineController {@link MachineController} for the machine to be manipulated
+     * @param clock {@link ExecutionClock} which is used to schedule blocks
+     */
+    public RxObservableProgram(List<? extends BlockModel> program, MachineController machineController, ExecutionClock clock) {
+
+        mMachineController = machineController;
+        mClock = clock;
+        mExecutionCondition = new ExecutionCondition(CompiledProgram.compile(program));
+    }
+
+    /**
+     * Sets the way to reconnect to the machine when the connection is lost during the execution.
+     * Without a reconnector, a lost connection ends the execution with an error.
+     * This should be called before the execution starts.
+     *
+     * @param reconnector {@link Reconnector} or <code>null</code> not to reconnect
+     */
+    public void setReconnector(Reconnector reconnector) {
+        mReconnector = reconnector;
+    }
+
+    @Override
+    public void call(Subscriber<? super Integer> subscriber) {
+
+        emit(subscriber, MESSAGE_STARTED);
+
+        try {
+            mainLoop(subscriber);
+        } catch (RuntimeException e) {
+            subscriber.onError(e);
+        } finally {
+            // there is no controller if the reconnection has failed
+            if (mMachineController != null) {
+                mMachineController.close();
+            }
+        }
+
+        subscriber.onCompleted();
+    }
+
+    private void mainLoop(Subscriber<? super Integer> subscriber) throws RuntimeException {
+
+        // the time when the previous block was scheduled to end
+        long previousDeadline = mClock.nanoTime();
+
+        // the remaining time of the block which was interrupted by a pause (0 if there is no such block)
+        long remainingNanos = 0;
+
+        // the number of times that the current block has been executed again after reconnections
+        int retries = 0;
+
+        while (!mExecutionCondition.hasProgramFinished()) {
+
+            if (!awaitRunning(subscriber)) {
+                emit(subscriber, MESSAGE_TERMINATED);
+                break;
+            }
+
+            mEventRing.publish(MESSAGE_BLOCK_EXECUTED, mExecutionCondition.getCurrentBlockIndex(), mClock.nanoTime());
+
+            BlockModel block = mExecutionCondition.getCurrentBlock();
+
+            long start = scheduleStart(previousDeadline);
+            int delay;
+
+            try {
+                delay = block.action(mMachineController, mExecutionCondition);
+            } catch (RuntimeException e) {
+                if (!isLinkLost(e) || retries++ >= MAX_BLOCK_RETRIES) {
+                    throw e;
+                }
+
+                if (!reconnect(subscriber, e)) {
+                    emit(subscriber, MESSAGE_TERMINATED);
+                    break;
+                }
+
+                // the interrupted block is executed again from the beginning
+                remainingNanos = 0;
+                continue;
+            }
+
+            retries = 0;
+
+            // the time spent in the action (e.g., sending commands) is included in the delay
+            long deadline = start + (remainingNanos > 0 ? remainingNanos : TimeUnit.MILLISECONDS.toNanos(delay));
+            remainingNanos = 0;
+
+            // a pause or termination request wakes this thread up
+            if (!awaitDeadline(deadline)
+                    && mExecutionCondition.getCurrentOpcode() == CompiledProgram.OP_SEQUENCE) {
+                remainingNanos = deadline - mClock.nanoTime();
+
+                if (remainingNanos > 0) {
+                    // next execution should begin at the current block and wait for the remaining time
+                    // (only sequence blocks can be executed again because other blocks change the condition)
+                    continue;
+                }
+
+                remainingNanos = 0;
+            }
+
+            previousDeadline = deadline;
+            mExecutionCondition.incrementProgramCount();
+        }
+    }
+
+    /**
+     * @param e an error thrown by a block or the controller
+     * @return the error is caused by an I/O failure, that is, the connection is lost
+     */
+    private static boolean isLinkLost(RuntimeException e) {
+
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Decides when the current block starts. If the previous block ended a little later than its deadline
+     * (e.g., the thread woke up late), the current block is scheduled from the deadline so that the lateness
+     * is not accumulated over blocks. Otherwise (e.g., after a pause), the block is scheduled from now.
+     *
+     * @param previousDeadline the time when the previous block was scheduled to end
+     * @return the start time of the current block
+     */
+    private long scheduleStart(long previousDeadline) {
+
+        long now = mClock.nanoTime();
+        long lateness = now - previousDeadline;
+
+        if (lateness >= 0 && lateness <= MAX_COMPENSATED_LATENESS_NANOS) {
+            return previousDeadline;
+        }
+
+        return now;
+    }
+
+    /**
+     * Acknowledges a pause request if any, and parks the current thread while the execution is paused.
+     *
+     * @param subscriber the subscriber which receives {@link #MESSAGE_PAUSED} and {@link #MESSAGE_RESTARTED}
+     * @return the execution should be continued (<code>true</code>) or terminated (<code>false</code>)
+     */
+    private boolean awaitRunning(Subscriber<? super Integer> subscriber) {
+
+        ExecutionState state = getExecutionState();
+
+        if (state == ExecutionState.PAUSING) {
+            // the machine is halted out of the lock so that requests are never blocked by I/O
+            try {
+                mMachineController.halt();
+            } catch (RuntimeException e) {
+                // the connection is lost; it will be detected when the next block is executed
+            }
+
+            mStateLock.lock();
+            try {
+                if (mState == ExecutionState.PAUSING) {
+                    mState = ExecutionState.PAUSED;
+                }
+            } finally {
+                mStateLock.unlock();
+            }
+
+            // subscribers see the paused state when they receive the message
+            emit(subscriber, MESSAGE_PAUSED);
+
+            mStateLock.lock();
+            try {
+                while (mState == ExecutionState.PAUSED) {
+                    mStateChanged.await();
+                }
+
+                state = mState;
+            } catch (InterruptedException e) {
+                // the thread is interrupted from the outside (e.g., unsubscribed)
+                mState = state = ExecutionState.TERMINATING;
+                Thread.currentThread().interrupt();
+            } finally {
+                mStateLock.unlock();
+            }
+
+            if (state == ExecutionState.RUNNING) {
+                emit(subscriber, MESSAGE_RESTARTED);
+            }
+        }
+
+        return state == ExecutionState.RUNNING;
+    }
+
+    /**
+     * Waits until the deadline unless the state of the execution is changed.
+     *
+     * @param deadline the time of the clock to wait until
+     * @return waited until the deadline (<code>true</code>) or woken up by a request (<code>false</code>)
+     */
+    private boolean awaitDeadline(long deadline) {
+
+        mStateLock.lock();
+        try {
+            long nanos = deadline - mClock.nanoTime();
+
+            while (mState == ExecutionState.RUNNING && nanos > 0) {
+                mClock.awaitNanos(mStateChanged, nanos);
+                nanos = deadline - mClock.nanoTime();
+            }
+
+            return mState == ExecutionState.RUNNING;
+        } catch (InterruptedException e) {
+            // the thread is interrupted from the outside (e.g., unsubscribed)
+            mState = ExecutionState.TERMINATING;
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    /**
+     * Reconnects to the machine after the connection is lost. The lost controller is closed, and the reconnected
+     * machine is halted before it is used (which also makes the controller forget the cached states of motors,
+     * because the machine may have been reset while disconnected).
+     *
+     * @param subscriber the subscriber which receives {@link #MESSAGE_LINK_LOST} and {@link #MESSAGE_LINK_RESTORED}
+     * @param cause the error which was thrown when the connection was lost
+     * @return reconnected (<code>true</code>) or terminated by a request while reconnecting (<code>false</code>)
+     * @throws RuntimeException <code>cause</code> if there is no reconnector or all attempts fail
+     */
+    private boolean reconnect(Subscriber<? super Integer> subscriber, RuntimeException cause) throws RuntimeException {
+
+        Reconnector reconnector = mReconnector;
+        if (reconnector == null) {
+            throw cause;
+        }
+
+        emit(subscriber, MESSAGE_LINK_LOST);
+
+        closeQuietly(mMachineController);
+        mMachineController = null;
+
+        long backoffNanos = TimeUnit.MILLISECONDS.toNanos(INITIAL_BACKOFF_MILLIS);
+
+        for (int i = 0; i < MAX_RECONNECT_ATTEMPTS; ++i) {
+            if (!awaitBackoff(backoffNanos)) {
+                return false;
+            }
+
+            MachineController controller = null;
+            try {
+                controller = reconnector.reconnect();
+                controller.halt();
+
+                mMachineController = controller;
+                emit(subscriber, MESSAGE_LINK_RESTORED);
+                return true;
+
+            } catch (IOException e) {
+                // try again later
+            } catch (RuntimeException e) {
+                // the new connection is broken as well
+                closeQuietly(controller);
+            }
+
+            backoffNanos = Math.min(backoffNanos * 2, TimeUnit.MILLISECONDS.toNanos(MAX_BACKOFF_MILLIS));
+        }
+
+        throw cause;
+    }
+
+    private static void closeQuietly(MachineController controller) {
+        if (controller == null) return;
+
+        try {
+            controller.close();
+        } catch (RuntimeException e) {
+            // the connection has already been broken
+        }
+    }
+
+    /**
+     * Waits before a reconnection unless the execution is requested to be terminated.
+     * Pause and restart requests do not stop the reconnection.
+     *
+     * @param nanos the time to wait
+     * @return waited (<code>true</code>) or woken up by a termination request (<code>false</code>)
+     */
+    private boolean awaitBackoff(long nanos) {
+
+        mStateLock.lock();
+        try {
+            long deadline = mClock.nanoTime() + nanos;
+
+            while (mState != ExecutionState.TERMINATING && nanos > 0) {
+                mClock.awaitNanos(mStateChanged, nanos);
+                nanos = deadline - mClock.nanoTime();
+            }
+
+            return mState != ExecutionState.TERMINATING;
+        } catch (InterruptedException e) {
+            // the thread is interrupted from the outside (e.g., unsubscribed)
+            mState = ExecutionState.TERMINATING;
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    private void changeState(ExecutionState state) {
+
+        mStateLock.lock();
+        try {
+            mState = state;
+            mStateChanged.signalAll();
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the ring buffer to which the events of this execution are published.
+     *
+     * @return an {@link ExecutionEventRing}
+     */
+    public ExecutionEventRing getEventRing() {
+        return mEventRing;
+    }
+
+    /**
+     * Gets the current state of the execution.
+     *
+     * @return the state
+     */
+    public ExecutionState getExecutionState() {
+
+        mStateLock.lock();
+        try {
+            return mState;
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    /**
+     * Requests the current execution to be paused.
+     * The execution halts the machine and emits {@link #MESSAGE_PAUSED} as soon as the current block returns,
+     * without waiting for the delay of the block.
+     */
+    public void requestPause() {
+
+        mStateLock.lock();
+        try {
+            if (mState == ExecutionState.RUNNING) {
+                changeState(ExecutionState.PAUSING);
+            }
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    /**
+     * Requests the current execution to be restarted.
+     */
+    public void requestRestart() {
+
+        mStateLock.lock();
+        try {
+            if (mState == ExecutionState.PAUSING || mState == ExecutionState.PAUSED) {
+                changeState(ExecutionState.RUNNING);
+            }
+        } finally {
+            mStateLock.unlock();
+        }
+    }
+
+    /**
+     * Requests the current execution to be terminated.
+     */
+    public void requestTerminate() {
+        changeState(ExecutionState.TERMINATING);
+    }
+
+    private void emit(Subscriber<? super Integer> subscriber, int message) {
+        mEventRing.publish(message, 0, mClock.nanoTime());
+        subscriber.onNext(message);
+    }
+}
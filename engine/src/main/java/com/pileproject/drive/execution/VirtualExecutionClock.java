@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * An {@link ExecutionClock} whose time passes only when it is waited on. A wait returns immediately after
+ * advancing the clock, thus the delays of blocks cost no real time while the control flow of an execution
+ * (the order of blocks, the time when each block starts) is the same as that in real time.
+ * <p>
+ * This is useful to execute many programs quickly with a simulated or mocked machine (e.g., validating sample
+ * programs). Note that a virtual execution is not paced by the machine, so that it should not be used with
+ * real machines.
+ */
+public class VirtualExecutionClock implements ExecutionClock {
+
+    private final AtomicLong mNow = new AtomicLong();
+
+    @Override
+    public long nanoTime() {
+        return mNow.get();
+    }
+
+    /**
+     * Advances this clock.
+     *
+     * @param nanos the time to be advanced (ignored if it is not positive)
+     */
+    public void advanceNanos(long nanos) {
+        if (nanos > 0) {
+            mNow.addAndGet(nanos);
+        }
+    }
+
+    @Override
+    public long awaitNanos(Condition condition, long nanos) throws InterruptedException {
+        sleepNanos(nanos);
+        return 0;
+    }
+
+    @Override
+    public void sleepNanos(long nanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        advanceNanos(nanos);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.pileproject.drive.machine;
 
+import com.pileproject.drive.comm.BatchingCommunicator;
 import com.pileproject.drivecommand.machine.MachineBase;
 import com.pileproject.drivecommand.machine.device.input.ColorSensor;
 import com.pileproject.drivecommand.machine.device.input.GyroSensor;
@@ -38,7 +39,7 @@ import static com.pileproject.drive.machine.CarControllerBase.MotorProperty.INIT
  * This is a base machine controller which controls a car-formed machine (e.g., Nxt/Ev3/Pile robot). A car-formed
  * machine is a machine which has {@link Motor}s (left/right) and arbitrary number of other devices (e.g.,
  * {@link Buzzer}, {@link TouchSensor}). The information (methods/properties) related to such devices other than motors
- * should be treated in child controllers like {@link NxtCarController}.
+ * should be treated in child controllers like <code>NxtCarController</code>.
  *
  * This base class specifies the interface to control a car-formed machine as methods which are the union of
  * methods of child controllers, and provides the list of all input/output devices which may be used (see:
@@ -49,7 +50,7 @@ import static com.pileproject.drive.machine.CarControllerBase.MotorProperty.INIT
  * Because a car-formed machine must have two motors (left/right), this base class has the properties of these
  * motors (see: {@link CarControllerBase.MotorProperty}). However, as mentioned above, the information of other
  * devices should be treated in child controllers. For example, we keep the sensor properties of Nxt as
- * {@link NxtCarController.SensorProperty}.
+ * <code>NxtCarController.SensorProperty</code>.
  *
  * To provide a hint to users, please override {@link #getAllInputDevices()}, {@link #getAllOutputDevices()} in your
  * child classes.
@@ -74,6 +75,11 @@ public abstract class CarControllerBase implements MachineController {
     protected int mLeftMotorPower = INIT_MOTOR_POWER;
     protected int mRightMotorPower = INIT_MOTOR_POWER;
 
+    // null if this controller does not command motors by itself (see: DelegatingCarController)
+    private final MotorStateCache mMotorStateCache;
+
+    private volatile BatchingCommunicator mBatchingCommunicator;
+
     /**
      * An internal class that contains all the input devices as string constants. These constants will be used to
      * show what kinds of devices this machine has or connect devices with ports, etc.
@@ -120,8 +126,25 @@ public abstract class CarControllerBase implements MachineController {
                 );
     }
 
+    public CarControllerBase() {
+        this(new MotorStateCache());
+    }
+
+    /**
+     * A constructor for controllers which delegate the commands to another controller, and thus
+     * do not keep the states of motors by themselves.
+     *
+     * @param motorStateCache the cache of the motor states, or <code>null</code> if the subclass overrides
+     *                        all the methods which control motors
+     */
+    protected CarControllerBase(MotorStateCache motorStateCache) {
+        mMotorStateCache = motorStateCache;
+    }
+
     @Override
     public void halt() {
+        // a halt must reach the machine whatever the cache says
+        invalidateMotorStates();
         move(MotorDir.Neutral, MotorDir.Neutral);
     }
 
@@ -131,6 +154,15 @@ public abstract class CarControllerBase implements MachineController {
         mMachine.disconnect();
     }
 
+    /**
+     * Stops the activities which were started for the current user of this controller (e.g., sampling sensors)
+     * while keeping the connection, so that the next user starts afresh. This is called when an execution
+     * returns a shared connection (see: {@link MachineSession}).
+     */
+    public void release() {
+        // nothing is started by default
+    }
+
     /**
      * Gets the list of available input devices (i.e., sensors).
      *
@@ -350,39 +382,72 @@ public abstract class CarControllerBase implements MachineController {
     }
 
     private void move(MotorDir leftMotorDir, MotorDir rightMotorDir) {
-        if (mLeftMotor != null) {
-            switch (leftMotorDir) {
-                case Forward:
-                    mLeftMotor.setSpeed(mLeftMotorPower);
-                    mLeftMotor.forward();
-                    break;
-                case Neutral:
-                    mLeftMotor.stop();
-                    break;
-                case Backward:
-                    mLeftMotor.setSpeed(mLeftMotorPower);
-                    mLeftMotor.backward();
-                    break;
-            }
+        BatchingCommunicator batcher = mBatchingCommunicator;
+
+        if (batcher == null) {
+            move(MotorKind.LeftMotor, mLeftMotor, leftMotorDir, mLeftMotorPower);
+            move(MotorKind.RightMotor, mRightMotor, rightMotorDir, mRightMotorPower);
+            return;
+        }
+
+        // both motors change their states in one transmission
+        batcher.beginBatch();
+        try {
+            move(MotorKind.LeftMotor, mLeftMotor, leftMotorDir, mLeftMotorPower);
+            move(MotorKind.RightMotor, mRightMotor, rightMotorDir, mRightMotorPower);
+        } finally {
+            batcher.endBatch();
+        }
+    }
+
+    private void move(MotorKind kind, Motor motor, MotorDir dir, int power) {
+        if (motor == null || !mMotorStateCache.update(kind, dir, power)) {
+            return;
         }
 
-        if (mRightMotor != null) {
-            switch (rightMotorDir) {
-                case Forward:
-                    mRightMotor.setSpeed(mRightMotorPower);
-                    mRightMotor.forward();
-                    break;
-                case Neutral:
-                    mRightMotor.stop();
-                    break;
-                case Backward:
-                    mRightMotor.setSpeed(mRightMotorPower);
-                    mRightMotor.backward();
-                    break;
-            }
+        switch (dir) {
+            case Forward:
+                motor.setSpeed(power);
+                motor.forward();
+                break;
+            case Neutral:
+                motor.stop();
+                break;
+            case Backward:
+                motor.setSpeed(power);
+                motor.backward();
+                break;
         }
     }
 
+    /**
+     * Forgets the states commanded to motors last, thus the next moves are sent to the machine even if they are
+     * the same as the last ones. Call this when the actual states of motors may differ from the commanded ones
+     * (e.g., after reconnecting to the machine).
+     */
+    public void invalidateMotorStates() {
+        mMotorStateCache.invalidate();
+    }
+
+    /**
+     * Sets the communicator which the machine of this controller uses to gather the commands of a move
+     * (i.e., the commands for the left and right motors) into one transmission.
+     *
+     * @param communicator the communicator of the machine, or <code>null</code> not to gather commands
+     */
+    public void setBatchingCommunicator(BatchingCommunicator communicator) {
+        mBatchingCommunicator = communicator;
+    }
+
+    /**
+     * Gets the cache of the motor states. The cache counts the sent/suppressed commands.
+     *
+     * @return the cache of the motor states
+     */
+    public MotorStateCache getMotorStateCache() {
+        return mMotorStateCache;
+    }
+
     /**
      * A setter of motor power in percentage.
      *
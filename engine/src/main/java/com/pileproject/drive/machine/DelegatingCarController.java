@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.comm.BatchingCommunicator;
+
+import java.util.List;
+
+/**
+ * A {@link CarControllerBase} which delegates all the methods to another controller.
+ * Subclasses override some of the methods to decorate the controller. This controller keeps no state of
+ * the machine (e.g., the states of motors), which is kept by the wrapped controller.
+ * <p>
+ * The accesses to the machine are serialized with {@link #mMachineLock}, because a communicator
+ * cannot handle concurrent requests. Subclasses which access the machine in other threads should hold the lock.
+ */
+public class DelegatingCarController extends CarControllerBase {
+
+    protected final CarControllerBase mController;
+
+    // serializes the accesses to the machine
+    protected final Object mMachineLock;
+
+    /**
+     * @param controller the controller to which the methods are delegated
+     */
+    public DelegatingCarController(CarControllerBase controller) {
+        this(controller, new Object());
+    }
+
+    /**
+     * @param controller the controller to which the methods are delegated
+     * @param machineLock the lock which serializes the accesses to the machine, which may be shared with
+     *                    other users of the controller
+     */
+    public DelegatingCarController(CarControllerBase controller, Object machineLock) {
+        // the states of motors are kept by the wrapped controller
+        super(null);
+        mController = controller;
+        mMachineLock = machineLock;
+    }
+
+    /**
+     * Gets the controller to which a method is delegated. Subclasses can override this to check
+     * whether the controller may be used.
+     *
+     * @return the wrapped controller
+     */
+    protected CarControllerBase delegate() {
+        return mController;
+    }
+
+    @Override
+    public void halt() {
+        synchronized (mMachineLock) {
+            delegate().halt();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (mMachineLock) {
+            delegate().close();
+        }
+    }
+
+    @Override
+    public void release() {
+        delegate().release();
+    }
+
+    @Override
+    public List<String> getAllInputDevices() {
+        return delegate().getAllInputDevices();
+    }
+
+    @Override
+    public float[] getColorSensorRgb() {
+        synchronized (mMachineLock) {
+            return delegate().getColorSensorRgb();
+        }
+    }
+
+    @Override
+    public int getColorSensorIlluminance() {
+        synchronized (mMachineLock) {
+            return delegate().getColorSensorIlluminance();
+        }
+    }
+
+    @Override
+    public int getGyroSensorRate() {
+        synchronized (mMachineLock) {
+            return delegate().getGyroSensorRate();
+        }
+    }
+
+    @Override
+    public int getGyroSensorAngle() {
+        synchronized (mMachineLock) {
+            return delegate().getGyroSensorAngle();
+        }
+    }
+
+    @Override
+    public int getRangefinderDistance() {
+        synchronized (mMachineLock) {
+            return delegate().getRangefinderDistance();
+        }
+    }
+
+    @Override
+    public int getRemoteControlReceiverButton() {
+        synchronized (mMachineLock) {
+            return delegate().getRemoteControlReceiverButton();
+        }
+    }
+
+    @Override
+    public int getRemoteControlReceiverDistance() {
+        synchronized (mMachineLock) {
+            return delegate().getRemoteControlReceiverDistance();
+        }
+    }
+
+    @Override
+    public int getLightSensorValue() {
+        synchronized (mMachineLock) {
+            return delegate().getLightSensorValue();
+        }
+    }
+
+    @Override
+    public int getSoundSensorDb() {
+        synchronized (mMachineLock) {
+            return delegate().getSoundSensorDb();
+        }
+    }
+
+    @Override
+    public boolean isTouchSensorTouched() {
+        synchronized (mMachineLock) {
+            return delegate().isTouchSensorTouched();
+        }
+    }
+
+    @Override
+    public int getTouchSensorTouchedCount() {
+        synchronized (mMachineLock) {
+            return delegate().getTouchSensorTouchedCount();
+        }
+    }
+
+    @Override
+    public List<String> getAllOutputDevices() {
+        return delegate().getAllOutputDevices();
+    }
+
+    @Override
+    public void turnOnBuzzer() {
+        synchronized (mMachineLock) {
+            delegate().turnOnBuzzer();
+        }
+    }
+
+    @Override
+    public void turnOffBuzzer() {
+        synchronized (mMachineLock) {
+            delegate().turnOffBuzzer();
+        }
+    }
+
+    @Override
+    public void beepBuzzer() {
+        synchronized (mMachineLock) {
+            delegate().beepBuzzer();
+        }
+    }
+
+    @Override
+    public void turnOnLed() {
+        synchronized (mMachineLock) {
+            delegate().turnOnLed();
+        }
+    }
+
+    @Override
+    public void turnOffLed() {
+        synchronized (mMachineLock) {
+            delegate().turnOffLed();
+        }
+    }
+
+    @Override
+    public void moveForward() {
+        synchronized (mMachineLock) {
+            delegate().moveForward();
+        }
+    }
+
+    @Override
+    public void moveBackward() {
+        synchronized (mMachineLock) {
+            delegate().moveBackward();
+        }
+    }
+
+    @Override
+    public void turnLeft() {
+        synchronized (mMachineLock) {
+            delegate().turnLeft();
+        }
+    }
+
+    @Override
+    public void turnRight() {
+        synchronized (mMachineLock) {
+            delegate().turnRight();
+        }
+    }
+
+    @Override
+    public void setMotorPower(MotorKind kind, int percent) {
+        delegate().setMotorPower(kind, percent);
+    }
+
+    @Override
+    public void invalidateMotorStates() {
+        delegate().invalidateMotorStates();
+    }
+
+    @Override
+    public MotorStateCache getMotorStateCache() {
+        return delegate().getMotorStateCache();
+    }
+
+    @Override
+    public void setBatchingCommunicator(BatchingCommunicator communicator) {
+        delegate().setBatchingCommunicator(communicator);
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived session which owns the connection to a machine and lends it to executions, so that re-runs of
+ * programs do not pay the time to connect (e.g., a few seconds via Bluetooth).
+ * <p>
+ * {@link #acquire()} connects to the machine at the first time and returns a controller. Closing the returned
+ * controller halts the machine and returns the connection to this session instead of disconnecting it.
+ * While the connection is not lent, this session halts the machine periodically as a keep-alive (which also
+ * detects broken connections), and disconnects it after the idle timeout.
+ * <p>
+ * {@link #preconnect()} starts connecting in background before the connection is needed (e.g., while a program is
+ * being edited), so that an execution can start without waiting for the connection. An acquisition during
+ * the pre-connection waits for it and takes over the connection.
+ * <p>
+ * Only one execution can borrow the connection at a time. A new acquisition takes over the connection from
+ * the previous borrower, which is supposed to have been abandoned (e.g., its screen was closed before
+ * the execution started). The controller of the previous borrower cannot control the machine any longer.
+ */
+public class MachineSession {
+
+    /**
+     * An interface to make a new connection to a machine.
+     */
+    public interface Connector {
+
+        /**
+         * Connects to a machine. This method may block for a while.
+         *
+         * @return a controller of the connected machine; closing it disconnects the machine
+         * @throws IOException if the connection cannot be established
+         */
+        CarControllerBase connect() throws IOException;
+    }
+
+    private final Connector mConnector;
+    private final long mIdleTimeoutMillis;
+    private final long mKeepAlivePeriodMillis;
+
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MachineSession");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // serializes the keep-alives with the commands of borrowers (it is never taken while holding this)
+    private final Object mMachineLock = new Object();
+
+    // all the fields below are guarded by this
+    private CarControllerBase mController;
+    private Lease mLease;
+    private boolean mIsConnecting;
+
+    // incremented whenever the connection is discarded, so that stale connections and tasks are detected
+    private int mGeneration;
+
+    private ScheduledFuture<?> mIdleTimer;
+    private ScheduledFuture<?> mKeepAlive;
+
+    /**
+     * @param connector the connector to make connections
+     * @param idleTimeoutMillis the time to keep an unused connection
+     * @param keepAlivePeriodMillis the interval of keep-alives while the connection is not lent
+     */
+    public MachineSession(Connector connector, long idleTimeoutMillis, long keepAlivePeriodMillis) {
+        mConnector = connector;
+        mIdleTimeoutMillis = idleTimeoutMillis;
+        mKeepAlivePeriodMillis = keepAlivePeriodMillis;
+    }
+
+    /**
+     * Borrows the connection, connecting to the machine if there is no connection.
+     * This method may block while connecting, thus do not call it in the main thread.
+     *
+     * @return a controller of the machine; close it to return the connection
+     * @throws IOException if the connection cannot be established
+     */
+    public CarControllerBase acquire() throws IOException {
+        int generation;
+
+        synchronized (this) {
+            while (mIsConnecting) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for another connection");
+                }
+            }
+
+            cancelTimers();
+
+            if (mController != null) {
+                return lend();
+            }
+
+            mIsConnecting = true;
+            generation = mGeneration;
+        }
+
+        CarControllerBase controller = null;
+        Lease lease = null;
+        try {
+            controller = mConnector.connect();
+        } finally {
+            synchronized (this) {
+                mIsConnecting = false;
+                notifyAll();
+
+                if (controller != null && generation == mGeneration) {
+                    mController = controller;
+                    lease = lend();
+                }
+            }
+        }
+
+        if (lease == null) {
+            // the session was closed while connecting
+            disconnect(controller);
+            throw new IOException("The session was closed while connecting");
+        }
+
+        return lease;
+    }
+
+    /**
+     * Starts connecting to the machine in background if there is no connection and no connection is in progress.
+     * The connection is kept as if it was returned by a borrower, that is, it is disconnected after the idle timeout
+     * unless it is acquired. A failure is ignored (the next {@link #acquire()} tries again).
+     * This method never blocks on I/O, thus it can be called in the main thread.
+     */
+    public void preconnect() {
+        final int generation;
+
+        synchronized (this) {
+            if (mController != null || mIsConnecting) return;
+
+            mIsConnecting = true;
+            generation = mGeneration;
+        }
+
+        mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                CarControllerBase controller = null;
+                try {
+                    controller = mConnector.connect();
+                } catch (IOException e) {
+                    // the next acquisition will try again
+                } catch (RuntimeException e) {
+                    // ditto
+                } finally {
+                    synchronized (MachineSession.this) {
+                        mIsConnecting = false;
+                        MachineSession.this.notifyAll();
+
+                        if (controller != null && generation == mGeneration) {
+                            mController = controller;
+                            controller = null;
+                            scheduleTimers();
+                        }
+                    }
+                }
+
+                // the session was closed while connecting
+                disconnect(controller);
+            }
+        });
+    }
+
+    /**
+     * @return there is a connection (<code>true</code>) or not (<code>false</code>)
+     */
+    public synchronized boolean isConnected() {
+        return mController != null;
+    }
+
+    /**
+     * Disconnects the machine in background. A borrower (if any) loses the connection, and the next
+     * {@link #acquire()} makes a new connection (e.g., after the machine to be used was changed).
+     * This method never blocks on I/O, thus it can be called in the main thread.
+     */
+    public void close() {
+        final CarControllerBase discarded = discard();
+        if (discarded == null) return;
+
+        mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                disconnect(discarded);
+            }
+        });
+    }
+
+    private synchronized Lease lend() {
+        if (mLease != null) {
+            mLease.mIsRevoked = true;
+            mController.release();
+        }
+
+        mLease = new Lease(mController, mMachineLock);
+        return mLease;
+    }
+
+    private void returnConnection(Lease lease, boolean isBroken) {
+        CarControllerBase discarded = null;
+
+        synchronized (this) {
+            if (lease != mLease) return;
+            mLease = null;
+
+            if (isBroken) {
+                discarded = discard();
+            } else {
+                scheduleTimers();
+            }
+        }
+
+        disconnect(discarded);
+    }
+
+    // returns the connection, which should be disconnected out of the lock
+    private synchronized CarControllerBase discard() {
+        CarControllerBase controller = mController;
+
+        mController = null;
+        if (mLease != null) {
+            mLease.mIsRevoked = true;
+            mLease = null;
+        }
+        mGeneration++;
+        cancelTimers();
+
+        return controller;
+    }
+
+    private static void disconnect(CarControllerBase controller) {
+        if (controller == null) return;
+
+        try {
+            controller.close();
+        } catch (RuntimeException e) {
+            // the connection has already been broken
+        }
+    }
+
+    private synchronized void scheduleTimers() {
+        final int generation = mGeneration;
+
+        mIdleTimer = mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                CarControllerBase discarded = null;
+
+                synchronized (MachineSession.this) {
+                    if (generation == mGeneration && mLease == null) {
+                        discarded = discard();
+                    }
+                }
+
+                disconnect(discarded);
+            }
+        }, mIdleTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        mKeepAlive = mScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                CarControllerBase controller;
+                boolean isBroken = false;
+
+                // the machine is halted out of the lock of this session so that an acquisition never waits for
+                // the I/O, while a new borrower's commands wait for the halt with the machine lock
+                synchronized (mMachineLock) {
+                    synchronized (MachineSession.this) {
+                        if (generation != mGeneration || mLease != null) return;
+                        controller = mController;
+                    }
+
+                    try {
+                        controller.halt();
+                    } catch (RuntimeException e) {
+                        isBroken = true;
+                    }
+                }
+
+                if (!isBroken) return;
+
+                CarControllerBase discarded = null;
+
+                synchronized (MachineSession.this) {
+                    // a borrower which has taken the connection in the meantime finds the error by itself
+                    if (generation == mGeneration && mLease == null) {
+                        discarded = discard();
+                    }
+                }
+
+                disconnect(discarded);
+            }
+        }, mKeepAlivePeriodMillis, mKeepAlivePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelTimers() {
+        if (mIdleTimer != null) {
+            mIdleTimer.cancel(false);
+            mIdleTimer = null;
+        }
+
+        if (mKeepAlive != null) {
+            mKeepAlive.cancel(false);
+            mKeepAlive = null;
+        }
+    }
+
+    /**
+     * A controller lent to a borrower. Closing this halts the machine, releases the controller
+     * (see: {@link CarControllerBase#release()}) and returns the connection. Once the connection is taken over
+     * or discarded, all the methods other than {@link #close()} throw {@link IllegalStateException}.
+     */
+    private class Lease extends DelegatingCarController {
+        private volatile boolean mIsRevoked;
+
+        Lease(CarControllerBase controller, Object machineLock) {
+            super(controller, machineLock);
+        }
+
+        @Override
+        protected CarControllerBase delegate() {
+            if (mIsRevoked) {
+                throw new IllegalStateException("The connection is no longer lent to this borrower");
+            }
+
+            return super.delegate();
+        }
+
+        @Override
+        public void close() {
+            if (mIsRevoked) return;
+
+            boolean isBroken = false;
+            try {
+                halt();
+                release();
+            } catch (RuntimeException e) {
+                isBroken = true;
+            }
+
+            returnConnection(this, isBroken);
+        }
+    }
+}
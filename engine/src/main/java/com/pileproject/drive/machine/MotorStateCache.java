@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.machine.CarControllerBase.MotorDir;
+import com.pileproject.drive.machine.CarControllerBase.MotorKind;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the states which were commanded to motors last (the direction and the speed).
+ * A controller asks this cache before sending commands to a motor, and the commands are sent only if they change
+ * the state of the motor. This suppresses redundant commands, e.g., consecutive forward blocks or loops which repeat
+ * the same move.
+ * <p>
+ * The cache must be invalidated when the actual states of motors can differ from the cache
+ * (e.g., reconnections, halts), so that the next commands are sent for sure.
+ */
+public class MotorStateCache {
+
+    private final MotorDir[] mDirections = new MotorDir[MotorKind.values().length];
+    private final int[] mSpeeds = new int[MotorKind.values().length];
+
+    private final AtomicLong mSentCount = new AtomicLong();
+    private final AtomicLong mSavedCount = new AtomicLong();
+
+    /**
+     * Forgets all the states, thus the next commands will be sent.
+     */
+    public synchronized void invalidate() {
+        Arrays.fill(mDirections, null);
+    }
+
+    /**
+     * Checks if the commands for a state should be sent, and records the state if so.
+     * A move consists of two commands (setting the speed and the direction) and a stop consists of one command.
+     * The speed is ignored when the direction is {@link MotorDir#Neutral}.
+     *
+     * @param kind the motor to be commanded
+     * @param direction the direction to be set
+     * @param speed the speed to be set
+     * @return the commands should be sent (<code>true</code>) or not (<code>false</code>)
+     */
+    public synchronized boolean update(MotorKind kind, MotorDir direction, int speed) {
+        int i = kind.ordinal();
+        int writes = direction == MotorDir.Neutral ? 1 : 2;
+
+        if (mDirections[i] == direction && (direction == MotorDir.Neutral || mSpeeds[i] == speed)) {
+            mSavedCount.addAndGet(writes);
+            return false;
+        }
+
+        mDirections[i] = direction;
+        mSpeeds[i] = speed;
+        mSentCount.addAndGet(writes);
+        return true;
+    }
+
+    /**
+     * @return the number of commands which were sent
+     */
+    public long getSentCount() {
+        return mSentCount.get();
+    }
+
+    /**
+     * @return the number of commands which were suppressed because they would not change the states
+     */
+    public long getSavedCount() {
+        return mSavedCount.get();
+    }
+}
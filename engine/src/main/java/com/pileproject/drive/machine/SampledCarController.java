@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.execution.ExecutionClock;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link CarControllerBase} which samples sensors in background and answers cached readings.
+ * All other methods are delegated to the wrapped controller.
+ * <p>
+ * Reading a sensor through a machine is a round trip of the communication (e.g., tens of milliseconds via
+ * Bluetooth), which makes selection blocks slow. Each reading is answered from the latest sample unless it is older
+ * than the staleness bound, and stale or missing samples are read from the machine synchronously.
+ * When a sample which is older than the refresh period is answered, the sensor is read again in a background
+ * thread, so that a selection block which is executed repeatedly (e.g., in a loop) gets fresh samples
+ * without waiting for round trips.
+ * <p>
+ * Only the sensors which are being read are sampled, and each of them at most once in a refresh period
+ * (measured with the {@link ExecutionClock}), thus the sampling never occupies the communication while no selection
+ * block reads sensors. The accesses to the machine from the sampling thread and the execution thread are serialized
+ * per round trip, because a communicator cannot handle concurrent requests.
+ */
+public class SampledCarController extends DelegatingCarController {
+
+    private static final int TOUCH = 0;
+    private static final int LIGHT = 1;
+    private static final int SOUND = 2;
+    private static final int NUMBER_OF_SENSORS = 3;
+
+    private static final String[] SENSOR_NAMES = {
+            InputDevice.TOUCH,
+            InputDevice.LIGHT,
+            InputDevice.SOUND,
+    };
+
+    private final ExecutionClock mClock;
+    private final long mPeriodNanos;
+    private final long mMaxStalenessNanos;
+
+    private final AtomicReferenceArray<SensorReading> mReadings = new AtomicReferenceArray<>(NUMBER_OF_SENSORS);
+
+    // whether each sensor should be sampled in background (guarded by this)
+    private final boolean[] mRefreshRequested = new boolean[NUMBER_OF_SENSORS];
+
+    // guarded by this
+    private Thread mSamplingThread;
+
+    /**
+     * A sample of a sensor. Booleans (e.g., touched or not) are expressed as 1 or 0.
+     */
+    public static final class SensorReading {
+        private final int mValue;
+        private final long mTimestamp;
+
+        SensorReading(int value, long timestamp) {
+            mValue = value;
+            mTimestamp = timestamp;
+        }
+
+        public int getValue() {
+            return mValue;
+        }
+
+        /**
+         * @return the time of the {@link ExecutionClock} when the sensor was read
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+    }
+
+    /**
+     * @param controller the controller which reads sensors and controls motors actually
+     * @param clock the clock with which the ages of samples are judged
+     * @param periodMillis the age of a sample at which the sensor is sampled again in background
+     * @param maxStalenessMillis the maximum age of a sample which can be used instead of reading the sensor
+     */
+    public SampledCarController(CarControllerBase controller, ExecutionClock clock,
+                                long periodMillis, long maxStalenessMillis) {
+        super(controller);
+        mClock = clock;
+        mPeriodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        mMaxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+    }
+
+    /**
+     * Gets the latest sample of a sensor.
+     *
+     * @param inputDevice one of {@link InputDevice#TOUCH}, {@link InputDevice#LIGHT} and {@link InputDevice#SOUND}
+     * @return the latest sample, or <code>null</code> if the sensor has never been read
+     */
+    public SensorReading getReading(String inputDevice) {
+        for (int i = 0; i < NUMBER_OF_SENSORS; ++i) {
+            if (SENSOR_NAMES[i].equals(inputDevice)) return mReadings.get(i);
+        }
+
+        return null;
+    }
+
+    private int read(int sensor) {
+        SensorReading reading = mReadings.get(sensor);
+
+        if (reading != null) {
+            long age = mClock.nanoTime() - reading.getTimestamp();
+
+            if (age <= mMaxStalenessNanos) {
+                if (age >= mPeriodNanos) {
+                    requestRefresh(sensor);
+                }
+                return reading.getValue();
+            }
+        }
+
+        return sample(sensor);
+    }
+
+    private int sample(int sensor) {
+        synchronized (mMachineLock) {
+            int value;
+
+            switch (sensor) {
+                case TOUCH:
+                    value = mController.isTouchSensorTouched() ? 1 : 0;
+                    break;
+                case LIGHT:
+                    value = mController.getLightSensorValue();
+                    break;
+                default:
+                    value = mController.getSoundSensorDb();
+                    break;
+            }
+
+            mReadings.set(sensor, new SensorReading(value, mClock.nanoTime()));
+            return value;
+        }
+    }
+
+    private final Runnable mSampler = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    int sensor = awaitRefreshRequest();
+                    sample(sensor);
+                    finishRefresh(sensor);
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (RuntimeException e) {
+                // the connection may be broken; the execution thread will get the error when it reads sensors
+            } finally {
+                // the next request starts sampling again (e.g., after a transient timeout)
+                synchronized (SampledCarController.this) {
+                    if (mSamplingThread == Thread.currentThread()) {
+                        mSamplingThread = null;
+                        Arrays.fill(mRefreshRequested, false);
+                    }
+                }
+            }
+        }
+    };
+
+    private synchronized void requestRefresh(int sensor) {
+        // NOTE: a sensor which is being sampled is not requested again
+        if (mRefreshRequested[sensor]) return;
+        mRefreshRequested[sensor] = true;
+
+        if (mSamplingThread == null) {
+            mSamplingThread = new Thread(mSampler, "SensorSampler");
+            mSamplingThread.setDaemon(true);
+            mSamplingThread.start();
+        }
+
+        notifyAll();
+    }
+
+    private synchronized int awaitRefreshRequest() throws InterruptedException {
+        while (true) {
+            for (int i = 0; i < NUMBER_OF_SENSORS; ++i) {
+                if (mRefreshRequested[i]) return i;
+            }
+
+            wait();
+        }
+    }
+
+    private synchronized void finishRefresh(int sensor) {
+        mRefreshRequested[sensor] = false;
+    }
+
+    private synchronized void stopSampling() {
+        Arrays.fill(mRefreshRequested, false);
+
+        if (mSamplingThread == null) return;
+
+        mSamplingThread.interrupt();
+        mSamplingThread = null;
+    }
+
+    @Override
+    public boolean isTouchSensorTouched() {
+        return read(TOUCH) != 0;
+    }
+
+    @Override
+    public int getLightSensorValue() {
+        return read(LIGHT);
+    }
+
+    @Override
+    public int getSoundSensorDb() {
+        return read(SOUND);
+    }
+
+    @Override
+    public void release() {
+        stopSampling();
+
+        // the next user starts with no samples
+        for (int i = 0; i < NUMBER_OF_SENSORS; ++i) {
+            mReadings.set(i, null);
+        }
+
+        super.release();
+    }
+
+    @Override
+    public void close() {
+        stopSampling();
+
+        super.close();
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model;
+
+import com.pileproject.drive.execution.ExecutionCondition;
+import com.pileproject.drive.machine.MachineController;
+
+/**
+ * A base class of the models of blocks, which is the intermediate representation of a block program
+ * for the execution. A model has the semantics (see: {@link #action(MachineController, ExecutionCondition)}) and
+ * the position of a block, but has no dependencies on Android, so that programs can be executed on the plain JVM.
+ * <p>
+ * Views of blocks are converted into models before executions
+ * (see: <code>com.pileproject.drive.programming.visual.block.BlockBase#toModel</code>).
+ */
+public abstract class BlockModel implements PositionHolder {
+
+    private int mLeft;
+    private int mTop;
+    private int mRight;
+
+    /**
+     * Returns the kind of this block.
+     *
+     * @return {@link BlockKind}
+     */
+    public abstract BlockKind getKind();
+
+    /**
+     * Does an action that this block does while the execution of program and
+     * returns delay that occurs after this action in millisecond.
+     *
+     * @param controller Controller of Device
+     * @param condition  Condition of the executing program
+     * @return the delay after the action of this block in millisecond
+     */
+    public abstract int action(MachineController controller, ExecutionCondition condition);
+
+    /**
+     * Sets the position of the block in the programming space.
+     *
+     * @param left the left position
+     * @param top the top position
+     * @param right the right position
+     * @return this model
+     */
+    public BlockModel setPosition(int left, int top, int right) {
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        return this;
+    }
+
+    @Override
+    public int getLeft() {
+        return mLeft;
+    }
+
+    @Override
+    public int getTop() {
+        return mTop;
+    }
+
+    public int getRight() {
+        return mRight;
+    }
+
+    public enum BlockKind {
+        SEQUENCE, SELECTION_BEGIN, SELECTION_END, REPETITION_BEGIN, REPETITION_END, REPETITION_BREAK
+    }
+}
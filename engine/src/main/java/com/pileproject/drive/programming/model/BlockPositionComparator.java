@@ -13,18 +13,16 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package com.pileproject.drive.programming.visual.activity;
-
-import com.pileproject.drive.programming.visual.block.BlockBase;
+package com.pileproject.drive.programming.model;
 
 import java.util.Comparator;
 
 
 /**
- * A comparator that sorts {@link BlockBase}s according to the position of them. The position (x, y) is reduced to a
- * single value by
+ * A comparator that sorts blocks ({@link PositionHolder}s) according to the position of them.
+ * The position (x, y) is reduced to a single value by <code>y * 10000 + x</code>.
  */
-public class BlockPositionComparator implements Comparator<BlockBase> {
+public class BlockPositionComparator implements Comparator<PositionHolder> {
     public static final int ASC = 1; // ascending order
     public static final int DESC = -1; // descending order
     private final int mSort; // sort order
@@ -48,13 +46,14 @@ public class BlockPositionComparator implements Comparator<BlockBase> {
         mSort = sort;
     }
 
-    private int reducePosition(BlockBase a) {
+    private long reducePosition(PositionHolder a) {
         // NOTE: the priority of the y position is higher than that of the x position
-        return a.getTop() * OFFSET + a.getLeft();
+        // (calculated in long so that large programs do not overflow)
+        return (long) a.getTop() * OFFSET + a.getLeft();
     }
 
     @Override
-    public int compare(BlockBase a, BlockBase b) {
+    public int compare(PositionHolder a, PositionHolder b) {
         if (a == null && b == null) {
             return 0; // a = b
         } else if (a == null) {
@@ -63,7 +62,10 @@ public class BlockPositionComparator implements Comparator<BlockBase> {
             return -1 * mSort; // a < b
         }
 
-        int result = reducePosition(a) - reducePosition(b);
+        // NOTE: Long#compare is not available before API 19
+        long x = reducePosition(a);
+        long y = reducePosition(b);
+        int result = x < y ? -1 : (x == y ? 0 : 1);
         return result * mSort;
     }
 }
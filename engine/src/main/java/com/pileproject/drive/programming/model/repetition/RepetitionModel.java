@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model.repetition;
+
+import com.pileproject.drive.programming.model.BlockModel;
+
+/**
+ * A model of a block which represents the beginning of a loop.
+ * The end is expressed by {@link RepetitionEndModel}.
+ */
+public abstract class RepetitionModel extends BlockModel {
+
+    @Override
+    public final BlockKind getKind() {
+        return BlockKind.REPETITION_BEGIN;
+    }
+}
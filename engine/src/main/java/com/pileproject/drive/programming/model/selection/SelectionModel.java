@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model.selection;
+
+import com.pileproject.drive.execution.ExecutionCondition;
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+
+/**
+ * A model of a block which represents the beginning of a selection (if-statement).
+ * The end is expressed by {@link SelectionEndModel}.
+ */
+public abstract class SelectionModel extends BlockModel {
+
+    /**
+     * Evaluates the condition of this selection.
+     *
+     * @param controller Controller of Device
+     * @return the result of the condition
+     */
+    protected abstract boolean evaluateCondition(MachineController controller);
+
+    @Override
+    public final BlockKind getKind() {
+        return BlockKind.SELECTION_BEGIN;
+    }
+
+    @Override
+    public final int action(MachineController controller, ExecutionCondition condition) {
+        condition.pushSelectionResult(evaluateCondition(controller));
+        return 0;
+    }
+}
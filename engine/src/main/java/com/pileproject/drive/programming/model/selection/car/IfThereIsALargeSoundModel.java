@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model.selection.car;
+
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.selection.SelectionModel;
+
+/**
+ * A model of a block that checks if the current sound sensor's value is larger than the threshold.
+ */
+public class IfThereIsALargeSoundModel extends SelectionModel {
+
+    private final int mThreshold;
+
+    /**
+     * @param threshold the threshold of the sound sensor
+     */
+    public IfThereIsALargeSoundModel(int threshold) {
+        mThreshold = threshold;
+    }
+
+    @Override
+    protected boolean evaluateCondition(MachineController controller) {
+        return ((CarControllerBase) controller).getSoundSensorDb() > mThreshold;
+    }
+}
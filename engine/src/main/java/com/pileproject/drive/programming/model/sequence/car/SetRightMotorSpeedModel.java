@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model.sequence.car;
+
+import com.pileproject.drive.execution.ExecutionCondition;
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.sequence.SequenceModel;
+
+import static com.pileproject.drive.machine.CarControllerBase.MotorKind.RightMotor;
+
+/**
+ * A model of a block that sets the speed of the right motor.
+ */
+public class SetRightMotorSpeedModel extends SequenceModel {
+
+    private final int mPercent;
+
+    /**
+     * @param percent the power of the motor in percent
+     */
+    public SetRightMotorSpeedModel(int percent) {
+        mPercent = percent;
+    }
+
+    @Override
+    public int action(MachineController controller, ExecutionCondition condition) {
+        ((CarControllerBase) controller).setMotorPower(RightMotor, mPercent);
+        return 0;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model.sequence.car;
+
+import com.pileproject.drive.execution.ExecutionCondition;
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.sequence.SequenceModel;
+
+/**
+ * A model of a block that represents a turn left operation for a while.
+ */
+public class TurnLeftSecModel extends SequenceModel {
+
+    private final int mMilliseconds;
+
+    /**
+     * @param milliseconds the duration of this block in millisecond
+     */
+    public TurnLeftSecModel(int milliseconds) {
+        mMilliseconds = milliseconds;
+    }
+
+    @Override
+    public int action(MachineController controller, ExecutionCondition condition) {
+        ((CarControllerBase) controller).turnLeft();
+        return mMilliseconds;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.util.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A utility class for variable-length integers in binary formats (e.g., session files and program blobs).
+ * <p>
+ * An unsigned value is written in unsigned LEB128, that is, 7 bits per byte from the lowest, with the highest bit
+ * set on all the bytes but the last. A signed value is zigzag-encoded (0, -1, 1, -2, ... to 0, 1, 2, 3, ...)
+ * before it is written in the same way, so that small negative values are also short.
+ */
+public class VarIntUtil {
+
+    private VarIntUtil() {
+        throw new AssertionError("This class cannot be instantiated");
+    }
+
+    /**
+     * Writes a value in unsigned LEB128. A negative value is treated as an unsigned 64-bit value.
+     *
+     * @param output the output to be written
+     * @param value the value to be written
+     * @throws IOException if the output fails
+     */
+    public static void writeUnsigned(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Reads a value in unsigned LEB128.
+     *
+     * @param input the input to be read
+     * @return the value (negative if it does not fit in 63 bits)
+     * @throws IOException if the input fails or the value is longer than 64 bits
+     */
+    public static long readUnsigned(DataInput input) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) return value;
+        }
+
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Reads a value in unsigned LEB128 which is used as a length or a count (e.g., to allocate an array), thus
+     * a corrupted value is rejected before it is used.
+     *
+     * @param input the input to be read
+     * @param max the maximum value which is valid
+     * @return the value in a range <code>[0, max]</code>
+     * @throws IOException if the input fails or the value is out of the range
+     */
+    public static int readLength(DataInput input, int max) throws IOException {
+        long value = readUnsigned(input);
+
+        if (value < 0 || value > max) {
+            throw new IOException("Invalid length: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes a signed value in zigzag-encoded unsigned LEB128.
+     *
+     * @param output the output to be written
+     * @param value the value to be written
+     * @throws IOException if the output fails
+     */
+    public static void writeSigned(DataOutput output, long value) throws IOException {
+        writeUnsigned(output, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a signed value in zigzag-encoded unsigned LEB128.
+     *
+     * @param input the input to be read
+     * @return the value
+     * @throws IOException if the input fails or the value is longer than 64 bits
+     */
+    public static long readSigned(DataInput input) throws IOException {
+        long value = readUnsigned(input);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.pileproject.drive.util.string;
 
+import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Locale;
@@ -64,4 +65,17 @@ public class NumberUtil {
 
         return decimalFormat.format(value);
     }
+
+    /**
+     * Converts a numerical value to an integer value for actions of blocks by moving the decimal point
+     * to the right <code>precision</code> times (e.g., 1.25 with precision 2 is converted into 125).
+     * The digits which are still in fraction part are truncated.
+     *
+     * @param value the value to be converted
+     * @param precision the number of precision
+     * @return the converted value in int
+     */
+    public static int toActionValue(BigDecimal value, int precision) {
+        return value.movePointRight(precision).intValue();
+    }
 }
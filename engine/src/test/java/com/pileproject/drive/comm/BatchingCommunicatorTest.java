@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.VirtualExecutionClock;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.pileproject.drive.comm.Telegrams.frame;
+import static org.junit.Assert.assertEquals;
+
+public class BatchingCommunicatorTest {
+
+    private static final int PORT_1 = 0;
+    private static final int PORT_B = 1;
+    private static final int PORT_C = 2;
+
+    private SimulatedNxt mNxt;
+    private CountingCommunicator mCounter;
+    private BatchingCommunicator mCommunicator;
+
+    private static class CountingCommunicator implements ICommunicator {
+        final ICommunicator communicator;
+        int writes;
+
+        CountingCommunicator(ICommunicator communicator) {
+            this.communicator = communicator;
+        }
+
+        @Override
+        public void open() throws IOException {
+            communicator.open();
+        }
+
+        @Override
+        public void close() {
+            communicator.close();
+        }
+
+        @Override
+        public void write(byte[] request) throws RuntimeException {
+            writes++;
+            communicator.write(request);
+        }
+
+        @Override
+        public byte[] read(int length) throws RuntimeException {
+            return communicator.read(length);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        SimulatedNxtCommunicator simulated = new SimulatedNxtCommunicator.Builder()
+                .setClock(new VirtualExecutionClock())
+                .setLatencyMillis(0)
+                .setJitterMillis(0)
+                .build();
+        mNxt = simulated.getNxt();
+        mCounter = new CountingCommunicator(simulated);
+        mCommunicator = new BatchingCommunicator(mCounter);
+        mCommunicator.open();
+    }
+
+    private byte[] exchange(int... telegram) {
+        mCommunicator.write(frame(telegram));
+
+        byte[] header = mCommunicator.read(2);
+        int length = Telegrams.getLength(header, 0);
+        return mCommunicator.read(length);
+    }
+
+    private void setMotor(int port, int power, int runState) {
+        byte[] reply = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.SET_OUTPUT_STATE, port, power,
+                                SimulatedNxt.MODE_MOTOR_ON | SimulatedNxt.MODE_BRAKE, 0, 0, runState, 0, 0, 0, 0);
+        assertEquals(SimulatedNxt.SET_OUTPUT_STATE, reply[1]);
+        assertEquals(SimulatedNxt.SUCCESS, reply[2]);
+    }
+
+    @Test
+    public void whenNotBatching_thenTelegramsArePassedThrough() throws Exception {
+        setMotor(PORT_B, 50, SimulatedNxt.RUN_STATE_RUNNING);
+        setMotor(PORT_C, 50, SimulatedNxt.RUN_STATE_RUNNING);
+
+        assertEquals(2, mCounter.writes);
+        assertEquals(2, mCommunicator.getTransmissionCount());
+        assertEquals(0, mCommunicator.getGatheredCount());
+    }
+
+    @Test
+    public void whenBatching_thenCommandsAreSentInOneTransmission() throws Exception {
+        mCommunicator.beginBatch();
+        setMotor(PORT_B, 40, SimulatedNxt.RUN_STATE_RUNNING);
+        setMotor(PORT_C, 70, SimulatedNxt.RUN_STATE_RUNNING);
+
+        // nothing reaches the machine until the batch ends
+        assertEquals(0, mCounter.writes);
+        assertEquals(0, mNxt.getPower(PORT_B));
+
+        mCommunicator.endBatch();
+
+        assertEquals(1, mCounter.writes);
+        assertEquals(40, mNxt.getPower(PORT_B));
+        assertEquals(70, mNxt.getPower(PORT_C));
+        assertEquals(2, mCommunicator.getGatheredCount());
+    }
+
+    @Test
+    public void whenSamePortIsCommandedTwice_thenOnlyLastCommandIsSent() throws Exception {
+        mCommunicator.beginBatch();
+        setMotor(PORT_B, 40, SimulatedNxt.RUN_STATE_RUNNING);
+        setMotor(PORT_B, 90, SimulatedNxt.RUN_STATE_RUNNING);
+        mCommunicator.endBatch();
+
+        assertEquals(1, mCounter.writes);
+        assertEquals(90, mNxt.getPower(PORT_B));
+    }
+
+    @Test
+    public void whenQueryIsWrittenInBatch_thenGatheredCommandsAreSentBeforeIt() throws Exception {
+        mNxt.setTouched(true);
+
+        mCommunicator.beginBatch();
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.SET_INPUT_MODE, PORT_1,
+                 SimulatedNxt.SENSOR_SWITCH, SimulatedNxt.SENSOR_MODE_BOOLEAN);
+        setMotor(PORT_B, 40, SimulatedNxt.RUN_STATE_RUNNING);
+        byte[] reply = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+        mCommunicator.endBatch();
+
+        assertEquals(SimulatedNxt.GET_INPUT_VALUES, reply[1]);
+        assertEquals(40, mNxt.getPower(PORT_B));
+        // the mode, the motor and the query
+        assertEquals(3, mCounter.writes);
+    }
+
+    @Test
+    public void whenTelegramIsSplitAcrossWrites_thenItIsGathered() throws Exception {
+        byte[] frame = frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.SET_OUTPUT_STATE, PORT_C, 30,
+                             SimulatedNxt.MODE_MOTOR_ON, 0, 0, SimulatedNxt.RUN_STATE_RUNNING, 0, 0, 0, 0);
+
+        mCommunicator.beginBatch();
+        mCommunicator.write(Arrays.copyOfRange(frame, 0, 5));
+        mCommunicator.write(Arrays.copyOfRange(frame, 5, frame.length));
+        mCommunicator.read(2);
+        mCommunicator.read(3);
+        mCommunicator.endBatch();
+
+        assertEquals(1, mCounter.writes);
+        assertEquals(30, mNxt.getPower(PORT_C));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FramedStreamTest {
+
+    // delivers at most one byte per read like a congested connection
+    private static class TricklingInputStream extends InputStream {
+        private final InputStream mInputStream;
+
+        TricklingInputStream(byte[] bytes) {
+            mInputStream = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return mInputStream.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return mInputStream.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+
+    private static class CountingOutputStream extends ByteArrayOutputStream {
+        int writes;
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            writes++;
+            super.write(bytes, offset, length);
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void whenFrameArrivesInPieces_thenItIsReadFully() throws Exception {
+        FramedStream stream = new FramedStream(new TricklingInputStream(bytes(3, 0, 0x02, 0x04, 0x00)),
+                                               new ByteArrayOutputStream());
+
+        assertArrayEquals(bytes(3, 0), stream.read(2));
+        assertArrayEquals(bytes(0x02, 0x04, 0x00), stream.read(3));
+    }
+
+    @Test
+    public void whenFramesArriveTogether_thenTheyAreReadSeparately() throws Exception {
+        FramedStream stream = new FramedStream(new ByteArrayInputStream(bytes(1, 0, 0x0A, 1, 0, 0x0B)),
+                                               new ByteArrayOutputStream());
+
+        assertArrayEquals(bytes(1, 0), stream.read(2));
+        assertArrayEquals(bytes(0x0A), stream.read(1));
+        assertArrayEquals(bytes(1, 0), stream.read(2));
+        assertArrayEquals(bytes(0x0B), stream.read(1));
+    }
+
+    @Test
+    public void whenReadIsLargerThanBuffer_thenItIsReadFully() throws Exception {
+        byte[] payload = new byte[1000];
+        for (int i = 0; i < payload.length; ++i) {
+            payload[i] = (byte) i;
+        }
+        FramedStream stream = new FramedStream(new ByteArrayInputStream(payload), new ByteArrayOutputStream());
+
+        assertArrayEquals(payload, stream.read(payload.length));
+    }
+
+    @Test
+    public void whenStreamEndsInFrame_thenReadFails() throws Exception {
+        FramedStream stream = new FramedStream(new ByteArrayInputStream(bytes(3, 0, 0x02)),
+                                               new ByteArrayOutputStream());
+        stream.read(2);
+
+        try {
+            stream.read(3);
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void whenFrameIsWrittenInPieces_thenItIsSentAtOnce() throws Exception {
+        CountingOutputStream output = new CountingOutputStream();
+        FramedStream stream = new FramedStream(new ByteArrayInputStream(new byte[0]), output);
+
+        stream.write(bytes(2, 0));
+        stream.write(bytes(0x80));
+        assertEquals(0, output.writes);
+
+        stream.write(bytes(0x0D));
+        assertEquals(1, output.writes);
+        assertArrayEquals(bytes(2, 0, 0x80, 0x0D), output.toByteArray());
+    }
+
+    @Test
+    public void whenFramesAreWrittenTogether_thenTheyAreSentAtOnce() throws Exception {
+        CountingOutputStream output = new CountingOutputStream();
+        FramedStream stream = new FramedStream(new ByteArrayInputStream(new byte[0]), output);
+
+        stream.write(bytes(2, 0, 0x80, 0x0D, 2, 0, 0x80, 0x0D));
+
+        assertEquals(1, output.writes);
+    }
+
+    @Test
+    public void whenReplyIsRead_thenPendingBytesAreSentFirst() throws Exception {
+        CountingOutputStream output = new CountingOutputStream();
+        FramedStream stream = new FramedStream(new ByteArrayInputStream(bytes(1, 0)), output);
+
+        stream.write(bytes(2, 0, 0x00));
+        stream.read(2);
+
+        assertArrayEquals(bytes(2, 0, 0x00), output.toByteArray());
+    }
+}
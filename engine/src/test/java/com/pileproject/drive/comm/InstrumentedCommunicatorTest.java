@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.comm.CommunicationStatistics.CommandStatistics;
+import com.pileproject.drive.execution.VirtualExecutionClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.pileproject.drive.comm.Telegrams.frame;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstrumentedCommunicatorTest {
+
+    private static final int PORT_1 = 0;
+    private static final int PORT_B = 1;
+    private static final long LATENCY_MILLIS = 30;
+
+    private CommunicationStatistics mStatistics;
+    private InstrumentedCommunicator mCommunicator;
+
+    @Before
+    public void setUp() throws Exception {
+        mStatistics = new CommunicationStatistics();
+        setUpCommunicator(0);
+    }
+
+    private void setUpCommunicator(double lossRate) throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        SimulatedNxtCommunicator simulated = new SimulatedNxtCommunicator.Builder()
+                .setClock(clock)
+                .setLatencyMillis(LATENCY_MILLIS)
+                .setJitterMillis(0)
+                .setLossRate(lossRate)
+                .build();
+
+        mCommunicator = new InstrumentedCommunicator(simulated, mStatistics, clock);
+        mCommunicator.open();
+    }
+
+    private void exchange(int... telegram) {
+        mCommunicator.write(frame(telegram));
+
+        byte[] header = mCommunicator.read(2);
+        int length = Telegrams.getLength(header, 0);
+        mCommunicator.read(length);
+    }
+
+    private CommandStatistics get(int opcode) {
+        return mStatistics.get(SimulatedNxt.DIRECT_COMMAND_REPLY, opcode);
+    }
+
+    @Test
+    public void whenRequestIsReplied_thenLatencyAndBytesAreRecorded() throws Exception {
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+
+        CommandStatistics statistics = get(SimulatedNxt.GET_INPUT_VALUES);
+        assertEquals(1, statistics.getCount());
+        assertEquals(5, statistics.getBytesOut());
+        assertEquals(18, statistics.getBytesIn());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS), statistics.getLatency().getMaxNanos());
+    }
+
+    @Test
+    public void whenCommandsDiffer_thenTheyAreRecordedSeparately() throws Exception {
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_OUTPUT_STATE, PORT_B);
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_OUTPUT_STATE, PORT_B);
+
+        // the connection and the two commands
+        List<CommandStatistics> all = mStatistics.getAll();
+        assertEquals(3, all.size());
+        assertEquals(1, get(SimulatedNxt.GET_INPUT_VALUES).getCount());
+        assertEquals(2, get(SimulatedNxt.GET_OUTPUT_STATE).getLatency().getCount());
+    }
+
+    @Test
+    public void whenRequestRequiresNoReply_thenOnlyBytesAreRecorded() throws Exception {
+        mCommunicator.write(frame(SimulatedNxt.NO_REPLY, SimulatedNxt.KEEP_ALIVE));
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+
+        CommandStatistics keepAlive = mStatistics.get(SimulatedNxt.NO_REPLY, SimulatedNxt.KEEP_ALIVE);
+        assertEquals(1, keepAlive.getCount());
+        assertEquals(0, keepAlive.getLatency().getCount());
+        // the reply is not confused with that of the keep alive
+        assertEquals(1, get(SimulatedNxt.GET_INPUT_VALUES).getLatency().getCount());
+    }
+
+    @Test
+    public void whenReplyIsLost_thenErrorIsRecorded() throws Exception {
+        setUpCommunicator(1);
+
+        try {
+            exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_BATTERY_LEVEL);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertEquals(1, get(SimulatedNxt.GET_BATTERY_LEVEL).getErrorCount());
+    }
+
+    @Test
+    public void whenOpened_thenConnectionIsRecorded() throws Exception {
+        CommandStatistics connection = mStatistics.getConnection();
+
+        assertEquals(1, connection.getCount());
+        assertEquals(1, connection.getLatency().getCount());
+        assertEquals(0, connection.getErrorCount());
+    }
+
+    @Test
+    public void whenDumped_thenAllCommandsAreWritten() throws Exception {
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_BATTERY_LEVEL);
+
+        StringWriter writer = new StringWriter();
+        mStatistics.dump(writer);
+
+        String dump = writer.toString();
+        assertTrue(dump, dump.contains("direct 0x07"));
+        assertTrue(dump, dump.contains("direct 0x0B"));
+        assertTrue(dump, dump.contains("30.0"));
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void whenNothingIsRecorded_thenPercentilesAreZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void whenLatenciesAreRecorded_thenPercentilesAreWithinBucketError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(millis(i));
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(millis(100), histogram.getMaxNanos());
+        assertNear(millis(50), histogram.getPercentileNanos(50));
+        assertNear(millis(90), histogram.getPercentileNanos(90));
+        assertNear(millis(99), histogram.getPercentileNanos(99));
+        assertEquals(millis(100), histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void whenBucketIsComputed_thenValueIsWithinIt() throws Exception {
+        for (long micros = 0; micros < 100000; micros += 7) {
+            int index = LatencyHistogram.indexOf(micros);
+
+            assertTrue(micros <= LatencyHistogram.upperBoundMicrosOf(index));
+            assertTrue(index == 0 || micros > LatencyHistogram.upperBoundMicrosOf(index - 1));
+        }
+    }
+
+    @Test
+    public void whenReset_thenNothingIsRecorded() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(millis(10));
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected * 0.07);
+    }
+}
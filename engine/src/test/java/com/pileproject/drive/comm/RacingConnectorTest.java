@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RacingConnectorTest {
+
+    private static final String TARGET = "00:16:53:00:00:01";
+
+    private MapMemory memory;
+
+    private static class MapMemory implements RacingConnector.Memory {
+        final Map<String, String> strategies = new HashMap<>();
+
+        @Override
+        public String getStrategy(String target) {
+            return strategies.get(target);
+        }
+
+        @Override
+        public void putStrategy(String target, String strategy) {
+            strategies.put(target, strategy);
+        }
+    }
+
+    private static class FakeStrategy implements RacingConnector.Strategy<String> {
+        final String name;
+        final boolean succeeds;
+        final long delayMillis;
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicInteger cancels = new AtomicInteger();
+
+        FakeStrategy(String name, boolean succeeds, long delayMillis) {
+            this.name = name;
+            this.succeeds = succeeds;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public RacingConnector.Attempt<String> newAttempt() {
+            attempts.incrementAndGet();
+
+            return new RacingConnector.Attempt<String>() {
+                final CountDownLatch cancelled = new CountDownLatch(1);
+
+                @Override
+                public String connect() throws IOException {
+                    try {
+                        if (cancelled.await(delayMillis, TimeUnit.MILLISECONDS)) {
+                            throw new IOException(name + " was cancelled");
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+
+                    if (!succeeds) {
+                        throw new IOException(name + " failed");
+                    }
+                    return name;
+                }
+
+                @Override
+                public void cancel() {
+                    cancels.incrementAndGet();
+                    cancelled.countDown();
+                }
+            };
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        memory = new MapMemory();
+    }
+
+    @Test
+    public void whenFirstStrategyFails_thenNextIsTriedAndRemembered() throws Exception {
+        FakeStrategy failing = new FakeStrategy("failing", false, 0);
+        FakeStrategy working = new FakeStrategy("working", true, 0);
+
+        RacingConnector<String> connector = new RacingConnector.Builder<String>()
+                .addStrategy(failing)
+                .addStrategy(working)
+                .setMemory(memory)
+                .build();
+
+        assertEquals("working", connector.connect(TARGET));
+        assertEquals("working", memory.getStrategy(TARGET));
+
+        // the remembered strategy is tried first from now on
+        assertEquals("working", connector.connect(TARGET));
+        assertEquals(1, failing.attempts.get());
+        assertEquals(2, working.attempts.get());
+    }
+
+    @Test
+    public void whenAttemptTimesOut_thenItIsCancelled() throws Exception {
+        FakeStrategy hanging = new FakeStrategy("hanging", true, 60 * 1000);
+        FakeStrategy working = new FakeStrategy("working", true, 0);
+
+        RacingConnector<String> connector = new RacingConnector.Builder<String>()
+                .addStrategy(hanging)
+                .addStrategy(working)
+                .setTimeoutMillis(50)
+                .build();
+
+        assertEquals("working", connector.connect(TARGET));
+        assertEquals(1, hanging.cancels.get());
+    }
+
+    @Test
+    public void whenRacing_thenFasterStrategyWinsAndLoserIsCancelled() throws Exception {
+        FakeStrategy slow = new FakeStrategy("slow", true, 60 * 1000);
+        FakeStrategy fast = new FakeStrategy("fast", true, 0);
+
+        RacingConnector<String> connector = new RacingConnector.Builder<String>()
+                .addStrategy(slow)
+                .addStrategy(fast)
+                .setMemory(memory)
+                .setRaceDelayMillis(20)
+                .build();
+
+        long start = System.nanoTime();
+        assertEquals("fast", connector.connect(TARGET));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(1, slow.cancels.get());
+        assertEquals(0, fast.cancels.get());
+        assertEquals("fast", memory.getStrategy(TARGET));
+    }
+
+    @Test
+    public void whenAllStrategiesFail_thenFirstFailureIsThrown() throws Exception {
+        RacingConnector<String> connector = new RacingConnector.Builder<String>()
+                .addStrategy(new FakeStrategy("first", false, 0))
+                .addStrategy(new FakeStrategy("second", false, 0))
+                .setMemory(memory)
+                .build();
+
+        try {
+            connector.connect(TARGET);
+            fail();
+        } catch (IOException e) {
+            assertEquals("first failed", e.getMessage());
+        }
+
+        assertNull(memory.getStrategy(TARGET));
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.VirtualExecutionClock;
+import com.pileproject.drivecommand.model.com.ICommunicator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.pileproject.drive.comm.Telegrams.frame;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReplayCommunicatorTest {
+
+    private static final long LATENCY_MILLIS = 30;
+
+    private static final byte[] KEEP_ALIVE = frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.KEEP_ALIVE);
+    private static final byte[] GET_BATTERY_LEVEL = frame(
+            SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_BATTERY_LEVEL);
+
+    private VirtualExecutionClock mRecordingClock;
+    private SimulatedNxtCommunicator mMachine;
+    private ByteArrayOutputStream mSession;
+    private RecordingCommunicator mRecorder;
+
+    @Before
+    public void setUp() throws Exception {
+        mRecordingClock = new VirtualExecutionClock();
+        mMachine = new SimulatedNxtCommunicator.Builder()
+                .setClock(mRecordingClock)
+                .setLatencyMillis(LATENCY_MILLIS)
+                .setJitterMillis(0)
+                .build();
+        mSession = new ByteArrayOutputStream();
+        mRecorder = new RecordingCommunicator(mMachine, mSession, mRecordingClock);
+    }
+
+    private static byte[] exchange(ICommunicator communicator, byte[] request) {
+        communicator.write(request);
+
+        byte[] header = communicator.read(2);
+        return communicator.read(Telegrams.getLength(header, 0));
+    }
+
+    private RecordedSession recorded() throws IOException {
+        return RecordedSession.read(new ByteArrayInputStream(mSession.toByteArray()));
+    }
+
+    @Test
+    public void whenSessionIsReplayed_thenRecordedRepliesAreServed() throws Exception {
+        mMachine.getNxt().setBatteryMillivolts(7000);
+
+        mRecorder.open();
+        byte[] keepAlive = exchange(mRecorder, KEEP_ALIVE);
+        byte[] battery = exchange(mRecorder, GET_BATTERY_LEVEL);
+        mRecorder.close();
+        assertFalse(mRecorder.isRecordingFailed());
+
+        ReplayCommunicator replay = new ReplayCommunicator(
+                recorded(), ReplayCommunicator.Pacing.FAST, new VirtualExecutionClock());
+        replay.open();
+
+        assertArrayEquals(keepAlive, exchange(replay, KEEP_ALIVE));
+        assertArrayEquals(battery, exchange(replay, GET_BATTERY_LEVEL));
+        replay.close();
+
+        assertEquals(0, replay.getMismatchCount());
+        assertTrue(replay.isFinished());
+    }
+
+    @Test
+    public void whenRepliesAreReadInDifferentPieces_thenTheyAreServedAsStream() throws Exception {
+        mRecorder.open();
+        byte[] reply = exchange(mRecorder, GET_BATTERY_LEVEL);
+        mRecorder.close();
+
+        ReplayCommunicator replay = new ReplayCommunicator(
+                recorded(), ReplayCommunicator.Pacing.FAST, new VirtualExecutionClock());
+        replay.open();
+        replay.write(GET_BATTERY_LEVEL);
+
+        byte[] whole = replay.read(2 + reply.length);
+
+        assertArrayEquals(reply, Arrays.copyOfRange(whole, 2, whole.length));
+    }
+
+    @Test
+    public void whenReplayedWithOriginalPacing_thenLatenciesAreReproduced() throws Exception {
+        mRecorder.open();
+        exchange(mRecorder, KEEP_ALIVE);
+
+        // the app thinks for a while, which is not reproduced
+        mRecordingClock.advanceNanos(TimeUnit.SECONDS.toNanos(1));
+        exchange(mRecorder, KEEP_ALIVE);
+        mRecorder.close();
+
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        ReplayCommunicator replay = new ReplayCommunicator(recorded(), ReplayCommunicator.Pacing.ORIGINAL, clock);
+        replay.open();
+
+        exchange(replay, KEEP_ALIVE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS), clock.nanoTime());
+
+        exchange(replay, KEEP_ALIVE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS * 2), clock.nanoTime());
+    }
+
+    @Test
+    public void whenReplayedFast_thenNoTimePasses() throws Exception {
+        mRecorder.open();
+        exchange(mRecorder, KEEP_ALIVE);
+        mRecorder.close();
+
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        ReplayCommunicator replay = new ReplayCommunicator(recorded(), ReplayCommunicator.Pacing.FAST, clock);
+        replay.open();
+        exchange(replay, KEEP_ALIVE);
+
+        assertEquals(0, clock.nanoTime());
+    }
+
+    @Test
+    public void whenRecordedReadFailed_thenReplayFailsAtTheSamePoint() throws Exception {
+        mRecorder.open();
+        exchange(mRecorder, KEEP_ALIVE);
+
+        // no reply is required, thus the read times out
+        mRecorder.write(frame(SimulatedNxt.NO_REPLY, SimulatedNxt.KEEP_ALIVE));
+        try {
+            mRecorder.read(2);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        mRecorder.close();
+
+        ReplayCommunicator replay = new ReplayCommunicator(
+                recorded(), ReplayCommunicator.Pacing.FAST, new VirtualExecutionClock());
+        replay.open();
+        exchange(replay, KEEP_ALIVE);
+        replay.write(frame(SimulatedNxt.NO_REPLY, SimulatedNxt.KEEP_ALIVE));
+
+        try {
+            replay.read(2);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void whenWritesDiffer_thenMismatchesAreCounted() throws Exception {
+        mRecorder.open();
+        exchange(mRecorder, KEEP_ALIVE);
+        exchange(mRecorder, KEEP_ALIVE);
+        mRecorder.close();
+
+        ReplayCommunicator replay = new ReplayCommunicator(
+                recorded(), ReplayCommunicator.Pacing.FAST, new VirtualExecutionClock());
+        replay.open();
+
+        // a different request, and the reply of the first request is never read
+        replay.write(GET_BATTERY_LEVEL);
+        exchange(replay, KEEP_ALIVE);
+
+        assertEquals(2, replay.getMismatchCount());
+    }
+
+    @Test
+    public void whenSessionIsTruncated_thenCompleteEventsAreRead() throws Exception {
+        mRecorder.open();
+        exchange(mRecorder, KEEP_ALIVE);
+        mRecorder.close();
+
+        byte[] bytes = mSession.toByteArray();
+        RecordedSession whole = recorded();
+        RecordedSession truncated = RecordedSession.read(
+                new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 2)));
+
+        assertEquals(RecordedSession.EVENT_CLOSE, whole.getEvents().get(whole.getEvents().size() - 1).getType());
+        assertTrue(truncated.getEvents().size() < whole.getEvents().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void whenStreamIsNotSession_thenReadFails() throws Exception {
+        RecordedSession.read(new ByteArrayInputStream(new byte[] {'N', 'O', 'P', 'E', 1}));
+    }
+
+    @Test(expected = IOException.class)
+    public void whenLengthOfBytesIsCorrupted_thenReadFails() throws Exception {
+        // a write event of 0xFFFFFFFF bytes
+        RecordedSession.read(new ByteArrayInputStream(new byte[] {
+                'D', 'R', 'V', 'S', 1,
+                RecordedSession.EVENT_WRITE, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}));
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import com.pileproject.drive.execution.VirtualExecutionClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.pileproject.drive.comm.Telegrams.frame;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimulatedNxtCommunicatorTest {
+
+    private static final int PORT_1 = 0;
+    private static final int PORT_B = 1;
+
+    private VirtualExecutionClock mClock;
+    private SimulatedNxtCommunicator mCommunicator;
+
+    @Before
+    public void setUp() throws Exception {
+        mClock = new VirtualExecutionClock();
+        mCommunicator = new SimulatedNxtCommunicator.Builder()
+                .setClock(mClock)
+                .setLatencyMillis(0)
+                .setJitterMillis(0)
+                .build();
+        mCommunicator.open();
+    }
+
+    private void advanceMillis(long millis) {
+        mClock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private byte[] exchange(int... telegram) {
+        mCommunicator.write(frame(telegram));
+
+        byte[] header = mCommunicator.read(2);
+        int length = Telegrams.getLength(header, 0);
+        return mCommunicator.read(length);
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private void runMotor(int port, int power, int tachoLimit) {
+        byte[] reply = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.SET_OUTPUT_STATE, port, power,
+                                SimulatedNxt.MODE_MOTOR_ON | SimulatedNxt.MODE_BRAKE, 0, 0,
+                                SimulatedNxt.RUN_STATE_RUNNING, tachoLimit, tachoLimit >> 8, 0, 0);
+        assertEquals(SimulatedNxt.SUCCESS, reply[2]);
+    }
+
+    private int getRotationCount(int port) {
+        byte[] reply = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_OUTPUT_STATE, port);
+        assertEquals(25, reply.length);
+        return getInt(reply, 21);
+    }
+
+    @Test
+    public void whenMotorIsPowered_thenRotatesWithLag() throws Exception {
+        runMotor(PORT_B, 100, 0);
+
+        advanceMillis(100);
+        int afterShortTime = getRotationCount(PORT_B);
+
+        advanceMillis(900);
+        int afterOneSecond = getRotationCount(PORT_B);
+
+        // the motor has not reached the full speed (1020 degrees per sec) in the first 100 ms
+        assertTrue(afterShortTime > 0 && afterShortTime < 102);
+        assertTrue(afterOneSecond > 850 && afterOneSecond < 1020);
+    }
+
+    @Test
+    public void whenTachoLimitIsReached_thenMotorStops() throws Exception {
+        runMotor(PORT_B, 50, 90);
+
+        advanceMillis(1000);
+        byte[] reply = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_OUTPUT_STATE, PORT_B);
+        int stopped = getRotationCount(PORT_B);
+
+        advanceMillis(2000);
+
+        assertEquals(SimulatedNxt.RUN_STATE_IDLE, reply[8]);
+        assertTrue(stopped >= 90);
+        assertTrue(getRotationCount(PORT_B) - stopped < 10);
+    }
+
+    @Test
+    public void whenMachineReachesWall_thenTouchSensorIsPressed() throws Exception {
+        mCommunicator.getNxt().setWallDistance(360);
+        exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.SET_INPUT_MODE, PORT_1,
+                 SimulatedNxt.SENSOR_SWITCH, SimulatedNxt.SENSOR_MODE_BOOLEAN);
+
+        byte[] released = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+
+        runMotor(PORT_B, 100, 0);
+        advanceMillis(1000);
+
+        byte[] pressed = exchange(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_INPUT_VALUES, PORT_1);
+
+        assertEquals(16, released.length);
+        assertEquals(1, released[4]); // valid
+        assertEquals(0, released[12]);
+        assertEquals(1, pressed[12]);
+    }
+
+    @Test
+    public void whenRequestIsWrittenInPieces_thenRepliesAfterWholeTelegram() throws Exception {
+        byte[] request = frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_BATTERY_LEVEL);
+
+        mCommunicator.write(new byte[] { request[0], request[1] });
+        mCommunicator.write(new byte[] { request[2], request[3] });
+
+        assertArrayEquals(new byte[] { 5, 0 }, mCommunicator.read(2));
+        assertArrayEquals(new byte[] { SimulatedNxt.REPLY, SimulatedNxt.GET_BATTERY_LEVEL, SimulatedNxt.SUCCESS },
+                          mCommunicator.read(3));
+        assertEquals(2, mCommunicator.read(100).length);
+    }
+
+    @Test
+    public void whenLatencyIsSet_thenReplyArrivesLate() throws Exception {
+        SimulatedNxtCommunicator communicator = new SimulatedNxtCommunicator.Builder()
+                .setLatencyMillis(50)
+                .setJitterMillis(0)
+                .build();
+        communicator.open();
+
+        long start = System.nanoTime();
+        communicator.write(frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.KEEP_ALIVE));
+        communicator.read(2);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void whenTelegramIsLost_thenReadTimesOut() throws Exception {
+        SimulatedNxtCommunicator communicator = new SimulatedNxtCommunicator.Builder()
+                .setLossRate(1.0)
+                .setReadTimeoutMillis(10)
+                .build();
+        communicator.open();
+
+        communicator.write(frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.KEEP_ALIVE));
+
+        try {
+            communicator.read(2);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void whenNoReplyIsRequired_thenMotorIsStillControlled() throws Exception {
+        mCommunicator.write(frame(SimulatedNxt.DIRECT_COMMAND_REPLY | SimulatedNxt.NO_REPLY,
+                                  SimulatedNxt.SET_OUTPUT_STATE, PORT_B, 80, SimulatedNxt.MODE_MOTOR_ON, 0, 0,
+                                  SimulatedNxt.RUN_STATE_RUNNING, 0, 0, 0, 0));
+
+        assertEquals(80, mCommunicator.getNxt().getPower(PORT_B));
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.comm;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static com.pileproject.drive.comm.Telegrams.frame;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WifiCommunicatorTest {
+
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final long TIMEOUT_MILLIS = 200;
+
+    private SimulatedNxtServer mServer;
+    private WifiCommunicator mCommunicator;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new SimulatedNxtServer(null);
+        mCommunicator = new WifiCommunicator(LOOPBACK, mServer.getPort(), TIMEOUT_MILLIS, TIMEOUT_MILLIS);
+        mCommunicator.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mCommunicator.close();
+        mServer.close();
+    }
+
+    private byte[] exchange(WifiCommunicator communicator, int... telegram) {
+        communicator.write(frame(telegram));
+
+        byte[] header = communicator.read(2);
+        int length = Telegrams.getLength(header, 0);
+        return communicator.read(length);
+    }
+
+    @Test
+    public void whenRequestIsSent_thenReplyOfSimulatedNxtIsReceived() throws Exception {
+        mServer.getNxt().setBatteryMillivolts(7500);
+
+        byte[] reply = exchange(mCommunicator, SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_BATTERY_LEVEL);
+
+        assertArrayEquals(new byte[] {SimulatedNxt.REPLY, SimulatedNxt.GET_BATTERY_LEVEL, SimulatedNxt.SUCCESS,
+                (byte) 7500, (byte) (7500 >> 8)}, reply);
+    }
+
+    @Test
+    public void whenFrameIsWrittenInPieces_thenItIsReceivedAsOneTelegram() throws Exception {
+        byte[] frame = frame(SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.KEEP_ALIVE);
+
+        mCommunicator.write(new byte[] {frame[0], frame[1]});
+        mCommunicator.write(new byte[] {frame[2], frame[3]});
+
+        byte[] header = mCommunicator.read(2);
+        byte[] reply = mCommunicator.read(header[0]);
+
+        assertEquals(SimulatedNxt.REPLY, reply[0]);
+        assertEquals(SimulatedNxt.KEEP_ALIVE, reply[1]);
+        assertEquals(SimulatedNxt.SUCCESS, reply[2]);
+    }
+
+    @Test
+    public void whenManyRequestsAreExchanged_thenRepliesAreNotMixedUp() throws Exception {
+        for (int i = 0; i < 1000; ++i) {
+            mServer.getNxt().setBatteryMillivolts(i);
+
+            byte[] reply = exchange(mCommunicator, SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.GET_BATTERY_LEVEL);
+
+            assertEquals(i, (reply[3] & 0xFF) | (reply[4] & 0xFF) << 8);
+        }
+    }
+
+    @Test
+    public void whenPeerIsSilent_thenReadTimesOut() throws Exception {
+        // no reply is required
+        mCommunicator.write(frame(SimulatedNxt.NO_REPLY, SimulatedNxt.KEEP_ALIVE));
+
+        long start = System.nanoTime();
+        try {
+            mCommunicator.read(2);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= TIMEOUT_MILLIS - 10);
+        assertTrue(elapsed < TIMEOUT_MILLIS * 10);
+    }
+
+    @Test
+    public void whenServerIsClosed_thenReadFails() throws Exception {
+        mServer.close();
+
+        try {
+            exchange(mCommunicator, SimulatedNxt.DIRECT_COMMAND_REPLY, SimulatedNxt.KEEP_ALIVE);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void whenNothingListens_thenOpenFails() throws Exception {
+        ServerSocket socket = new ServerSocket(0, 0, InetAddress.getByName(LOOPBACK));
+        int port = socket.getLocalPort();
+        socket.close();
+
+        WifiCommunicator communicator = new WifiCommunicator(LOOPBACK, port, TIMEOUT_MILLIS, TIMEOUT_MILLIS);
+        try {
+            communicator.open();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // a failed communicator is closed and reports it
+        try {
+            communicator.read(2);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void whenFramesAreWritten_thenTheyAreSentInOrder() throws Exception {
+        ServerSocket server = new ServerSocket(0, 0, InetAddress.getByName(LOOPBACK));
+        WifiCommunicator communicator = new WifiCommunicator(LOOPBACK, server.getLocalPort(),
+                                                             TIMEOUT_MILLIS, TIMEOUT_MILLIS);
+        communicator.open();
+        Socket peer = server.accept();
+
+        try {
+            byte[] first = frame(SimulatedNxt.NO_REPLY, SimulatedNxt.KEEP_ALIVE);
+            byte[] second = frame(SimulatedNxt.NO_REPLY, SimulatedNxt.STOP_SOUND_PLAYBACK);
+            communicator.write(first);
+            communicator.write(second);
+
+            InputStream input = peer.getInputStream();
+            byte[] received = new byte[first.length + second.length];
+            int filled = 0;
+            while (filled < received.length) {
+                int numBytes = input.read(received, filled, received.length - filled);
+                assertTrue(numBytes > 0);
+                filled += numBytes;
+            }
+
+            assertEquals(SimulatedNxt.KEEP_ALIVE, received[3]);
+            assertEquals(SimulatedNxt.STOP_SOUND_PLAYBACK, received[first.length + 3]);
+        } finally {
+            communicator.close();
+            peer.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void whenAddressIsParsed_thenHostAndPortAreSplit() throws Exception {
+        assertAddress("192.168.0.10", 9001, WifiCommunicator.parseAddress("192.168.0.10:9001", 9000));
+        assertAddress("bridge.local", 9000, WifiCommunicator.parseAddress("bridge.local", 9000));
+        assertAddress("fe80::1", 9001, WifiCommunicator.parseAddress("[fe80::1]:9001", 9000));
+        assertAddress("fe80::1", 9000, WifiCommunicator.parseAddress("[fe80::1]", 9000));
+
+        // an IPv6 address without brackets has no port
+        assertAddress("fe80::1", 9000, WifiCommunicator.parseAddress("fe80::1", 9000));
+    }
+
+    @Test
+    public void whenAddressIsMalformed_thenItIsNotParsed() throws Exception {
+        String[] addresses = {
+                null, "", ":9001", "bridge:", "bridge:port", "bridge:0", "bridge:65536", "bridge local:9001",
+                "[fe80::1", "[fe80::1]9001", "[bridge]:9001", "[]:9001",
+        };
+
+        for (String address : addresses) {
+            assertNull(WifiCommunicator.parseAddress(address, 9000));
+        }
+    }
+
+    private static void assertAddress(String host, int port, InetSocketAddress address) {
+        assertEquals(host, address.getHostName());
+        assertEquals(port, address.getPort());
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import com.pileproject.drive.programming.model.BlockPositionComparator;
+import com.pileproject.drive.programming.model.PositionHolder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DriveSchemaTest {
+
+    private static final String FORWARD = "com.pileproject.drive.programming.visual.block.sequence.car.ForwardSecBlock";
+    private static final String LOOP = "com.pileproject.drive.programming.visual.block.repetition.LoopBlock";
+
+    private Connection connection;
+
+    private static class Block implements PositionHolder {
+        final long id;
+        final int left;
+        final int top;
+
+        Block(long id, int left, int top) {
+            this.id = id;
+            this.left = left;
+            this.top = top;
+        }
+
+        @Override
+        public int getLeft() {
+            return left;
+        }
+
+        @Override
+        public int getTop() {
+            return top;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        // the tables of version 1 as SquiDB created them from ProgramSpec and ProgramDataSpec
+        execute("CREATE TABLE IF NOT EXISTS programs("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "name TEXT NOT NULL, "
+                        + "type TEXT NOT NULL, "
+                        + "updatedAt INTEGER NOT NULL)");
+        execute("CREATE TABLE IF NOT EXISTS program_data("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "programId INTEGER NOT NULL, "
+                        + "type TEXT NOT NULL, "
+                        + "left INTEGER NOT NULL, "
+                        + "top INTEGER NOT NULL, "
+                        + "number TEXT DEFAULT 0, "
+                        + "FOREIGN KEY(programId) references programs(_id) ON DELETE CASCADE)");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(sql);
+            try {
+                result.next();
+                return result.getLong(1);
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private long insertProgram(String name, String type) throws SQLException {
+        execute("INSERT INTO programs (name, type, updatedAt) VALUES ('" + name + "', '" + type + "', 0)");
+        return queryLong("SELECT last_insert_rowid()");
+    }
+
+    private long insertBlock(long programId, String type, int left, int top, String number) throws SQLException {
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO program_data (programId, type, left, top, number) VALUES (?, ?, ?, ?, ?)");
+        try {
+            insert.setLong(1, programId);
+            insert.setString(2, type);
+            insert.setInt(3, left);
+            insert.setInt(4, top);
+            insert.setString(5, number);
+            insert.executeUpdate();
+        } finally {
+            insert.close();
+        }
+        return queryLong("SELECT last_insert_rowid()");
+    }
+
+    private void upgrade(int oldVersion, int newVersion) throws SQLException {
+        connection.setAutoCommit(false);
+        for (String sql : DriveSchema.getUpgradeStatements(oldVersion, newVersion)) {
+            execute(sql);
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private List<Long> loadBlockIdsInOrder(long programId) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(
+                    "SELECT _id FROM program_data WHERE programId = " + programId + " ORDER BY ordinal");
+            try {
+                while (result.next()) {
+                    ids.add(result.getLong(1));
+                }
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+        return ids;
+    }
+
+    @Test
+    public void whenV1DatabaseIsUpgraded_thenProgramsAndBlocksAreKept() throws Exception {
+        long user = insertProgram("1", "user");
+        long sample = insertProgram("square", "sample");
+        insertBlock(user, FORWARD, 0, 0, "1.500");
+        insertBlock(user, LOOP, 100, 50, "3");
+        insertBlock(sample, FORWARD, 0, 0, "2.000");
+
+        upgrade(1, DriveSchema.VERSION);
+
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM programs"));
+        assertEquals(3, queryLong("SELECT COUNT(*) FROM program_data"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM program_data WHERE programId = " + user
+                                          + " AND type = '" + LOOP + "' AND left = 100 AND top = 50"
+                                          + " AND number = '3'"));
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM programs WHERE _id = " + sample
+                                          + " AND name = 'square' AND type = 'sample'"));
+        // the blocks are still read from the rows
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM programs WHERE blocks IS NOT NULL"));
+    }
+
+    @Test
+    public void whenDatabaseIsUpgraded_thenProgramCanBeStoredAsBlob() throws Exception {
+        long program = insertProgram("1", "user");
+
+        upgrade(1, DriveSchema.VERSION);
+
+        byte[] blob = ProgramBlob.encode(Collections.singletonList(new ProgramBlob.Block(FORWARD, 0, 0, "1.500")));
+        PreparedStatement update = connection.prepareStatement("UPDATE programs SET blocks = ? WHERE _id = ?");
+        try {
+            update.setBytes(1, blob);
+            update.setLong(2, program);
+            assertEquals(1, update.executeUpdate());
+        } finally {
+            update.close();
+        }
+
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery("SELECT blocks FROM programs WHERE _id = " + program);
+            try {
+                result.next();
+                assertEquals(FORWARD, ProgramBlob.decode(result.getBytes(1)).get(0).getType());
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void whenV1DatabaseIsUpgraded_thenOrdinalsFollowBlockPositions() throws Exception {
+        long program = insertProgram("1", "user");
+        long other = insertProgram("2", "user");
+
+        List<Block> blocks = new ArrayList<>();
+        int[][] positions = {{0, 200}, {100, 50}, {0, 50}, {0, 0}, {0, 50}, {20, 300}};
+        for (int[] position : positions) {
+            long id = insertBlock(program, FORWARD, position[0], position[1], "0");
+            blocks.add(new Block(id, position[0], position[1]));
+        }
+        insertBlock(other, FORWARD, 0, 100, "0");
+
+        upgrade(1, DriveSchema.VERSION);
+
+        // the same order as loading the blocks with BlockPositionComparator (a stable sort by insertion)
+        Collections.sort(blocks, new BlockPositionComparator());
+        List<Long> expected = new ArrayList<>();
+        for (Block b : blocks) {
+            expected.add(b.id);
+        }
+        assertEquals(expected, loadBlockIdsInOrder(program));
+
+        // the ordinals start from 0 in each program
+        assertEquals(0, queryLong("SELECT MIN(ordinal) FROM program_data WHERE programId = " + program));
+        assertEquals(positions.length - 1,
+                     queryLong("SELECT MAX(ordinal) FROM program_data WHERE programId = " + program));
+        assertEquals(0, queryLong("SELECT ordinal FROM program_data WHERE programId = " + other));
+    }
+
+    @Test
+    public void whenV1DatabaseIsUpgraded_thenBlocksOfDeletedProgramsAreRemoved() throws Exception {
+        long program = insertProgram("1", "user");
+        long deleted = insertProgram("2", "user");
+        insertBlock(program, FORWARD, 0, 0, "0");
+        insertBlock(deleted, FORWARD, 0, 0, "0");
+        // foreign keys were not enforced in version 1
+        execute("DELETE FROM programs WHERE _id = " + deleted);
+
+        upgrade(1, DriveSchema.VERSION);
+
+        assertEquals(1, queryLong("SELECT COUNT(*) FROM program_data"));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM program_data WHERE programId = " + deleted));
+    }
+
+    @Test
+    public void whenV1DatabaseIsUpgraded_thenTablesAreIndexed() throws Exception {
+        upgrade(1, DriveSchema.VERSION);
+
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM sqlite_master WHERE type = 'index'"
+                                          + " AND name IN ('programs_type_name', 'program_data_program_id_ordinal')"));
+    }
+
+    @Test
+    public void whenDatabaseIsLatest_thenNothingIsExecuted() throws Exception {
+        assertTrue(DriveSchema.getUpgradeStatements(DriveSchema.VERSION, DriveSchema.VERSION).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenVersionIsUnknown_thenUpgradeIsRejected() throws Exception {
+        DriveSchema.getUpgradeStatements(1, DriveSchema.VERSION + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenVersionIsDowngraded_thenUpgradeIsRejected() throws Exception {
+        DriveSchema.getUpgradeStatements(DriveSchema.VERSION, 1);
+    }
+}
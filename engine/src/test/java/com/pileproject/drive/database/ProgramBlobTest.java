@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.database;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProgramBlobTest {
+
+    private static final String FORWARD = "com.pileproject.drive.programming.visual.block.sequence.car.ForwardSecBlock";
+    private static final String LOOP = "com.pileproject.drive.programming.visual.block.repetition.LoopBlock";
+
+    private static void assertBlocksEqual(List<ProgramBlob.Block> expected, List<ProgramBlob.Block> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).getType(), actual.get(i).getType());
+            assertEquals(expected.get(i).getLeft(), actual.get(i).getLeft());
+            assertEquals(expected.get(i).getTop(), actual.get(i).getTop());
+            assertEquals(expected.get(i).getNumber(), actual.get(i).getNumber());
+        }
+    }
+
+    @Test
+    public void whenBlocksAreEncoded_thenTheyAreDecodedInOrder() throws Exception {
+        List<ProgramBlob.Block> blocks = Arrays.asList(
+                new ProgramBlob.Block(FORWARD, 0, 0, "1.500"),
+                new ProgramBlob.Block(LOOP, 100, 50, "0"),
+                new ProgramBlob.Block(FORWARD, -20, 100000, "3"));
+
+        assertBlocksEqual(blocks, ProgramBlob.decode(ProgramBlob.encode(blocks)));
+    }
+
+    @Test
+    public void whenProgramIsEmpty_thenNoBlockIsDecoded() throws Exception {
+        List<ProgramBlob.Block> blocks = Collections.emptyList();
+
+        assertTrue(ProgramBlob.decode(ProgramBlob.encode(blocks)).isEmpty());
+    }
+
+    @Test
+    public void whenNumbersAreEncoded_thenTheirTextsAreKept() throws Exception {
+        // decimals with trailing zeros and signs, and texts which are not plain decimals
+        String[] numbers = {"0", "1.500", "-2.25", "0.001", "-0", "1e3", "1,5", "", "99999999999999999999.9"};
+
+        List<ProgramBlob.Block> blocks = new ArrayList<>();
+        for (String number : numbers) {
+            blocks.add(new ProgramBlob.Block(FORWARD, 0, 0, number));
+        }
+
+        assertBlocksEqual(blocks, ProgramBlob.decode(ProgramBlob.encode(blocks)));
+    }
+
+    @Test
+    public void whenBlocksHaveSameType_thenTypeIsStoredOnce() throws Exception {
+        List<ProgramBlob.Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            blocks.add(new ProgramBlob.Block(FORWARD, 0, i * 50, "1.500"));
+        }
+
+        byte[] blob = ProgramBlob.encode(blocks);
+
+        // the header and the type name once, and up to 10 bytes per block (vs. the name of the class in each row)
+        assertTrue(blob.length < 32 + FORWARD.length() + blocks.size() * 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void whenMagicIsWrong_thenDecodingFails() throws Exception {
+        ProgramBlob.decode(new byte[] {'D', 'R', 'V', 'S', ProgramBlob.VERSION, 0, 0});
+    }
+
+    @Test(expected = IOException.class)
+    public void whenVersionIsUnsupported_thenDecodingFails() throws Exception {
+        ProgramBlob.decode(new byte[] {'D', 'R', 'V', 'P', ProgramBlob.VERSION + 1, 0, 0});
+    }
+
+    @Test(expected = IOException.class)
+    public void whenBlobIsTruncated_thenDecodingFails() throws Exception {
+        byte[] blob = ProgramBlob.encode(Collections.singletonList(new ProgramBlob.Block(FORWARD, 0, 0, "1.500")));
+
+        ProgramBlob.decode(Arrays.copyOf(blob, blob.length - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void whenTypeIsOutOfTable_thenDecodingFails() throws Exception {
+        // no type, a block of the type 0
+        ProgramBlob.decode(new byte[] {'D', 'R', 'V', 'P', ProgramBlob.VERSION, 0, 1, 0, 0, 0, 0, 0});
+    }
+}
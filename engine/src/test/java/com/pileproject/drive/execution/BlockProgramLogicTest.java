@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.RepetitionEndModel;
+import com.pileproject.drive.programming.model.selection.car.IfMachineIsTouchedModel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockProgramLogicTest {
+
+    BlockModel selectionBlock;
+
+    BlockModel trueBlock;
+    BlockModel falseBlock;
+
+    @Before
+    public void setUp() {
+        selectionBlock = new IfMachineIsTouchedModel().setPosition(0, 0, 199);
+
+        trueBlock = new RepetitionEndModel().setPosition(0, 100, 99);
+        falseBlock = new RepetitionEndModel().setPosition(100, 100, 199);
+    }
+
+    @Test
+    public void whenBlockIsInLeftSideOfSelection_thenReturnsTrue() throws Exception {
+
+        assertTrue(BlockProgramLogic.isInTrueArm(selectionBlock, trueBlock));
+    }
+
+    @Test
+    public void whenBlockIsInRightSideOfSelection_thenReturnsFalse() throws Exception {
+
+        assertFalse(BlockProgramLogic.isInTrueArm(selectionBlock, falseBlock));
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.BlockModel.BlockKind;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledProgramTest {
+
+    private static List<BlockModel> makeProgram(BlockKind... kinds) {
+        List<BlockModel> blocks = new ArrayList<>();
+
+        for (final BlockKind kind : kinds) {
+            blocks.add(new BlockModel() {
+                @Override
+                public BlockKind getKind() {
+                    return kind;
+                }
+
+                @Override
+                public int action(MachineController controller, ExecutionCondition condition) {
+                    return 0;
+                }
+            });
+        }
+
+        return blocks;
+    }
+
+    @Test
+    public void whenLoopIsNested_thenBeginningsAndEndsArePaired() throws Exception {
+        CompiledProgram program = CompiledProgram.compile(makeProgram(
+                BlockKind.REPETITION_BEGIN,  // 0
+                BlockKind.REPETITION_BEGIN,  // 1
+                BlockKind.SEQUENCE,          // 2
+                BlockKind.REPETITION_END,    // 3
+                BlockKind.REPETITION_END));  // 4
+
+        assertEquals(4, program.getJumpTarget(0));
+        assertEquals(3, program.getJumpTarget(1));
+        assertEquals(CompiledProgram.NO_TARGET, program.getJumpTarget(2));
+        assertEquals(1, program.getJumpTarget(3));
+        assertEquals(0, program.getJumpTarget(4));
+        assertEquals(2, program.getMaxLoopDepth());
+    }
+
+    @Test
+    public void whenBreakIsInLoop_thenJumpsToTheEndOfTheLoop() throws Exception {
+        CompiledProgram program = CompiledProgram.compile(makeProgram(
+                BlockKind.REPETITION_BEGIN,  // 0
+                BlockKind.REPETITION_BREAK,  // 1
+                BlockKind.REPETITION_BEGIN,  // 2
+                BlockKind.REPETITION_BREAK,  // 3
+                BlockKind.REPETITION_END,    // 4
+                BlockKind.REPETITION_BREAK,  // 5
+                BlockKind.REPETITION_END));  // 6
+
+        assertEquals(6, program.getJumpTarget(1));
+        assertEquals(4, program.getJumpTarget(3));
+        assertEquals(6, program.getJumpTarget(5));
+    }
+
+    @Test
+    public void whenBlocksHaveNoCounterpart_thenJumpTargetsAreNone() throws Exception {
+        CompiledProgram program = CompiledProgram.compile(makeProgram(
+                BlockKind.REPETITION_BREAK,
+                BlockKind.REPETITION_END,
+                BlockKind.SELECTION_END,
+                BlockKind.REPETITION_BEGIN,
+                BlockKind.REPETITION_BREAK));
+
+        for (int i = 0; i < program.size(); i++) {
+            assertEquals(CompiledProgram.NO_TARGET, program.getJumpTarget(i));
+        }
+    }
+
+    @Test
+    public void whenSelectionIsNested_thenTheEndOfEachSelectionIsFound() throws Exception {
+        CompiledProgram program = CompiledProgram.compile(makeProgram(
+                BlockKind.SELECTION_BEGIN,   // 0
+                BlockKind.SELECTION_BEGIN,   // 1
+                BlockKind.SELECTION_END,     // 2
+                BlockKind.SELECTION_END));   // 3
+
+        // all blocks are in the true arms, so the false arms start at the ends
+        assertEquals(3, program.getJumpTarget(0));
+        assertEquals(2, program.getJumpTarget(1));
+        assertEquals(0, program.getJumpTarget(3));
+        assertEquals(1, program.getJumpTarget(2));
+        assertEquals(2, program.getMaxSelectionDepth());
+    }
+
+    private static void placeHorizontally(BlockModel block, int left, int right) {
+        block.setPosition(left, 0, right);
+    }
+
+    @Test
+    public void whenArmsAreInterleaved_thenEachArmIsPlacedContiguously() throws Exception {
+        List<BlockModel> blocks = makeProgram(
+                BlockKind.SELECTION_BEGIN,   // 0
+                BlockKind.SEQUENCE,          // 1 (true)
+                BlockKind.SEQUENCE,          // 2 (false)
+                BlockKind.SEQUENCE,          // 3 (true)
+                BlockKind.SEQUENCE,          // 4 (false)
+                BlockKind.SELECTION_END);    // 5
+
+        placeHorizontally(blocks.get(0), 0, 199);
+        placeHorizontally(blocks.get(1), 0, 99);
+        placeHorizontally(blocks.get(2), 100, 199);
+        placeHorizontally(blocks.get(3), 0, 99);
+        placeHorizontally(blocks.get(4), 100, 199);
+        placeHorizontally(blocks.get(5), 0, 199);
+
+        CompiledProgram program = CompiledProgram.compile(blocks);
+
+        // instructions: [0] 0, [1] 1, [2] 3, [3] 2, [4] 4, [5] 5
+        assertEquals(1, program.getBlockIndex(1));
+        assertEquals(3, program.getBlockIndex(2));
+        assertEquals(2, program.getBlockIndex(3));
+        assertEquals(4, program.getBlockIndex(4));
+        assertEquals(5, program.getBlockIndex(5));
+
+        assertEquals(CompiledProgram.BRANCH_TRUE, program.getBranch(2));
+        assertEquals(CompiledProgram.BRANCH_FALSE, program.getBranch(3));
+        assertEquals(CompiledProgram.BRANCH_NONE, program.getBranch(5));
+        assertEquals(0, program.getEnclosingSelection(4));
+
+        // the false arm starts at 3 and the true arm skips the false arm
+        assertEquals(3, program.getJumpTarget(0));
+        assertEquals(5, program.getNextIndex(2));
+    }
+
+    @Test
+    public void whenSelectionResultIsFalse_thenTheTrueArmIsSkipped() throws Exception {
+        List<BlockModel> blocks = makeProgram(
+                BlockKind.SELECTION_BEGIN,   // 0
+                BlockKind.SEQUENCE,          // 1 (true)
+                BlockKind.SEQUENCE,          // 2 (false)
+                BlockKind.SELECTION_END);    // 3
+
+        placeHorizontally(blocks.get(0), 0, 199);
+        placeHorizontally(blocks.get(1), 0, 99);
+        placeHorizontally(blocks.get(2), 100, 199);
+        placeHorizontally(blocks.get(3), 0, 199);
+
+        ExecutionCondition condition = new ExecutionCondition(CompiledProgram.compile(blocks));
+
+        condition.pushSelectionResult(false);
+        condition.incrementProgramCount();
+        assertEquals(2, condition.getCurrentBlockIndex());
+
+        condition.incrementProgramCount();
+        assertEquals(3, condition.getCurrentBlockIndex());
+
+        condition.popSelectionResult();
+        condition.incrementProgramCount();
+        assertTrue(condition.hasProgramFinished());
+    }
+
+    @Test
+    public void whenNTimesLoopIsExecuted_thenTheBodyIsRepeatedNTimes() throws Exception {
+        ExecutionCondition condition = new ExecutionCondition(CompiledProgram.compile(makeProgram(
+                BlockKind.REPETITION_BEGIN,  // 0
+                BlockKind.SEQUENCE,          // 1
+                BlockKind.REPETITION_END)));  // 2
+
+        int executedBody = 0;
+
+        condition.enterNTimesLoop(3);
+        condition.incrementProgramCount();
+
+        while (!condition.hasProgramFinished()) {
+            if (condition.getProgramCount() == 1) executedBody++;
+            if (condition.getProgramCount() == 2) condition.reachEndOfLoop();
+
+            condition.incrementProgramCount();
+        }
+
+        assertEquals(3, executedBody);
+    }
+
+    @Test
+    public void whenBreakIsExecuted_thenSelectionsInTheLoopArePopped() throws Exception {
+        ExecutionCondition condition = new ExecutionCondition(CompiledProgram.compile(makeProgram(
+                BlockKind.REPETITION_BEGIN,  // 0
+                BlockKind.SELECTION_BEGIN,   // 1
+                BlockKind.REPETITION_BREAK,  // 2
+                BlockKind.SELECTION_END,     // 3
+                BlockKind.REPETITION_END,    // 4
+                BlockKind.SEQUENCE)));       // 5
+
+        condition.enterInfiniteLoop();
+        condition.incrementProgramCount();
+        condition.pushSelectionResult(true);
+        condition.incrementProgramCount();
+
+        condition.breakLoop();
+        condition.incrementProgramCount();
+
+        assertEquals(5, condition.getProgramCount());
+        assertEquals(0, condition.sizeOfSelectionResult());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionEventRingTest {
+
+    @Test
+    public void whenEventsArePublished_thenCursorReadsThemInOrder() throws Exception {
+        ExecutionEventRing ring = new ExecutionEventRing(8);
+        ExecutionEventRing.Cursor cursor = ring.newCursor();
+
+        assertFalse(cursor.next());
+
+        ring.publish(RxObservableProgram.MESSAGE_STARTED, 0, 10L);
+        ring.publish(RxObservableProgram.MESSAGE_BLOCK_EXECUTED, 3, 20L);
+
+        assertTrue(cursor.next());
+        assertEquals(RxObservableProgram.MESSAGE_STARTED, cursor.getType());
+        assertEquals(10L, cursor.getTimestamp());
+
+        assertTrue(cursor.next());
+        assertEquals(RxObservableProgram.MESSAGE_BLOCK_EXECUTED, cursor.getType());
+        assertEquals(3, cursor.getArg());
+        assertEquals(20L, cursor.getTimestamp());
+
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void whenBlocksAreExecuted_thenLatestBlockIndexIsCoalesced() throws Exception {
+        ExecutionEventRing ring = new ExecutionEventRing(8);
+
+        assertEquals(ExecutionEventRing.NO_BLOCK, ring.getLatestBlockIndex());
+
+        for (int i = 0; i < 100; i++) {
+            ring.publish(RxObservableProgram.MESSAGE_BLOCK_EXECUTED, i, i);
+        }
+        ring.publish(RxObservableProgram.MESSAGE_PAUSED, 0, 100L);
+
+        assertEquals(99, ring.getLatestBlockIndex());
+    }
+
+    @Test
+    public void whenCursorIsOverrun_thenLostEventsAreSkipped() throws Exception {
+        ExecutionEventRing ring = new ExecutionEventRing(8);
+        ExecutionEventRing.Cursor cursor = ring.newCursor();
+
+        for (int i = 0; i < 20; i++) {
+            ring.publish(RxObservableProgram.MESSAGE_BLOCK_EXECUTED, i, i);
+        }
+
+        // one slot is kept as a margin for the producer
+        assertTrue(cursor.next());
+        assertEquals(13, cursor.getArg());
+        assertEquals(13, cursor.getLostCount());
+
+        int count = 1;
+        while (cursor.next()) {
+            count++;
+        }
+        assertEquals(7, count);
+        assertEquals(19, cursor.getArg());
+    }
+
+    @Test
+    public void whenProducerRunsConcurrently_thenCursorNeverReadsTornEvents() throws Exception {
+        final ExecutionEventRing ring = new ExecutionEventRing(16);
+        final int events = 200000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < events; i++) {
+                    ring.publish(RxObservableProgram.MESSAGE_BLOCK_EXECUTED, i, i);
+                }
+            }
+        });
+
+        ExecutionEventRing.Cursor cursor = ring.newCursor();
+        producer.start();
+
+        int last = -1;
+        boolean finished = false;
+
+        while (!finished) {
+            finished = !producer.isAlive();
+
+            while (cursor.next()) {
+                // the argument and the timestamp are always from the same event
+                assertEquals(cursor.getArg(), cursor.getTimestamp());
+                assertTrue(cursor.getArg() > last);
+                last = cursor.getArg();
+            }
+        }
+
+        assertEquals(events - 1, last);
+    }
+}
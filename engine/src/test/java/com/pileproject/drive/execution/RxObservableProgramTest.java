@@ -0,0 +1,654 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.execution;
+
+import com.pileproject.drive.machine.CarControllerBase;
+import com.pileproject.drive.machine.MachineController;
+import com.pileproject.drive.programming.model.BlockModel;
+import com.pileproject.drive.programming.model.repetition.NTimesModel;
+import com.pileproject.drive.programming.model.repetition.RepetitionEndModel;
+import com.pileproject.drive.programming.model.selection.SelectionEndModel;
+import com.pileproject.drive.programming.model.selection.car.IfMachineIsTouchedModel;
+import com.pileproject.drive.programming.model.sequence.SequenceModel;
+import com.pileproject.drive.programming.model.sequence.car.BackwardSecModel;
+import com.pileproject.drive.programming.model.sequence.car.ForwardSecModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Subscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RxObservableProgramTest {
+
+    // blocks never return by themselves during tests
+    private static final int LONG_DELAY = 60 * 1000;
+
+    // an upper bound of the latency of requests (generous for slow emulators)
+    private static final long MAX_LATENCY_MILLIS = 500;
+
+    private static final int COMPLETED = -1;
+
+    private CountingController controller;
+    private CountingBlock block;
+    private RxObservableProgram program;
+
+    private final BlockingQueue<Integer> messages = new LinkedBlockingQueue<>();
+    private Thread thread;
+    private ExecutionEventRing.Cursor cursor;
+
+    private static class CountingController implements MachineController {
+        final AtomicInteger halts = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+
+        @Override
+        public void halt() {
+            halts.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+
+    private static class CountingBlock extends SequenceModel {
+        final AtomicInteger actions = new AtomicInteger();
+
+        private final int mDelay;
+        private final long mCommandMillis;
+
+        CountingBlock(int delay, long commandMillis) {
+            mDelay = delay;
+            mCommandMillis = commandMillis;
+        }
+
+        @Override
+        public int action(MachineController controller, ExecutionCondition condition) {
+            actions.incrementAndGet();
+
+            // emulates the latency of commands
+            try {
+                Thread.sleep(mCommandMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return mDelay;
+        }
+    }
+
+    /**
+     * A block which throws as if the connection was lost at the given executions.
+     */
+    private static class LinkLosingBlock extends SequenceModel {
+        final AtomicInteger actions = new AtomicInteger();
+
+        private final List<Integer> mFailures;
+
+        LinkLosingBlock(Integer... failures) {
+            mFailures = Arrays.asList(failures);
+        }
+
+        @Override
+        public int action(MachineController controller, ExecutionCondition condition) {
+            if (mFailures.contains(actions.incrementAndGet())) {
+                throw new RuntimeException("The connection is lost", new IOException("Broken pipe"));
+            }
+
+            return 100;
+        }
+    }
+
+    /**
+     * A block which always fails without losing the connection (e.g., a bug of the block).
+     */
+    private static class FaultyBlock extends SequenceModel {
+        final AtomicInteger actions = new AtomicInteger();
+
+        @Override
+        public int action(MachineController controller, ExecutionCondition condition) {
+            actions.incrementAndGet();
+            throw new NumberFormatException("For input string: \"forward\"");
+        }
+    }
+
+    /**
+     * A reconnector which always reconnects to the given controller.
+     */
+    private static class CountingReconnector implements RxObservableProgram.Reconnector {
+        final AtomicInteger reconnections = new AtomicInteger();
+
+        private final MachineController mController;
+
+        CountingReconnector(MachineController controller) {
+            mController = controller;
+        }
+
+        @Override
+        public MachineController reconnect() throws IOException {
+            reconnections.incrementAndGet();
+            return mController;
+        }
+    }
+
+    /**
+     * Executes a program with a virtual clock in the current thread and returns the received messages.
+     */
+    private List<Integer> executeVirtually(RxObservableProgram virtualProgram, final List<Throwable> errors) {
+        final List<Integer> received = new ArrayList<>();
+
+        virtualProgram.call(new Subscriber<Integer>() {
+            @Override
+            public void onCompleted() {
+                received.add(COMPLETED);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                errors.add(e);
+            }
+
+            @Override
+            public void onNext(Integer message) {
+                received.add(message);
+            }
+        });
+
+        return received;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        controller = new CountingController();
+        block = new CountingBlock(LONG_DELAY, 0);
+    }
+
+    private void start(List<BlockModel> blocks) throws Exception {
+        program = new RxObservableProgram(blocks, controller);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                program.call(new Subscriber<Integer>() {
+                    @Override
+                    public void onCompleted() {
+                        messages.add(COMPLETED);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        // no-op
+                    }
+
+                    @Override
+                    public void onNext(Integer message) {
+                        messages.add(message);
+                    }
+                });
+            }
+        });
+        thread.start();
+
+        awaitMessage(RxObservableProgram.MESSAGE_STARTED);
+        cursor = program.getEventRing().newCursor();
+    }
+
+    private void startWithLongBlock() throws Exception {
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(block);
+        start(blocks);
+
+        awaitBlockExecuted();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (program != null) {
+            program.requestTerminate();
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Waits for the message and returns the elapsed time in milliseconds.
+     */
+    private long awaitMessage(int expected) throws InterruptedException {
+        long start = System.nanoTime();
+
+        Integer message = messages.poll(LONG_DELAY, TimeUnit.MILLISECONDS);
+
+        assertNotNull(message);
+        assertEquals(expected, (int) message);
+
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Waits for the next execution of a block, which is published only to the event ring.
+     */
+    private void awaitBlockExecuted() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LONG_DELAY);
+
+        while (System.nanoTime() < deadline) {
+            while (cursor.next()) {
+                if (cursor.getType() == RxObservableProgram.MESSAGE_BLOCK_EXECUTED) {
+                    return;
+                }
+            }
+
+            Thread.sleep(1);
+        }
+
+        fail();
+    }
+
+    @Test
+    public void whenPauseIsRequestedDuringDelay_thenPausesWithinBoundedLatency() throws Exception {
+        startWithLongBlock();
+        program.requestPause();
+
+        assertTrue(awaitMessage(RxObservableProgram.MESSAGE_PAUSED) < MAX_LATENCY_MILLIS);
+        assertEquals(RxObservableProgram.ExecutionState.PAUSED, program.getExecutionState());
+        assertEquals(1, controller.halts.get());
+    }
+
+    @Test
+    public void whenPaused_thenExecutionThreadIsParked() throws Exception {
+        startWithLongBlock();
+        program.requestPause();
+        awaitMessage(RxObservableProgram.MESSAGE_PAUSED);
+
+        // MESSAGE_PAUSED is emitted just before the thread parks
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_LATENCY_MILLIS);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        // a parked thread stays WAITING (consumes no CPU time) until it is woken up
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Thread.State.WAITING, thread.getState());
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, block.actions.get());
+    }
+
+    @Test
+    public void whenTerminateIsRequestedWhilePaused_thenTerminatesWithinBoundedLatency() throws Exception {
+        startWithLongBlock();
+        program.requestPause();
+        awaitMessage(RxObservableProgram.MESSAGE_PAUSED);
+
+        program.requestTerminate();
+
+        assertTrue(awaitMessage(RxObservableProgram.MESSAGE_TERMINATED) < MAX_LATENCY_MILLIS);
+        assertTrue(awaitMessage(COMPLETED) < MAX_LATENCY_MILLIS);
+        assertEquals(1, controller.closes.get());
+    }
+
+    @Test
+    public void whenTerminateIsRequestedDuringDelay_thenTerminatesWithinBoundedLatency() throws Exception {
+        startWithLongBlock();
+        program.requestTerminate();
+
+        assertTrue(awaitMessage(RxObservableProgram.MESSAGE_TERMINATED) < MAX_LATENCY_MILLIS);
+        assertTrue(awaitMessage(COMPLETED) < MAX_LATENCY_MILLIS);
+    }
+
+    @Test
+    public void whenRestartIsRequested_thenInterruptedBlockIsExecutedAgain() throws Exception {
+        startWithLongBlock();
+        program.requestPause();
+        awaitMessage(RxObservableProgram.MESSAGE_PAUSED);
+
+        program.requestRestart();
+
+        assertTrue(awaitMessage(RxObservableProgram.MESSAGE_RESTARTED) < MAX_LATENCY_MILLIS);
+        awaitBlockExecuted();
+        assertFalse(program.getExecutionState() == RxObservableProgram.ExecutionState.PAUSED);
+        // MESSAGE_BLOCK_EXECUTED is published just before the action
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_LATENCY_MILLIS);
+        while (block.actions.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, block.actions.get());
+    }
+
+    @Test
+    public void whenBlocksTakeTimeToSendCommands_thenTheTimeIsIncludedInDelays() throws Exception {
+        List<BlockModel> blocks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            blocks.add(new CountingBlock(20, 5));
+        }
+
+        long start = System.nanoTime();
+        start(blocks);
+
+        for (int i = 0; i < 20; i++) {
+            awaitBlockExecuted();
+        }
+        awaitMessage(COMPLETED);
+
+        // 20 blocks * 20 ms (not 20 * (20 + 5) ms)
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 400);
+        assertTrue(elapsed < 400 + 80);
+    }
+
+    @Test
+    public void whenRestarted_thenOnlyTheRemainingTimeIsWaited() throws Exception {
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(new CountingBlock(600, 0));
+        start(blocks);
+        awaitBlockExecuted();
+
+        Thread.sleep(200);
+        program.requestPause();
+        awaitMessage(RxObservableProgram.MESSAGE_PAUSED);
+
+        // the pause itself should not be counted
+        Thread.sleep(1000);
+
+        long start = System.nanoTime();
+        program.requestRestart();
+        awaitMessage(RxObservableProgram.MESSAGE_RESTARTED);
+        awaitBlockExecuted();
+        awaitMessage(COMPLETED);
+
+        // about 400 ms remained
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 300);
+        assertTrue(elapsed < 500);
+    }
+
+    @Test
+    public void whenProgramOfModelsIsExecuted_thenMachineIsControlledHeadlessly() throws Exception {
+        final AtomicInteger forwards = new AtomicInteger();
+        final AtomicInteger backwards = new AtomicInteger();
+
+        CarControllerBase car = new CarControllerBase() {
+            @Override
+            public List<String> getAllInputDevices() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<String> getAllOutputDevices() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isTouchSensorTouched() {
+                return false;
+            }
+
+            @Override
+            public void moveForward() {
+                forwards.incrementAndGet();
+            }
+
+            @Override
+            public void moveBackward() {
+                backwards.incrementAndGet();
+            }
+
+            @Override
+            public void halt() {
+                // no-op
+            }
+
+            @Override
+            public void close() {
+                // no-op
+            }
+        };
+
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(new NTimesModel(3).setPosition(0, 0, 199));
+        blocks.add(new IfMachineIsTouchedModel().setPosition(0, 100, 199));
+        blocks.add(new BackwardSecModel(0).setPosition(0, 200, 99));      // true arm
+        blocks.add(new ForwardSecModel(0).setPosition(100, 200, 199));    // false arm
+        blocks.add(new SelectionEndModel().setPosition(0, 300, 199));
+        blocks.add(new RepetitionEndModel().setPosition(0, 400, 199));
+
+        program = new RxObservableProgram(blocks, car);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                program.call(new Subscriber<Integer>() {
+                    @Override
+                    public void onCompleted() {
+                        messages.add(COMPLETED);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        // no-op
+                    }
+
+                    @Override
+                    public void onNext(Integer message) {
+                        // no-op
+                    }
+                });
+            }
+        });
+        thread.start();
+
+        awaitMessage(COMPLETED);
+        assertEquals(3, forwards.get());
+        assertEquals(0, backwards.get());
+    }
+
+    @Test
+    public void whenVirtualClockIsUsed_thenDelaysCostNoRealTime() throws Exception {
+        final int numberOfBlocks = 30;
+        final int delay = 1000;
+
+        CountingBlock second = new CountingBlock(delay, 0);
+        List<BlockModel> blocks = new ArrayList<>();
+        for (int i = 0; i < numberOfBlocks; ++i) {
+            blocks.add(second);
+        }
+
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        RxObservableProgram virtualProgram = new RxObservableProgram(blocks, controller, clock);
+        ExecutionEventRing.Cursor events = virtualProgram.getEventRing().newCursor();
+
+        long start = System.nanoTime();
+        virtualProgram.call(new Subscriber<Integer>() {
+            @Override
+            public void onCompleted() {
+                messages.add(COMPLETED);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                // no-op
+            }
+
+            @Override
+            public void onNext(Integer message) {
+                // no-op
+            }
+        });
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 30 seconds of the program are executed in a moment
+        assertTrue(elapsed < MAX_LATENCY_MILLIS);
+        assertEquals(numberOfBlocks, second.actions.get());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(numberOfBlocks * delay), clock.nanoTime());
+        awaitMessage(COMPLETED);
+
+        // each block starts exactly when the previous one ends as in real time
+        int executed = 0;
+        while (events.next()) {
+            if (events.getType() != RxObservableProgram.MESSAGE_BLOCK_EXECUTED) continue;
+
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(executed * delay), events.getTimestamp());
+            executed++;
+        }
+        assertEquals(numberOfBlocks, executed);
+    }
+
+    @Test
+    public void whenLinkIsLost_thenExecutionResumesFromInterruptedBlockAfterReconnection() throws Exception {
+        // fails at the second iteration of the loop
+        LinkLosingBlock losing = new LinkLosingBlock(2);
+        CountingBlock first = new CountingBlock(100, 0);
+
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(first.setPosition(0, 0, 99));
+        blocks.add(new NTimesModel(3).setPosition(0, 100, 99));
+        blocks.add(losing.setPosition(0, 200, 99));
+        blocks.add(new RepetitionEndModel().setPosition(0, 300, 99));
+
+        final CountingController reconnected = new CountingController();
+        final AtomicInteger reconnections = new AtomicInteger();
+
+        RxObservableProgram virtualProgram = new RxObservableProgram(blocks, controller, new VirtualExecutionClock());
+        virtualProgram.setReconnector(new RxObservableProgram.Reconnector() {
+            @Override
+            public MachineController reconnect() throws IOException {
+                // the first attempt fails as well
+                if (reconnections.incrementAndGet() == 1) {
+                    throw new IOException("The machine is not found");
+                }
+
+                return reconnected;
+            }
+        });
+
+        List<Throwable> errors = new ArrayList<>();
+        List<Integer> received = executeVirtually(virtualProgram, errors);
+
+        assertTrue(errors.isEmpty());
+        assertEquals(Arrays.asList(RxObservableProgram.MESSAGE_STARTED, RxObservableProgram.MESSAGE_LINK_LOST,
+                RxObservableProgram.MESSAGE_LINK_RESTORED, COMPLETED), received);
+
+        // the program is not executed again from the beginning and the loop is not reset
+        assertEquals(1, first.actions.get());
+        assertEquals(4, losing.actions.get());
+
+        assertEquals(2, reconnections.get());
+        assertEquals(1, controller.closes.get());
+        assertEquals(1, reconnected.halts.get());
+        assertEquals(1, reconnected.closes.get());
+    }
+
+    @Test
+    public void whenReconnectionKeepsFailing_thenOriginalErrorIsEmitted() throws Exception {
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(new LinkLosingBlock(1));
+
+        final AtomicInteger reconnections = new AtomicInteger();
+
+        RxObservableProgram virtualProgram = new RxObservableProgram(blocks, controller, new VirtualExecutionClock());
+        virtualProgram.setReconnector(new RxObservableProgram.Reconnector() {
+            @Override
+            public MachineController reconnect() throws IOException {
+                reconnections.incrementAndGet();
+                throw new IOException("The machine is not found");
+            }
+        });
+
+        List<Throwable> errors = new ArrayList<>();
+        List<Integer> received = executeVirtually(virtualProgram, errors);
+
+        assertEquals(1, errors.size());
+        assertEquals("The connection is lost", errors.get(0).getMessage());
+        assertFalse(received.contains(RxObservableProgram.MESSAGE_LINK_RESTORED));
+        assertTrue(reconnections.get() > 1);
+        assertEquals(1, controller.closes.get());
+    }
+
+    @Test
+    public void whenNoReconnectorIsSet_thenLostLinkEndsExecutionWithError() throws Exception {
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(new LinkLosingBlock(1));
+
+        List<Throwable> errors = new ArrayList<>();
+        List<Integer> received = executeVirtually(
+                new RxObservableProgram(blocks, controller, new VirtualExecutionClock()), errors);
+
+        assertEquals(1, errors.size());
+        assertFalse(received.contains(RxObservableProgram.MESSAGE_LINK_LOST));
+        assertEquals(1, controller.closes.get());
+    }
+
+    @Test
+    public void whenBlockFailsWithoutLosingLink_thenExecutionEndsWithErrorWithoutReconnection() throws Exception {
+        FaultyBlock faulty = new FaultyBlock();
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(faulty);
+
+        CountingReconnector reconnector = new CountingReconnector(new CountingController());
+
+        RxObservableProgram virtualProgram = new RxObservableProgram(blocks, controller, new VirtualExecutionClock());
+        virtualProgram.setReconnector(reconnector);
+
+        List<Throwable> errors = new ArrayList<>();
+        List<Integer> received = executeVirtually(virtualProgram, errors);
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof NumberFormatException);
+        assertFalse(received.contains(RxObservableProgram.MESSAGE_LINK_LOST));
+        assertEquals(1, faulty.actions.get());
+        assertEquals(0, reconnector.reconnections.get());
+        assertEquals(1, controller.closes.get());
+    }
+
+    @Test
+    public void whenSameBlockKeepsLosingLinkAfterReconnections_thenExecutionEndsWithError() throws Exception {
+        // loses the connection every time
+        LinkLosingBlock losing = new LinkLosingBlock(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        List<BlockModel> blocks = new ArrayList<>();
+        blocks.add(losing);
+
+        CountingController reconnected = new CountingController();
+        CountingReconnector reconnector = new CountingReconnector(reconnected);
+
+        RxObservableProgram virtualProgram = new RxObservableProgram(blocks, controller, new VirtualExecutionClock());
+        virtualProgram.setReconnector(reconnector);
+
+        List<Throwable> errors = new ArrayList<>();
+        executeVirtually(virtualProgram, errors);
+
+        assertEquals(1, errors.size());
+        assertEquals("The connection is lost", errors.get(0).getMessage());
+
+        // executed once and then executed again after each reconnection
+        assertEquals(reconnector.reconnections.get() + 1, losing.actions.get());
+        assertTrue(reconnector.reconnections.get() < losing.mFailures.size());
+    }
+}
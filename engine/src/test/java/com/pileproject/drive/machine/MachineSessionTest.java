@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MachineSessionTest {
+
+    private static final long LONG_MILLIS = 60 * 1000;
+    private static final long SHORT_MILLIS = 20;
+
+    private FakeConnector connector;
+    private MachineSession session;
+
+    private static class FakeCarController extends CarControllerBase {
+        final AtomicInteger halts = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+        volatile boolean isBroken;
+
+        // if set, a halt blocks until the gate is opened
+        volatile CountDownLatch halting;
+        volatile CountDownLatch gate;
+
+        @Override
+        public List<String> getAllInputDevices() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getAllOutputDevices() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void halt() {
+            if (isBroken) {
+                throw new RuntimeException(new IOException("broken"));
+            }
+
+            if (gate != null) {
+                halting.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            halts.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+
+        @Override
+        public void release() {
+            releases.incrementAndGet();
+        }
+    }
+
+    private static class FakeConnector implements MachineSession.Connector {
+        final AtomicInteger connects = new AtomicInteger();
+        volatile FakeCarController last;
+
+        @Override
+        public CarControllerBase connect() throws IOException {
+            connects.incrementAndGet();
+            last = new FakeCarController();
+            return last;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        connector = new FakeConnector();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.isSatisfied() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private interface Condition {
+        boolean isSatisfied();
+    }
+
+    @Test
+    public void whenAcquiredAgainAfterClose_thenConnectionIsReused() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        session.acquire().close();
+        session.acquire().close();
+
+        assertEquals(1, connector.connects.get());
+        assertEquals(2, connector.last.halts.get());
+        assertEquals(0, connector.last.closes.get());
+        assertTrue(session.isConnected());
+    }
+
+    @Test
+    public void whenIdleTimeoutPasses_thenConnectionIsClosed() throws Exception {
+        session = new MachineSession(connector, SHORT_MILLIS, LONG_MILLIS);
+
+        session.acquire().close();
+        waitUntil(new Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return connector.last.closes.get() == 1;
+            }
+        });
+
+        assertFalse(session.isConnected());
+        assertEquals(1, connector.last.closes.get());
+    }
+
+    @Test
+    public void whenConnectionIsLent_thenItIsNotClosedByIdleTimeout() throws Exception {
+        session = new MachineSession(connector, SHORT_MILLIS, SHORT_MILLIS);
+
+        CarControllerBase controller = session.acquire();
+        TimeUnit.MILLISECONDS.sleep(SHORT_MILLIS * 5);
+
+        assertTrue(session.isConnected());
+        // keep-alives never interfere with the borrower
+        assertEquals(0, connector.last.halts.get());
+
+        controller.close();
+    }
+
+    @Test
+    public void whenIdle_thenKeepAliveIsSent() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, SHORT_MILLIS);
+
+        session.acquire().close();
+        waitUntil(new Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return connector.last.halts.get() >= 3;
+            }
+        });
+
+        assertTrue(connector.last.halts.get() >= 3);
+    }
+
+    @Test
+    public void whenKeepAliveFails_thenNextAcquisitionReconnects() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, SHORT_MILLIS);
+
+        session.acquire().close();
+        connector.last.isBroken = true;
+        waitUntil(new Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return !session.isConnected();
+            }
+        });
+
+        session.acquire().close();
+
+        assertEquals(2, connector.connects.get());
+    }
+
+    @Test
+    public void whenKeepAliveIsBlocked_thenAcquisitionDoesNotWaitForIt() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, SHORT_MILLIS);
+
+        session.acquire().close();
+        connector.last.halting = new CountDownLatch(1);
+        connector.last.gate = new CountDownLatch(1);
+        assertTrue(connector.last.halting.await(5, TimeUnit.SECONDS));
+
+        // the keep-alive is still writing to the machine
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread borrower = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    session.acquire();
+                    acquired.countDown();
+                } catch (IOException e) {
+                    // the test fails
+                }
+            }
+        });
+        borrower.start();
+
+        try {
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        } finally {
+            connector.last.gate.countDown();
+        }
+    }
+
+    @Test
+    public void whenLinkIsBrokenDuringExecution_thenConnectionIsClosed() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        CarControllerBase controller = session.acquire();
+        connector.last.isBroken = true;
+        controller.close();
+
+        assertFalse(session.isConnected());
+        assertEquals(1, connector.last.closes.get());
+    }
+
+    @Test
+    public void whenAcquiredWithoutRelease_thenPreviousBorrowerIsRevoked() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        CarControllerBase abandoned = session.acquire();
+        CarControllerBase controller = session.acquire();
+
+        abandoned.close();
+        assertEquals(0, connector.last.halts.get());
+
+        controller.close();
+        assertEquals(1, connector.last.halts.get());
+        assertEquals(1, connector.connects.get());
+    }
+
+    @Test
+    public void whenConnectionIsReturned_thenControllerIsReleased() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        session.acquire().close();
+
+        assertEquals(1, connector.last.releases.get());
+        assertEquals(0, connector.last.closes.get());
+    }
+
+    @Test
+    public void whenPreviousBorrowerIsRevoked_thenItCannotControlMachine() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        CarControllerBase abandoned = session.acquire();
+        CarControllerBase controller = session.acquire();
+
+        // the activities of the previous borrower are stopped
+        assertEquals(1, connector.last.releases.get());
+
+        try {
+            abandoned.moveForward();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            abandoned.halt();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(0, connector.last.halts.get());
+        controller.close();
+    }
+
+    @Test
+    public void whenSessionIsClosed_thenNextAcquisitionReconnects() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        session.acquire().close();
+        session.close();
+        session.acquire().close();
+
+        assertEquals(2, connector.connects.get());
+    }
+
+    @Test
+    public void whenPreconnected_thenAcquisitionUsesTheConnection() throws Exception {
+        session = new MachineSession(connector, LONG_MILLIS, LONG_MILLIS);
+
+        session.preconnect();
+        waitUntil(new Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return session.isConnected();
+            }
+        });
+        session.preconnect();
+
+        session.acquire().close();
+
+        assertEquals(1, connector.connects.get());
+        assertEquals(0, connector.last.closes.get());
+    }
+
+    @Test
+    public void whenAcquiredDuringPreconnection_thenItWaitsForTheConnection() throws Exception {
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+
+        session = new MachineSession(new MachineSession.Connector() {
+            @Override
+            public CarControllerBase connect() throws IOException {
+                connecting.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return connector.connect();
+            }
+        }, LONG_MILLIS, LONG_MILLIS);
+
+        session.preconnect();
+        assertTrue(connecting.await(5, TimeUnit.SECONDS));
+
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(SHORT_MILLIS);
+                } catch (InterruptedException e) {
+                    // no-op
+                }
+                proceed.countDown();
+            }
+        });
+        releaser.start();
+
+        session.acquire().close();
+        releaser.join();
+
+        assertEquals(1, connector.connects.get());
+    }
+
+    @Test
+    public void whenPreconnectedButNotAcquired_thenIdleTimeoutClosesConnection() throws Exception {
+        session = new MachineSession(connector, SHORT_MILLIS, LONG_MILLIS);
+
+        session.preconnect();
+        waitUntil(new Condition() {
+            @Override
+            public boolean isSatisfied() {
+                return connector.last != null && connector.last.closes.get() == 1;
+            }
+        });
+
+        assertFalse(session.isConnected());
+    }
+}
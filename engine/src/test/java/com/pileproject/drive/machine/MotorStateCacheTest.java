@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.machine.CarControllerBase.MotorDir;
+import com.pileproject.drive.machine.CarControllerBase.MotorKind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MotorStateCacheTest {
+
+    private MotorStateCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new MotorStateCache();
+    }
+
+    @Test
+    public void whenFirstCommandIsGiven_thenItIsSent() throws Exception {
+        assertTrue(cache.update(MotorKind.LeftMotor, MotorDir.Forward, 60));
+        assertTrue(cache.update(MotorKind.RightMotor, MotorDir.Neutral, 60));
+
+        assertEquals(3, cache.getSentCount());
+        assertEquals(0, cache.getSavedCount());
+    }
+
+    @Test
+    public void whenSameCommandIsRepeated_thenItIsSuppressed() throws Exception {
+        cache.update(MotorKind.LeftMotor, MotorDir.Forward, 60);
+
+        assertFalse(cache.update(MotorKind.LeftMotor, MotorDir.Forward, 60));
+        assertFalse(cache.update(MotorKind.LeftMotor, MotorDir.Forward, 60));
+
+        assertEquals(2, cache.getSentCount());
+        assertEquals(4, cache.getSavedCount());
+    }
+
+    @Test
+    public void whenDirectionOrSpeedChanges_thenItIsSent() throws Exception {
+        cache.update(MotorKind.LeftMotor, MotorDir.Forward, 60);
+
+        assertTrue(cache.update(MotorKind.LeftMotor, MotorDir.Backward, 60));
+        assertTrue(cache.update(MotorKind.LeftMotor, MotorDir.Backward, 80));
+        assertTrue(cache.update(MotorKind.LeftMotor, MotorDir.Neutral, 80));
+    }
+
+    @Test
+    public void whenStoppedWithDifferentSpeed_thenItIsSuppressed() throws Exception {
+        cache.update(MotorKind.LeftMotor, MotorDir.Neutral, 60);
+
+        assertFalse(cache.update(MotorKind.LeftMotor, MotorDir.Neutral, 80));
+    }
+
+    @Test
+    public void whenMotorsAreDifferent_thenStatesAreIndependent() throws Exception {
+        cache.update(MotorKind.LeftMotor, MotorDir.Forward, 60);
+
+        assertTrue(cache.update(MotorKind.RightMotor, MotorDir.Forward, 60));
+    }
+
+    @Test
+    public void whenInvalidated_thenSameCommandIsSentAgain() throws Exception {
+        cache.update(MotorKind.LeftMotor, MotorDir.Neutral, 60);
+        cache.invalidate();
+
+        assertTrue(cache.update(MotorKind.LeftMotor, MotorDir.Neutral, 60));
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.machine;
+
+import com.pileproject.drive.execution.VirtualExecutionClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SampledCarControllerTest {
+
+    private static final long PERIOD_MILLIS = 10;
+
+    private static final long MAX_STALENESS_MILLIS = 100;
+
+    private FakeCarController fake;
+    private SampledCarController controller;
+
+    private static class FakeCarController extends CarControllerBase {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+        volatile boolean touched;
+        volatile boolean failsNextRead;
+
+        @Override
+        public List<String> getAllInputDevices() {
+            return Collections.singletonList(InputDevice.TOUCH);
+        }
+
+        @Override
+        public List<String> getAllOutputDevices() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isTouchSensorTouched() {
+            reads.incrementAndGet();
+
+            if (failsNextRead) {
+                failsNextRead = false;
+                throw new RuntimeException("Timed out while waiting for a reply");
+            }
+
+            return touched;
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fake = new FakeCarController();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (controller != null) {
+            controller.close();
+        }
+    }
+
+    @Test
+    public void whenSampleIsFresh_thenMachineIsNotRead() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+
+        for (int i = 0; i < 100; ++i) {
+            assertFalse(controller.isTouchSensorTouched());
+        }
+
+        // only the first read
+        assertEquals(1, fake.reads.get());
+    }
+
+    @Test
+    public void whenSampleIsStale_thenMachineIsReadSynchronously() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+
+        assertNull(controller.getReading(CarControllerBase.InputDevice.TOUCH));
+        assertFalse(controller.isTouchSensorTouched());
+
+        fake.touched = true;
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(MAX_STALENESS_MILLIS + 1));
+
+        assertTrue(controller.isTouchSensorTouched());
+        assertEquals(clock.nanoTime(), controller.getReading(CarControllerBase.InputDevice.TOUCH).getTimestamp());
+    }
+
+    @Test
+    public void whenSampleIsOlderThanPeriod_thenItIsRefreshedInBackground() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+
+        assertFalse(controller.isTouchSensorTouched());
+        fake.touched = true;
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS));
+
+        // the old sample is answered, and the sensor is read in background
+        assertFalse(controller.isTouchSensorTouched());
+        awaitTouchedSample();
+
+        assertTrue(controller.isTouchSensorTouched());
+        assertEquals(clock.nanoTime(), controller.getReading(CarControllerBase.InputDevice.TOUCH).getTimestamp());
+    }
+
+    @Test
+    public void whenSensorIsNotRead_thenItIsNotSampled() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+
+        assertFalse(controller.isTouchSensorTouched());
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS));
+        assertFalse(controller.isTouchSensorTouched());
+        awaitReads(2);
+
+        // no selection block reads the sensor anymore
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS));
+        Thread.sleep(50);
+
+        assertEquals(2, fake.reads.get());
+    }
+
+    @Test
+    public void whenSamplingFailsOnce_thenSamplingResumes() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+        assertFalse(controller.isTouchSensorTouched());
+
+        // the sampling thread fails and exits
+        fake.failsNextRead = true;
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS));
+        assertFalse(controller.isTouchSensorTouched());
+        awaitReads(2);
+
+        // the next read of the old sample starts sampling again
+        fake.touched = true;
+        awaitTouchedSample();
+    }
+
+    @Test
+    public void whenClosed_thenSamplingStops() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+        controller.isTouchSensorTouched();
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS));
+        controller.isTouchSensorTouched();
+
+        controller.close();
+        Thread.sleep(50);
+        int reads = fake.reads.get();
+        Thread.sleep(50);
+
+        assertEquals(reads, fake.reads.get());
+        assertEquals(1, fake.closes.get());
+        controller = null;
+    }
+
+    @Test
+    public void whenReleased_thenSamplingStopsAndSensorsAreForgotten() throws Exception {
+        VirtualExecutionClock clock = new VirtualExecutionClock();
+        controller = new SampledCarController(fake, clock, PERIOD_MILLIS, MAX_STALENESS_MILLIS);
+        controller.isTouchSensorTouched();
+        clock.advanceNanos(TimeUnit.MILLISECONDS.toNanos(PERIOD_MILLIS));
+        controller.isTouchSensorTouched();
+
+        controller.release();
+        Thread.sleep(50);
+        int reads = fake.reads.get();
+        Thread.sleep(50);
+
+        assertEquals(reads, fake.reads.get());
+        assertNull(controller.getReading(CarControllerBase.InputDevice.TOUCH));
+        assertEquals(0, fake.closes.get());
+    }
+
+    private void awaitReads(int reads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fake.reads.get() < reads) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitTouchedSample() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        // each read of the old sample requests the sampling (a request may be lost while the sampler exits)
+        while (!controller.isTouchSensorTouched()) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
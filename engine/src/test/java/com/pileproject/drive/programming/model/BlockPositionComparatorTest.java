@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.programming.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockPositionComparatorTest {
+
+    private static PositionHolder at(final int left, final int top) {
+        return new PositionHolder() {
+            @Override
+            public int getLeft() {
+                return left;
+            }
+
+            @Override
+            public int getTop() {
+                return top;
+            }
+        };
+    }
+
+    @Test
+    public void whenBlocksAreSorted_thenTopIsPrioritizedOverLeft() throws Exception {
+        PositionHolder upperRight = at(500, 10);
+        PositionHolder lowerLeft = at(0, 20);
+        PositionHolder upperLeft = at(0, 10);
+
+        List<PositionHolder> blocks = new ArrayList<>();
+        blocks.add(upperRight);
+        blocks.add(lowerLeft);
+        blocks.add(upperLeft);
+
+        Collections.sort(blocks, new BlockPositionComparator());
+
+        assertEquals(upperLeft, blocks.get(0));
+        assertEquals(upperRight, blocks.get(1));
+        assertEquals(lowerLeft, blocks.get(2));
+    }
+
+    @Test
+    public void whenOrderIsDescending_thenNullIsFirst() throws Exception {
+        BlockPositionComparator comparator = new BlockPositionComparator(BlockPositionComparator.DESC);
+
+        assertTrue(comparator.compare(null, at(0, 0)) < 0);
+        assertTrue(comparator.compare(at(0, 0), at(0, 10)) > 0);
+    }
+
+    @Test
+    public void whenBlocksAreFarBelow_thenOrderIsKept() throws Exception {
+        BlockPositionComparator comparator = new BlockPositionComparator();
+
+        // top * 10000 is out of the range of int
+        assertTrue(comparator.compare(at(0, 300000), at(0, 400000)) < 0);
+        assertTrue(comparator.compare(at(0, 400000), at(0, 300000)) > 0);
+    }
+}
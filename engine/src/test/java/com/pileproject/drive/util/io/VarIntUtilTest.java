@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011-2017 The PILE Developers <pile-dev@googlegroups.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pileproject.drive.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class VarIntUtilTest {
+
+    private static final long[] VALUES = {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+
+    private static DataInputStream inputOf(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void whenUnsignedValuesAreWritten_thenTheyAreReadAsTheyWere() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (long value : VALUES) {
+            VarIntUtil.writeUnsigned(output, value);
+        }
+
+        DataInputStream input = inputOf(bytes.toByteArray());
+        for (long value : VALUES) {
+            assertEquals(value, VarIntUtil.readUnsigned(input));
+        }
+        assertEquals(0, input.available());
+    }
+
+    @Test
+    public void whenSignedValuesAreWritten_thenTheyAreReadAsTheyWere() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (long value : VALUES) {
+            VarIntUtil.writeSigned(output, value);
+        }
+
+        DataInputStream input = inputOf(bytes.toByteArray());
+        for (long value : VALUES) {
+            assertEquals(value, VarIntUtil.readSigned(input));
+        }
+    }
+
+    @Test
+    public void whenSmallValueIsWritten_thenItTakesOneByte() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        VarIntUtil.writeUnsigned(output, 127);
+        VarIntUtil.writeSigned(output, -64);
+
+        assertEquals(2, bytes.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void whenValueIsLongerThan64Bits_thenReadFails() throws Exception {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+
+        VarIntUtil.readUnsigned(inputOf(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void whenLengthExceedsMaximum_thenReadFails() throws Exception {
+        VarIntUtil.readLength(inputOf(new byte[] {(byte) 0x81, 0x01}), 128);
+    }
+
+    @Test(expected = IOException.class)
+    public void whenLengthIsNegative_thenReadFails() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VarIntUtil.writeUnsigned(new DataOutputStream(bytes), -1);
+
+        VarIntUtil.readLength(inputOf(bytes.toByteArray()), Integer.MAX_VALUE);
+    }
+}
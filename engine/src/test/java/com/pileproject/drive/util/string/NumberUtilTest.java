@@ -41,4 +41,10 @@ public class NumberUtilTest {
         assertEquals("When the precision 4 and locale Japan",
                 "1.2345", NumberUtil.toString(Locale.JAPAN, new BigDecimal("1.2345"), 4));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void whenValueHasMoreDigitsThanPrecision_thenActionValueIsTruncated() throws Exception {
+        assertEquals(125, NumberUtil.toActionValue(new BigDecimal("1.2599"), 2));
+        assertEquals(3000, NumberUtil.toActionValue(new BigDecimal("3"), 3));
+    }
+}